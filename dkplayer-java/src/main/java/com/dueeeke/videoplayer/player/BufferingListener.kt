@@ -0,0 +1,14 @@
+package com.dueeeke.videoplayer.player
+
+/**
+ * Buffering listener, notified when playback starts and stops waiting for data.
+ * It can be used to give network bandwidth to the playing video, e.g. to throttle preloading of other videos.
+ * Each VideoView reports its own address, so buffering of several players can be tracked separately.
+ */
+interface BufferingListener {
+    /**
+     * @param url playback address, the end of buffering is reported with the address its start was reported with
+     * @param buffering true when the player is preparing or buffering, false when it has buffered enough or is stopped
+     */
+    fun onBufferingChanged(url: String?, buffering: Boolean)
+}
@@ -130,6 +130,21 @@ open class VideoView<P : AbstractPlayer?> @JvmOverloads constructor(context: Con
      */
     private var mProgressManager: ProgressManager?
 
+    /**
+     * Buffering listener, notified when playback starts and stops waiting for data
+     */
+    private var mBufferingListener: BufferingListener?
+
+    /**
+     * Whether playback is waiting for data, i.e. preparing or buffering
+     */
+    private var mIsBuffering = false
+
+    /**
+     * The address reported to the buffering listener when buffering started
+     */
+    private var mBufferingUrl: String? = null
+
     /**
      * Loop option
      */
@@ -146,6 +161,7 @@ open class VideoView<P : AbstractPlayer?> @JvmOverloads constructor(context: Con
         val config = config
         mEnableAudioFocus = config!!.mEnableAudioFocus
         mProgressManager = config.mProgressManager
+        mBufferingListener = config.mBufferingListener
         mPlayerFactory = config.mPlayerFactory as PlayerFactory<P>?
         mCurrentScreenScaleType = config.mScreenScaleType
         mRenderViewFactory = config.mRenderViewFactory
@@ -592,6 +608,13 @@ open class VideoView<P : AbstractPlayer?> @JvmOverloads constructor(context: Con
         mProgressManager = progressManager
     }
 
+    /**
+     * Set the buffering listener to be notified when playback waits for data
+     */
+    fun setBufferingListener(bufferingListener: BufferingListener?) {
+        mBufferingListener = bufferingListener
+    }
+
     /**
      * Loop playback, not loop playback by default
      */
@@ -845,6 +868,7 @@ open class VideoView<P : AbstractPlayer?> @JvmOverloads constructor(context: Con
      */
     protected fun setPlayState(playState: Int) {
         currentPlayState = playState
+        notifyBufferingChanged(playState == STATE_PREPARING || playState == STATE_BUFFERING)
         if (mVideoController != null) {
             mVideoController!!.setPlayState(playState)
         }
@@ -855,6 +879,20 @@ open class VideoView<P : AbstractPlayer?> @JvmOverloads constructor(context: Con
         }
     }
 
+    /**
+     * Notify the buffering listener when playback starts or stops waiting for data
+     */
+    private fun notifyBufferingChanged(buffering: Boolean) {
+        if (buffering != mIsBuffering) {
+            mIsBuffering = buffering
+            // The end of buffering is reported for the same address, even if a new one has been set since
+            if (buffering) {
+                mBufferingUrl = mUrl
+            }
+            mBufferingListener?.onBufferingChanged(mBufferingUrl, buffering)
+        }
+    }
+
     /**
      * Set the player state to the Controller, including full-screen state and non-full-screen state
      */
@@ -17,6 +17,8 @@ class VideoViewConfig private constructor(builder: Builder) {
     @JvmField
     val mProgressManager: ProgressManager?
     @JvmField
+    val mBufferingListener: BufferingListener?
+    @JvmField
     var mPlayerFactory: PlayerFactory<*>? = null
     @JvmField
     val mScreenScaleType: Int
@@ -31,6 +33,7 @@ class VideoViewConfig private constructor(builder: Builder) {
         internal var mEnableOrientation = false
         internal var mEnableAudioFocus = true
         internal var mProgressManager: ProgressManager? = null
+        internal var mBufferingListener: BufferingListener? = null
         internal var mPlayerFactory: PlayerFactory<*>? = null
         internal var mScreenScaleType = 0
         internal var mRenderViewFactory: RenderViewFactory? = null
@@ -68,6 +71,14 @@ class VideoViewConfig private constructor(builder: Builder) {
             return this
         }
 
+        /**
+         * Set the buffering listener to be notified when playback waits for data
+         */
+        fun setBufferingListener(bufferingListener: BufferingListener?): Builder {
+            mBufferingListener = bufferingListener
+            return this
+        }
+
         /**
          * Whether to print log
          */
@@ -126,6 +137,7 @@ class VideoViewConfig private constructor(builder: Builder) {
         mPlayOnMobileNetwork = builder.mPlayOnMobileNetwork
         mEnableAudioFocus = builder.mEnableAudioFocus
         mProgressManager = builder.mProgressManager
+        mBufferingListener = builder.mBufferingListener
         mScreenScaleType = builder.mScreenScaleType
         mPlayerFactory = if (builder.mPlayerFactory == null) {
             //The default is AndroidMediaPlayer
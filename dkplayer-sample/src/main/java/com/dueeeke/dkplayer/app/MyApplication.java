@@ -2,11 +2,13 @@ package com.dueeeke.dkplayer.app;
 
 import android.app.Application;
 
+import com.dueeeke.dkplayer.util.cache.ProxyVideoCacheManager;
 import com.dueeeke.videoplayer.BuildConfig;
 import com.dueeeke.videoplayer.exo.ExoMediaPlayer;
 import com.dueeeke.videoplayer.exo.ExoMediaPlayerFactory;
 import com.dueeeke.videoplayer.ijk.IjkPlayerFactory;
 import com.dueeeke.videoplayer.player.AndroidMediaPlayerFactory;
+import com.dueeeke.videoplayer.player.BufferingListener;
 import com.dueeeke.videoplayer.player.VideoViewConfig;
 import com.dueeeke.videoplayer.player.VideoViewManager;
 
@@ -35,6 +37,13 @@ public class MyApplication extends Application {
 //                .setAdaptCutout(false)
 //                .setPlayOnMobileNetwork(true)
 //                .setProgressManager(new ProgressManagerImpl())
+                //播放器缓冲时限制预加载等后台下载，优先保证当前视频的带宽
+                .setBufferingListener(new BufferingListener() {
+                    @Override
+                    public void onBufferingChanged(String url, boolean buffering) {
+                        ProxyVideoCacheManager.setPlaybackBuffering(url, buffering);
+                    }
+                })
                 .build());
 
 //        if (BuildConfig.DEBUG) {
@@ -3,14 +3,10 @@ package com.dueeeke.dkplayer.util.cache;
 import android.content.Context;
 
 import com.danikula.videocache.HttpProxyCacheServer;
+import com.danikula.videocache.PreloadScheduler;
 import com.dueeeke.videoplayer.util.L;
 
 import java.io.File;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * 抖音预加载工具，使用AndroidVideoCache实现
@@ -20,29 +16,20 @@ public class PreloadManager {
     private static PreloadManager sPreloadManager;
 
     /**
-     * 单线程池，按照添加顺序依次执行{@link PreloadTask}
+     * 预加载调度器，离当前位置近的视频优先预加载，数据直接写入缓存，不经过本地代理
      */
-    private ExecutorService mExecutorService = Executors.newSingleThreadExecutor();
-
-    /**
-     * 保存正在预加载的{@link PreloadTask}
-     */
-    private LinkedHashMap<String, PreloadTask> mPreloadTasks = new LinkedHashMap<>();
-
-    /**
-     * 标识是否需要预加载
-     */
-    private boolean mIsStartPreload = true;
+    private PreloadScheduler mPreloadScheduler;
 
     private HttpProxyCacheServer mHttpProxyCacheServer;
 
     /**
-     * 预加载的大小，每个视频预加载512KB，这个参数可根据实际情况调整
+     * 预加载的时长，每个视频预加载前3秒，实际大小由视频码率决定，这个参数可根据实际情况调整
      */
-    public static final int PRELOAD_LENGTH = 512 * 1024;
+    public static final int PRELOAD_SECONDS = 3;
 
     private PreloadManager(Context context) {
         mHttpProxyCacheServer = ProxyVideoCacheManager.getProxy(context);
+        mPreloadScheduler = mHttpProxyCacheServer.getPreloadScheduler();
     }
 
     public static PreloadManager getInstance(Context context) {
@@ -63,17 +50,8 @@ public class PreloadManager {
      */
     public void addPreloadTask(String rawUrl, int position) {
         if (isPreloaded(rawUrl)) return;
-        PreloadTask task = new PreloadTask();
-        task.mRawUrl = rawUrl;
-        task.mPosition = position;
-        task.mCacheServer = mHttpProxyCacheServer;
         L.i("addPreloadTask: " + position);
-        mPreloadTasks.put(rawUrl, task);
-
-        if (mIsStartPreload) {
-            //开始预加载
-            task.executeOn(mExecutorService);
-        }
+        mPreloadScheduler.preload(rawUrl, position, PRELOAD_SECONDS);
     }
 
     /**
@@ -91,65 +69,32 @@ public class PreloadManager {
                 return false;
             }
         }
-        //再判断是否有临时缓存文件，如果已经存在临时缓存文件，并且临时缓存文件超过了预加载大小，则表示已经预加载完成了
-        File tempCacheFile = mHttpProxyCacheServer.getTempCacheFile(rawUrl);
-        if (tempCacheFile.exists()) {
-            return tempCacheFile.length() >= PRELOAD_LENGTH;
-        }
-
-        return false;
+        //再判断预加载任务是否已经完成
+        return mPreloadScheduler.isPreloaded(rawUrl);
     }
 
     /**
      * 暂停预加载
-     * 根据是否反向滑动取消在position之下或之上的PreloadTask
+     * 滑动过程中只更新当前位置，调度器会取消当前位置的预加载，并优先预加载离当前位置近的视频
      *
      * @param position 当前滑到的位置
      * @param isReverseScroll 列表是否反向滑动
      */
     public void pausePreload(int position, boolean isReverseScroll) {
         L.d("pausePreload：" + position + " isReverseScroll: " + isReverseScroll);
-        mIsStartPreload = false;
-        for (Map.Entry<String, PreloadTask> next : mPreloadTasks.entrySet()) {
-            PreloadTask task = next.getValue();
-            if (isReverseScroll) {
-                if (task.mPosition >= position) {
-                    task.cancel();
-                }
-            } else {
-                if (task.mPosition <= position) {
-                    task.cancel();
-                }
-            }
-        }
+        mPreloadScheduler.setCurrentPosition(position);
     }
 
     /**
      * 恢复预加载
-     * 根据是否反向滑动开始在position之下或之上的PreloadTask
+     * 预加载按照与当前位置的距离重新排序
      *
      * @param position        当前滑到的位置
      * @param isReverseScroll 列表是否反向滑动
      */
     public void resumePreload(int position, boolean isReverseScroll) {
         L.d("resumePreload：" + position + " isReverseScroll: " + isReverseScroll);
-        mIsStartPreload = true;
-        for (Map.Entry<String, PreloadTask> next : mPreloadTasks.entrySet()) {
-            PreloadTask task = next.getValue();
-            if (isReverseScroll) {
-                if (task.mPosition < position) {
-                    if (!isPreloaded(task.mRawUrl)) {
-                        task.executeOn(mExecutorService);
-                    }
-                }
-            } else {
-                if (task.mPosition > position) {
-                    if (!isPreloaded(task.mRawUrl)) {
-                        task.executeOn(mExecutorService);
-                    }
-                }
-            }
-        }
+        mPreloadScheduler.setCurrentPosition(position);
     }
 
     /**
@@ -158,34 +103,23 @@ public class PreloadManager {
      * @param rawUrl 原始地址
      */
     public void removePreloadTask(String rawUrl) {
-        PreloadTask task = mPreloadTasks.get(rawUrl);
-        if (task != null) {
-            task.cancel();
-            mPreloadTasks.remove(rawUrl);
-        }
+        mPreloadScheduler.cancel(rawUrl);
     }
 
     /**
      * 取消所有的预加载
      */
     public void removeAllPreloadTask() {
-        Iterator<Map.Entry<String, PreloadTask>> iterator = mPreloadTasks.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, PreloadTask> next = iterator.next();
-            PreloadTask task = next.getValue();
-            task.cancel();
-            iterator.remove();
-        }
+        mPreloadScheduler.cancelAll();
     }
 
     /**
      * 获取播放地址
      */
     public String getPlayUrl(String rawUrl) {
-        PreloadTask task = mPreloadTasks.get(rawUrl);
-        if (task != null) {
-            task.cancel();
-        }
+        mPreloadScheduler.cancel(rawUrl);
+        //当前播放的视频优先读取
+        mHttpProxyCacheServer.setPriorityUrl(rawUrl);
         if (isPreloaded(rawUrl)) {
             return mHttpProxyCacheServer.getProxyUrl(rawUrl);
         } else {
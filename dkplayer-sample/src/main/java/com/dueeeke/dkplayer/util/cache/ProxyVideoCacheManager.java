@@ -4,6 +4,7 @@ import android.content.Context;
 
 import com.danikula.videocache.HttpProxyCacheServer;
 import com.danikula.videocache.StorageUtils;
+import com.danikula.videocache.transport.PooledUpstreamTransport;
 
 import java.io.File;
 
@@ -21,12 +22,28 @@ public class ProxyVideoCacheManager {
     private static HttpProxyCacheServer newProxy(Context context) {
         return new HttpProxyCacheServer.Builder(context)
                 .maxCacheSize(512 * 1024 * 1024)       // 512MB for cache
+                .sparseCache(true)                     // 预加载时缓存文件末尾的moov
+                .preloading(2, 512 * 1024)             // 同时预加载2个视频，限速512KB/s，不影响当前播放
+                .memoryCache(16 * 1024 * 1024, 1024 * 1024) // 内存中保留最近视频的前1MB，共16MB，切换相邻视频时不读磁盘
+                .upstreamTransport(new PooledUpstreamTransport()) // 复用同一CDN的连接并限制并发数，缓存重定向地址
                 //缓存路径，不设置默认在sd_card/Android/data/[app_package_name]/cache中
 //                .cacheDirectory()
                 .build();
     }
 
 
+    /**
+     * 播放器缓冲时限制预加载等后台下载的速度，所有播放器缓冲结束后逐步恢复
+     *
+     * @param url       播放地址，原始地址或代理地址，按地址分别记录缓冲状态
+     * @param buffering 是否正在缓冲
+     */
+    public static void setPlaybackBuffering(String url, boolean buffering) {
+        if (sharedProxy != null && url != null) {
+            sharedProxy.setPlaybackBuffering(url, buffering);
+        }
+    }
+
     /**
      * 删除所有缓存文件
      * @return 返回缓存是否删除成功
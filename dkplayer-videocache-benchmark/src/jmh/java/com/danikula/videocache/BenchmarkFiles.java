@@ -0,0 +1,42 @@
+package com.danikula.videocache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Utils for files of benchmarks.
+ */
+public final class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+    }
+
+    public static File newTempDirectory(String prefix) throws IOException {
+        return java.nio.file.Files.createTempDirectory(prefix).toFile();
+    }
+
+    public static void write(File file, byte[] data) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(0);
+            randomAccessFile.write(data);
+        }
+    }
+
+    public static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    public static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,71 @@
+package com.danikula.videocache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of request sent by player to proxy server, it is done for every request of every player.
+ * <p>
+ * {@code read} reads request from stream as blocking engine does, {@code parse} parses request already read
+ * to buffer as non-blocking engine does. Run it with gc profiler (enabled in build script) to see allocation rate:
+ * {@code gc.alloc.rate.norm} is count of bytes allocated per request, it is request object, its uri and ranges only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GetRequestBenchmark {
+
+    private static final String URL = "http%3A%2F%2Fvideo.example.com%2Fvod%2F2021%2F05%2Fvideo_1080p.mp4%3Ftoken%3Dabcdef0123456789";
+
+    // requests of MediaPlayer (few headers) and ExoPlayer (more headers, range with end)
+    @Param({"media", "exo"})
+    public String player;
+
+    private byte[] request;
+    private ByteArrayInputStream requestStream;
+    private GetRequestReader requestReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        String headers = "media".equals(player) ?
+                "GET /" + URL + " HTTP/1.1\r\n" +
+                        "User-Agent: stagefright/1.2 (Linux;Android 10)\r\n" +
+                        "Host: 127.0.0.1:43127\r\n" +
+                        "Connection: Keep-Alive\r\n" +
+                        "Range: bytes=1048576-\r\n" +
+                        "\r\n" :
+                "GET /" + URL + " HTTP/1.1\r\n" +
+                        "User-Agent: ExoPlayerLib/2.13.2 (Linux; Android 10) ExoPlayerLib/2.13.2\r\n" +
+                        "Accept-Encoding: identity\r\n" +
+                        "Range: bytes=1048576-2097151\r\n" +
+                        "Icy-MetaData: 1\r\n" +
+                        "Host: 127.0.0.1:43127\r\n" +
+                        "Connection: Keep-Alive\r\n" +
+                        "\r\n";
+        request = headers.getBytes("UTF-8");
+        // the same stream is read again and again, like connection sending requests one by one
+        requestStream = new ByteArrayInputStream(request);
+        requestReader = new GetRequestReader(requestStream);
+    }
+
+    @Benchmark
+    public GetRequest read() throws IOException {
+        requestStream.reset();
+        return requestReader.read();
+    }
+
+    @Benchmark
+    public GetRequest parse() {
+        return new GetRequest(request, 0, request.length);
+    }
+}
@@ -0,0 +1,86 @@
+package com.danikula.videocache;
+
+import android.content.Context;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end-to-end throughput of {@link HttpProxyCacheServer} over loopback: player's request is served
+ * from cache ({@code readCached}) or from {@link LocalOrigin} while video is being cached ({@code readNotCached}),
+ * every request of {@code readNotCached} is made for new video.
+ * <p>
+ * Every operation reads the whole video of {@link #CONTENT_SIZE} bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HttpProxyCacheServerBenchmark {
+
+    private static final int CONTENT_SIZE = 8 * 1024 * 1024;
+    private static final long MAX_CACHE_SIZE = 256 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param({"blocking", "nio"})
+    public String engine;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private LocalOrigin origin;
+    private File cacheDirectory;
+    private HttpProxyCacheServer proxy;
+    private String cachedUrl;
+    private int requestedVideos;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        origin = new LocalOrigin(CONTENT_SIZE);
+        cacheDirectory = BenchmarkFiles.newTempDirectory("proxy-server-benchmark");
+        HttpProxyCacheServer.Builder builder = new HttpProxyCacheServer.Builder(new Context())
+                .cacheDirectory(cacheDirectory)
+                .maxCacheSize(MAX_CACHE_SIZE);
+        if ("nio".equals(engine)) {
+            builder.nioEngine(1);
+        }
+        proxy = builder.build();
+
+        cachedUrl = origin.url("cached.mp4");
+        LocalOrigin.read(proxy.getProxyUrl(cachedUrl, false), buffer);
+        // file is completed by source reader after response is sent
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!proxy.isCached(cachedUrl)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Video " + cachedUrl + " isn't cached");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        proxy.shutdown();
+        origin.stop();
+        BenchmarkFiles.delete(cacheDirectory);
+    }
+
+    @Benchmark
+    public long readCached() throws IOException {
+        return LocalOrigin.read(proxy.getProxyUrl(cachedUrl, false), buffer);
+    }
+
+    @Benchmark
+    public long readNotCached() throws IOException {
+        String url = origin.url("video" + requestedVideos++ + ".mp4");
+        return LocalOrigin.read(proxy.getProxyUrl(url, false), buffer);
+    }
+}
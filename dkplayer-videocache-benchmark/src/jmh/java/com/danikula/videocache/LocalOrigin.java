@@ -0,0 +1,118 @@
+package com.danikula.videocache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server standing in for origin of videos in benchmarks.
+ * <p>
+ * Every path is served with the same random content, so every new path is new video for cache.
+ * Server supports {@code HEAD} requests and single range requests ({@code bytes=from-} and {@code bytes=from-to}).
+ */
+public final class LocalOrigin {
+
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+
+    private final byte[] content;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public LocalOrigin(int contentLength) throws IOException {
+        this.content = new byte[contentLength];
+        new Random(42).nextBytes(content);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", new ContentHandler());
+        server.start();
+    }
+
+    public String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + path;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads whole response to passed url without system proxy.
+     *
+     * @param url    an url to be read.
+     * @param buffer a buffer to read response by.
+     * @return count of read bytes.
+     * @throws IOException if response can't be read.
+     */
+    public static long read(String url, byte[] buffer) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection(Proxy.NO_PROXY);
+        try (InputStream inputStream = connection.getInputStream()) {
+            long readBytes = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                readBytes += read;
+            }
+            return readBytes;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private final class ContentHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                long start = 0;
+                long end = content.length - 1;
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                if (range != null && range.startsWith("bytes=")) {
+                    String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                    start = Long.parseLong(bounds[0]);
+                    if (bounds.length > 1 && !bounds[1].isEmpty()) {
+                        end = Math.min(end, Long.parseLong(bounds[1]));
+                    }
+                }
+                long length = end - start + 1;
+                exchange.getResponseHeaders().add("Content-Type", "video/mp4");
+                exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+                exchange.getResponseHeaders().add("ETag", "\"" + content.length + "\"");
+                boolean head = "HEAD".equals(exchange.getRequestMethod());
+                if (range != null) {
+                    exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+                }
+                if (head) {
+                    exchange.getResponseHeaders().add("Content-Length", String.valueOf(length));
+                }
+                exchange.sendResponseHeaders(range != null ? 206 : 200, head ? -1 : length);
+                if (!head) {
+                    writeContent(exchange.getResponseBody(), (int) start, (int) length);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void writeContent(OutputStream out, int offset, int length) throws IOException {
+            int end = offset + length;
+            while (offset < end) {
+                int chunk = Math.min(WRITE_CHUNK_SIZE, end - offset);
+                out.write(content, offset, chunk);
+                offset += chunk;
+            }
+            out.close();
+        }
+    }
+}
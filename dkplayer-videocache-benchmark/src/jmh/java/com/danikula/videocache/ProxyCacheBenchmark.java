@@ -0,0 +1,163 @@
+package com.danikula.videocache;
+
+import com.danikula.videocache.file.FileCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ProxyCache#read(byte[], long, int)} by a few concurrent readers (e.g. player and preloader).
+ * <p>
+ * {@code readCached} reads completed cache by {@link #READERS} threads. {@code readWhileCaching} measures time
+ * to read the whole source by passed count of readers while source is being cached, every iteration caches new file.
+ */
+@State(Scope.Benchmark)
+public class ProxyCacheBenchmark {
+
+    private static final int SOURCE_SIZE = 16 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int READERS = 4;
+
+    private File directory;
+    private ProxyCache completedProxyCache;
+
+    @Setup
+    public void setUp() throws IOException, ProxyCacheException {
+        directory = BenchmarkFiles.newTempDirectory("proxy-cache-benchmark");
+        File completedFile = new File(directory, "completed.mp4");
+        byte[] sourceData = BenchmarkFiles.randomBytes(SOURCE_SIZE);
+        BenchmarkFiles.write(completedFile, sourceData);
+        completedProxyCache = new ProxyCache(new ByteArraySource(sourceData), new FileCache(completedFile));
+    }
+
+    @TearDown
+    public void tearDown() {
+        completedProxyCache.shutdown();
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    @Threads(READERS)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int readCached(ReaderState reader) throws ProxyCacheException {
+        int readBytes = completedProxyCache.read(reader.buffer, reader.offset, BUFFER_SIZE);
+        reader.offset += readBytes;
+        if (reader.offset >= SOURCE_SIZE) {
+            reader.offset = 0;
+        }
+        return readBytes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public long readWhileCaching(CachingState state) throws InterruptedException, ExecutionException {
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < state.readers; i++) {
+            results.add(state.readersExecutor.submit(new ReadAllCallable(state.proxyCache)));
+        }
+        long readBytes = 0;
+        for (Future<Long> result : results) {
+            readBytes += result.get();
+        }
+        return readBytes;
+    }
+
+    @State(Scope.Thread)
+    public static class ReaderState {
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private long offset;
+    }
+
+    @State(Scope.Benchmark)
+    public static class CachingState {
+
+        @Param({"1", "4"})
+        public int readers;
+
+        private byte[] sourceData;
+        private File directory;
+        private SourceReaderExecutor sourceReaderExecutor;
+        private ExecutorService readersExecutor;
+        private ProxyCache proxyCache;
+        private int cachedFiles;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            sourceData = BenchmarkFiles.randomBytes(SOURCE_SIZE);
+            directory = BenchmarkFiles.newTempDirectory("proxy-cache-benchmark");
+            sourceReaderExecutor = new SourceReaderExecutor(1);
+            readersExecutor = Executors.newFixedThreadPool(readers);
+        }
+
+        @Setup(Level.Iteration)
+        public void setUpIteration() throws ProxyCacheException {
+            FileCache cache = new FileCache(new File(directory, "cached" + cachedFiles++ + ".mp4"));
+            proxyCache = new ProxyCache(new ByteArraySource(sourceData), cache, sourceReaderExecutor, 1, 0);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration() {
+            proxyCache.shutdown();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            readersExecutor.shutdownNow();
+            sourceReaderExecutor.shutdown();
+            BenchmarkFiles.delete(directory);
+        }
+    }
+
+    private static final class ReadAllCallable implements Callable<Long> {
+
+        private final ProxyCache proxyCache;
+
+        ReadAllCallable(ProxyCache proxyCache) {
+            this.proxyCache = proxyCache;
+        }
+
+        @Override
+        public Long call() throws ProxyCacheException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long offset = 0;
+            int readBytes;
+            while ((readBytes = proxyCache.read(buffer, offset, BUFFER_SIZE)) != -1) {
+                offset += readBytes;
+            }
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.danikula.videocache;
+
+import com.danikula.videocache.file.FileCache;
+import com.danikula.videocache.sourcestorage.SourceInfoStorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing of response headers, it is done for every request of every player.
+ * <p>
+ * Source info is known, so headers are written without requests to source. Run it with gc profiler
+ * (enabled in build script) to see allocation rate: {@code gc.alloc.rate.norm} should be zero for single range.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResponseHeadersBenchmark {
+
+    private static final String URL = "http://video.example.com/vod/2021/05/video_1080p.mp4";
+    private static final long CONTENT_LENGTH = 52428800;
+
+    // whole content, single range and multipart response
+    @Param({"none", "single", "multi"})
+    public String range;
+
+    private File directory;
+    private HttpProxyCache proxyCache;
+    private List<ByteRange> ranges;
+    private boolean keepAlive;
+    private final HeadersWriter headers = new HeadersWriter();
+
+    @Setup
+    public void setUp() throws IOException, ProxyCacheException {
+        directory = BenchmarkFiles.newTempDirectory("response-headers-benchmark");
+        HttpUrlSource source = new HttpUrlSource(URL, new KnownSourceInfoStorage());
+        proxyCache = new HttpProxyCache(source, new FileCache(new File(directory, "video.mp4")));
+        String rangeHeader = "none".equals(range) ? "" : "single".equals(range) ? "Range: bytes=1048576-\r\n" : "Range: bytes=0-1023, 1048576-2097151\r\n";
+        byte[] request = ("GET /video.mp4 HTTP/1.1\r\n" + rangeHeader + "Connection: Keep-Alive\r\n\r\n").getBytes("UTF-8");
+        GetRequest getRequest = new GetRequest(request, 0, request.length);
+        ranges = proxyCache.resolveRanges(getRequest);
+        keepAlive = proxyCache.isKeepAlive(getRequest, ranges);
+    }
+
+    @TearDown
+    public void tearDown() {
+        proxyCache.shutdown();
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public HeadersWriter writeHeaders() throws IOException, ProxyCacheException {
+        proxyCache.writeResponseHeaders(ranges, keepAlive, headers);
+        return headers;
+    }
+
+    private static final class KnownSourceInfoStorage implements SourceInfoStorage {
+
+        private final SourceInfo sourceInfo = new SourceInfo(URL, CONTENT_LENGTH, "video/mp4");
+
+        @Override
+        public SourceInfo get(String url) {
+            return sourceInfo;
+        }
+
+        @Override
+        public void put(String url, SourceInfo sourceInfo) {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.danikula.videocache.file;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Replays trace of video requests against {@link EvictionPolicy} to compare hit ratios of policies
+ * without touching disk. Real trace can be collected from app (url and size of every played video) and replayed
+ * with {@link #simulate(EvictionPolicy, long, List)}, {@link #main(String[])} compares policies on synthetic traces.
+ */
+public final class DiskUsageSimulator {
+
+    private static final long MIN_VIDEO_SIZE = 1024 * 1024;
+    private static final long MAX_VIDEO_SIZE = 6 * 1024 * 1024;
+
+    private DiskUsageSimulator() {
+    }
+
+    /**
+     * Replays requests in order. Request is hit if its video is cached before request,
+     * video is cached after every request and cache is trimmed to max size.
+     *
+     * @param evictionPolicy a policy to be simulated.
+     * @param maxSize        max cache size in bytes.
+     * @param trace          requests to be replayed.
+     * @return hit ratios of replayed requests.
+     */
+    public static Result simulate(EvictionPolicy evictionPolicy, long maxSize, List<Request> trace) {
+        Policy policy = evictionPolicy.newPolicy(maxSize);
+        Result result = new Result();
+        for (Request request : trace) {
+            boolean hit = policy.contains(request.key);
+            result.requests++;
+            result.bytes += request.size;
+            if (hit) {
+                result.hits++;
+                result.hitBytes += request.size;
+            }
+            policy.access(request.key, request.size);
+            policy.evict();
+        }
+        return result;
+    }
+
+    /**
+     * Creates trace of videos requested with Zipf distribution: a few videos are requested very often,
+     * most of them are requested rarely.
+     *
+     * @param videosCount   a count of distinct videos.
+     * @param requestsCount a count of requests.
+     * @param exponent      an exponent of distribution, bigger exponent means more skewed popularity.
+     * @param seed          a seed of random generator, the same seed gives the same trace.
+     * @return a new trace.
+     */
+    public static List<Request> newZipfTrace(int videosCount, int requestsCount, double exponent, long seed) {
+        Random random = new Random(seed);
+        long[] sizes = newSizes(videosCount, random);
+        double[] distribution = new double[videosCount];
+        double sum = 0;
+        for (int i = 0; i < videosCount; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            distribution[i] = sum;
+        }
+        List<Request> trace = new ArrayList<>(requestsCount);
+        for (int i = 0; i < requestsCount; i++) {
+            int index = binarySearch(distribution, random.nextDouble() * sum);
+            trace.add(new Request("video-" + index, sizes[index]));
+        }
+        return trace;
+    }
+
+    /**
+     * Creates trace of feed: popular videos requested with Zipf distribution are interleaved with bursts of
+     * videos requested once, as if user scrolls through long feed.
+     *
+     * @param videosCount   a count of distinct popular videos.
+     * @param requestsCount a count of requests of popular videos.
+     * @param burstLength   a count of videos in one burst.
+     * @param burstsCount   a count of bursts.
+     * @param seed          a seed of random generator, the same seed gives the same trace.
+     * @return a new trace.
+     */
+    public static List<Request> newFeedTrace(int videosCount, int requestsCount, int burstLength, int burstsCount, long seed) {
+        List<Request> popular = newZipfTrace(videosCount, requestsCount, 0.9, seed);
+        Random random = new Random(seed + 1);
+        List<Integer> burstPositions = new ArrayList<>(burstsCount);
+        for (int i = 0; i < burstsCount; i++) {
+            burstPositions.add(random.nextInt(requestsCount));
+        }
+        Collections.sort(burstPositions);
+        List<Request> trace = new ArrayList<>(requestsCount + burstLength * burstsCount);
+        int nextBurst = 0;
+        int scannedCount = 0;
+        for (int i = 0; i < popular.size(); i++) {
+            while (nextBurst < burstPositions.size() && burstPositions.get(nextBurst) == i) {
+                for (int j = 0; j < burstLength; j++) {
+                    trace.add(new Request("scanned-" + scannedCount++, newSize(random)));
+                }
+                nextBurst++;
+            }
+            trace.add(popular.get(i));
+        }
+        return trace;
+    }
+
+    public static void main(String[] args) {
+        long maxSize = 512 * 1024 * 1024;
+        List<Request> zipf = newZipfTrace(2000, 100000, 0.9, 42);
+        List<Request> feed = newFeedTrace(2000, 100000, 300, 100, 42);
+        System.out.println(String.format(Locale.US, "Cache size %d MB", maxSize / 1024 / 1024));
+        System.out.println(String.format(Locale.US, "%-14s %-26s %-26s", "policy", "zipf: hits / byte hits", "feed: hits / byte hits"));
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            Result zipfResult = simulate(evictionPolicy, maxSize, zipf);
+            Result feedResult = simulate(evictionPolicy, maxSize, feed);
+            System.out.println(String.format(Locale.US, "%-14s %-26s %-26s", evictionPolicy, zipfResult, feedResult));
+        }
+    }
+
+    private static int binarySearch(double[] distribution, double value) {
+        int low = 0;
+        int high = distribution.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (distribution[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long[] newSizes(int count, Random random) {
+        long[] sizes = new long[count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = newSize(random);
+        }
+        return sizes;
+    }
+
+    private static long newSize(Random random) {
+        return MIN_VIDEO_SIZE + (long) (random.nextDouble() * (MAX_VIDEO_SIZE - MIN_VIDEO_SIZE));
+    }
+
+    /**
+     * Request of video.
+     */
+    public static final class Request {
+
+        private final String key;
+        private final long size;
+
+        /**
+         * @param key  an unique key of video, e.g. its url.
+         * @param size a size of video in bytes.
+         */
+        public Request(String key, long size) {
+            this.key = key;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Hit ratios of replayed trace.
+     */
+    public static final class Result {
+
+        private long requests;
+        private long hits;
+        private long bytes;
+        private long hitBytes;
+
+        /**
+         * @return a part of requests served from cache.
+         */
+        public double getHitRatio() {
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        /**
+         * @return a part of requested bytes served from cache.
+         */
+        public double getByteHitRatio() {
+            return bytes == 0 ? 0 : (double) hitBytes / bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.2f%% / %.2f%%", getHitRatio() * 100, getByteHitRatio() * 100);
+        }
+    }
+}
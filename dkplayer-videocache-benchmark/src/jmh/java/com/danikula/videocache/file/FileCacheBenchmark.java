@@ -0,0 +1,124 @@
+package com.danikula.videocache.file;
+
+import com.danikula.videocache.BenchmarkFiles;
+import com.danikula.videocache.ProxyCacheException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading of completed {@link FileCache} (from file and from {@link MemoryCache} keeping its head) and appending of data read from source to not completed one.
+ * <p>
+ * Appending is measured as time to cache the whole file of {@link #FILE_SIZE} by buffers of passed size
+ * (including checksums of resume record), every iteration appends to a new file.
+ */
+@State(Scope.Thread)
+public class FileCacheBenchmark {
+
+    private static final int FILE_SIZE = 32 * 1024 * 1024;
+    private static final int HEAD_SIZE = 2 * 1024 * 1024;
+
+    @Param({"8192", "65536"})
+    public int bufferSize;
+
+    private File directory;
+    private FileCache completedCache;
+    private FileCache memoryCachedCache;
+    private FileCache appendedCache;
+    private byte[] buffer;
+    private long readOffset;
+    private long headOffset;
+    private long memoryHeadOffset;
+    private int appendedFiles;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ProxyCacheException {
+        directory = BenchmarkFiles.newTempDirectory("file-cache-benchmark");
+        File completedFile = new File(directory, "completed.mp4");
+        BenchmarkFiles.write(completedFile, BenchmarkFiles.randomBytes(FILE_SIZE));
+        completedCache = new FileCache(completedFile);
+        memoryCachedCache = new FileCache(completedFile, new UnlimitedDiskUsage(), new MemoryCache(HEAD_SIZE, HEAD_SIZE));
+        buffer = BenchmarkFiles.randomBytes(bufferSize);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() throws ProxyCacheException {
+        appendedCache = new FileCache(new File(directory, "appended" + appendedFiles++ + ".mp4"));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() throws ProxyCacheException {
+        appendedCache.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith("appended")) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws ProxyCacheException {
+        completedCache.close();
+        memoryCachedCache.close();
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int read() throws ProxyCacheException {
+        int readBytes = completedCache.read(buffer, readOffset, bufferSize);
+        readOffset += readBytes;
+        if (readOffset >= FILE_SIZE) {
+            readOffset = 0;
+        }
+        return readBytes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int readHead() throws ProxyCacheException {
+        int readBytes = completedCache.read(buffer, headOffset, bufferSize);
+        headOffset = headOffset + readBytes >= HEAD_SIZE ? 0 : headOffset + readBytes;
+        return readBytes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int readHeadFromMemory() throws ProxyCacheException {
+        int readBytes = memoryCachedCache.read(buffer, memoryHeadOffset, bufferSize);
+        memoryHeadOffset = memoryHeadOffset + readBytes >= HEAD_SIZE ? 0 : memoryHeadOffset + readBytes;
+        return readBytes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public long append() throws ProxyCacheException {
+        for (int appended = 0; appended < FILE_SIZE; appended += bufferSize) {
+            appendedCache.append(buffer, bufferSize);
+        }
+        return appendedCache.available();
+    }
+}
@@ -0,0 +1,92 @@
+package com.danikula.videocache.file;
+
+import com.danikula.videocache.BenchmarkFiles;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link LruDiskUsage} on full cache directory with a lot of files.
+ * <p>
+ * Cache is touched in background, so every operation waits until touched file is handled: {@code trim} touches new file
+ * that makes cache exceed its limit, so the least recently used file is deleted, {@code touch} touches random cached file
+ * that only changes its order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LruDiskUsageBenchmark {
+
+    private static final int FILE_SIZE = 4 * 1024;
+
+    @Param({"1000", "10000"})
+    public int filesCount;
+
+    private final Semaphore handledTouches = new Semaphore(0);
+    private final Random random = new Random(42);
+    private File directory;
+    private DiskUsage diskUsage;
+    private byte[] data;
+    private int createdFiles;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        directory = BenchmarkFiles.newTempDirectory("lru-disk-usage-benchmark");
+        data = BenchmarkFiles.randomBytes(FILE_SIZE);
+        for (createdFiles = 0; createdFiles < filesCount; createdFiles++) {
+            BenchmarkFiles.write(newFile(createdFiles), data);
+        }
+        diskUsage = new TotalSizeLruDiskUsage((long) filesCount * FILE_SIZE) {
+
+            @Override
+            protected List<File> selectVictims() {
+                List<File> victims = super.selectVictims();
+                handledTouches.release();
+                return victims;
+            }
+        };
+        // the first touch indexes whole directory
+        touchAndWait(newFile(0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public void trim() throws IOException, InterruptedException {
+        File file = newFile(createdFiles++);
+        BenchmarkFiles.write(file, data);
+        touchAndWait(file);
+    }
+
+    @Benchmark
+    public void touch() throws IOException, InterruptedException {
+        // files are deleted from the oldest one, so the last filesCount created files are in cache
+        touchAndWait(newFile(createdFiles - 1 - random.nextInt(filesCount)));
+    }
+
+    private File newFile(int index) {
+        return new File(directory, "video" + index + ".mp4");
+    }
+
+    private void touchAndWait(File file) throws IOException, InterruptedException {
+        diskUsage.touch(file);
+        handledTouches.acquire();
+    }
+}
@@ -0,0 +1,35 @@
+package com.danikula.videocache.file;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures generating name of cache file, it is done for every request of player and every check of cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Md5FileNameGeneratorBenchmark {
+
+    private static final String[] URLS = {
+            "http://video.example.com/short.mp4",
+            "https://video.example.com/vod/2021/05/1080p/video_0123456789abcdef.mp4?token=abcdef0123456789&expires=1620000000",
+            "https://video.example.com/hls/2021/05/playlist.m3u8",
+            "https://cdn.example.com/v/ab/cd/ef/0123456789abcdef0123456789abcdef?auth_key=1620000000-0-0-0123456789abcdef0123456789abcdef",
+    };
+
+    private final FileNameGenerator generator = new Md5FileNameGenerator();
+    private int index;
+
+    @Benchmark
+    public String generate() {
+        index = (index + 1) % URLS.length;
+        return generator.generate(URLS[index]);
+    }
+}
@@ -0,0 +1,25 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * JVM stand-in of android {@code Context} for running videocache in benchmarks, cache directory is temp one.
+ */
+public class Context {
+
+    public File getCacheDir() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    public File getExternalCacheDir() {
+        return null;
+    }
+
+    public String getPackageName() {
+        return "com.danikula.videocache.benchmark";
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+}
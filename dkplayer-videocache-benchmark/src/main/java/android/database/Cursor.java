@@ -0,0 +1,20 @@
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * JVM stand-in of android {@code Cursor}.
+ */
+public interface Cursor extends Closeable {
+
+    boolean moveToFirst();
+
+    int getColumnIndexOrThrow(String columnName);
+
+    String getString(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,33 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * JVM stand-in of android {@code SQLiteDatabase} that stores nothing, so source info is fetched like on the first run.
+ */
+public final class SQLiteDatabase {
+
+    public static final int CONFLICT_REPLACE = 5;
+
+    public void execSQL(String sql) {
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy,
+                        String having, String orderBy) {
+        return null;
+    }
+
+    public long insertWithOnConflict(String table, String nullColumnHack, ContentValues values, int conflictAlgorithm) {
+        return -1;
+    }
+
+    public void beginTransaction() {
+    }
+
+    public void setTransactionSuccessful() {
+    }
+
+    public void endTransaction() {
+    }
+}
@@ -0,0 +1,29 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * JVM stand-in of android {@code SQLiteOpenHelper}, see {@link SQLiteDatabase}.
+ */
+public abstract class SQLiteOpenHelper {
+
+    private final SQLiteDatabase database = new SQLiteDatabase();
+
+    public SQLiteOpenHelper(Context context, String name, Object factory, int version) {
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public SQLiteDatabase getReadableDatabase() {
+        return database;
+    }
+
+    public SQLiteDatabase getWritableDatabase() {
+        return database;
+    }
+
+    public void close() {
+    }
+}
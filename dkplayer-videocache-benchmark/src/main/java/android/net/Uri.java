@@ -0,0 +1,24 @@
+package android.net;
+
+import java.io.File;
+
+/**
+ * JVM stand-in of android {@code Uri}.
+ */
+public final class Uri {
+
+    private final String uri;
+
+    private Uri(String uri) {
+        this.uri = uri;
+    }
+
+    public static Uri fromFile(File file) {
+        return new Uri(file.toURI().toString());
+    }
+
+    @Override
+    public String toString() {
+        return uri;
+    }
+}
@@ -0,0 +1,13 @@
+package android.os;
+
+/**
+ * JVM stand-in of android {@code Environment}, there is no external storage.
+ */
+public final class Environment {
+
+    public static final String MEDIA_MOUNTED = "mounted";
+
+    public static String getExternalStorageState() {
+        return "unknown";
+    }
+}
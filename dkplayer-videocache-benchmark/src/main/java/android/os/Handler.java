@@ -0,0 +1,31 @@
+package android.os;
+
+/**
+ * JVM stand-in of android {@code Handler} that handles messages by sending thread at once, because there is no main thread.
+ */
+public class Handler {
+
+    public Handler(Looper looper) {
+    }
+
+    public void handleMessage(Message msg) {
+    }
+
+    public final Message obtainMessage() {
+        return new Message();
+    }
+
+    public final boolean sendMessage(Message msg) {
+        handleMessage(msg);
+        return true;
+    }
+
+    public final boolean sendEmptyMessageDelayed(int what, long delayMillis) {
+        Message msg = obtainMessage();
+        msg.what = what;
+        return sendMessage(msg);
+    }
+
+    public final void removeMessages(int what) {
+    }
+}
@@ -0,0 +1,11 @@
+package android.os;
+
+/**
+ * JVM stand-in of android {@code Looper}, there is no main thread.
+ */
+public final class Looper {
+
+    public static Looper getMainLooper() {
+        return null;
+    }
+}
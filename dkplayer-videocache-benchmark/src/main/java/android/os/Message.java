@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * JVM stand-in of android {@code Message}.
+ */
+public final class Message {
+
+    public int what;
+    public int arg1;
+    public int arg2;
+    public Object obj;
+}
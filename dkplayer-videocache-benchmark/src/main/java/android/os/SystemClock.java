@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * JVM stand-in of android {@code SystemClock}.
+ */
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+}
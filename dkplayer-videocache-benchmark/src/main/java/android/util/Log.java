@@ -0,0 +1,28 @@
+package android.util;
+
+/**
+ * JVM stand-in of android {@code Log} that prints to standard error stream.
+ */
+public final class Log {
+
+    public static int d(String tag, String msg) {
+        return println("D", tag, msg);
+    }
+
+    public static int i(String tag, String msg) {
+        return println("I", tag, msg);
+    }
+
+    public static int w(String tag, String msg) {
+        return println("W", tag, msg);
+    }
+
+    public static int e(String tag, String msg) {
+        return println("E", tag, msg);
+    }
+
+    private static int println(String priority, String tag, String msg) {
+        System.err.println(priority + "/" + tag + ": " + msg);
+        return 0;
+    }
+}
@@ -0,0 +1,61 @@
+package android.webkit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * JVM stand-in of android {@code MimeTypeMap} that knows extensions of video files.
+ */
+public final class MimeTypeMap {
+
+    private static final MimeTypeMap INSTANCE = new MimeTypeMap();
+    private static final Pattern EXTENSION_PATTERN = Pattern.compile("[a-zA-Z_0-9.\\-()%]+");
+
+    private final Map<String, String> mimeTypes = new HashMap<>();
+
+    private MimeTypeMap() {
+        mimeTypes.put("mp4", "video/mp4");
+        mimeTypes.put("m4v", "video/x-m4v");
+        mimeTypes.put("webm", "video/webm");
+        mimeTypes.put("mkv", "video/x-matroska");
+        mimeTypes.put("3gp", "video/3gpp");
+        mimeTypes.put("ts", "video/mp2ts");
+        mimeTypes.put("m3u8", "application/x-mpegurl");
+    }
+
+    public static MimeTypeMap getSingleton() {
+        return INSTANCE;
+    }
+
+    /**
+     * Finds extension of file the same way as android does: query and fragment are dropped,
+     * extension is taken from the last path segment.
+     */
+    public static String getFileExtensionFromUrl(String url) {
+        if (url == null || url.isEmpty()) {
+            return "";
+        }
+        int fragment = url.lastIndexOf('#');
+        if (fragment > 0) {
+            url = url.substring(0, fragment);
+        }
+        int query = url.lastIndexOf('?');
+        if (query > 0) {
+            url = url.substring(0, query);
+        }
+        int filenamePos = url.lastIndexOf('/');
+        String filename = filenamePos >= 0 ? url.substring(filenamePos + 1) : url;
+        if (!filename.isEmpty() && EXTENSION_PATTERN.matcher(filename).matches()) {
+            int dotPos = filename.lastIndexOf('.');
+            if (dotPos >= 0) {
+                return filename.substring(dotPos + 1);
+            }
+        }
+        return "";
+    }
+
+    public String getMimeTypeFromExtension(String extension) {
+        return extension == null ? null : mimeTypes.get(extension.toLowerCase());
+    }
+}
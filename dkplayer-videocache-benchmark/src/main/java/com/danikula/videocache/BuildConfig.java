@@ -0,0 +1,9 @@
+package com.danikula.videocache;
+
+/**
+ * Stand-in of build config generated by android build for videocache library.
+ */
+public final class BuildConfig {
+
+    public static final String VERSION_NAME = "benchmark";
+}
@@ -0,0 +1,145 @@
+package com.danikula.videocache;
+
+import com.danikula.videocache.transport.RequestPriority;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Protects bandwidth of played (foreground) video from background reading of sources.
+ * <p>
+ * Background reading is preloading (see {@link PreloadScheduler}), prefetching of HLS segments and reading of any video
+ * other than priority one (see {@link HttpProxyCacheServer#setPriorityUrl(String)}), including ranges read bypassing cache.
+ * Source is foreground if it is priority one or belongs to it, e.g. segment of priority HLS playlist (see {@link #setParentKey(String, String)}).
+ * While any player is buffering, background reading is limited by shared token bucket, sources of buffering players
+ * are not limited. When all players have buffered enough, limit is doubled every {@link #RAMP_UP_STEP} ms
+ * until it is lifted, so background reading doesn't take the link back at once.
+ * <p>
+ * Requests of foreground source to origin servers are prioritized by {@link com.danikula.videocache.transport.PooledUpstreamTransport}.
+ */
+final class BandwidthGovernor implements RequestPriority {
+
+    private static final long RAMP_UP_STEP = 1000;
+    private static final int RAMP_UP_STEPS = 5;
+    private static final int MAX_ANCESTORS = 4;
+
+    private final long throttledBytesPerSecond;
+    private final BandwidthLimiter limiter;
+    private final Map<String, String> parentKeys = new ConcurrentHashMap<>();
+    // keys of sources whose players are buffering, modified under lock of governor
+    private final Set<String> bufferingKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile String foregroundKey;
+    private volatile boolean throttled;
+    private long bufferedTime;
+
+    /**
+     * @param throttledBytesPerSecond max rate of background reading while any player is buffering, must be positive.
+     */
+    BandwidthGovernor(long throttledBytesPerSecond) {
+        this.throttledBytesPerSecond = throttledBytesPerSecond;
+        this.limiter = new BandwidthLimiter(throttledBytesPerSecond);
+    }
+
+    /**
+     * Sets key of foreground source, see {@link ProxyCache#getSourceKey()}.
+     *
+     * @param key a key of played source or {@code null} if it is unknown, in this case only preloading is background.
+     */
+    void setForegroundKey(String key) {
+        this.foregroundKey = key;
+    }
+
+    /**
+     * Links source to source it belongs to, e.g. HLS segment to its media playlist and media playlist to master one,
+     * so source is foreground while its parent is.
+     *
+     * @param key       a key of source.
+     * @param parentKey a key of parent source or {@code null} to forget parent.
+     */
+    void setParentKey(String key, String parentKey) {
+        if (parentKey != null) {
+            parentKeys.put(key, parentKey);
+        } else {
+            parentKeys.remove(key);
+        }
+    }
+
+    boolean isForeground(String key) {
+        String foregroundKey = this.foregroundKey;
+        if (foregroundKey == null) {
+            return false;
+        }
+        for (int i = 0; key != null && i <= MAX_ANCESTORS; i++) {
+            if (foregroundKey.equals(key)) {
+                return true;
+            }
+            key = parentKeys.get(key);
+        }
+        return false;
+    }
+
+    boolean isBackground(String key) {
+        return foregroundKey != null && !isForeground(key) && !isBuffering(key);
+    }
+
+    @Override
+    public boolean isPriority(String url) {
+        return isForeground(url);
+    }
+
+    /**
+     * Tracks buffering of source's player, background reading is limited while any player is buffering.
+     *
+     * @param key       a key of played source, see {@link ProxyCache#getSourceKey()}.
+     * @param buffering {@code true} if player waits for data, {@code false} if it has buffered enough or is stopped.
+     */
+    synchronized void setBuffering(String key, boolean buffering) {
+        if (buffering) {
+            bufferingKeys.add(key);
+            limiter.setBytesPerSecond(throttledBytesPerSecond);
+            throttled = true;
+        } else if (bufferingKeys.remove(key) && bufferingKeys.isEmpty()) {
+            bufferedTime = System.currentTimeMillis();
+        }
+    }
+
+    private boolean isBuffering(String key) {
+        if (bufferingKeys.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; key != null && i <= MAX_ANCESTORS; i++) {
+            if (bufferingKeys.contains(key)) {
+                return true;
+            }
+            key = parentKeys.get(key);
+        }
+        return false;
+    }
+
+    /**
+     * Takes passed count of bytes read in background, blocks while background reading is limited and its bucket is in debt.
+     *
+     * @param bytes a count of read bytes.
+     * @throws InterruptedException if thread is interrupted while waiting.
+     */
+    void acquireBackground(int bytes) throws InterruptedException {
+        if (throttled && updateRate()) {
+            limiter.acquire(bytes);
+        }
+    }
+
+    private synchronized boolean updateRate() {
+        if (!bufferingKeys.isEmpty()) {
+            return true;
+        }
+        long step = (System.currentTimeMillis() - bufferedTime) / RAMP_UP_STEP;
+        if (step >= RAMP_UP_STEPS) {
+            throttled = false;
+            return false;
+        }
+        limiter.setBytesPerSecond(throttledBytesPerSecond << (step + 1));
+        return true;
+    }
+}
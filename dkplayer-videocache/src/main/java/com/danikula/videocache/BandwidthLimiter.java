@@ -0,0 +1,79 @@
+package com.danikula.videocache;
+
+/**
+ * Token bucket limiting rate of reading sources, shared by all readers it is set to.
+ * <p>
+ * Bucket holds at most one second of bytes. Reader that takes more bytes than available gets into debt
+ * and sleeps until debt is paid off, so bursts are smoothed but the average rate never exceeds the limit.
+ */
+final class BandwidthLimiter {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private long bytesPerSecond;
+    private long available;
+    private long lastRefillTime;
+
+    /**
+     * @param bytesPerSecond max rate in bytes per second, must be positive.
+     */
+    BandwidthLimiter(long bytesPerSecond) {
+        Preconditions.checkArgument(bytesPerSecond > 0, "Bandwidth must be positive number!");
+        this.bytesPerSecond = bytesPerSecond;
+        this.available = bytesPerSecond;
+        this.lastRefillTime = System.nanoTime();
+    }
+
+    /**
+     * Takes passed count of bytes from bucket, blocks while bucket is in debt.
+     *
+     * @param bytes a count of read bytes.
+     * @throws InterruptedException if thread is interrupted while waiting.
+     */
+    void acquire(int bytes) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            available -= bytes;
+            waitNanos = available < 0 ? -available * NANOS_PER_SECOND / bytesPerSecond : 0;
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+        }
+    }
+
+    synchronized long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Changes rate of bucket, bytes taken in advance at previous rate are paid off at new one.
+     *
+     * @param bytesPerSecond max rate in bytes per second, must be positive.
+     */
+    synchronized void setBytesPerSecond(long bytesPerSecond) {
+        Preconditions.checkArgument(bytesPerSecond > 0, "Bandwidth must be positive number!");
+        if (bytesPerSecond != this.bytesPerSecond) {
+            refill();
+            this.bytesPerSecond = bytesPerSecond;
+            available = Math.min(available, bytesPerSecond);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRefillTime;
+        if (elapsed >= (bytesPerSecond - available) * NANOS_PER_SECOND / bytesPerSecond) {
+            // bucket is full once debt is paid off and it is refilled, don't multiply long idle time to avoid overflow
+            available = bytesPerSecond;
+            lastRefillTime = now;
+            return;
+        }
+        long refilled = elapsed * bytesPerSecond / NANOS_PER_SECOND;
+        if (refilled > 0) {
+            available = Math.min(bytesPerSecond, available + refilled);
+            // keep remainder of nanoseconds not converted to whole byte
+            lastRefillTime = available == bytesPerSecond ? now : lastRefillTime + refilled * NANOS_PER_SECOND / bytesPerSecond;
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package com.danikula.videocache;
 
-import java.io.ByteArrayInputStream;
 import java.util.Arrays;
 
 /**
  * Simple memory based {@link Cache} implementation.
+ * <p>
+ * Array grows by doubling its capacity, so appending data is not slowed down by copying all cached data.
+ * For bounded memory tier in front of file cache see {@link com.danikula.videocache.file.MemoryCache}.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
 public class ByteArrayCache implements Cache {
 
+    private static final int MIN_CAPACITY = 8 * 1024;
+
     private volatile byte[] data;
+    private volatile int length;
     private volatile boolean completed;
 
     public ByteArrayCache() {
@@ -19,32 +24,43 @@ public class ByteArrayCache implements Cache {
 
     public ByteArrayCache(byte[] data) {
         this.data = Preconditions.checkNotNull(data);
+        this.length = data.length;
     }
 
     @Override
     public int read(byte[] buffer, long offset, int length) throws ProxyCacheException {
-        if (offset >= data.length) {
+        int available = this.length; // read length before data: data is never shorter than length read before
+        if (offset >= available) {
             return -1;
         }
-        if (offset > Integer.MAX_VALUE) {
-            throw new IllegalArgumentException("Too long offset for memory cache " + offset);
-        }
-        return new ByteArrayInputStream(data).read(buffer, (int) offset, length);
+        int count = (int) Math.min(length, available - offset);
+        System.arraycopy(data, (int) offset, buffer, 0, count);
+        return count;
     }
 
     @Override
     public long available() throws ProxyCacheException {
-        return data.length;
+        return length;
     }
 
     @Override
     public void append(byte[] newData, int length) throws ProxyCacheException {
-        Preconditions.checkNotNull(data);
+        Preconditions.checkNotNull(newData);
         Preconditions.checkArgument(length >= 0 && length <= newData.length);
 
-        byte[] appendedData = Arrays.copyOf(data, data.length + length);
-        System.arraycopy(newData, 0, appendedData, data.length, length);
+        int oldLength = this.length;
+        if (length > Integer.MAX_VALUE - oldLength) {
+            throw new ProxyCacheException("Too much data for memory cache: " + oldLength + " + " + length);
+        }
+        int newLength = oldLength + length;
+        byte[] appendedData = data;
+        if (newLength > appendedData.length) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(newLength, Math.max(MIN_CAPACITY, appendedData.length * 2L)));
+            appendedData = Arrays.copyOf(appendedData, capacity);
+        }
+        System.arraycopy(newData, 0, appendedData, oldLength, length);
         data = appendedData;
+        this.length = newLength;
     }
 
     @Override
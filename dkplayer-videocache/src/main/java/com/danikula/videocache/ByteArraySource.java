@@ -28,8 +28,14 @@ public class ByteArraySource implements Source {
 
     @Override
     public void open(long offset) throws ProxyCacheException {
-        arrayInputStream = new ByteArrayInputStream(data);
-        arrayInputStream.skip(offset);
+        open(offset, -1);
+    }
+
+    @Override
+    public void open(long offset, long length) throws ProxyCacheException {
+        int start = (int) Math.min(offset, data.length);
+        int available = data.length - start;
+        arrayInputStream = new ByteArrayInputStream(data, start, length < 0 ? available : (int) Math.min(length, available));
     }
 
     @Override
@@ -0,0 +1,28 @@
+package com.danikula.videocache;
+
+/**
+ * Range of content bytes, e.g. range to be sent to client resolved from {@code Range} header against content length.
+ */
+public final class ByteRange {
+
+    public final long start;
+    public final long end; // exclusive, -1 if content length is unknown and range is open
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public boolean isBounded() {
+        return end >= 0;
+    }
+
+    public long length() {
+        return isBounded() ? end - start : -1;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ")";
+    }
+}
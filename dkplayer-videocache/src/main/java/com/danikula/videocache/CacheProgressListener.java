@@ -0,0 +1,22 @@
+package com.danikula.videocache;
+
+import java.io.File;
+
+/**
+ * Listener for cache availability in bytes.
+ * <p>
+ * Listener registered by {@link HttpProxyCacheServer#registerCacheListener(CacheListener, String)} that implements
+ * this interface is notified about count of cached bytes in addition to percents. Progress is coalesced, so listener
+ * is notified by main thread with latest progress at most once per interval set by
+ * {@link HttpProxyCacheServer.Builder#cacheProgressInterval(long)}.
+ */
+public interface CacheProgressListener extends CacheListener {
+
+    /**
+     * @param cacheFile      a file of cache.
+     * @param url            an url of source.
+     * @param bytesAvailable a count of cached bytes.
+     * @param totalBytes     a length of source or {@code -1} if it is unknown.
+     */
+    void onCacheProgress(File cacheFile, String url, long bytesAvailable, long totalBytes);
+}
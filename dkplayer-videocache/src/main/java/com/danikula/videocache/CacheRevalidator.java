@@ -0,0 +1,104 @@
+package com.danikula.videocache;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.danikula.videocache.Preconditions.checkAllNotNull;
+
+/**
+ * Revalidates completely cached files in background.
+ * <p>
+ * Cached file is stale if its source was requested or revalidated more than max age ago. Stale file is still
+ * served from cache, but its source is requested conditionally (by ETag or Last-Modified) to check if it is changed.
+ * Not changed file becomes fresh again, changed one is deleted if it isn't read by clients now,
+ * so the next request caches new version. Otherwise file stays stale and is revalidated on next request.
+ */
+class CacheRevalidator {
+
+    private final HttpProxyCacheServer server;
+    private final Config config;
+    private final ExecutorService revalidationThread = Executors.newSingleThreadExecutor();
+    private final Set<String> revalidatedUrls = new HashSet<>();
+
+    CacheRevalidator(HttpProxyCacheServer server, Config config) {
+        checkAllNotNull(server, config);
+        this.server = server;
+        this.config = config;
+    }
+
+    /**
+     * Starts revalidation of completely cached file for url if it is stale and isn't revalidated now.
+     *
+     * @param url an url of completely cached file.
+     * @return {@code true} if cached file is stale.
+     */
+    boolean revalidateIfStale(String url) {
+        SourceInfo sourceInfo = config.sourceInfoStorage.get(url);
+        boolean stale = sourceInfo == null || System.currentTimeMillis() - sourceInfo.validatedTime > config.revalidationMaxAge;
+        if (stale) {
+            synchronized (revalidatedUrls) {
+                if (revalidatedUrls.add(url)) {
+                    try {
+                        revalidationThread.submit(new RevalidateRunnable(url));
+                    } catch (RejectedExecutionException e) {
+                        revalidatedUrls.remove(url);
+                    }
+                }
+            }
+        }
+        return stale;
+    }
+
+    void shutdown() {
+        revalidationThread.shutdownNow();
+    }
+
+    private void revalidate(String url) {
+        File cacheFile = config.generateCacheFile(url);
+        if (!cacheFile.exists()) {
+            return;
+        }
+        if (config.sourceInfoStorage.get(url) == null) {
+            // info is lost (e.g. storage is cleared), cached file is considered as version of the same length
+            SourceInfo sourceInfo = new SourceInfo(url, cacheFile.length(), ProxyCacheUtils.getSupposablyMime(url));
+            config.sourceInfoStorage.put(url, sourceInfo);
+        }
+        HttpUrlSource source = new HttpUrlSource(url, config.sourceInfoStorage, config.headerInjector, config.upstreamTransport);
+        try {
+            if (source.revalidate()) {
+                Logger.debug("Cached " + url + " is not changed");
+            } else if (server.invalidate(url)) {
+                config.sourceInfoStorage.put(url, source.getSourceInfo());
+                Logger.info("Cached " + url + " is changed and deleted");
+            } else {
+                Logger.info("Cached " + url + " is changed but it is read now, it will be revalidated later");
+            }
+        } catch (ProxyCacheException e) {
+            Logger.warn("Error revalidating " + url);
+        }
+    }
+
+    private final class RevalidateRunnable implements Runnable {
+
+        private final String url;
+
+        public RevalidateRunnable(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void run() {
+            try {
+                revalidate(url);
+            } finally {
+                synchronized (revalidatedUrls) {
+                    revalidatedUrls.remove(url);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.danikula.videocache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Registry of readers waiting for cache data, keyed by end offset of data they wait for.
+ * <p>
+ * Writer signals only readers whose requested data became available instead of waking every reader on every append.
+ * Reader should check cache <b>after</b> registration, so data written between checking and waiting is never missed.
+ */
+final class CacheWaiters {
+
+    private final TreeMap<Long, List<Waiter>> waiters = new TreeMap<>();
+
+    /**
+     * Registers reader that will block current thread by {@link Waiter#await(long)}.
+     *
+     * @param end end offset (exclusive) of data reader waits for.
+     * @return registered waiter.
+     */
+    Waiter register(long end) {
+        return register(end, null);
+    }
+
+    /**
+     * Registers non-blocking reader, observer is notified once when data is available.
+     *
+     * @param end      end offset (exclusive) of data reader waits for.
+     * @param observer an observer to be notified from writer thread.
+     * @return registered waiter.
+     */
+    synchronized Waiter register(long end, ProxyCache.SourceDataObserver observer) {
+        Waiter waiter = new Waiter(end, observer);
+        List<Waiter> endWaiters = waiters.get(end);
+        if (endWaiters == null) {
+            endWaiters = new ArrayList<>(1);
+            waiters.put(end, endWaiters);
+        }
+        endWaiters.add(waiter);
+        return waiter;
+    }
+
+    synchronized void unregister(Waiter waiter) {
+        List<Waiter> endWaiters = waiters.get(waiter.end);
+        if (endWaiters != null && endWaiters.remove(waiter) && endWaiters.isEmpty()) {
+            waiters.remove(waiter.end);
+        }
+    }
+
+    synchronized void unregister(ProxyCache.SourceDataObserver observer) {
+        Iterator<List<Waiter>> iterator = waiters.values().iterator();
+        while (iterator.hasNext()) {
+            List<Waiter> endWaiters = iterator.next();
+            for (int i = endWaiters.size() - 1; i >= 0; i--) {
+                if (endWaiters.get(i).observer == observer) {
+                    endWaiters.remove(i);
+                }
+            }
+            if (endWaiters.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Signals readers waiting for data ending in range {@code (from, to]}, i.e. readers that may be satisfied
+     * by data written at {@code from} and contiguous with cached data up to {@code to}.
+     */
+    void signal(long from, long to) {
+        List<Waiter> signalled;
+        synchronized (this) {
+            if (waiters.isEmpty() || to <= from) {
+                return;
+            }
+            signalled = removeAll(waiters.subMap(from, false, to, true));
+        }
+        signal(signalled);
+    }
+
+    /**
+     * Signals all readers, e.g. when cache is completed or source reading is finished or failed.
+     */
+    void signalAll() {
+        List<Waiter> signalled;
+        synchronized (this) {
+            if (waiters.isEmpty()) {
+                return;
+            }
+            signalled = removeAll(waiters);
+        }
+        signal(signalled);
+    }
+
+    private List<Waiter> removeAll(Map<Long, List<Waiter>> range) {
+        List<Waiter> removed = new ArrayList<>();
+        for (List<Waiter> endWaiters : range.values()) {
+            removed.addAll(endWaiters);
+        }
+        range.clear();
+        return removed;
+    }
+
+    private void signal(List<Waiter> signalled) {
+        for (Waiter waiter : signalled) {
+            waiter.signal();
+        }
+    }
+
+    static final class Waiter {
+
+        private final long end;
+        private final ProxyCache.SourceDataObserver observer;
+        private boolean signalled;
+
+        private Waiter(long end, ProxyCache.SourceDataObserver observer) {
+            this.end = end;
+            this.observer = observer;
+        }
+
+        private void signal() {
+            synchronized (this) {
+                signalled = true;
+                notifyAll();
+            }
+            if (observer != null) {
+                observer.onSourceDataAvailable();
+            }
+        }
+
+        /**
+         * Blocks current thread until waiter is signalled or timeout expires.
+         *
+         * @param timeout max time to wait in milliseconds.
+         * @throws InterruptedException if current thread is interrupted.
+         */
+        synchronized void await(long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+            while (!signalled && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+    }
+}
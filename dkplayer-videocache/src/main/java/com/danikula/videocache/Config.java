@@ -2,8 +2,11 @@ package com.danikula.videocache;
 
 import com.danikula.videocache.file.DiskUsage;
 import com.danikula.videocache.file.FileNameGenerator;
+import com.danikula.videocache.file.MemoryCache;
 import com.danikula.videocache.headers.HeaderInjector;
+import com.danikula.videocache.key.CacheKeyGenerator;
 import com.danikula.videocache.sourcestorage.SourceInfoStorage;
+import com.danikula.videocache.transport.UpstreamTransport;
 
 import java.io.File;
 
@@ -16,20 +19,60 @@ class Config {
 
     public final File cacheRoot;
     public final FileNameGenerator fileNameGenerator;
+    public final CacheKeyGenerator cacheKeyGenerator;
     public final DiskUsage diskUsage;
     public final SourceInfoStorage sourceInfoStorage;
     public final HeaderInjector headerInjector;
+    public final int ioThreadsCount;
+    public final boolean sparseCache;
+    public final int readConnections;
+    public final long readChunkSize;
+    public final SourceReaderExecutor sourceReaderExecutor;
+    public final UpstreamTransport upstreamTransport;
+    public final long revalidationMaxAge;
+    public final boolean hlsMode;
+    public final int hlsPrefetchSegments;
+    public final int maxConcurrentPreloads;
+    public final BandwidthLimiter preloadBandwidthLimiter;
+    public final BandwidthGovernor bandwidthGovernor;
+    public final ProxyMetrics metrics;
+    public final long cacheProgressInterval;
+    public final MemoryCache memoryCache;
 
-    Config(File cacheRoot, FileNameGenerator fileNameGenerator, DiskUsage diskUsage, SourceInfoStorage sourceInfoStorage, HeaderInjector headerInjector) {
+    Config(File cacheRoot, FileNameGenerator fileNameGenerator, CacheKeyGenerator cacheKeyGenerator, DiskUsage diskUsage, SourceInfoStorage sourceInfoStorage, HeaderInjector headerInjector,
+           int ioThreadsCount, boolean sparseCache, int readConnections, long readChunkSize, SourceReaderExecutor sourceReaderExecutor,
+           UpstreamTransport upstreamTransport, long revalidationMaxAge, boolean hlsMode, int hlsPrefetchSegments,
+           int maxConcurrentPreloads, BandwidthLimiter preloadBandwidthLimiter, BandwidthGovernor bandwidthGovernor, ProxyMetrics metrics,
+           long cacheProgressInterval, MemoryCache memoryCache) {
         this.cacheRoot = cacheRoot;
         this.fileNameGenerator = fileNameGenerator;
+        this.cacheKeyGenerator = cacheKeyGenerator;
         this.diskUsage = diskUsage;
         this.sourceInfoStorage = sourceInfoStorage;
         this.headerInjector = headerInjector;
+        this.ioThreadsCount = ioThreadsCount;
+        this.sparseCache = sparseCache;
+        this.readConnections = readConnections;
+        this.readChunkSize = readChunkSize;
+        this.sourceReaderExecutor = sourceReaderExecutor;
+        this.upstreamTransport = upstreamTransport;
+        this.revalidationMaxAge = revalidationMaxAge;
+        this.hlsMode = hlsMode;
+        this.hlsPrefetchSegments = hlsPrefetchSegments;
+        this.maxConcurrentPreloads = maxConcurrentPreloads;
+        this.preloadBandwidthLimiter = preloadBandwidthLimiter;
+        this.bandwidthGovernor = bandwidthGovernor;
+        this.metrics = metrics;
+        this.cacheProgressInterval = cacheProgressInterval;
+        this.memoryCache = memoryCache;
+    }
+
+    String generateCacheKey(String url) {
+        return cacheKeyGenerator.generate(url);
     }
 
     File generateCacheFile(String url) {
-        String name = fileNameGenerator.generate(url);
+        String name = fileNameGenerator.generate(generateCacheKey(url));
         return new File(cacheRoot, name);
     }
 
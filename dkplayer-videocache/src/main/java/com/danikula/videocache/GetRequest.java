@@ -1,70 +1,289 @@
 package com.danikula.videocache;
 
-import android.text.TextUtils;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static com.danikula.videocache.Preconditions.checkNotNull;
 
 /**
- * Model for Http GET request.
+ * Model for Http GET or HEAD request.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
 class GetRequest {
 
-    private static final Pattern RANGE_HEADER_PATTERN = Pattern.compile("[R,r]ange:[ ]?bytes=(\\d*)-");
-    private static final Pattern URL_PATTERN = Pattern.compile("GET /(.*) HTTP");
+    private static final int MAX_RANGES = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] GET = ascii("GET /");
+    private static final byte[] HEAD = ascii("HEAD /");
+    private static final byte[] HTTP_VERSION = ascii(" HTTP/");
+    private static final byte[] RANGE = ascii("range");
+    private static final byte[] CONNECTION = ascii("connection");
+    private static final byte[] BYTES_UNIT = ascii("bytes=");
+    private static final byte[] KEEP_ALIVE = ascii("keep-alive");
+    private static final byte[] CLOSE = ascii("close");
 
     public final String uri;
-    public final long rangeOffset;
     public final boolean partial;
+    public final boolean head;
+    public final boolean keepAlive;
+    private final long[] rangeSpecs; // pairs of first and last positions, -1 if position is omitted
+
+    /**
+     * Parses request headers without decoding them to string, only uri is decoded.
+     *
+     * @param data   an array containing request headers, lines may be ended by {@code \r\n} or {@code \n}.
+     * @param offset an offset of request in array.
+     * @param length a length of request headers.
+     * @throws IllegalArgumentException if request line is not valid GET or HEAD request.
+     */
+    public GetRequest(byte[] data, int offset, int length) {
+        checkNotNull(data);
+        int end = offset + length;
+        int lineStart = offset;
+        while (lineStart < end && (data[lineStart] == '\r' || data[lineStart] == '\n')) {
+            lineStart++; // skip empty lines between requests
+        }
+        int lineEnd = lineEnd(data, lineStart, end);
+        int requestLineEnd = lineEnd;
+        while (requestLineEnd > lineStart && isSpace(data[requestLineEnd - 1])) {
+            requestLineEnd--;
+        }
+        // request line is "GET /<uri> HTTP/<d.d>"
+        this.head = startsWith(data, lineStart, requestLineEnd, HEAD);
+        int uriStart = lineStart + (head ? HEAD.length : GET.length);
+        int versionStart = requestLineEnd - HTTP_VERSION.length - 3;
+        boolean valid = (head || startsWith(data, lineStart, requestLineEnd, GET)) && versionStart >= uriStart
+                && startsWith(data, versionStart, requestLineEnd, HTTP_VERSION) && isVersion(data, versionStart + HTTP_VERSION.length);
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid request `" + new String(data, offset, length, UTF_8) + "`: url not found!");
+        }
+        this.uri = new String(data, uriStart, versionStart - uriStart, UTF_8);
+        boolean http10 = data[requestLineEnd - 3] == '1' && data[requestLineEnd - 1] == '0';
+
+        long[] rangeSpecs = null;
+        boolean rangeFound = false;
+        int connection = -1; // start of Connection header value
+        int connectionEnd = -1;
+        for (lineStart = nextLine(data, lineEnd, end); lineStart < end; lineStart = nextLine(data, lineEnd, end)) {
+            lineEnd = lineEnd(data, lineStart, end);
+            int colon = indexOf(data, lineStart, lineEnd, ':');
+            if (colon == -1) {
+                continue;
+            }
+            int valueStart = skipSpaces(data, colon + 1, lineEnd);
+            if (!rangeFound && equalsIgnoreCase(data, lineStart, colon, RANGE)) {
+                rangeFound = true;
+                if (startsWithIgnoreCase(data, valueStart, lineEnd, BYTES_UNIT)) {
+                    rangeSpecs = parseRangeSpecs(data, valueStart + BYTES_UNIT.length, lineEnd);
+                }
+            } else if (connection == -1 && equalsIgnoreCase(data, lineStart, colon, CONNECTION)) {
+                connection = valueStart;
+                connectionEnd = lineEnd;
+            }
+        }
+        this.rangeSpecs = rangeSpecs;
+        this.partial = rangeSpecs != null;
+        // HTTP/1.1 connections are persistent by default, HTTP/1.0 ones only if client asks
+        if (http10) {
+            this.keepAlive = connection != -1 && containsIgnoreCase(data, connection, connectionEnd, KEEP_ALIVE);
+        } else {
+            this.keepAlive = connection == -1 || !containsIgnoreCase(data, connection, connectionEnd, CLOSE);
+        }
+    }
 
-    public GetRequest(String request) {
-        checkNotNull(request);
-        long offset = findRangeOffset(request);
-        this.rangeOffset = Math.max(0, offset);
-        this.partial = offset >= 0;
-        this.uri = findUri(request);
+    /**
+     * Resolves requested ranges against content length as RFC 7233 describes.
+     *
+     * @param contentLength a length of content or {@code -1} if it is unknown.
+     * @return ranges to be sent in requested order, {@code null} if Range header should be ignored and whole content
+     * should be sent or empty list if none of requested ranges is satisfiable.
+     */
+    List<ByteRange> resolveRanges(long contentLength) {
+        if (!partial || rangeSpecs.length / 2 > MAX_RANGES) {
+            return null;
+        }
+        if (contentLength < 0) {
+            // without length only single range with known start can be served
+            boolean single = rangeSpecs.length == 2 && rangeSpecs[0] >= 0;
+            long end = rangeSpecs[1] >= 0 ? rangeSpecs[1] + 1 : -1;
+            return single ? Collections.singletonList(new ByteRange(rangeSpecs[0], end)) : null;
+        }
+        List<ByteRange> ranges = new ArrayList<>(rangeSpecs.length / 2);
+        for (int i = 0; i < rangeSpecs.length; i += 2) {
+            long first = rangeSpecs[i];
+            long last = rangeSpecs[i + 1];
+            if (first < 0) { // suffix range: last N bytes
+                if (last > 0 && contentLength > 0) {
+                    ranges.add(new ByteRange(Math.max(0, contentLength - last), contentLength));
+                }
+            } else if (first < contentLength) {
+                long end = last >= 0 ? Math.min(last + 1, contentLength) : contentLength;
+                ranges.add(new ByteRange(first, end));
+            }
+        }
+        return ranges;
     }
 
-    public static GetRequest read(InputStream inputStream) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-        StringBuilder stringRequest = new StringBuilder();
-        String line;
-        while (!TextUtils.isEmpty(line = reader.readLine())) { // until new line (headers ending)
-            stringRequest.append(line).append('\n');
+    /**
+     * Parses comma separated specs of Range header, e.g. {@code 0-499, -500}.
+     *
+     * @return pairs of positions or {@code null} if header is syntactically invalid and should be ignored.
+     */
+    private static long[] parseRangeSpecs(byte[] data, int start, int end) {
+        int specsCount = 1;
+        for (int i = start; i < end; i++) {
+            if (data[i] == ',') {
+                specsCount++;
+            }
         }
-        return new GetRequest(stringRequest.toString());
+        long[] rangeSpecs = new long[specsCount * 2];
+        int specStart = start;
+        for (int i = 0; i < rangeSpecs.length; i += 2) {
+            int specEnd = indexOf(data, specStart, end, ',');
+            specEnd = specEnd == -1 ? end : specEnd;
+            int from = skipSpaces(data, specStart, specEnd);
+            int to = specEnd;
+            while (to > from && isSpace(data[to - 1])) {
+                to--;
+            }
+            int dash = indexOf(data, from, to, '-');
+            if (dash == -1) {
+                return null;
+            }
+            long first = parsePosition(data, from, dash);
+            long last = parsePosition(data, dash + 1, to);
+            boolean invalid = first == -2 || last == -2 || first == -1 && last == -1 || first >= 0 && last >= 0 && first > last;
+            if (invalid) {
+                // syntactically invalid Range header is ignored
+                return null;
+            }
+            rangeSpecs[i] = first;
+            rangeSpecs[i + 1] = last;
+            specStart = specEnd + 1;
+        }
+        return rangeSpecs;
+    }
+
+    /**
+     * @return parsed decimal number, {@code -1} if it is omitted or {@code -2} if it is not a number or too large.
+     */
+    private static long parsePosition(byte[] data, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        long position = 0;
+        for (int i = start; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9 || position > (Long.MAX_VALUE - digit) / 10) {
+                return -2;
+            }
+            position = position * 10 + digit;
+        }
+        return position;
+    }
+
+    private static boolean isVersion(byte[] data, int offset) {
+        return isDigit(data[offset]) && data[offset + 1] == '.' && isDigit(data[offset + 2]);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
     }
 
-    private long findRangeOffset(String request) {
-        Matcher matcher = RANGE_HEADER_PATTERN.matcher(request);
-        if (matcher.find()) {
-            String rangeValue = matcher.group(1);
-            return Long.parseLong(rangeValue);
+    private static int skipSpaces(byte[] data, int offset, int end) {
+        while (offset < end && isSpace(data[offset])) {
+            offset++;
+        }
+        return offset;
+    }
+
+    /**
+     * @return an end of line without line terminator.
+     */
+    private static int lineEnd(byte[] data, int offset, int end) {
+        int newLine = indexOf(data, offset, end, '\n');
+        newLine = newLine == -1 ? end : newLine;
+        return newLine > offset && data[newLine - 1] == '\r' ? newLine - 1 : newLine;
+    }
+
+    private static int nextLine(byte[] data, int lineEnd, int end) {
+        int newLine = indexOf(data, lineEnd, end, '\n');
+        return newLine == -1 ? end : newLine + 1;
+    }
+
+    private static int indexOf(byte[] data, int offset, int end, char c) {
+        for (int i = offset; i < end; i++) {
+            if (data[i] == c) {
+                return i;
+            }
         }
         return -1;
     }
 
-    private String findUri(String request) {
-        Matcher matcher = URL_PATTERN.matcher(request);
-        if (matcher.find()) {
-            return matcher.group(1);
+    private static boolean startsWith(byte[] data, int offset, int end, byte[] prefix) {
+        if (end - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithIgnoreCase(byte[] data, int offset, int end, byte[] lowerCasePrefix) {
+        if (end - offset < lowerCasePrefix.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCasePrefix.length; i++) {
+            if (toLowerCase(data[offset + i]) != lowerCasePrefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(byte[] data, int offset, int end, byte[] lowerCaseValue) {
+        return end - offset == lowerCaseValue.length && startsWithIgnoreCase(data, offset, end, lowerCaseValue);
+    }
+
+    private static boolean containsIgnoreCase(byte[] data, int offset, int end, byte[] lowerCaseValue) {
+        for (int i = offset; i <= end - lowerCaseValue.length; i++) {
+            if (startsWithIgnoreCase(data, i, end, lowerCaseValue)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static byte[] ascii(String value) {
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
         }
-        throw new IllegalArgumentException("Invalid request `" + request + "`: url not found!");
+        return bytes;
     }
 
     @Override
     public String toString() {
         return "GetRequest{" +
-                "rangeOffset=" + rangeOffset +
+                "ranges=" + (partial ? Arrays.toString(rangeSpecs) : "none") +
                 ", partial=" + partial +
+                ", head=" + head +
+                ", keepAlive=" + keepAlive +
                 ", uri='" + uri + '\'' +
                 '}';
     }
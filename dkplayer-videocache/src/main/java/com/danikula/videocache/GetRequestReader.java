@@ -0,0 +1,70 @@
+package com.danikula.videocache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * Reads requests sent by the same connection one by one. Request headers are collected into buffer reused
+ * for all requests of connection and parsed by {@link GetRequest#GetRequest(byte[], int, int)} without decoding them to string.
+ */
+final class GetRequestReader {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int MAX_REQUEST_SIZE = 64 * 1024;
+
+    private final InputStream inputStream;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    /**
+     * @param inputStream a stream to read requests from, should be buffered because it is read byte by byte.
+     */
+    GetRequestReader(InputStream inputStream) {
+        this.inputStream = checkNotNull(inputStream);
+    }
+
+    /**
+     * Reads request headers from stream. Stream is read exactly up to headers end,
+     * so next request sent by the same connection (pipelining) stays in stream.
+     *
+     * @return a request or {@code null} if stream is closed before next request.
+     * @throws IOException if error occur while reading stream, stream is closed in the middle of request or request is too large.
+     */
+    GetRequest read() throws IOException {
+        int length = 0;
+        int lineStart = 0;
+        int readByte;
+        while ((readByte = inputStream.read()) != -1) {
+            if (length == buffer.length) {
+                if (length == MAX_REQUEST_SIZE) {
+                    throw new IOException("Request headers are too large");
+                }
+                buffer = Arrays.copyOf(buffer, Math.min(length * 2, MAX_REQUEST_SIZE));
+            }
+            buffer[length++] = (byte) readByte;
+            if (readByte != '\n') {
+                continue;
+            }
+            int lineLength = length - 1 - lineStart;
+            lineLength = lineLength > 0 && buffer[length - 2] == '\r' ? lineLength - 1 : lineLength;
+            if (lineLength == 0) { // until new line (headers ending)
+                if (lineStart == 0) {
+                    length = 0; // skip empty lines between requests
+                    continue;
+                }
+                try {
+                    return new GetRequest(buffer, 0, lineStart);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Error parsing request", e);
+                }
+            }
+            lineStart = length;
+        }
+        if (length > 0) {
+            throw new IOException("Connection is closed in the middle of request");
+        }
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.danikula.videocache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reusable buffer for response headers. Headers are ascii, so chars and numbers are written directly as bytes
+ * without formatting and encoding to UTF-8. Buffer is sized for usual response and grows only for unusual one.
+ */
+final class HeadersWriter {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private int size;
+
+    /**
+     * Clears buffer to write next headers.
+     *
+     * @return this writer.
+     */
+    HeadersWriter reset() {
+        size = 0;
+        return this;
+    }
+
+    /**
+     * Appends ascii text, any non ascii char is replaced by {@code ?}.
+     *
+     * @param text a text to append.
+     * @return this writer.
+     */
+    HeadersWriter append(String text) {
+        int length = text.length();
+        ensureCapacity(size + length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            buffer[size++] = (byte) (c < 0x80 ? c : '?');
+        }
+        return this;
+    }
+
+    HeadersWriter append(char c) {
+        ensureCapacity(size + 1);
+        buffer[size++] = (byte) (c < 0x80 ? c : '?');
+        return this;
+    }
+
+    /**
+     * Appends decimal representation of number.
+     *
+     * @param number a number to append.
+     * @return this writer.
+     */
+    HeadersWriter append(long number) {
+        if (number == Long.MIN_VALUE) {
+            return append(String.valueOf(number));
+        }
+        if (number < 0) {
+            append('-');
+            number = -number;
+        }
+        int digits = 1;
+        for (long rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(size + digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    /**
+     * Returns written headers as buffer to be written to channel. Returned buffer is valid until writer is reset.
+     *
+     * @return a buffer wrapping writer's array, positioned at start of headers.
+     */
+    ByteBuffer toByteBuffer() {
+        byteBuffer.clear();
+        byteBuffer.limit(size);
+        return byteBuffer;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+            byteBuffer = ByteBuffer.wrap(buffer);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.danikula.videocache;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of distribution of durations in milliseconds, see {@link TrafficMetrics}.
+ * <p>
+ * Durations are counted by buckets growing by powers of two: bucket {@code 0} counts durations shorter than 1 ms,
+ * bucket {@code i} counts durations in range {@code [2^(i-1), 2^i)} ms, the last bucket counts all longer durations.
+ * So percentiles are approximate, they are upper bounds of buckets.
+ */
+public final class Histogram {
+
+    static final int BUCKETS_COUNT = 18;
+
+    /**
+     * Count of recorded durations.
+     */
+    public final long count;
+    /**
+     * Sum of recorded durations in milliseconds.
+     */
+    public final long sum;
+    /**
+     * The longest recorded duration in milliseconds, {@code 0} if nothing is recorded.
+     */
+    public final long max;
+    private final long[] buckets;
+
+    Histogram(long count, long sum, long max, long[] buckets) {
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+        this.buckets = buckets;
+    }
+
+    static int bucketOf(long millis) {
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, BUCKETS_COUNT - 1);
+    }
+
+    /**
+     * @return mean duration in milliseconds, {@code 0} if nothing is recorded.
+     */
+    public long getMean() {
+        return count > 0 ? sum / count : 0;
+    }
+
+    /**
+     * Returns approximate percentile of recorded durations.
+     *
+     * @param percentile a percentile in range {@code (0, 100]}, e.g. {@code 95}.
+     * @return upper bound in milliseconds of bucket containing percentile, but not greater than {@link #max}.
+     */
+    public long getPercentile(double percentile) {
+        Preconditions.checkArgument(percentile > 0 && percentile <= 100, "Percentile must be in range (0, 100]");
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long counted = 0;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            counted += buckets[bucket];
+            if (counted >= rank && counted > 0) {
+                return Math.min(getBucketUpperBound(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return count of buckets, the same for all histograms.
+     */
+    public int getBucketsCount() {
+        return buckets.length;
+    }
+
+    /**
+     * @param bucket an index of bucket.
+     * @return count of durations recorded in bucket.
+     */
+    public long getBucketCount(int bucket) {
+        return buckets[bucket];
+    }
+
+    /**
+     * @param bucket an index of bucket.
+     * @return upper bound of bucket in milliseconds (exclusive), {@link Long#MAX_VALUE} for the last bucket.
+     */
+    public long getBucketUpperBound(int bucket) {
+        return bucket < buckets.length - 1 ? 1L << bucket : Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{" +
+                "count=" + count +
+                ", mean=" + getMean() +
+                ", max=" + max +
+                ", buckets=" + Arrays.toString(buckets) +
+                '}';
+    }
+}
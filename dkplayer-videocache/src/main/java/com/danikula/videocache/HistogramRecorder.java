@@ -0,0 +1,39 @@
+package com.danikula.videocache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe recorder of durations, see {@link Histogram}. Recording doesn't lock and doesn't allocate.
+ */
+final class HistogramRecorder {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(Histogram.BUCKETS_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long millis) {
+        millis = Math.max(0, millis);
+        buckets.incrementAndGet(Histogram.bucketOf(millis));
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+        long currentMax;
+        while (millis > (currentMax = max.get()) && !max.compareAndSet(currentMax, millis)) {
+            // retry, max is updated concurrently
+        }
+    }
+
+    /**
+     * Returns snapshot of recorded durations. Durations recorded concurrently may be counted partially.
+     *
+     * @return a snapshot of histogram.
+     */
+    Histogram snapshot() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Histogram(count.get(), sum.get(), max.get(), counts);
+    }
+}
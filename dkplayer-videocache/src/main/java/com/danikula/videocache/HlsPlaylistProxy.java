@@ -0,0 +1,337 @@
+package com.danikula.videocache;
+
+import com.danikula.videocache.hls.HlsPlaylist;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.danikula.videocache.Preconditions.checkAllNotNull;
+import static java.net.HttpURLConnection.HTTP_OK;
+
+/**
+ * Serves HLS playlists for {@link HttpProxyCacheServer} in HLS mode.
+ * <p>
+ * Uris of served playlist are rewritten to urls of proxy, so segments, keys and nested playlists are requested
+ * through proxy too and every segment is cached as separate file. Master and ended (VOD) media playlists
+ * are cached with absolute uris and served from cache later, so cached VOD stream is replayed without network.
+ * Live playlists are loaded from source on every request.
+ * <p>
+ * When segment is requested, next segments of its playlist are prefetched one by one in background.
+ * Prefetching of segment is skipped if player has moved (e.g. seeked) too far from it. Segments are prefetched
+ * in background, see {@link BandwidthGovernor}. Served playlist is parent of its segments and nested playlists,
+ * so they are foreground while playlist is played.
+ */
+final class HlsPlaylistProxy {
+
+    private static final int TIMEOUT = 10000;
+    private static final int MAX_PLAYLIST_SIZE = 4 * 1024 * 1024;
+    private static final int PREFETCH_BUFFER_SIZE = 64 * 1024;
+    private static final String MIME = "application/vnd.apple.mpegurl";
+
+    private final HttpProxyCacheServer server;
+    private final Config config;
+    private final int prefetchSegments;
+    private final ExecutorService prefetchThread = Executors.newSingleThreadExecutor();
+    private final Set<String> nestedPlaylistUrls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Object segmentsLock = new Object();
+    // media playlists and their segments known by last served playlists, guarded by segmentsLock
+    private final Map<String, SegmentList> segmentLists = new HashMap<>();
+    private final Map<String, Segment> segments = new HashMap<>();
+    private final Set<String> prefetchedUrls = new HashSet<>();
+
+    HlsPlaylistProxy(HttpProxyCacheServer server, Config config) {
+        checkAllNotNull(server, config);
+        this.server = server;
+        this.config = config;
+        this.prefetchSegments = config.hlsPrefetchSegments;
+    }
+
+    /**
+     * Checks if url is url of playlist: it has m3u8 extension or is listed by served master playlist.
+     *
+     * @param url an original url.
+     * @return {@code true} if url should be served as playlist.
+     */
+    boolean isPlaylist(String url) {
+        return HlsPlaylist.isPlaylistUrl(url) || nestedPlaylistUrls.contains(url);
+    }
+
+    /**
+     * Writes playlist with uris rewritten to urls of proxy to socket.
+     *
+     * @param request a request to response to.
+     * @param url     an original url of playlist.
+     * @param socket  a socket to write response to.
+     * @return {@code true} if connection is persistent and may be used for next request.
+     */
+    boolean processRequest(GetRequest request, String url, Socket socket) throws IOException, ProxyCacheException {
+        HlsPlaylist playlist = getPlaylist(url);
+        byte[] body = playlist.toText(new HlsPlaylist.UriMapper() {
+            @Override
+            public String map(String uri) {
+                return server.appendToProxyUrl(uri);
+            }
+        }).getBytes("UTF-8");
+        String headers = new StringBuilder()
+                .append("HTTP/1.1 200 OK\n")
+                .append("Content-Length: ").append(body.length).append('\n')
+                .append("Content-Type: ").append(MIME).append('\n')
+                .append("Cache-Control: no-cache\n")
+                .append(request.keepAlive ? "Connection: keep-alive\n" : "Connection: close\n")
+                .append("\n") // headers end
+                .toString();
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        out.write(headers.getBytes("UTF-8"));
+        if (!request.head) {
+            out.write(body);
+        }
+        out.flush();
+        return request.keepAlive;
+    }
+
+    /**
+     * Starts prefetching of segments following requested one, if it is segment of served media playlist.
+     *
+     * @param url an original url of requested file.
+     */
+    void onSegmentRequest(String url) {
+        if (prefetchSegments == 0) {
+            return;
+        }
+        synchronized (segmentsLock) {
+            Segment segment = segments.get(url);
+            if (segment == null) {
+                return;
+            }
+            SegmentList list = segment.list;
+            list.playhead = segment.index;
+            int end = Math.min(segment.index + prefetchSegments, list.urls.size() - 1);
+            for (int i = segment.index + 1; i <= end; i++) {
+                String segmentUrl = list.urls.get(i);
+                if (!server.isCached(segmentUrl) && prefetchedUrls.add(segmentUrl)) {
+                    try {
+                        prefetchThread.submit(new PrefetchRunnable(list, i));
+                    } catch (RejectedExecutionException e) {
+                        prefetchedUrls.remove(segmentUrl);
+                    }
+                }
+            }
+        }
+    }
+
+    void shutdown() {
+        prefetchThread.shutdownNow();
+    }
+
+    private HlsPlaylist getPlaylist(String url) throws ProxyCacheException {
+        File cacheFile = server.getCacheFile(url);
+        HlsPlaylist playlist = cacheFile.exists() ? readCachedPlaylist(url, cacheFile) : null;
+        if (playlist == null) {
+            playlist = loadPlaylist(url);
+            if (playlist.isMaster() || playlist.isEnded()) {
+                cachePlaylist(url, playlist);
+            }
+        } else {
+            Logger.debug("Playlist " + url + " is served from cache");
+        }
+        touchFileSafely(cacheFile);
+        onPlaylistServed(url, playlist);
+        return playlist;
+    }
+
+    private HlsPlaylist readCachedPlaylist(String url, File cacheFile) {
+        try {
+            byte[] data = readFully(new FileInputStream(cacheFile), cacheFile.length());
+            return HlsPlaylist.parse(new String(data, "UTF-8"), url);
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.warn("Cached playlist " + cacheFile + " is broken, load it again");
+            return null;
+        }
+    }
+
+    private HlsPlaylist loadPlaylist(String url) throws ProxyCacheException {
+        HttpURLConnection connection = null;
+        boolean reusable = false;
+        try {
+            connection = config.upstreamTransport.execute(url, null, config.headerInjector, TIMEOUT);
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HTTP_OK) {
+                throw new ProxyCacheException("Error loading playlist " + url + ": response code is " + responseCode);
+            }
+            byte[] data = readFully(connection.getInputStream(), MAX_PLAYLIST_SIZE);
+            reusable = true;
+            // relative uris are resolved against final url of redirected request
+            return HlsPlaylist.parse(new String(data, "UTF-8"), connection.getURL().toString());
+        } catch (IOException e) {
+            throw new ProxyCacheException("Error loading playlist " + url, e);
+        } catch (IllegalArgumentException e) {
+            throw new ProxyCacheException("Error parsing playlist " + url, e);
+        } finally {
+            if (connection != null) {
+                config.upstreamTransport.release(connection, reusable);
+            }
+        }
+    }
+
+    private void cachePlaylist(String url, HlsPlaylist playlist) {
+        File cacheFile = server.getCacheFile(url);
+        File tempFile = server.getTempCacheFile(url);
+        FileOutputStream out = null;
+        try {
+            File directory = cacheFile.getParentFile();
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Error creating cache directory " + directory);
+            }
+            out = new FileOutputStream(tempFile);
+            out.write(playlist.toText().getBytes("UTF-8"));
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(cacheFile)) {
+                throw new IOException("Error renaming " + tempFile + " to " + cacheFile);
+            }
+        } catch (IOException e) {
+            Logger.warn("Error caching playlist " + url);
+            ProxyCacheUtils.close(out);
+            tempFile.delete();
+        }
+    }
+
+    private void onPlaylistServed(String url, HlsPlaylist playlist) {
+        nestedPlaylistUrls.addAll(playlist.getPlaylistUrls());
+        if (playlist.isMaster()) {
+            for (String playlistUrl : playlist.getPlaylistUrls()) {
+                config.bandwidthGovernor.setParentKey(playlistUrl, url);
+            }
+            return;
+        }
+        SegmentList list = new SegmentList(playlist.getSegmentUrls());
+        synchronized (segmentsLock) {
+            // live playlist is served again and again with new segments, old ones are forgotten
+            SegmentList oldList = segmentLists.put(url, list);
+            if (oldList != null) {
+                for (String segmentUrl : oldList.urls) {
+                    Segment segment = segments.get(segmentUrl);
+                    if (segment != null && segment.list == oldList) {
+                        segments.remove(segmentUrl);
+                        config.bandwidthGovernor.setParentKey(segmentUrl, null);
+                    }
+                }
+            }
+            for (int i = 0; i < list.urls.size(); i++) {
+                segments.put(list.urls.get(i), new Segment(list, i));
+                config.bandwidthGovernor.setParentKey(list.urls.get(i), url);
+            }
+        }
+    }
+
+    private void prefetch(SegmentList list, int index) {
+        String url = list.urls.get(index);
+        int playhead = list.playhead;
+        if (index <= playhead || index > playhead + prefetchSegments || server.isCached(url)) {
+            return;
+        }
+        try {
+            HttpProxyCacheServerClients clients = server.getClients(url);
+            HttpProxyCache proxyCache = clients.acquirePreloadProxyCache(null);
+            try {
+                byte[] buffer = new byte[PREFETCH_BUFFER_SIZE];
+                long offset = 0;
+                int readBytes;
+                while ((readBytes = proxyCache.read(buffer, offset, buffer.length)) != -1) {
+                    offset += readBytes;
+                }
+                Logger.debug("Segment " + url + " is prefetched");
+            } finally {
+                clients.releasePreloadProxyCache();
+            }
+        } catch (ProxyCacheException e) {
+            Logger.warn("Error prefetching segment " + url);
+        }
+    }
+
+    private byte[] readFully(InputStream input, long maxLength) throws IOException {
+        try {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int readBytes;
+            while ((readBytes = input.read(buffer)) != -1) {
+                data.write(buffer, 0, readBytes);
+                if (data.size() > maxLength) {
+                    throw new IOException("Playlist is too large: more than " + maxLength + " bytes");
+                }
+            }
+            return data.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private void touchFileSafely(File file) {
+        try {
+            config.diskUsage.touch(file);
+        } catch (IOException e) {
+            Logger.error("Error touching file " + file);
+        }
+    }
+
+    private static final class SegmentList {
+
+        private final List<String> urls;
+        private volatile int playhead = -1;
+
+        SegmentList(List<String> urls) {
+            this.urls = urls;
+        }
+    }
+
+    private static final class Segment {
+
+        private final SegmentList list;
+        private final int index;
+
+        Segment(SegmentList list, int index) {
+            this.list = list;
+            this.index = index;
+        }
+    }
+
+    private final class PrefetchRunnable implements Runnable {
+
+        private final SegmentList list;
+        private final int index;
+
+        public PrefetchRunnable(SegmentList list, int index) {
+            this.list = list;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            try {
+                prefetch(list, index);
+            } finally {
+                synchronized (segmentsLock) {
+                    prefetchedUrls.remove(list.urls.get(index));
+                }
+            }
+        }
+    }
+}
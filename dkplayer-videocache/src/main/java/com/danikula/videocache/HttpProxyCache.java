@@ -8,7 +8,10 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.Locale;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 
 import static com.danikula.videocache.ProxyCacheUtils.DEFAULT_BUFFER_SIZE;
 
@@ -20,78 +23,310 @@ import static com.danikula.videocache.ProxyCacheUtils.DEFAULT_BUFFER_SIZE;
 class HttpProxyCache extends ProxyCache {
 
     private static final float NO_CACHE_BARRIER = .2f;
+    private static final String MULTIPART_BOUNDARY = "VIDEOCACHE_BYTERANGES";
+    private static final String MULTIPART_END = "\r\n--" + MULTIPART_BOUNDARY + "--\r\n";
+    // blocking engine writes headers by thread processing request, so every thread reuses own buffer
+    private static final ThreadLocal<HeadersWriter> HEADERS_WRITERS = new ThreadLocal<HeadersWriter>() {
+        @Override
+        protected HeadersWriter initialValue() {
+            return new HeadersWriter();
+        }
+    };
 
     private final HttpUrlSource source;
     private final FileCache cache;
+    private final String url;
     private CacheListener listener;
+    private volatile long reportedBytes = -1;
 
     public HttpProxyCache(HttpUrlSource source, FileCache cache) {
-        super(source, cache);
+        this(source, cache, new SourceReaderExecutor(1), 1, 0);
+    }
+
+    public HttpProxyCache(HttpUrlSource source, FileCache cache, SourceReaderExecutor readerExecutor, int readConnections, long readChunkSize) {
+        super(source, cache, readerExecutor, readConnections, readChunkSize);
         this.cache = cache;
         this.source = source;
+        this.url = source.getUrl();
     }
 
     public void registerCacheListener(CacheListener cacheListener) {
         this.listener = cacheListener;
     }
 
-    public void processRequest(GetRequest request, Socket socket) throws IOException, ProxyCacheException {
+    /**
+     * Writes response for request to socket.
+     *
+     * @param request a request to response to.
+     * @param socket  a socket to write response to.
+     * @return {@code true} if connection is persistent and may be used for next request.
+     */
+    public boolean processRequest(GetRequest request, Socket socket) throws IOException, ProxyCacheException {
         OutputStream out = new BufferedOutputStream(socket.getOutputStream());
-        String responseHeaders = newResponseHeaders(request);
-        out.write(responseHeaders.getBytes("UTF-8"));
+        List<ByteRange> ranges = resolveRanges(request);
+        boolean keepAlive = isKeepAlive(request, ranges);
+        HeadersWriter headers = HEADERS_WRITERS.get();
+        writeResponseHeaders(ranges, keepAlive, headers);
+        headers.writeTo(out);
+        boolean satisfiable = ranges == null || !ranges.isEmpty();
+        if (request.head || !satisfiable) {
+            out.flush();
+            return keepAlive;
+        }
 
-        long offset = request.rangeOffset;
-        if (isUseCache(request)) {
-            responseWithCache(out, offset);
-        } else {
-            responseWithoutCache(out, offset);
+        ResponseCounter counter = new ResponseCounter();
+        try {
+            if (ranges == null) {
+                responseRange(out, socket.getChannel(), getWholeContent(), counter);
+            } else if (ranges.size() == 1) {
+                responseRange(out, socket.getChannel(), ranges.get(0), counter);
+            } else {
+                responseMultipart(out, socket.getChannel(), ranges, headers, counter);
+            }
+            out.flush();
+        } finally {
+            onResponseSent(counter);
         }
+        return keepAlive;
+    }
+
+    /**
+     * Records metrics of finished or aborted response.
+     *
+     * @param counter a counter of sent bytes.
+     */
+    void onResponseSent(ResponseCounter counter) {
+        TrafficRecorder recorder = getTrafficRecorder();
+        if (recorder != null) {
+            counter.record(recorder);
+        }
+    }
+
+    /**
+     * Returns end of data cached contiguously from passed offset, so bytes sent before it are counted as served from cache.
+     *
+     * @param offset an offset of data to be sent.
+     * @return an end of cached data (exclusive), equal to offset if data at offset isn't cached.
+     */
+    long cachedEnd(long offset) throws ProxyCacheException {
+        return cache.isCompleted() ? Long.MAX_VALUE : offset + cachedLength(offset);
+    }
+
+    /**
+     * Resolves ranges requested by client against length of content.
+     *
+     * @param request a request to resolve ranges for.
+     * @return ranges to be sent, {@code null} if whole content should be sent or empty list if requested ranges are not satisfiable.
+     */
+    List<ByteRange> resolveRanges(GetRequest request) throws ProxyCacheException {
+        return request.resolveRanges(getContentLength());
+    }
+
+    ByteRange getWholeContent() throws ProxyCacheException {
+        long length = getContentLength();
+        return new ByteRange(0, length >= 0 ? length : -1);
+    }
+
+    /**
+     * Checks whether connection may be reused after response. Response body must be delimited by Content-Length for that.
+     *
+     * @param request a request to check.
+     * @param ranges  ranges to be sent, see {@link #resolveRanges(GetRequest)}.
+     * @return {@code true} if client asks for persistent connection and length of response is known.
+     */
+    boolean isKeepAlive(GetRequest request, List<ByteRange> ranges) throws ProxyCacheException {
+        return request.keepAlive && getResponseLength(ranges) >= 0;
     }
 
-    private boolean isUseCache(GetRequest request) throws ProxyCacheException {
+    boolean isUseCache(long offset) throws ProxyCacheException {
         long sourceLength = source.length();
         boolean sourceLengthKnown = sourceLength > 0;
         long cacheAvailable = cache.available();
+        // sparse cache stores data from any offset, so seeking just fills a hole in cache
+        boolean sparseCache = cache instanceof SparseCache;
         // do not use cache for partial requests which too far from available cache. It seems user seek video.
-        return !sourceLengthKnown || !request.partial || request.rangeOffset <= cacheAvailable + sourceLength * NO_CACHE_BARRIER;
+        return sparseCache || !sourceLengthKnown || offset <= cacheAvailable + sourceLength * NO_CACHE_BARRIER;
     }
 
-    private String newResponseHeaders(GetRequest request) throws IOException, ProxyCacheException {
+    /**
+     * Writes response headers to passed writer, previous content of writer is cleared.
+     *
+     * @param ranges    ranges to be sent, see {@link #resolveRanges(GetRequest)}.
+     * @param keepAlive whether connection is kept after response, see {@link #isKeepAlive(GetRequest, List)}.
+     * @param headers   a writer to write headers to.
+     */
+    void writeResponseHeaders(List<ByteRange> ranges, boolean keepAlive, HeadersWriter headers) throws IOException, ProxyCacheException {
         String mime = source.getMime();
         boolean mimeKnown = !TextUtils.isEmpty(mime);
-        long length = cache.isCompleted() ? cache.available() : source.length();
-        boolean lengthKnown = length >= 0;
-        long contentLength = request.partial ? length - request.rangeOffset : length;
-        boolean addRange = lengthKnown && request.partial;
-        return new StringBuilder()
-                .append(request.partial ? "HTTP/1.1 206 PARTIAL CONTENT\n" : "HTTP/1.1 200 OK\n")
-                .append("Accept-Ranges: bytes\n")
-                .append(lengthKnown ? format("Content-Length: %d\n", contentLength) : "")
-                .append(addRange ? format("Content-Range: bytes %d-%d/%d\n", request.rangeOffset, length - 1, length) : "")
-                .append(mimeKnown ? format("Content-Type: %s\n", mime) : "")
-                .append("\n") // headers end
-                .toString();
-    }
-
-    private void responseWithCache(OutputStream out, long offset) throws ProxyCacheException, IOException {
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        int readBytes;
-        while ((readBytes = read(buffer, offset, buffer.length)) != -1) {
-            out.write(buffer, 0, readBytes);
-            offset += readBytes;
-        }
-        out.flush();
-    }
-
-    private void responseWithoutCache(OutputStream out, long offset) throws ProxyCacheException, IOException {
-        HttpUrlSource newSourceNoCache = new HttpUrlSource(this.source);
+        long length = getContentLength();
+        long responseLength = getResponseLength(ranges);
+        boolean satisfiable = ranges == null || !ranges.isEmpty();
+        boolean multipart = ranges != null && ranges.size() > 1;
+        ByteRange singleRange = ranges != null && ranges.size() == 1 ? ranges.get(0) : null;
+        boolean addRange = singleRange != null && singleRange.isBounded();
+        headers.reset()
+                .append(ranges == null ? "HTTP/1.1 200 OK\n" : satisfiable ? "HTTP/1.1 206 PARTIAL CONTENT\n" : "HTTP/1.1 416 RANGE NOT SATISFIABLE\n")
+                .append("Accept-Ranges: bytes\n");
+        if (responseLength >= 0) {
+            headers.append("Content-Length: ").append(responseLength).append('\n');
+        }
+        if (addRange) {
+            appendContentRange(headers.append("Content-Range: "), singleRange, length).append('\n');
+        }
+        if (!satisfiable) {
+            headers.append("Content-Range: bytes */").append(length).append('\n');
+        }
+        if (multipart) {
+            headers.append("Content-Type: multipart/byteranges; boundary=").append(MULTIPART_BOUNDARY).append('\n');
+        } else if (mimeKnown) {
+            headers.append("Content-Type: ").append(mime).append('\n');
+        }
+        headers.append(keepAlive ? "Connection: keep-alive\n" : "Connection: close\n")
+                .append('\n'); // headers end
+    }
+
+    private long getContentLength() throws ProxyCacheException {
+        return cache.isCompleted() ? cache.available() : source.length();
+    }
+
+    private long getResponseLength(List<ByteRange> ranges) throws ProxyCacheException {
+        if (ranges == null) {
+            return getContentLength();
+        }
+        if (ranges.isEmpty()) {
+            return 0;
+        }
+        if (ranges.size() == 1) {
+            return ranges.get(0).length();
+        }
+        // multipart response is rare, so its length is measured by writing part headers to temporary writer
+        HeadersWriter partHeaders = new HeadersWriter();
+        long length = MULTIPART_END.length();
+        for (ByteRange range : ranges) {
+            length += writePartHeaders(range, partHeaders).size() + range.length();
+        }
+        return length;
+    }
+
+    private HeadersWriter writePartHeaders(ByteRange range, HeadersWriter headers) throws ProxyCacheException {
+        String mime = source.getMime();
+        headers.reset().append("\r\n--").append(MULTIPART_BOUNDARY).append("\r\n");
+        if (!TextUtils.isEmpty(mime)) {
+            headers.append("Content-Type: ").append(mime).append("\r\n");
+        }
+        appendContentRange(headers.append("Content-Range: "), range, getContentLength()).append("\r\n");
+        return headers.append("\r\n");
+    }
+
+    private HeadersWriter appendContentRange(HeadersWriter headers, ByteRange range, long contentLength) {
+        headers.append("bytes ").append(range.start).append('-').append(range.end - 1).append('/');
+        return contentLength >= 0 ? headers.append(contentLength) : headers.append('*');
+    }
+
+    private void responseMultipart(OutputStream out, SocketChannel channel, List<ByteRange> ranges, HeadersWriter headers, ResponseCounter counter) throws ProxyCacheException, IOException {
+        for (ByteRange range : ranges) {
+            writePartHeaders(range, headers).writeTo(out);
+            responseRange(out, channel, range, counter);
+        }
+        headers.reset().append(MULTIPART_END).writeTo(out);
+    }
+
+    private void responseRange(OutputStream out, SocketChannel channel, ByteRange range, ResponseCounter counter) throws ProxyCacheException, IOException {
+        if (isUseCache(range.start)) {
+            counter.startRange(cachedEnd(range.start));
+            responseWithCache(out, channel, range.start, range.end, counter);
+        } else {
+            counter.startRange(range.start);
+            responseWithoutCache(out, range.start, range.end, counter);
+        }
+    }
+
+    private void responseWithCache(OutputStream out, SocketChannel channel, long offset, long end, ResponseCounter counter) throws ProxyCacheException, IOException {
+        FileChannel cacheChannel = channel != null ? cache.openReadChannel() : null;
+        try {
+            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+            int readBytes;
+            do {
+                if (cacheChannel != null) {
+                    out.flush();
+                    long transferred = transferCached(cacheChannel, offset, end, channel);
+                    counter.onSent(offset, transferred);
+                    offset += transferred;
+                }
+                int length = end >= 0 ? (int) Math.min(buffer.length, end - offset) : buffer.length;
+                if (length == 0) {
+                    break;
+                }
+                // copy only data which is still downloading, read blocks until it is available
+                readBytes = read(buffer, offset, length);
+                if (readBytes != -1) {
+                    out.write(buffer, 0, readBytes);
+                    counter.onSent(offset, readBytes);
+                    offset += readBytes;
+                }
+            } while (readBytes != -1);
+            out.flush();
+        } finally {
+            ProxyCacheUtils.close(cacheChannel);
+        }
+    }
+
+    /**
+     * Transfers data already stored in cache file directly to target channel, without copying it through heap buffers.
+     *
+     * @param cacheChannel a channel opened by {@link #openCacheChannel()}.
+     * @param offset       an offset of data to be transferred.
+     * @param end          an offset to stop transferring at (exclusive), {@code -1} to transfer all cached data.
+     * @param target       a channel to transfer data to. Non-blocking channel may accept only part of data.
+     * @return count of transferred bytes, {@code 0} if there is no cached data for this offset
+     * or data is kept in memory, so it should be read by {@link #read(byte[], long, int)} without disk access.
+     */
+    long transferCached(FileChannel cacheChannel, long offset, long end, WritableByteChannel target) throws ProxyCacheException, IOException {
+        if (cache.memoryCachedLength(offset) > 0) {
+            return 0;
+        }
+        long transferred = 0;
+        long cachedLength;
+        while ((cachedLength = cachedLength(offset + transferred)) > 0) {
+            long count = end >= 0 ? Math.min(cachedLength, end - offset - transferred) : cachedLength;
+            if (count <= 0) {
+                break;
+            }
+            count = cacheChannel.transferTo(offset + transferred, count, target);
+            if (count <= 0) {
+                break;
+            }
+            transferred += count;
+        }
+        return transferred;
+    }
+
+    FileChannel openCacheChannel() throws ProxyCacheException {
+        return cache.openReadChannel();
+    }
+
+    /**
+     * Returns new source to read data bypassing cache, see {@link #isUseCache(long)}.
+     *
+     * @return a copy of source sharing its info.
+     */
+    HttpUrlSource newSourceNoCache() {
+        return new HttpUrlSource(source);
+    }
+
+    private void responseWithoutCache(OutputStream out, long offset, long end, ResponseCounter counter) throws ProxyCacheException, IOException {
+        HttpUrlSource newSourceNoCache = newSourceNoCache();
         try {
-            newSourceNoCache.open((int) offset);
+            // request only bytes client asks for
+            newSourceNoCache.open(offset, end >= 0 ? end - offset : -1);
             byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
             int readBytes;
-            while ((readBytes = newSourceNoCache.read(buffer)) != -1) {
-                out.write(buffer, 0, readBytes);
-                offset += readBytes;
+            while ((end < 0 || offset < end) && (readBytes = newSourceNoCache.read(buffer)) != -1) {
+                int length = end >= 0 ? (int) Math.min(readBytes, end - offset) : readBytes;
+                out.write(buffer, 0, length);
+                counter.onSent(offset, length);
+                offset += length;
+                throttle(length);
             }
             out.flush();
         } finally {
@@ -99,14 +334,60 @@ class HttpProxyCache extends ProxyCache {
         }
     }
 
-    private String format(String pattern, Object... args) {
-        return String.format(Locale.US, pattern, args);
+    @Override
+    protected Source newReaderSource() {
+        return cache instanceof SparseCache ? new HttpUrlSource(source) : source;
+    }
+
+    @Override
+    protected long openSource(Source source, long offset, long length) throws ProxyCacheException {
+        HttpUrlSource httpUrlSource = (HttpUrlSource) source;
+        httpUrlSource.setIfRange(offset > 0 ? cache.getValidator() : null);
+        httpUrlSource.open(offset, length);
+        boolean kept = cache.validate(httpUrlSource.getValidator(), httpUrlSource.length());
+        if (httpUrlSource.isChanged()) {
+            return 0;
+        }
+        if (!kept && offset > 0) {
+            // cached data is dropped, but source returns data from offset: it can't be cached contiguously
+            httpUrlSource.close();
+            throw new ProxyCacheException("Source " + url + " is changed, it will be read again from the beginning");
+        }
+        return offset;
+    }
+
+    @Override
+    protected String getSourceKey() {
+        return url;
+    }
+
+    @Override
+    protected void onCacheAvailable(long cacheAvailable, long sourceLength) {
+        super.onCacheAvailable(cacheAvailable, sourceLength);
+        CacheListener listener = this.listener;
+        if (listener instanceof CacheProgressListener && cacheAvailable != reportedBytes) {
+            reportedBytes = cacheAvailable;
+            ((CacheProgressListener) listener).onCacheProgress(cache.file, source.getUrl(), cacheAvailable, sourceLength);
+        }
     }
 
     @Override
     protected void onCachePercentsAvailableChanged(int percents) {
+        CacheListener listener = this.listener;
         if (listener != null) {
             listener.onCacheAvailable(cache.file, source.getUrl(), percents);
         }
+        if (percents == 100 && listener instanceof CacheProgressListener && cache.isCompleted()) {
+            // completed cache is read without source, so its length is reported here
+            try {
+                long length = cache.available();
+                if (length != reportedBytes) {
+                    reportedBytes = length;
+                    ((CacheProgressListener) listener).onCacheProgress(cache.file, source.getUrl(), length, length);
+                }
+            } catch (ProxyCacheException e) {
+                Logger.warn("Error reading length of completed cache " + cache.file);
+            }
+        }
     }
 }
@@ -4,27 +4,44 @@ import android.content.Context;
 import android.net.Uri;
 
 import com.danikula.videocache.file.DiskUsage;
+import com.danikula.videocache.file.EvictingDiskUsage;
+import com.danikula.videocache.file.EvictionPolicy;
 import com.danikula.videocache.file.FileNameGenerator;
 import com.danikula.videocache.file.Md5FileNameGenerator;
+import com.danikula.videocache.file.MemoryCache;
 import com.danikula.videocache.file.TotalCountLruDiskUsage;
 import com.danikula.videocache.file.TotalSizeLruDiskUsage;
 import com.danikula.videocache.headers.EmptyHeadersInjector;
 import com.danikula.videocache.headers.HeaderInjector;
+import com.danikula.videocache.key.CacheKeyGenerator;
+import com.danikula.videocache.key.UrlCacheKeyGenerator;
 import com.danikula.videocache.sourcestorage.SourceInfoStorage;
 import com.danikula.videocache.sourcestorage.SourceInfoStorageFactory;
+import com.danikula.videocache.transport.DefaultUpstreamTransport;
+import com.danikula.videocache.transport.PooledUpstreamTransport;
+import com.danikula.videocache.transport.UpstreamTransport;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.danikula.videocache.Preconditions.checkAllNotNull;
 import static com.danikula.videocache.Preconditions.checkNotNull;
@@ -51,14 +68,24 @@ import static com.danikula.videocache.Preconditions.checkNotNull;
 public class HttpProxyCacheServer {
 
     private static final String PROXY_HOST = "127.0.0.1";
+    private static final int KEEP_ALIVE_TIMEOUT = 5 * 1000;
+    private static final int SOCKET_PROCESSOR_THREADS = 8;
 
     private final Object clientsLock = new Object();
-    private final ExecutorService socketProcessor = Executors.newFixedThreadPool(8);
+    private final ExecutorService socketProcessor = Executors.newFixedThreadPool(SOCKET_PROCESSOR_THREADS);
+    // accepted sockets not processed completely yet, including ones waiting for free thread
+    private final AtomicInteger processingSockets = new AtomicInteger();
+    // sockets waiting for next request, oldest first, guarded by itself
+    private final Set<Socket> idleSockets = new LinkedHashSet<>();
     private final Map<String, HttpProxyCacheServerClients> clientsMap = new ConcurrentHashMap<>();
     private final ServerSocket serverSocket;
     private final int port;
     private final Thread waitConnectionThread;
+    private final NioProxyServer nioServer;
     private final Config config;
+    private final CacheRevalidator revalidator;
+    private final HlsPlaylistProxy hlsProxy;
+    private final PreloadScheduler preloadScheduler;
 
     public HttpProxyCacheServer(Context context) {
         this(new Builder(context).buildConfig());
@@ -66,15 +93,37 @@ public class HttpProxyCacheServer {
 
     private HttpProxyCacheServer(Config config) {
         this.config = checkNotNull(config);
+        this.revalidator = config.revalidationMaxAge > 0 ? new CacheRevalidator(this, config) : null;
+        this.hlsProxy = config.hlsMode ? new HlsPlaylistProxy(this, config) : null;
+        this.preloadScheduler = new PreloadScheduler(this, config.maxConcurrentPreloads);
+        if (config.diskUsage instanceof EvictingDiskUsage) {
+            ((EvictingDiskUsage) config.diskUsage).setEvictionListener(config.metrics);
+        }
+        if (config.upstreamTransport instanceof PooledUpstreamTransport) {
+            ((PooledUpstreamTransport) config.upstreamTransport).setRequestPriority(config.bandwidthGovernor);
+        }
         try {
             InetAddress inetAddress = InetAddress.getByName(PROXY_HOST);
-            this.serverSocket = new ServerSocket(0, 8, inetAddress);
-            this.port = serverSocket.getLocalPort();
-            IgnoreHostProxySelector.install(PROXY_HOST, port);
-            CountDownLatch startSignal = new CountDownLatch(1);
-            this.waitConnectionThread = new Thread(new WaitRequestsRunnable(startSignal));
-            this.waitConnectionThread.start();
-            startSignal.await(); // freeze thread, wait for server starts
+            if (config.ioThreadsCount > 0) {
+                this.serverSocket = null;
+                this.waitConnectionThread = null;
+                this.nioServer = new NioProxyServer(this, inetAddress, config.ioThreadsCount);
+                this.port = nioServer.getPort();
+                IgnoreHostProxySelector.install(PROXY_HOST, port);
+                nioServer.start();
+            } else {
+                this.nioServer = null;
+                // socket created by channel allows HttpProxyCache to transfer cached data by FileChannel.transferTo
+                ServerSocketChannel serverChannel = ServerSocketChannel.open();
+                this.serverSocket = serverChannel.socket();
+                serverSocket.bind(new InetSocketAddress(inetAddress, 0), 8);
+                this.port = serverSocket.getLocalPort();
+                IgnoreHostProxySelector.install(PROXY_HOST, port);
+                CountDownLatch startSignal = new CountDownLatch(1);
+                this.waitConnectionThread = new Thread(new WaitRequestsRunnable(startSignal));
+                this.waitConnectionThread.start();
+                startSignal.await(); // freeze thread, wait for server starts
+            }
         } catch (IOException | InterruptedException e) {
             socketProcessor.shutdown();
             throw new IllegalStateException("Error starting local proxy server", e);
@@ -85,7 +134,8 @@ public class HttpProxyCacheServer {
      * Returns url that wrap original url and should be used for client (MediaPlayer, ExoPlayer, etc).
      * <p>
      * If file for this url is fully cached (it means method {@link #isCached(String)} returns {@code true})
-     * then file:// uri to cached file will be returned.
+     * then file:// uri to cached file will be returned. Stale cached file is served by proxy while it is revalidated,
+     * see {@link Builder#revalidateAfter(long)}. Playlist is always served by proxy in HLS mode, see {@link Builder#hlsMode(int)}.
      * <p>
      * Calling this method has same effect as calling {@link #getProxyUrl(String, boolean)} with 2nd parameter set to {@code true}.
      *
@@ -107,10 +157,14 @@ public class HttpProxyCacheServer {
      * @return a wrapped by proxy url if file is not fully cached or url pointed to cache file otherwise (if {@code allowCachedFileUri} is {@code true}).
      */
     public String getProxyUrl(String url, boolean allowCachedFileUri) {
-        if (allowCachedFileUri && getCacheFile(url).exists()) {
+        boolean playlist = hlsProxy != null && hlsProxy.isPlaylist(url);
+        if (allowCachedFileUri && !playlist && getCacheFile(url).exists()) {
             File cacheFile = getCacheFile(url);
             touchFileSafely(cacheFile);
-            return Uri.fromFile(cacheFile).toString();
+            // stale file is served by proxy, so it isn't deleted under player if revalidation finds it changed
+            if (revalidator == null || !revalidator.revalidateIfStale(url)) {
+                return Uri.fromFile(cacheFile).toString();
+            }
         }
         return appendToProxyUrl(url);
     }
@@ -157,13 +211,147 @@ public class HttpProxyCacheServer {
         return getCacheFile(url).exists();
     }
 
+    /**
+     * Marks url as played now, e.g. url of video visible in feed.
+     * <p>
+     * Source readers for this url are started before queued readers of other urls
+     * and may use thread reserved for priority url when all other source reader threads are busy.
+     * If {@link PooledUpstreamTransport} is used, its requests may use connection reserved for them when all connections to host are busy.
+     * Segments and nested playlists of priority HLS playlist are priority too.
+     *
+     * @param url an url of video played now, {@code null} to clear priority.
+     */
+    public void setPriorityUrl(String url) {
+        config.bandwidthGovernor.setForegroundKey(url);
+        config.sourceReaderExecutor.onPriorityChanged();
+    }
+
+    /**
+     * Notifies proxy about buffering of played video, e.g. by {@code VideoView}'s buffering listener.
+     * <p>
+     * While any player is buffering, background reading (preloading, HLS prefetching and reading of videos
+     * other than priority one, see {@link #setPriorityUrl(String)}) is limited, so played videos get the link.
+     * Videos of buffering players are never limited. When all players have buffered enough,
+     * background reading ramps up again in a few seconds. See {@link Builder#throttleBackgroundWhileBuffering(long)}.
+     *
+     * @param url       an original url of played video or url of proxy returned by {@link #getProxyUrl(String)}.
+     * @param buffering {@code true} if player waits for data, {@code false} if it has buffered enough or is stopped.
+     */
+    public void setPlaybackBuffering(String url, boolean buffering) {
+        checkNotNull(url, "Url can't be null!");
+        config.bandwidthGovernor.setBuffering(getOriginalUrl(url), buffering);
+    }
+
+    /**
+     * Returns count of source reader threads created since proxy is started.
+     *
+     * @return count of created threads.
+     */
+    public long getSourceReaderThreadsCreated() {
+        return config.sourceReaderExecutor.getCreatedThreadsCount();
+    }
+
+    /**
+     * Returns count of source readers waiting for free thread.
+     *
+     * @return current depth of source readers queue.
+     */
+    public int getSourceReaderQueueDepth() {
+        return config.sourceReaderExecutor.getQueueDepth();
+    }
+
+    /**
+     * Returns max count of source readers waited for free thread at the same time since proxy is started.
+     *
+     * @return max depth of source readers queue.
+     */
+    public int getSourceReaderMaxQueueDepth() {
+        return config.sourceReaderExecutor.getMaxQueueDepth();
+    }
+
+    /**
+     * Returns metrics of proxy since it is started: cache hit ratio, bytes served from cache and from source,
+     * time to first byte of source, stalls of clients waiting for source and evictions of cached files.
+     * <p>
+     * Metrics are always collected, collecting costs a few atomic updates per request and per reading of source.
+     *
+     * @return a snapshot of metrics.
+     */
+    public MetricsSnapshot getMetrics() {
+        return config.metrics.snapshot();
+    }
+
+    /**
+     * Returns traffic of url since it is started, traffic of urls with the same cache key is counted together.
+     *
+     * @param url an url of source.
+     * @return a snapshot of traffic or {@code null} if url isn't requested recently.
+     */
+    public TrafficMetrics getMetrics(String url) {
+        checkNotNull(url, "Url can't be null!");
+        return config.metrics.snapshot(config.generateCacheKey(url));
+    }
+
+    /**
+     * Registers listener to be notified about every served request and evicted cached file.
+     *
+     * @param listener a listener of metrics.
+     */
+    public void registerMetricsListener(MetricsListener listener) {
+        config.metrics.registerListener(checkNotNull(listener));
+    }
+
+    public void unregisterMetricsListener(MetricsListener listener) {
+        config.metrics.unregisterListener(checkNotNull(listener));
+    }
+
+    /**
+     * Returns scheduler to preload first seconds of videos into cache, e.g. videos of feed next to played one.
+     *
+     * @return preload scheduler of this proxy.
+     */
+    public PreloadScheduler getPreloadScheduler() {
+        return preloadScheduler;
+    }
+
+    /**
+     * Returns memory tier keeping first bytes of recently used videos, e.g. to report its memory usage
+     * or to clear it when system is running low on memory.
+     *
+     * @return memory cache or {@code null} if it is not enabled by {@link Builder#memoryCache(long, long)}.
+     */
+    public MemoryCache getMemoryCache() {
+        return config.memoryCache;
+    }
+
     public void shutdown() {
         Logger.info("Shutdown proxy server");
 
+        preloadScheduler.shutdown();
         shutdownClients();
+        config.sourceReaderExecutor.shutdown();
+        if (revalidator != null) {
+            revalidator.shutdown();
+        }
+        if (hlsProxy != null) {
+            hlsProxy.shutdown();
+        }
 
         config.sourceInfoStorage.release();
+        if (config.memoryCache != null) {
+            config.memoryCache.clear();
+        }
+        if (config.diskUsage instanceof EvictingDiskUsage) {
+            ((EvictingDiskUsage) config.diskUsage).setEvictionListener(null);
+        }
+        if (config.upstreamTransport instanceof PooledUpstreamTransport) {
+            ((PooledUpstreamTransport) config.upstreamTransport).setRequestPriority(null);
+        }
 
+        if (nioServer != null) {
+            nioServer.shutdown();
+            return;
+        }
         waitConnectionThread.interrupt();
         try {
             if (!serverSocket.isClosed()) {
@@ -174,19 +362,22 @@ public class HttpProxyCacheServer {
         }
     }
 
-    private String appendToProxyUrl(String url) {
+    String appendToProxyUrl(String url) {
         return String.format(Locale.US, "http://%s:%d/%s", PROXY_HOST, port, ProxyCacheUtils.encode(url));
     }
 
+    private String getOriginalUrl(String url) {
+        String proxyUrlPrefix = appendToProxyUrl("");
+        return url.startsWith(proxyUrlPrefix) ? ProxyCacheUtils.decode(url.substring(proxyUrlPrefix.length())) : url;
+    }
+
     public File getCacheFile(String url) {
-        File cacheDir = config.cacheRoot;
-        String fileName = config.fileNameGenerator.generate(url);
-        return new File(cacheDir, fileName);
+        return config.generateCacheFile(url);
     }
 
     public File getTempCacheFile(String url) {
         File cacheDir = config.cacheRoot;
-        String fileName = config.fileNameGenerator.generate(url) + ".download";
+        String fileName = config.fileNameGenerator.generate(config.generateCacheKey(url)) + ".download";
         return new File(cacheDir, fileName);
     }
 
@@ -194,6 +385,17 @@ public class HttpProxyCacheServer {
         return config.cacheRoot;
     }
 
+    boolean isSparseCache() {
+        return config.sparseCache;
+    }
+
+    /**
+     * @return limiter of source reading for preloading or {@code null} if preloading is not limited.
+     */
+    BandwidthLimiter getPreloadBandwidthLimiter() {
+        return config.preloadBandwidthLimiter;
+    }
+
     private void touchFileSafely(File cacheFile) {
         try {
             config.diskUsage.touch(cacheFile);
@@ -217,6 +419,10 @@ public class HttpProxyCacheServer {
                 Socket socket = serverSocket.accept();
                 Logger.debug("Accept new socket " + socket);
                 socketProcessor.submit(new SocketProcessorRunnable(socket));
+                if (processingSockets.incrementAndGet() > SOCKET_PROCESSOR_THREADS) {
+                    // all threads are taken, idle persistent connection gives its thread to new one
+                    closeIdleSocket();
+                }
             }
         } catch (IOException e) {
             onError(new ProxyCacheException("Error during waiting connection", e));
@@ -225,11 +431,29 @@ public class HttpProxyCacheServer {
 
     private void processSocket(Socket socket) {
         try {
-            GetRequest request = GetRequest.read(socket.getInputStream());
-            Logger.debug("Request to cache proxy:" + request);
-            String url = ProxyCacheUtils.decode(request.uri);
-            HttpProxyCacheServerClients clients = getClients(url);
-            clients.processRequest(request, socket);
+            // requests are processed one by one while client keeps connection alive
+            socket.setSoTimeout(KEEP_ALIVE_TIMEOUT);
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            GetRequestReader requestReader = new GetRequestReader(input);
+            boolean keepAlive = true;
+            GetRequest request;
+            while (keepAlive && awaitRequest(socket, input) && (request = requestReader.read()) != null) {
+                Logger.debug("Request to cache proxy:" + request);
+                String url = ProxyCacheUtils.decode(request.uri);
+                if (hlsProxy != null && hlsProxy.isPlaylist(url)) {
+                    keepAlive = hlsProxy.processRequest(request, url, socket);
+                } else {
+                    if (hlsProxy != null) {
+                        hlsProxy.onSegmentRequest(url);
+                    }
+                    HttpProxyCacheServerClients clients = getClients(url);
+                    keepAlive = clients.processRequest(request, socket);
+                }
+                // connection isn't kept while new connections wait for thread
+                keepAlive &= processingSockets.get() <= SOCKET_PROCESSOR_THREADS;
+            }
+        } catch (SocketTimeoutException e) {
+            Logger.debug("Closing socket… Persistent connection is idle for too long.");
         } catch (SocketException e) {
             // There is no way to determine that client closed connection http://stackoverflow.com/a/10241044/999458
             // So just to prevent log flooding don't log stacktrace
@@ -238,22 +462,103 @@ public class HttpProxyCacheServer {
             onError(new ProxyCacheException("Error processing request", e));
         } finally {
             releaseSocket(socket);
+            processingSockets.decrementAndGet();
             Logger.debug("Opened connections: " + getClientsCount());
         }
     }
 
-    private HttpProxyCacheServerClients getClients(String url) throws ProxyCacheException {
+    /**
+     * Waits for the first byte of next request. Socket is idle while waiting, so it may be closed by
+     * {@link #closeIdleSocket()} to free thread for new connection.
+     *
+     * @return {@code true} if request is received, {@code false} if socket is closed by client or to free thread.
+     */
+    private boolean awaitRequest(Socket socket, InputStream input) throws IOException {
+        synchronized (idleSockets) {
+            idleSockets.add(socket);
+        }
+        boolean received = false;
+        try {
+            input.mark(1);
+            received = input.read() != -1;
+            input.reset();
+        } finally {
+            synchronized (idleSockets) {
+                received &= idleSockets.remove(socket);
+            }
+        }
+        return received;
+    }
+
+    private void closeIdleSocket() {
+        Socket socket = null;
+        synchronized (idleSockets) {
+            Iterator<Socket> oldest = idleSockets.iterator();
+            if (oldest.hasNext()) {
+                socket = oldest.next();
+                oldest.remove();
+            }
+        }
+        if (socket != null) {
+            Logger.debug("Closing idle socket " + socket + " to free thread for new connection");
+            closeSocket(socket);
+        }
+    }
+
+    HttpProxyCacheServerClients getClients(String url) throws ProxyCacheException {
+        if (revalidator != null && getCacheFile(url).exists()) {
+            revalidator.revalidateIfStale(url);
+        }
+        String key = config.generateCacheKey(url);
         synchronized (clientsLock) {
-            HttpProxyCacheServerClients clients = clientsMap.get(url);
+            HttpProxyCacheServerClients clients = clientsMap.get(key);
             if (clients == null) {
                 clients = new HttpProxyCacheServerClients(url, config);
-                clientsMap.put(url, clients);
+                clientsMap.put(key, clients);
+            } else {
+                clients.setUrl(url);
             }
             return clients;
         }
     }
 
-    private int getClientsCount() {
+    /**
+     * Deletes completely cached file of changed source unless it is read by clients now.
+     *
+     * @param url an url of changed source.
+     * @return {@code true} if cached file is deleted or absent.
+     */
+    boolean invalidate(String url) {
+        synchronized (clientsLock) {
+            HttpProxyCacheServerClients clients = clientsMap.get(config.generateCacheKey(url));
+            if (clients == null) {
+                return deleteCacheFile(url);
+            }
+            // new clients of url wait for deletion to open new version
+            synchronized (clients) {
+                return clients.getClientsCount() == 0 && deleteCacheFile(url);
+            }
+        }
+    }
+
+    private boolean deleteCacheFile(String url) {
+        File cacheFile = getCacheFile(url);
+        if (cacheFile.exists() && !cacheFile.delete()) {
+            Logger.error("Error deleting cache file " + cacheFile);
+            return false;
+        }
+        touchFileSafely(cacheFile);
+        return true;
+    }
+
+    /**
+     * @return proxy of HLS playlists or {@code null} if HLS mode is disabled.
+     */
+    HlsPlaylistProxy getHlsProxy() {
+        return hlsProxy;
+    }
+
+    int getClientsCount() {
         synchronized (clientsLock) {
             int count = 0;
             for (HttpProxyCacheServerClients clients : clientsMap.values()) {
@@ -342,12 +647,32 @@ public class HttpProxyCacheServer {
     public static final class Builder {
 
         private static final long DEFAULT_MAX_SIZE = 512 * 1024 * 1024;
+        private static final long DEFAULT_READ_CHUNK_SIZE = 1024 * 1024;
+        private static final int DEFAULT_SOURCE_READER_THREADS = 8;
+        private static final long DEFAULT_BUFFERING_BACKGROUND_BANDWIDTH = 64 * 1024;
+        private static final long DEFAULT_CACHE_PROGRESS_INTERVAL = 100;
 
         private File cacheRoot;
         private FileNameGenerator fileNameGenerator;
+        private CacheKeyGenerator cacheKeyGenerator;
         private DiskUsage diskUsage;
         private SourceInfoStorage sourceInfoStorage;
         private HeaderInjector headerInjector;
+        private int ioThreadsCount;
+        private boolean sparseCache;
+        private int readConnections = 1;
+        private long readChunkSize = DEFAULT_READ_CHUNK_SIZE;
+        private int sourceReaderThreads = DEFAULT_SOURCE_READER_THREADS;
+        private UpstreamTransport upstreamTransport;
+        private long revalidationMaxAge;
+        private boolean hlsMode;
+        private int hlsPrefetchSegments;
+        private int maxConcurrentPreloads = 1;
+        private long preloadBandwidth;
+        private long bufferingBackgroundBandwidth = DEFAULT_BUFFERING_BACKGROUND_BANDWIDTH;
+        private long cacheProgressInterval = DEFAULT_CACHE_PROGRESS_INTERVAL;
+        private long memoryCacheSize;
+        private long memoryCacheHeadSize;
 
         public Builder(Context context) {
             this.sourceInfoStorage = SourceInfoStorageFactory.newSourceInfoStorage(context);
@@ -355,6 +680,7 @@ public class HttpProxyCacheServer {
             this.diskUsage = new TotalSizeLruDiskUsage(DEFAULT_MAX_SIZE);
             this.fileNameGenerator = new Md5FileNameGenerator();
             this.headerInjector = new EmptyHeadersInjector();
+            this.upstreamTransport = new DefaultUpstreamTransport();
         }
 
         /**
@@ -385,6 +711,25 @@ public class HttpProxyCacheServer {
             return this;
         }
 
+        /**
+         * Sets generator of cache keys, so urls with the same key share cached file.
+         * <p>
+         * By default whole url is used as key ({@link UrlCacheKeyGenerator}), so url with rotated token
+         * (e.g. {@code ?auth_key=...&t=...} of CDN) is cached again. Use
+         * {@link com.danikula.videocache.key.IgnoredParamsCacheKeyGenerator} to drop such parameters,
+         * {@link com.danikula.videocache.key.RegexCacheKeyGenerator} to rewrite url or own implementation.
+         * Source is still requested by original url.
+         * </p>
+         * Note file name is generated by {@link #fileNameGenerator(FileNameGenerator)} for key instead of url.
+         *
+         * @param cacheKeyGenerator a new cache key generator.
+         * @return a builder.
+         */
+        public Builder cacheKeyGenerator(CacheKeyGenerator cacheKeyGenerator) {
+            this.cacheKeyGenerator = checkNotNull(cacheKeyGenerator);
+            return this;
+        }
+
         /**
          * Sets max cache size in bytes.
          * <p>
@@ -401,6 +746,20 @@ public class HttpProxyCacheServer {
             return this;
         }
 
+        /**
+         * Sets max cache size in bytes and strategy to choose files to be deleted when cache exceeds it.
+         * <p>
+         * Note this method overrides result of calling {@link #maxCacheFilesCount(int)}
+         *
+         * @param maxSize        max cache size in bytes.
+         * @param evictionPolicy a strategy to trim cache, cant be {@code null}.
+         * @return a builder.
+         */
+        public Builder maxCacheSize(long maxSize, EvictionPolicy evictionPolicy) {
+            this.diskUsage = checkNotNull(evictionPolicy).newDiskUsage(maxSize);
+            return this;
+        }
+
         /**
          * Sets max cache files count.
          * All files that exceeds limit will be deleted using LRU strategy.
@@ -436,6 +795,205 @@ public class HttpProxyCacheServer {
             return this;
         }
 
+        /**
+         * Switches proxy to non-blocking engine.
+         * <p>
+         * By default every connection is served by own thread from fixed pool, so extra connections wait in queue.
+         * Non-blocking engine multiplexes all connections over passed count of io threads using {@link java.nio.channels.Selector}.
+         * </p>
+         *
+         * @param ioThreadsCount count of io threads, must be positive.
+         * @return a builder.
+         */
+        public Builder nioEngine(int ioThreadsCount) {
+            Preconditions.checkArgument(ioThreadsCount > 0, "Io threads count must be positive number!");
+            this.ioThreadsCount = ioThreadsCount;
+            return this;
+        }
+
+        /**
+         * Enables sparse file cache ({@link com.danikula.videocache.file.SparseFileCache}).
+         * <p>
+         * By default requests seeking far beyond cached data are served directly from source and nothing is cached.
+         * Sparse cache stores non-contiguous ranges, so data fetched after seeking is cached and reused by later reads.
+         * </p>
+         *
+         * @param sparseCache {@code true} to use sparse cache.
+         * @return a builder.
+         */
+        public Builder sparseCache(boolean sparseCache) {
+            this.sparseCache = sparseCache;
+            return this;
+        }
+
+        /**
+         * Sets count of connections used to read every source concurrently.
+         * <p>
+         * Remainder of source is split to chunks read by separate connections, chunk the player is waiting for is read first.
+         * Default value is 1 (source is read by single connection).
+         * </p>
+         * Note chunks are stored at any offset, so this method enables {@link #sparseCache(boolean)} if count is greater than 1.
+         *
+         * @param readConnections max count of connections per source, must be positive.
+         * @param readChunkSize   size of chunk in bytes read by one connection, must be positive. Default value is 1 Mb.
+         * @return a builder.
+         */
+        public Builder parallelReading(int readConnections, long readChunkSize) {
+            Preconditions.checkArgument(readConnections > 0, "Read connections count must be positive number!");
+            Preconditions.checkArgument(readChunkSize > 0, "Read chunk size must be positive number!");
+            this.readConnections = readConnections;
+            this.readChunkSize = readChunkSize;
+            this.sparseCache |= readConnections > 1;
+            return this;
+        }
+
+        /**
+         * Sets max count of threads reading sources, shared by all urls.
+         * <p>
+         * Readers that don't fit are queued, one more thread is reserved for url passed to {@link #setPriorityUrl(String)}.
+         * Idle threads are stopped after a while. Default value is 8.
+         * </p>
+         * Note every connection of {@link #parallelReading(int, long)} occupies own thread.
+         *
+         * @param sourceReaderThreads max count of source reader threads, must be positive.
+         * @return a builder.
+         */
+        public Builder sourceReaderThreads(int sourceReaderThreads) {
+            Preconditions.checkArgument(sourceReaderThreads > 0, "Source reader threads count must be positive number!");
+            this.sourceReaderThreads = sourceReaderThreads;
+            return this;
+        }
+
+        /**
+         * Sets transport used to request sources from origin servers.
+         * <p>
+         * By default {@link DefaultUpstreamTransport} is used: it opens new connection for every request.
+         * Use {@link PooledUpstreamTransport} to bound and reuse connections per host, prioritize requests
+         * of played video (see {@link HttpProxyCacheServer#setPriorityUrl(String)}) and cache redirect targets.
+         * </p>
+         *
+         * @param upstreamTransport a transport for requests to origin servers.
+         * @return a builder.
+         */
+        public Builder upstreamTransport(UpstreamTransport upstreamTransport) {
+            this.upstreamTransport = checkNotNull(upstreamTransport);
+            return this;
+        }
+
+        /**
+         * Enables revalidation of completely cached files.
+         * <p>
+         * By default cached file is served forever. With revalidation file cached or revalidated more than max age ago
+         * is still served instantly (by proxy instead of file:// uri), but its source is requested conditionally
+         * in background. Changed file is deleted, so the next request caches new version.
+         * </p>
+         * Note only files of sources sending ETag or Last-Modified are revalidated by conditional requests,
+         * others are considered changed if their length is changed.
+         *
+         * @param maxAge max age of cached file in milliseconds, must be positive.
+         * @return a builder.
+         */
+        public Builder revalidateAfter(long maxAge) {
+            Preconditions.checkArgument(maxAge > 0, "Max age must be positive number!");
+            this.revalidationMaxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Enables HLS mode.
+         * <p>
+         * By default m3u8 playlist is cached as any other file, so segments are requested by player from source.
+         * In HLS mode master and media playlists are parsed and their uris are rewritten to urls of proxy,
+         * so every segment is cached as separate file. Master and VOD playlists are cached too,
+         * so cached VOD stream is replayed without network. Playlist is recognized by m3u8 extension of url
+         * or by being listed in served master playlist.
+         * </p>
+         *
+         * @param prefetchSegments count of segments after requested one to be cached in background,
+         *                         {@code 0} to disable prefetching, must not be negative.
+         * @return a builder.
+         */
+        public Builder hlsMode(int prefetchSegments) {
+            Preconditions.checkArgument(prefetchSegments >= 0, "Prefetch segments count must not be negative!");
+            this.hlsMode = true;
+            this.hlsPrefetchSegments = prefetchSegments;
+            return this;
+        }
+
+        /**
+         * Sets limits of preloading by {@link PreloadScheduler} and {@link Mp4Preloader}.
+         * <p>
+         * By default one video is preloaded at a time at full speed. Bandwidth limit is shared by all preloaded videos
+         * and is lifted for video as soon as player requests it, so preloading doesn't slow down played video.
+         * </p>
+         *
+         * @param maxConcurrentPreloads max count of videos preloaded at the same time, must be positive.
+         * @param maxBytesPerSecond     max rate of reading sources for preloading in bytes per second,
+         *                              {@code 0} to preload at full speed, must not be negative.
+         * @return a builder.
+         */
+        public Builder preloading(int maxConcurrentPreloads, long maxBytesPerSecond) {
+            Preconditions.checkArgument(maxConcurrentPreloads > 0, "Concurrent preloads count must be positive number!");
+            Preconditions.checkArgument(maxBytesPerSecond >= 0, "Preload bandwidth must not be negative!");
+            this.maxConcurrentPreloads = maxConcurrentPreloads;
+            this.preloadBandwidth = maxBytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets max rate of background reading while played video is buffering, see {@link #setPlaybackBuffering(String, boolean)}.
+         * <p>
+         * Background reading is preloading, prefetching of HLS segments and reading of videos other than priority one.
+         * Default value is 64 Kb per second.
+         * </p>
+         *
+         * @param bytesPerSecond max rate of background reading in bytes per second, must be positive.
+         * @return a builder.
+         */
+        public Builder throttleBackgroundWhileBuffering(long bytesPerSecond) {
+            Preconditions.checkArgument(bytesPerSecond > 0, "Background bandwidth must be positive number!");
+            this.bufferingBackgroundBandwidth = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets min interval between notifications of {@link CacheListener} about progress of caching the same url.
+         * <p>
+         * Progress changes after every chunk read from source, so it is coalesced: listeners are notified by main thread
+         * with latest progress only, intermediate values are skipped. Completion of caching is notified at once.
+         * Default value is 100 ms.
+         * </p>
+         *
+         * @param interval min interval in milliseconds, {@code 0} to notify as soon as main thread is free, must not be negative.
+         * @return a builder.
+         */
+        public Builder cacheProgressInterval(long interval) {
+            Preconditions.checkArgument(interval >= 0, "Cache progress interval must not be negative!");
+            this.cacheProgressInterval = interval;
+            return this;
+        }
+
+        /**
+         * Enables memory tier in front of cache files: first bytes of recently played or preloaded videos are kept in memory,
+         * so start of video (e.g. when user flips between adjacent items of feed) is served without disk access.
+         * <p>
+         * Memory is taken by chunks of 64 Kb up to passed limit, when it is reached heads of least recently used videos are dropped.
+         * Memory usage is reported by {@link MemoryCache#getSize()} of {@link HttpProxyCacheServer#getMemoryCache()}.
+         * Memory tier is disabled by default.
+         * </p>
+         *
+         * @param maxSize  max count of bytes taken by memory tier, must be at least 64 Kb.
+         * @param headSize max count of first bytes of each video kept in memory, must be positive.
+         * @return a builder.
+         */
+        public Builder memoryCache(long maxSize, long headSize) {
+            Preconditions.checkArgument(maxSize >= 64 * 1024, "Memory cache size must be at least 64 Kb!");
+            Preconditions.checkArgument(headSize > 0, "Head size must be positive number!");
+            this.memoryCacheSize = maxSize;
+            this.memoryCacheHeadSize = headSize;
+            return this;
+        }
+
         /**
          * Builds new instance of {@link HttpProxyCacheServer}.
          *
@@ -447,7 +1005,18 @@ public class HttpProxyCacheServer {
         }
 
         private Config buildConfig() {
-            return new Config(cacheRoot, fileNameGenerator, diskUsage, sourceInfoStorage, headerInjector);
+            BandwidthGovernor bandwidthGovernor = new BandwidthGovernor(bufferingBackgroundBandwidth);
+            SourceReaderExecutor sourceReaderExecutor = new SourceReaderExecutor(sourceReaderThreads, bandwidthGovernor);
+            CacheKeyGenerator keyGenerator = cacheKeyGenerator != null ? cacheKeyGenerator : new UrlCacheKeyGenerator();
+            // infos of custom keys are shared by all urls of the same source
+            SourceInfoStorage infoStorage = cacheKeyGenerator != null ?
+                    SourceInfoStorageFactory.newKeyedSourceInfoStorage(sourceInfoStorage, cacheKeyGenerator) : sourceInfoStorage;
+            BandwidthLimiter preloadBandwidthLimiter = preloadBandwidth > 0 ? new BandwidthLimiter(preloadBandwidth) : null;
+            MemoryCache memoryCache = memoryCacheSize > 0 ? new MemoryCache(memoryCacheSize, memoryCacheHeadSize) : null;
+            return new Config(cacheRoot, fileNameGenerator, keyGenerator, diskUsage, infoStorage, headerInjector, ioThreadsCount, sparseCache,
+                    readConnections, readChunkSize, sourceReaderExecutor, upstreamTransport, revalidationMaxAge,
+                    hlsMode, hlsPrefetchSegments, maxConcurrentPreloads, preloadBandwidthLimiter,
+                    bandwidthGovernor, new ProxyMetrics(), cacheProgressInterval, memoryCache);
         }
 
     }
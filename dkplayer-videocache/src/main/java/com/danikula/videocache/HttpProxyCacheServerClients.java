@@ -3,8 +3,10 @@ package com.danikula.videocache;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 
 import com.danikula.videocache.file.FileCache;
+import com.danikula.videocache.file.SparseFileCache;
 
 import java.io.File;
 import java.io.IOException;
@@ -23,8 +25,10 @@ import static com.danikula.videocache.Preconditions.checkNotNull;
 final class HttpProxyCacheServerClients {
 
     private final AtomicInteger clientsCount = new AtomicInteger(0);
-    private final String url;
+    private volatile String url;
     private volatile HttpProxyCache proxyCache;
+    private int preloadersCount;
+    private BandwidthLimiter preloadLimiter;
     private final List<CacheListener> listeners = new CopyOnWriteArrayList<>();
     private final CacheListener uiCacheListener;
     private final Config config;
@@ -32,30 +36,89 @@ final class HttpProxyCacheServerClients {
     public HttpProxyCacheServerClients(String url, Config config) {
         this.url = checkNotNull(url);
         this.config = checkNotNull(config);
-        this.uiCacheListener = new UiListenerHandler(url, listeners);
+        this.uiCacheListener = new UiListenerHandler(listeners, config.cacheProgressInterval);
     }
 
-    public void processRequest(GetRequest request, Socket socket) throws ProxyCacheException, IOException {
-        startProcessRequest();
+    public boolean processRequest(GetRequest request, Socket socket) throws ProxyCacheException, IOException {
+        HttpProxyCache proxyCache = acquireProxyCache();
         try {
-            clientsCount.incrementAndGet();
-            proxyCache.processRequest(request, socket);
+            return proxyCache.processRequest(request, socket);
         } finally {
             finishProcessRequest();
         }
     }
 
+    /**
+     * Registers new client and returns proxy cache to serve it.
+     * Every acquired proxy cache must be released by {@link #releaseProxyCache()} when request is processed.
+     *
+     * @return proxy cache for this url.
+     * @throws ProxyCacheException if error occur while creating proxy cache.
+     */
+    synchronized HttpProxyCache acquireProxyCache() throws ProxyCacheException {
+        startProcessRequest();
+        clientsCount.incrementAndGet();
+        // player reads source at full speed even if video is preloaded at the same time
+        proxyCache.setPreloading(false, null);
+        return proxyCache;
+    }
+
+    /**
+     * Registers preloading client and returns proxy cache to preload data by it.
+     * Source is read with passed bandwidth limit while proxy cache is used by preloading clients only.
+     * Every acquired proxy cache must be released by {@link #releasePreloadProxyCache()} when data is preloaded.
+     *
+     * @param bandwidthLimiter a limiter of preloading or {@code null} to preload at full speed.
+     * @return proxy cache for this url.
+     * @throws ProxyCacheException if error occur while creating proxy cache.
+     */
+    synchronized HttpProxyCache acquirePreloadProxyCache(BandwidthLimiter bandwidthLimiter) throws ProxyCacheException {
+        startProcessRequest();
+        int count = clientsCount.incrementAndGet();
+        preloadLimiter = bandwidthLimiter;
+        if (preloadersCount++ == count - 1) {
+            proxyCache.setPreloading(true, bandwidthLimiter);
+        }
+        return proxyCache;
+    }
+
+    void releaseProxyCache() {
+        finishProcessRequest();
+    }
+
+    synchronized void releasePreloadProxyCache() {
+        preloadersCount--;
+        finishProcessRequest();
+    }
+
     private synchronized void startProcessRequest() throws ProxyCacheException {
         proxyCache = proxyCache == null ? newHttpProxyCache() : proxyCache;
     }
 
     private synchronized void finishProcessRequest() {
-        if (clientsCount.decrementAndGet() <= 0) {
+        if (proxyCache == null) {
+            return; // clients are shut down, e.g. connection is closed by stopped server
+        }
+        int count = clientsCount.decrementAndGet();
+        if (count <= 0) {
             proxyCache.shutdown();
             proxyCache = null;
+        } else if (count == preloadersCount) {
+            // player is gone, the rest is read in background again
+            proxyCache.setPreloading(true, preloadLimiter);
         }
     }
 
+    /**
+     * Sets url of source to be requested by proxy cache created for the next clients.
+     * All urls of clients have the same cache key, but url may change, e.g. url signed by rotated token.
+     *
+     * @param url an actual url of source.
+     */
+    void setUrl(String url) {
+        this.url = checkNotNull(url);
+    }
+
     public void registerCacheListener(CacheListener cacheListener) {
         listeners.add(cacheListener);
     }
@@ -72,6 +135,7 @@ final class HttpProxyCacheServerClients {
             proxyCache = null;
         }
         clientsCount.set(0);
+        preloadersCount = 0;
     }
 
     public int getClientsCount() {
@@ -79,36 +143,103 @@ final class HttpProxyCacheServerClients {
     }
 
     private HttpProxyCache newHttpProxyCache() throws ProxyCacheException {
-        HttpUrlSource source = new HttpUrlSource(url, config.sourceInfoStorage, config.headerInjector);
-        FileCache cache = new FileCache(config.generateCacheFile(url), config.diskUsage);
-        HttpProxyCache httpProxyCache = new HttpProxyCache(source, cache);
+        HttpUrlSource source = new HttpUrlSource(url, config.sourceInfoStorage, config.headerInjector, config.upstreamTransport);
+        File file = config.generateCacheFile(url);
+        FileCache cache = config.sparseCache ?
+                new SparseFileCache(file, config.diskUsage, config.memoryCache) : new FileCache(file, config.diskUsage, config.memoryCache);
+        HttpProxyCache httpProxyCache = new HttpProxyCache(source, cache, config.sourceReaderExecutor, config.readConnections, config.readChunkSize);
         httpProxyCache.registerCacheListener(uiCacheListener);
+        httpProxyCache.setBandwidthGovernor(config.bandwidthGovernor);
+        httpProxyCache.setTrafficRecorder(config.metrics.getRecorder(config.generateCacheKey(url), url));
         return httpProxyCache;
     }
 
-    private static final class UiListenerHandler extends Handler implements CacheListener {
+    /**
+     * Delivers progress of caching to listeners by main thread.
+     * <p>
+     * Progress is reported by source readers after every written chunk, so it is coalesced: only latest progress is kept
+     * and it is delivered at most once per interval by single message. Completion is delivered at once.
+     * Progress is delivered with current url of clients, see {@link #setUrl(String)}.
+     */
+    private final class UiListenerHandler extends Handler implements CacheProgressListener {
 
-        private final String url;
-        private final List<CacheListener> listeners;
+        private static final int MSG_DISPATCH = 1;
 
-        public UiListenerHandler(String url, List<CacheListener> listeners) {
+        private final List<CacheListener> listeners;
+        private final long interval;
+        // latest progress not delivered yet, written by source readers
+        private File file;
+        private int percents = -1;
+        private long bytes = -1;
+        private long totalBytes = -1;
+        private boolean scheduled;
+        private long dispatchTime;
+
+        public UiListenerHandler(List<CacheListener> listeners, long interval) {
             super(Looper.getMainLooper());
-            this.url = url;
             this.listeners = listeners;
+            this.interval = interval;
         }
 
         @Override
         public void onCacheAvailable(File file, String url, int percentsAvailable) {
-            Message message = obtainMessage();
-            message.arg1 = percentsAvailable;
-            message.obj = file;
-            sendMessage(message);
+            synchronized (this) {
+                this.file = file;
+                this.percents = percentsAvailable;
+            }
+            schedule(percentsAvailable == 100);
+        }
+
+        @Override
+        public void onCacheProgress(File file, String url, long bytesAvailable, long totalBytes) {
+            synchronized (this) {
+                this.file = file;
+                this.bytes = bytesAvailable;
+                this.totalBytes = totalBytes;
+            }
+            schedule(totalBytes >= 0 && bytesAvailable >= totalBytes);
+        }
+
+        private synchronized void schedule(boolean immediately) {
+            if (listeners.isEmpty() || scheduled && !immediately) {
+                return; // scheduled message delivers latest progress
+            }
+            if (scheduled) {
+                removeMessages(MSG_DISPATCH);
+            }
+            long delay = immediately ? 0 : Math.max(0, dispatchTime + interval - SystemClock.uptimeMillis());
+            scheduled = true;
+            sendEmptyMessageDelayed(MSG_DISPATCH, delay);
         }
 
         @Override
         public void handleMessage(Message msg) {
-            for (CacheListener cacheListener : listeners) {
-                cacheListener.onCacheAvailable((File) msg.obj, url, msg.arg1);
+            File file;
+            int percents;
+            long bytes;
+            long totalBytes;
+            synchronized (this) {
+                scheduled = false;
+                dispatchTime = SystemClock.uptimeMillis();
+                file = this.file;
+                percents = this.percents;
+                bytes = this.bytes;
+                totalBytes = this.totalBytes;
+                this.percents = -1;
+                this.bytes = -1;
+            }
+            String url = HttpProxyCacheServerClients.this.url;
+            if (percents >= 0) {
+                for (CacheListener cacheListener : listeners) {
+                    cacheListener.onCacheAvailable(file, url, percents);
+                }
+            }
+            if (bytes >= 0) {
+                for (CacheListener cacheListener : listeners) {
+                    if (cacheListener instanceof CacheProgressListener) {
+                        ((CacheProgressListener) cacheListener).onCacheProgress(file, url, bytes, totalBytes);
+                    }
+                }
             }
         }
     }
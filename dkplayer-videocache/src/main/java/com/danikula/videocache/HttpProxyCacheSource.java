@@ -0,0 +1,73 @@
+package com.danikula.videocache;
+
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * {@link Source} reading data through {@link HttpProxyCache}, so read data is cached without requests to proxy server.
+ * <p>
+ * Like request of player, range too far from data cached by not sparse cache is read from source bypassing cache
+ * (see {@link HttpProxyCache#isUseCache(long)}), e.g. mp4 index stored at the end of file.
+ */
+final class HttpProxyCacheSource implements Source {
+
+    private final HttpProxyCache proxyCache;
+    private volatile HttpUrlSource sourceNoCache;
+    private long offset;
+    private long end;
+
+    HttpProxyCacheSource(HttpProxyCache proxyCache) {
+        this.proxyCache = checkNotNull(proxyCache);
+    }
+
+    @Override
+    public void open(long offset) throws ProxyCacheException {
+        open(offset, -1);
+    }
+
+    @Override
+    public void open(long offset, long length) throws ProxyCacheException {
+        close();
+        this.offset = offset;
+        this.end = length >= 0 ? offset + length : -1;
+        if (!proxyCache.isUseCache(offset)) {
+            HttpUrlSource source = proxyCache.newSourceNoCache();
+            sourceNoCache = source;
+            source.open(offset, length);
+        }
+    }
+
+    @Override
+    public long length() throws ProxyCacheException {
+        return proxyCache.getWholeContent().end;
+    }
+
+    @Override
+    public int read(byte[] buffer) throws ProxyCacheException {
+        HttpUrlSource source = sourceNoCache;
+        if (source != null) {
+            int readBytes = source.read(buffer);
+            if (readBytes > 0) {
+                proxyCache.throttle(readBytes);
+            }
+            return readBytes;
+        }
+        if (end >= 0 && offset >= end) {
+            return -1;
+        }
+        int length = end >= 0 ? (int) Math.min(buffer.length, end - offset) : buffer.length;
+        int readBytes = proxyCache.read(buffer, offset, length);
+        if (readBytes > 0) {
+            offset += readBytes;
+        }
+        return readBytes;
+    }
+
+    @Override
+    public void close() throws ProxyCacheException {
+        HttpUrlSource source = sourceNoCache;
+        sourceNoCache = null;
+        if (source != null) {
+            source.close();
+        }
+    }
+}
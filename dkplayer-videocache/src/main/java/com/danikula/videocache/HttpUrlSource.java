@@ -6,36 +6,46 @@ import com.danikula.videocache.headers.EmptyHeadersInjector;
 import com.danikula.videocache.headers.HeaderInjector;
 import com.danikula.videocache.sourcestorage.SourceInfoStorage;
 import com.danikula.videocache.sourcestorage.SourceInfoStorageFactory;
+import com.danikula.videocache.transport.DefaultUpstreamTransport;
+import com.danikula.videocache.transport.UpstreamTransport;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.HashMap;
 import java.util.Map;
 
 import static com.danikula.videocache.Preconditions.checkNotNull;
 import static com.danikula.videocache.ProxyCacheUtils.DEFAULT_BUFFER_SIZE;
-import static java.net.HttpURLConnection.HTTP_MOVED_PERM;
-import static java.net.HttpURLConnection.HTTP_MOVED_TEMP;
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static java.net.HttpURLConnection.HTTP_PARTIAL;
-import static java.net.HttpURLConnection.HTTP_SEE_OTHER;
 
 /**
  * {@link Source} that uses http resource as source for {@link ProxyCache}.
+ * <p>
+ * Request for data from offset may be made conditional by validator of cached data (see {@link #setIfRange(String)}),
+ * so server returns whole data instead of range if resource is changed since data is cached.
+ * Stored info of resource may be revalidated by conditional request, see {@link #revalidate()}.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
 public class HttpUrlSource implements Source {
 
-    private static final int MAX_REDIRECTS = 5;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
     private final SourceInfoStorage sourceInfoStorage;
     private final HeaderInjector headerInjector;
+    private final UpstreamTransport transport;
     private SourceInfo sourceInfo;
     private HttpURLConnection connection;
     private InputStream inputStream;
+    private long unreadBytes;
+    private String ifRange;
+    private String validator;
+    private boolean changed;
 
     public HttpUrlSource(String url) {
         this(url, SourceInfoStorageFactory.newEmptySourceInfoStorage());
@@ -46,8 +56,13 @@ public class HttpUrlSource implements Source {
     }
 
     public HttpUrlSource(String url, SourceInfoStorage sourceInfoStorage, HeaderInjector headerInjector) {
+        this(url, sourceInfoStorage, headerInjector, new DefaultUpstreamTransport());
+    }
+
+    public HttpUrlSource(String url, SourceInfoStorage sourceInfoStorage, HeaderInjector headerInjector, UpstreamTransport transport) {
         this.sourceInfoStorage = checkNotNull(sourceInfoStorage);
         this.headerInjector = checkNotNull(headerInjector);
+        this.transport = checkNotNull(transport);
         SourceInfo sourceInfo = sourceInfoStorage.get(url);
         this.sourceInfo = sourceInfo != null ? sourceInfo :
                 new SourceInfo(url, Integer.MIN_VALUE, ProxyCacheUtils.getSupposablyMime(url));
@@ -57,6 +72,7 @@ public class HttpUrlSource implements Source {
         this.sourceInfo = source.sourceInfo;
         this.sourceInfoStorage = source.sourceInfoStorage;
         this.headerInjector = source.headerInjector;
+        this.transport = source.transport;
     }
 
     @Override
@@ -69,22 +85,160 @@ public class HttpUrlSource implements Source {
 
     @Override
     public void open(long offset) throws ProxyCacheException {
+        open(offset, -1);
+    }
+
+    @Override
+    public void open(long offset, long length) throws ProxyCacheException {
         try {
-            connection = openConnection(offset, -1);
+            connection = openConnection(offset, length, -1);
             String mime = connection.getContentType();
             inputStream = new BufferedInputStream(connection.getInputStream(), DEFAULT_BUFFER_SIZE);
-            long length = readSourceAvailableBytes(connection, offset, connection.getResponseCode());
-            this.sourceInfo = new SourceInfo(sourceInfo.url, length, mime);
+            int responseCode = connection.getResponseCode();
+            unreadBytes = getContentLength(connection);
+            validator = readValidator(connection);
+            changed = offset > 0 && responseCode == HTTP_OK && ifRange != null && !ifRange.equals(validator);
+            if (offset > 0 && responseCode == HTTP_OK && !changed) {
+                // server ignores range, skip data before offset instead of returning it as requested one
+                skipFully(inputStream, offset);
+                unreadBytes = unreadBytes >= 0 ? unreadBytes - offset : -1;
+            }
+            long sourceLength = readSourceAvailableBytes(connection, changed ? 0 : offset, responseCode);
+            this.sourceInfo = newSourceInfo(connection, sourceLength, mime);
             this.sourceInfoStorage.put(sourceInfo.url, sourceInfo);
         } catch (IOException e) {
             throw new ProxyCacheException("Error opening connection for " + sourceInfo.url + " with offset " + offset, e);
         }
     }
 
+    /**
+     * Sets validator (ETag or Last-Modified) of cached data to make next requests for data from offset conditional.
+     *
+     * @param validator a validator of cached data or {@code null} to make unconditional requests.
+     */
+    public void setIfRange(String validator) {
+        this.ifRange = validator;
+    }
+
+    /**
+     * Returns validator of resource received with the last response.
+     *
+     * @return strong ETag or Last-Modified of resource, {@code null} if server doesn't send any of them.
+     */
+    public String getValidator() {
+        return validator;
+    }
+
+    /**
+     * Returns {@code true} if resource is changed since validator passed to {@link #setIfRange(String)}:
+     * opened source returns whole data from the beginning instead of requested range.
+     *
+     * @return {@code true} if resource is changed.
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Checks if resource is changed since its info was stored: info is requested conditionally by stored ETag
+     * or Last-Modified. Info of not changed resource is stored with new validation time. Info of changed resource
+     * is updated but not stored, it should be stored by caller after dropping data cached for previous version.
+     *
+     * @return {@code true} if resource is not changed, {@code false} if it is changed.
+     * @throws ProxyCacheException if info of resource can't be fetched.
+     */
+    public synchronized boolean revalidate() throws ProxyCacheException {
+        SourceInfo storedInfo = sourceInfo;
+        HeaderInjector injector = headerInjector;
+        if (storedInfo.etag != null) {
+            injector = new ExtraHeaderInjector(headerInjector, "If-None-Match", storedInfo.etag);
+        } else if (storedInfo.lastModified != null) {
+            injector = new ExtraHeaderInjector(headerInjector, "If-Modified-Since", storedInfo.lastModified);
+        }
+        int responseCode;
+        try {
+            responseCode = requestContentInfo(injector);
+        } catch (IOException e) {
+            throw new ProxyCacheException("Error revalidating " + storedInfo.url, e);
+        }
+        if (responseCode >= HTTP_BAD_REQUEST && responseCode != HTTP_RANGE_NOT_SATISFIABLE) {
+            sourceInfo = storedInfo;
+            throw new ProxyCacheException("Error revalidating " + storedInfo.url + ": response code is " + responseCode);
+        }
+        boolean notChanged = responseCode == HTTP_NOT_MODIFIED || isSameVersion(storedInfo, sourceInfo);
+        if (notChanged) {
+            SourceInfo actualInfo = responseCode == HTTP_NOT_MODIFIED ? storedInfo : sourceInfo;
+            sourceInfo = new SourceInfo(actualInfo.url, actualInfo.length, actualInfo.mime, actualInfo.etag,
+                    actualInfo.lastModified, System.currentTimeMillis());
+            sourceInfoStorage.put(sourceInfo.url, sourceInfo);
+        }
+        return notChanged;
+    }
+
+    SourceInfo getSourceInfo() {
+        return sourceInfo;
+    }
+
+    private SourceInfo newSourceInfo(HttpURLConnection connection, long length, String mime) {
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        SourceInfo actualInfo = new SourceInfo(sourceInfo.url, length, mime, etag, lastModified, 0);
+        // validation time of the same version is kept, so unchanged info is not rewritten on every request
+        boolean keepTime = sourceInfo.validatedTime > 0 && isSameVersion(sourceInfo, actualInfo);
+        long validatedTime = keepTime ? sourceInfo.validatedTime : System.currentTimeMillis();
+        return new SourceInfo(sourceInfo.url, length, mime, etag, lastModified, validatedTime);
+    }
+
+    private boolean isSameVersion(SourceInfo first, SourceInfo second) {
+        if (first.length != second.length) {
+            return false;
+        }
+        if (first.etag != null && second.etag != null) {
+            return first.etag.equals(second.etag);
+        }
+        if (first.lastModified != null && second.lastModified != null) {
+            return first.lastModified.equals(second.lastModified);
+        }
+        return true;
+    }
+
+    private String readValidator(HttpURLConnection connection) {
+        // weak ETag can't be used in If-Range
+        String etag = connection.getHeaderField("ETag");
+        return etag != null && !etag.startsWith("W/") ? etag : connection.getHeaderField("Last-Modified");
+    }
+
+    private void skipFully(InputStream inputStream, long count) throws IOException {
+        while (count > 0) {
+            long skipped = inputStream.skip(count);
+            if (skipped <= 0) {
+                throw new IOException("Error skipping " + count + " bytes of " + sourceInfo.url);
+            }
+            count -= skipped;
+        }
+    }
+
     private long readSourceAvailableBytes(HttpURLConnection connection, long offset, int responseCode) throws IOException {
         long contentLength = getContentLength(connection);
-        return responseCode == HTTP_OK ? contentLength
-                : responseCode == HTTP_PARTIAL ? contentLength + offset : sourceInfo.length;
+        if (responseCode == HTTP_PARTIAL) {
+            // response for bounded range contains only part of data, total length is in Content-Range
+            long totalLength = getContentRangeTotal(connection);
+            return totalLength >= 0 ? totalLength : contentLength + offset;
+        }
+        return responseCode == HTTP_OK ? contentLength : sourceInfo.length;
+    }
+
+    private long getContentRangeTotal(HttpURLConnection connection) {
+        String contentRange = connection.getHeaderField("Content-Range");
+        int slashIndex = contentRange == null ? -1 : contentRange.lastIndexOf('/');
+        if (slashIndex == -1) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slashIndex + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1; // unknown total length: "bytes 0-99/*"
+        }
     }
 
     private long getContentLength(HttpURLConnection connection) {
@@ -95,19 +249,9 @@ public class HttpUrlSource implements Source {
     @Override
     public void close() throws ProxyCacheException {
         if (connection != null) {
-            try {
-                connection.disconnect();
-            } catch (NullPointerException | IllegalArgumentException e) {
-                String message = "Wait... but why? WTF!? " +
-                        "Really shouldn't happen any more after fixing https://github.com/danikula/AndroidVideoCache/issues/43. " +
-                        "If you read it on your device log, please, notify me danikula@gmail.com or create issue here " +
-                        "https://github.com/danikula/AndroidVideoCache/issues.";
-                throw new RuntimeException(message, e);
-            } catch (ArrayIndexOutOfBoundsException e) {
-                Logger.error("Error closing connection correctly. Should happen only on Android L. " +
-                        "If anybody know how to fix it, please visit https://github.com/danikula/AndroidVideoCache/issues/88. " +
-                        "Until good solution is not know, just ignore this issue.");
-            }
+            // connection with completely read response may be reused by transport
+            transport.release(connection, unreadBytes == 0);
+            connection = null;
         }
     }
 
@@ -117,7 +261,13 @@ public class HttpUrlSource implements Source {
             throw new ProxyCacheException("Error reading data from " + sourceInfo.url + ": connection is absent!");
         }
         try {
-            return inputStream.read(buffer, 0, buffer.length);
+            int read = inputStream.read(buffer, 0, buffer.length);
+            if (read == -1) {
+                unreadBytes = 0;
+            } else if (unreadBytes > 0) {
+                unreadBytes -= read;
+            }
+            return read;
         } catch (InterruptedIOException e) {
             throw new InterruptedProxyCacheException("Reading source " + sourceInfo.url + " is interrupted", e);
         } catch (IOException e) {
@@ -127,61 +277,56 @@ public class HttpUrlSource implements Source {
 
     private void fetchContentInfo() throws ProxyCacheException {
         Logger.debug("Read content info from " + sourceInfo.url);
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
         try {
-            urlConnection = openConnection(0, 10000);
-            long length = getContentLength(urlConnection);
-            String mime = urlConnection.getContentType();
-            inputStream = urlConnection.getInputStream();
-            this.sourceInfo = new SourceInfo(sourceInfo.url, length, mime);
+            requestContentInfo(headerInjector);
             this.sourceInfoStorage.put(sourceInfo.url, sourceInfo);
             Logger.debug("Source info fetched: " + sourceInfo);
         } catch (IOException e) {
             Logger.error("Error fetching info from " + sourceInfo.url);
-        } finally {
-            ProxyCacheUtils.close(inputStream);
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
         }
     }
 
-    private HttpURLConnection openConnection(long offset, int timeout) throws IOException, ProxyCacheException {
-        HttpURLConnection connection;
-        boolean redirected;
-        int redirectCount = 0;
-        String url = this.sourceInfo.url;
-        do {
-            Logger.debug("Open connection " + (offset > 0 ? " with offset " + offset : "") + " to " + url);
-            connection = (HttpURLConnection) new URL(url).openConnection();
-            injectCustomHeaders(connection, url);
-            if (offset > 0) {
-                connection.setRequestProperty("Range", "bytes=" + offset + "-");
-            }
-            if (timeout > 0) {
-                connection.setConnectTimeout(timeout);
-                connection.setReadTimeout(timeout);
+    private int requestContentInfo(HeaderInjector injector) throws IOException, ProxyCacheException {
+        HttpURLConnection urlConnection = null;
+        boolean reusable = false;
+        try {
+            // request the first byte only: response is read completely, so connection may be reused for reading data
+            urlConnection = transport.execute(sourceInfo.url, "bytes=0-0", injector, 10000);
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode == HTTP_NOT_MODIFIED) {
+                // response to conditional request has no body and info
+                reusable = true;
+                return responseCode;
             }
-            int code = connection.getResponseCode();
-            redirected = code == HTTP_MOVED_PERM || code == HTTP_MOVED_TEMP || code == HTTP_SEE_OTHER;
-            if (redirected) {
-                url = connection.getHeaderField("Location");
-                redirectCount++;
-                connection.disconnect();
+            boolean partial = responseCode == HTTP_PARTIAL || responseCode == HTTP_RANGE_NOT_SATISFIABLE;
+            long length = partial ? getContentRangeTotal(urlConnection) : getContentLength(urlConnection);
+            String mime = urlConnection.getContentType();
+            validator = readValidator(urlConnection);
+            if (responseCode == HTTP_PARTIAL) {
+                InputStream inputStream = urlConnection.getInputStream();
+                while (inputStream.read() != -1) {
+                    // read body of a few bytes up to end
+                }
+                reusable = true;
             }
-            if (redirectCount > MAX_REDIRECTS) {
-                throw new ProxyCacheException("Too many redirects: " + redirectCount);
+            this.sourceInfo = newSourceInfo(urlConnection, length, mime);
+            return responseCode;
+        } finally {
+            if (urlConnection != null) {
+                transport.release(urlConnection, reusable);
             }
-        } while (redirected);
-        return connection;
+        }
     }
 
-    private void injectCustomHeaders(HttpURLConnection connection, String url) {
-        Map<String, String> extraHeaders = headerInjector.addHeaders(url);
-        for (Map.Entry<String, String> header : extraHeaders.entrySet()) {
-            connection.setRequestProperty(header.getKey(), header.getValue());
+    private HttpURLConnection openConnection(long offset, long length, int timeout) throws IOException, ProxyCacheException {
+        String range = null;
+        if (length > 0) {
+            range = "bytes=" + offset + "-" + (offset + length - 1);
+        } else if (offset > 0) {
+            range = "bytes=" + offset + "-";
         }
+        HeaderInjector injector = range != null && ifRange != null ? new ExtraHeaderInjector(headerInjector, "If-Range", ifRange) : headerInjector;
+        return transport.execute(sourceInfo.url, range, injector, timeout);
     }
 
     public synchronized String getMime() throws ProxyCacheException {
@@ -199,4 +344,24 @@ public class HttpUrlSource implements Source {
     public String toString() {
         return "HttpUrlSource{sourceInfo='" + sourceInfo + "}";
     }
+
+    private static final class ExtraHeaderInjector implements HeaderInjector {
+
+        private final HeaderInjector headerInjector;
+        private final String name;
+        private final String value;
+
+        ExtraHeaderInjector(HeaderInjector headerInjector, String name, String value) {
+            this.headerInjector = headerInjector;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public Map<String, String> addHeaders(String url) {
+            Map<String, String> headers = new HashMap<>(headerInjector.addHeaders(url));
+            headers.put(name, value);
+            return headers;
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package com.danikula.videocache;
+
+import java.io.File;
+
+/**
+ * Listener of proxy metrics, see {@link HttpProxyCacheServer#registerMetricsListener(MetricsListener)}.
+ * <p>
+ * Methods are called by threads serving requests and trimming cache, so implementation should be fast and must not block.
+ */
+public interface MetricsListener {
+
+    /**
+     * Called when response is finished or aborted by client.
+     *
+     * @param request metrics of served request.
+     */
+    void onRequestServed(RequestMetrics request);
+
+    /**
+     * Called when cached file is deleted because cache exceeds its limits.
+     *
+     * @param file a deleted file.
+     * @param size a size of deleted file in bytes.
+     */
+    void onCacheFileEvicted(File file, long size);
+}
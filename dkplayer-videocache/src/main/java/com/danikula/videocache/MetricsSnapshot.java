@@ -0,0 +1,50 @@
+package com.danikula.videocache;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Snapshot of metrics of {@link HttpProxyCacheServer} since it is started, see {@link HttpProxyCacheServer#getMetrics()}.
+ */
+public final class MetricsSnapshot {
+
+    /**
+     * Time of snapshot in milliseconds.
+     */
+    public final long time;
+    /**
+     * Traffic of all urls.
+     */
+    public final TrafficMetrics total;
+    /**
+     * Traffic of recently used urls, the most recently used url last. Urls with the same cache key are counted together
+     * by the last used url, see {@link HttpProxyCacheServer.Builder#cacheKeyGenerator(com.danikula.videocache.key.CacheKeyGenerator)}.
+     */
+    public final List<TrafficMetrics> urls;
+    /**
+     * Count of cached files deleted because cache exceeds its limits.
+     */
+    public final long evictedFiles;
+    /**
+     * Total size in bytes of cached files deleted because cache exceeds its limits.
+     */
+    public final long evictedBytes;
+
+    MetricsSnapshot(long time, TrafficMetrics total, List<TrafficMetrics> urls, long evictedFiles, long evictedBytes) {
+        this.time = time;
+        this.total = total;
+        this.urls = Collections.unmodifiableList(urls);
+        this.evictedFiles = evictedFiles;
+        this.evictedBytes = evictedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "total=" + total +
+                ", urls=" + urls.size() +
+                ", evictedFiles=" + evictedFiles +
+                ", evictedBytes=" + evictedBytes +
+                '}';
+    }
+}
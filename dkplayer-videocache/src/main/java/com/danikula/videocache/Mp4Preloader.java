@@ -0,0 +1,155 @@
+package com.danikula.videocache;
+
+import com.danikula.videocache.mp4.Mp4Index;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Preloads first seconds of mp4 video into cache of {@link HttpProxyCacheServer}.
+ * <p>
+ * Index of video ({@code moov} box) is read to find exact ranges of file needed to play first seconds of video,
+ * so preloaded size depends on bitrate of video, not on fixed count of bytes. {@code moov} stored at the end of file
+ * is preloaded as well. Only these ranges are read directly through cache of proxy, without requests to proxy server.
+ * Source is read with bandwidth limit of preloading (see {@link HttpProxyCacheServer.Builder#preloading(int, long)})
+ * until player requests the same video.
+ * <p>
+ * Ranges at any offset can be cached only by sparse cache (see {@link HttpProxyCacheServer.Builder#sparseCache(boolean)}),
+ * otherwise data from the beginning of file up to the end of the last needed sample is preloaded.
+ * If file is not mp4 or its index can't be read, first {@link #FALLBACK_PRELOAD_SIZE} bytes are preloaded.
+ * <p>
+ * Method {@link #preload()} blocks until data is read, so it should be called in background thread.
+ */
+public class Mp4Preloader {
+
+    public static final int FALLBACK_PRELOAD_SIZE = 512 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final HttpProxyCacheServer proxy;
+    private final String url;
+    private final int seconds;
+    private volatile Source source;
+    private volatile boolean cancelled;
+    private Thread preloadingThread;
+
+    /**
+     * @param proxy   a proxy to preload video into its cache.
+     * @param url     an original url of video.
+     * @param seconds a duration of video to be preloaded in seconds, must be positive.
+     */
+    public Mp4Preloader(HttpProxyCacheServer proxy, String url, int seconds) {
+        Preconditions.checkArgument(seconds > 0, "Preload duration must be positive!");
+        this.proxy = Preconditions.checkNotNull(proxy);
+        this.url = Preconditions.checkNotNull(url);
+        this.seconds = seconds;
+    }
+
+    /**
+     * Reads index of video and then its first seconds through cache of proxy.
+     *
+     * @return {@code true} if data is preloaded or video is already cached, {@code false} if preloading is cancelled or failed.
+     */
+    public boolean preload() {
+        if (proxy.isCached(url)) {
+            return true;
+        }
+        synchronized (this) {
+            if (cancelled) {
+                return false;
+            }
+            preloadingThread = Thread.currentThread();
+        }
+        try {
+            HttpProxyCacheServerClients clients = proxy.getClients(url);
+            HttpProxyCache proxyCache = clients.acquirePreloadProxyCache(proxy.getPreloadBandwidthLimiter());
+            try {
+                source = new HttpProxyCacheSource(proxyCache);
+                return preloadRanges();
+            } finally {
+                clients.releasePreloadProxyCache();
+            }
+        } catch (ProxyCacheException e) {
+            if (!cancelled) {
+                Logger.warn("Error preloading " + url + ": " + e.getMessage());
+            }
+            return false;
+        } finally {
+            synchronized (this) {
+                preloadingThread = null;
+                if (cancelled) {
+                    // clear interruption made by cancel(), thread may be reused for other tasks
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops preloading. Method {@link #preload()} returns as soon as possible.
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+            // wakes up thread waiting for data to be cached
+            if (preloadingThread != null) {
+                preloadingThread.interrupt();
+            }
+        }
+        Source source = this.source;
+        if (source != null) {
+            try {
+                source.close();
+            } catch (ProxyCacheException e) {
+                Logger.warn("Error closing source of cancelled preloading " + url);
+            }
+        }
+    }
+
+    private boolean preloadRanges() throws ProxyCacheException {
+        List<ByteRange> ranges = getRanges();
+        for (ByteRange range : ranges) {
+            if (!read(range)) {
+                Logger.debug("Preloading " + url + " is cancelled");
+                return false;
+            }
+        }
+        Logger.debug("First " + seconds + " seconds of " + url + " are preloaded: " + ranges);
+        return true;
+    }
+
+    private List<ByteRange> getRanges() throws ProxyCacheException {
+        Mp4Index index;
+        List<ByteRange> ranges;
+        try {
+            index = Mp4Index.read(source);
+            ranges = index.getRanges(seconds * 1000L);
+        } catch (ProxyCacheException e) {
+            if (cancelled) {
+                throw e;
+            }
+            Logger.debug("Can't read mp4 index of " + url + ", preload first bytes. " + e.getMessage());
+            return Collections.singletonList(new ByteRange(0, FALLBACK_PRELOAD_SIZE));
+        }
+        if (proxy.isSparseCache() || ranges.isEmpty()) {
+            return ranges;
+        }
+        // not sparse cache can't store data at any offset, moov at the end of file is read by player anyway
+        int lastRange = index.isMoovAtEnd() && ranges.size() > 1 ? ranges.size() - 2 : ranges.size() - 1;
+        return Collections.singletonList(new ByteRange(0, ranges.get(lastRange).end));
+    }
+
+    private boolean read(ByteRange range) throws ProxyCacheException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = range.length();
+        try {
+            source.open(range.start, remaining);
+            int readBytes;
+            while (!cancelled && remaining > 0 && (readBytes = source.read(buffer)) != -1) {
+                remaining -= readBytes;
+            }
+        } finally {
+            source.close();
+        }
+        return !cancelled;
+    }
+}
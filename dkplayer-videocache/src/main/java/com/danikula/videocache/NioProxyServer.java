@@ -0,0 +1,650 @@
+package com.danikula.videocache;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.danikula.videocache.Preconditions.checkNotNull;
+import static com.danikula.videocache.ProxyCacheUtils.DEFAULT_BUFFER_SIZE;
+
+/**
+ * Non-blocking engine for {@link HttpProxyCacheServer}.
+ * <p>
+ * Connections are accepted by {@link ServerSocketChannel} and multiplexed over a few io threads, each one with own {@link Selector}.
+ * Io threads read requests and write cached data without blocking: data stored in cache file is transferred
+ * to socket by {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}. A connection waiting
+ * for data that is not cached yet doesn't hold any thread, it is resumed by {@link ProxyCache.SourceDataObserver}
+ * when source reader writes data at offset the connection waits for.
+ * <p>
+ * Work that may block is done by bounded pools of worker threads. Source info is fetched by {@link #WORKER_THREADS} threads.
+ * Requests that bypass cache (and HLS playlists) are served in blocking mode as blocking engine does: such response holds
+ * one of {@link #BLOCKING_RESPONSE_THREADS} threads until it is written, next ones are queued. Connection is returned to
+ * selector after response, so idle persistent connection doesn't hold a thread.
+ * <p>
+ * Persistent connections are supported: after response is written connection waits for next request,
+ * requests pipelined by client are kept in request buffer. Idle connection is closed after {@link #KEEP_ALIVE_TIMEOUT}.
+ */
+final class NioProxyServer {
+
+    private static final int REQUEST_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_CHUNKS_PER_WRITE = 16;
+    private static final long SELECT_TIMEOUT = 1000;
+    private static final long KEEP_ALIVE_TIMEOUT = 5 * 1000;
+    private static final int WORKER_THREADS = 4;
+    private static final int BLOCKING_RESPONSE_THREADS = 8;
+
+    private final HttpProxyCacheServer server;
+    private final ServerSocketChannel serverChannel;
+    private final IoLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS);
+    private final ExecutorService blockingWorkers = Executors.newFixedThreadPool(BLOCKING_RESPONSE_THREADS);
+    private final int port;
+    private volatile boolean stopped;
+
+    NioProxyServer(HttpProxyCacheServer server, InetAddress address, int ioThreadsCount) throws IOException {
+        this.server = checkNotNull(server);
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.socket().bind(new InetSocketAddress(address, 0), 8);
+        this.serverChannel.configureBlocking(false);
+        this.port = serverChannel.socket().getLocalPort();
+        this.loops = new IoLoop[ioThreadsCount];
+        for (int i = 0; i < ioThreadsCount; i++) {
+            loops[i] = new IoLoop(i);
+        }
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    void start() {
+        for (IoLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    void shutdown() {
+        stopped = true;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            onError(new ProxyCacheException("Error closing server channel", e));
+        }
+        for (IoLoop loop : loops) {
+            loop.shutdown();
+        }
+        workers.shutdownNow();
+        blockingWorkers.shutdownNow();
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                Logger.debug("Accept new channel " + channel);
+                channel.configureBlocking(false);
+                final SocketChannel acceptedChannel = channel;
+                final IoLoop loop = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+                loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        loop.register(acceptedChannel);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            onError(new ProxyCacheException("Error during accepting connection", e));
+        }
+    }
+
+    private void onError(Throwable e) {
+        Logger.error("NioProxyServer error");
+    }
+
+    private static void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Logger.warn("Error closing channel. It seems client have already closed connection.");
+        }
+    }
+
+    private final class IoLoop implements Runnable {
+
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+        private long lastSweepTime;
+
+        IoLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "Proxy io thread #" + index);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                closeChannel(channel);
+                onError(new ProxyCacheException("Error registering channel", e));
+            }
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(SELECT_TIMEOUT);
+                    runTasks();
+                    processSelectedKeys();
+                    resumeStalledConnections();
+                }
+            } catch (IOException e) {
+                onError(new ProxyCacheException("Error during selecting channels", e));
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void runTasks() {
+            // tasks posted while running are executed after next select, it allows cancelled keys to be deregistered
+            for (int count = tasks.size(); count > 0; count--) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    return;
+                }
+                task.run();
+            }
+        }
+
+        private void processSelectedKeys() {
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                if (key.isReadable()) {
+                    connection.onReadable();
+                } else if (key.isWritable()) {
+                    connection.onWritable();
+                }
+            }
+        }
+
+        private void resumeStalledConnections() {
+            // the same guarantee as ProxyCache.read gives: waiting for data never takes more than timeout
+            long now = System.currentTimeMillis();
+            if (now - lastSweepTime < SELECT_TIMEOUT) {
+                return;
+            }
+            lastSweepTime = now;
+            for (SelectionKey key : selector.keys()) {
+                Object attachment = key.attachment();
+                if (key.isValid() && attachment instanceof Connection) {
+                    Connection connection = (Connection) attachment;
+                    connection.resume();
+                    connection.closeIfIdle(now);
+                }
+            }
+        }
+
+        private void closeAll() {
+            for (SelectionKey key : selector.keys()) {
+                Object attachment = key.attachment();
+                if (attachment instanceof Connection) {
+                    ((Connection) attachment).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                onError(new ProxyCacheException("Error closing selector", e));
+            }
+        }
+    }
+
+    private final class Connection implements ProxyCache.SourceDataObserver {
+
+        private final IoLoop loop;
+        private final SocketChannel channel;
+        private final ByteBuffer requestBuffer = ByteBuffer.allocate(REQUEST_BUFFER_SIZE);
+        private final byte[] chunk = new byte[DEFAULT_BUFFER_SIZE];
+        private final ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
+        private final HeadersWriter headers = new HeadersWriter();
+        private final AtomicBoolean resumeScheduled = new AtomicBoolean();
+        private final Runnable resumeTask = new Runnable() {
+            @Override
+            public void run() {
+                resumeScheduled.set(false);
+                resume();
+            }
+        };
+        private SelectionKey key;
+        private HttpProxyCacheServerClients clients;
+        private HttpProxyCache proxyCache;
+        private String playlistUrl;
+        private FileChannel cacheChannel;
+        private ResponseCounter counter;
+        private ByteBuffer out;
+        private long offset;
+        private long end;
+        private boolean headOnly;
+        private boolean keepAlive;
+        private boolean waiting;
+        private long waitingSince;
+        private long idleSince;
+        private volatile boolean closed; // checked by worker threads before touching connection
+
+        Connection(IoLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            this.idleSince = System.currentTimeMillis();
+        }
+
+        void onReadable() {
+            try {
+                int read = channel.read(requestBuffer);
+                if (read == -1) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                Logger.debug("Closing channel… Channel is closed by client.");
+                close();
+                return;
+            }
+            processRequestBuffer();
+        }
+
+        private void processRequestBuffer() {
+            try {
+                int headersEnd = findHeadersEnd();
+                if (headersEnd != -1) {
+                    GetRequest request = new GetRequest(requestBuffer.array(), 0, headersEnd);
+                    // keep requests pipelined after this one
+                    requestBuffer.flip();
+                    requestBuffer.position(headersEnd);
+                    requestBuffer.compact();
+                    idleSince = 0;
+                    key.interestOps(0);
+                    workers.submit(new PrepareResponseRunnable(request));
+                } else if (!requestBuffer.hasRemaining()) {
+                    throw new ProxyCacheException("Request headers are too large");
+                }
+            } catch (ProxyCacheException | IllegalArgumentException e) {
+                onError(new ProxyCacheException("Error reading request", e));
+                close();
+            }
+        }
+
+        private int findHeadersEnd() {
+            byte[] data = requestBuffer.array();
+            for (int i = 1; i < requestBuffer.position(); i++) {
+                if (data[i] == '\n' && (data[i - 1] == '\n' || (i > 1 && data[i - 1] == '\r' && data[i - 2] == '\n'))) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Called by worker thread, may block on fetching source info.
+         */
+        private void prepareResponse(GetRequest request) {
+            if (closed || stopped) {
+                return;
+            }
+            try {
+                Logger.debug("Request to cache proxy:" + request);
+                String url = ProxyCacheUtils.decode(request.uri);
+                HlsPlaylistProxy hlsProxy = server.getHlsProxy();
+                if (hlsProxy != null && hlsProxy.isPlaylist(url)) {
+                    // playlist is tiny, it is written by worker thread in the same way as blocking engine does
+                    playlistUrl = url;
+                    loop.execute(new HandOverRunnable(request));
+                    return;
+                }
+                if (hlsProxy != null) {
+                    hlsProxy.onSegmentRequest(url);
+                }
+                if (!attachProxyCache(server.getClients(url))) {
+                    return;
+                }
+                List<ByteRange> ranges = proxyCache.resolveRanges(request);
+                boolean bodyless = request.head || ranges != null && ranges.isEmpty();
+                // multipart response is written by worker thread in the same way as blocking engine does
+                boolean multipart = ranges != null && ranges.size() > 1;
+                ByteRange range = bodyless || multipart ? null : ranges == null ? proxyCache.getWholeContent() : ranges.get(0);
+                if (bodyless || range != null && proxyCache.isUseCache(range.start)) {
+                    headOnly = bodyless;
+                    keepAlive = proxyCache.isKeepAlive(request, ranges);
+                    cacheChannel = headOnly ? null : proxyCache.openCacheChannel();
+                    if (!headOnly) {
+                        counter = new ResponseCounter();
+                        counter.startRange(proxyCache.cachedEnd(range.start));
+                    }
+                    proxyCache.writeResponseHeaders(ranges, keepAlive, headers);
+                    loop.execute(new StartStreamingRunnable(range));
+                } else {
+                    loop.execute(new HandOverRunnable(request));
+                }
+            } catch (ProxyCacheException | IOException e) {
+                onError(new ProxyCacheException("Error processing request", e));
+                closeAsync();
+            }
+        }
+
+        /**
+         * Acquires proxy cache for this connection unless it is closed meanwhile (by client, timeout or shutdown),
+         * otherwise proxy cache acquired after closing would never be released.
+         *
+         * @return {@code true} if proxy cache is acquired.
+         */
+        private boolean attachProxyCache(HttpProxyCacheServerClients clients) throws ProxyCacheException {
+            HttpProxyCache proxyCache = clients.acquireProxyCache();
+            synchronized (this) {
+                if (!closed && !stopped) {
+                    this.clients = clients;
+                    this.proxyCache = proxyCache;
+                    return true;
+                }
+            }
+            clients.releaseProxyCache();
+            return false;
+        }
+
+        private void startStreaming(ByteRange range) {
+            if (closed) {
+                return;
+            }
+            this.out = headers.toByteBuffer();
+            this.offset = range != null ? range.start : 0;
+            this.end = range != null ? range.end : 0;
+            onWritable();
+        }
+
+        void onWritable() {
+            try {
+                for (int chunks = 0; chunks < MAX_CHUNKS_PER_WRITE; chunks++) {
+                    if (out.hasRemaining()) {
+                        channel.write(out);
+                        if (out.hasRemaining()) {
+                            key.interestOps(SelectionKey.OP_WRITE);
+                            return;
+                        }
+                    }
+                    if (headOnly || end >= 0 && offset >= end) {
+                        finishResponse();
+                        return;
+                    }
+                    long transferred = proxyCache.transferCached(cacheChannel, offset, end, channel);
+                    if (transferred > 0) {
+                        counter.onSent(offset, transferred);
+                        offset += transferred;
+                        if (proxyCache.cachedLength(offset) > 0 || offset == end) {
+                            key.interestOps(SelectionKey.OP_WRITE);
+                            return;
+                        }
+                        continue;
+                    }
+                    int length = end >= 0 ? (int) Math.min(chunk.length, end - offset) : chunk.length;
+                    int read = proxyCache.tryRead(chunk, offset, length, this);
+                    if (read == -1) {
+                        finishResponse();
+                        return;
+                    }
+                    if (read == 0) {
+                        waiting = true;
+                        waitingSince = System.nanoTime();
+                        key.interestOps(0);
+                        return;
+                    }
+                    counter.onSent(offset, read);
+                    offset += read;
+                    chunkBuffer.clear();
+                    chunkBuffer.limit(read);
+                    out = chunkBuffer;
+                }
+                key.interestOps(SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                Logger.debug("Closing channel… Channel is closed by client.");
+                close();
+            } catch (ProxyCacheException e) {
+                onError(new ProxyCacheException("Error processing request", e));
+                close();
+            }
+        }
+
+        @Override
+        public void onSourceDataAvailable() {
+            if (resumeScheduled.compareAndSet(false, true)) {
+                loop.execute(resumeTask);
+            }
+        }
+
+        void resume() {
+            if (waiting && !closed) {
+                waiting = false;
+                proxyCache.recordStall(System.nanoTime() - waitingSince);
+                onWritable();
+            }
+        }
+
+        void closeIfIdle(long now) {
+            if (idleSince > 0 && now - idleSince > KEEP_ALIVE_TIMEOUT) {
+                Logger.debug("Closing channel… Persistent connection is idle for too long.");
+                close();
+            }
+        }
+
+        private void finishResponse() {
+            if (!keepAlive) {
+                close();
+                return;
+            }
+            releaseProxyCache();
+            waitNextRequest();
+        }
+
+        private void waitNextRequest() {
+            if (closed) {
+                return;
+            }
+            idleSince = System.currentTimeMillis();
+            key.interestOps(SelectionKey.OP_READ);
+            if (requestBuffer.position() > 0) {
+                processRequestBuffer();
+            }
+        }
+
+        /**
+         * Registers channel served by worker thread in blocking mode again to read next request.
+         */
+        private void registerAgain() {
+            if (closed) {
+                return;
+            }
+            try {
+                channel.configureBlocking(false);
+                key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+                waitNextRequest();
+            } catch (IOException e) {
+                onError(new ProxyCacheException("Error registering channel", e));
+                close();
+            }
+        }
+
+        private void handOver(final GetRequest request) {
+            if (closed) {
+                return;
+            }
+            // channel can be switched to blocking mode only after its key is deregistered by selector
+            if (channel.isRegistered()) {
+                key.cancel();
+                loop.execute(new HandOverRunnable(request));
+                return;
+            }
+            try {
+                channel.configureBlocking(true);
+                blockingWorkers.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        processBlocking(request);
+                    }
+                });
+            } catch (IOException e) {
+                onError(new ProxyCacheException("Error switching channel to blocking mode", e));
+                close();
+            }
+        }
+
+        /**
+         * Serves request that bypasses cache on worker thread in the same way as blocking engine does.
+         */
+        private void processBlocking(GetRequest request) {
+            boolean keepAlive = false;
+            try {
+                if (playlistUrl != null) {
+                    keepAlive = server.getHlsProxy().processRequest(request, playlistUrl, channel.socket());
+                } else {
+                    keepAlive = proxyCache.processRequest(request, channel.socket());
+                }
+            } catch (IOException e) {
+                Logger.debug("Closing channel… Channel is closed by client.");
+            } catch (ProxyCacheException e) {
+                onError(new ProxyCacheException("Error processing request", e));
+            } finally {
+                playlistUrl = null;
+                if (keepAlive && !stopped) {
+                    releaseProxyCache();
+                    loop.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            registerAgain();
+                        }
+                    });
+                } else {
+                    close();
+                }
+            }
+        }
+
+        private void closeAsync() {
+            if (stopped) {
+                close(); // io loop doesn't run tasks anymore
+                return;
+            }
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    close();
+                }
+            });
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            closeChannel(channel);
+            releaseProxyCache(); // also unregisters waiter of connection closed while waiting for source data
+        }
+
+        private synchronized void releaseProxyCache() {
+            ProxyCacheUtils.close(cacheChannel);
+            cacheChannel = null;
+            if (proxyCache != null) {
+                if (counter != null) {
+                    proxyCache.onResponseSent(counter);
+                    counter = null;
+                }
+                proxyCache.removeSourceDataObserver(this);
+                clients.releaseProxyCache();
+                proxyCache = null;
+                clients = null;
+                Logger.debug("Opened connections: " + server.getClientsCount());
+            }
+        }
+
+        private final class PrepareResponseRunnable implements Runnable {
+
+            private final GetRequest request;
+
+            PrepareResponseRunnable(GetRequest request) {
+                this.request = request;
+            }
+
+            @Override
+            public void run() {
+                prepareResponse(request);
+            }
+        }
+
+        private final class StartStreamingRunnable implements Runnable {
+
+            private final ByteRange range;
+
+            StartStreamingRunnable(ByteRange range) {
+                this.range = range;
+            }
+
+            @Override
+            public void run() {
+                startStreaming(range);
+            }
+        }
+
+        private final class HandOverRunnable implements Runnable {
+
+            private final GetRequest request;
+
+            HandOverRunnable(GetRequest request) {
+                this.request = request;
+            }
+
+            @Override
+            public void run() {
+                handOver(request);
+            }
+        }
+    }
+}
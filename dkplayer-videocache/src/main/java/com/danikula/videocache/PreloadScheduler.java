@@ -0,0 +1,272 @@
+package com.danikula.videocache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * Preloads first seconds of videos of list (e.g. feed) into cache of {@link HttpProxyCacheServer}.
+ * <p>
+ * Every video is preloaded by {@link Mp4Preloader} directly into cache, without requests to proxy server.
+ * Videos closer to current position of list are preloaded first, at most {@code maxConcurrentPreloads} at the same time
+ * (see {@link HttpProxyCacheServer.Builder#preloading(int, long)}). When closer video is added while all preloads are busy,
+ * preloading of the farthest video is stopped and queued again. Preloading of video at current position is cancelled,
+ * because player reads it anyway.
+ * <p>
+ * Source is read for preloading with bandwidth limit until player requests the same video,
+ * so preloading never competes with played video at full speed.
+ */
+public final class PreloadScheduler {
+
+    private static final int MAX_PRELOADED_URLS = 256;
+
+    private final HttpProxyCacheServer proxy;
+    private final int maxConcurrentPreloads;
+    private final ExecutorService preloadThreads;
+    private final Object lock = new Object();
+    // queued and running tasks guarded by lock
+    private final Map<String, Task> tasks = new HashMap<>();
+    private final Set<String> preloadedUrls;
+    private int currentPosition;
+    private int runningCount;
+    private long tasksCount;
+    private boolean shutdown;
+
+    PreloadScheduler(HttpProxyCacheServer proxy, int maxConcurrentPreloads) {
+        Preconditions.checkArgument(maxConcurrentPreloads > 0, "Concurrent preloads count must be positive number!");
+        this.proxy = checkNotNull(proxy);
+        this.maxConcurrentPreloads = maxConcurrentPreloads;
+        this.preloadThreads = Executors.newFixedThreadPool(maxConcurrentPreloads);
+        this.preloadedUrls = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_PRELOADED_URLS;
+            }
+        });
+    }
+
+    /**
+     * Adds video to be preloaded. Video added again is rescheduled with new position and duration.
+     *
+     * @param url      an original url of video.
+     * @param position a position of video in list, videos closer to current position are preloaded first.
+     * @param seconds  a duration of video to be preloaded in seconds, must be positive.
+     */
+    public void preload(String url, int position, int seconds) {
+        checkNotNull(url, "Url can't be null!");
+        Preconditions.checkArgument(seconds > 0, "Preload duration must be positive!");
+        synchronized (lock) {
+            if (shutdown || isPreloaded(url)) {
+                return;
+            }
+            Task task = tasks.get(url);
+            if (task != null) {
+                if (task.position == position && task.seconds == seconds) {
+                    return;
+                }
+                cancel(task);
+            }
+            if (position == currentPosition) {
+                return;
+            }
+            tasks.put(url, new Task(url, position, seconds, tasksCount++));
+            schedule();
+        }
+    }
+
+    /**
+     * Sets position of played video. Preloading of video at this position is cancelled,
+     * queued videos are reordered by their distance from new position.
+     *
+     * @param position a position of played video in list.
+     */
+    public void setCurrentPosition(int position) {
+        synchronized (lock) {
+            currentPosition = position;
+            for (Task task : new ArrayList<>(tasks.values())) {
+                if (task.position == position) {
+                    cancel(task);
+                }
+            }
+            schedule();
+        }
+    }
+
+    /**
+     * Cancels preloading of video. Running preloading is stopped as soon as possible.
+     *
+     * @param url an original url of video.
+     */
+    public void cancel(String url) {
+        synchronized (lock) {
+            Task task = tasks.get(url);
+            if (task != null) {
+                cancel(task);
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Cancels preloading of all videos.
+     */
+    public void cancelAll() {
+        synchronized (lock) {
+            for (Task task : new ArrayList<>(tasks.values())) {
+                cancel(task);
+            }
+        }
+    }
+
+    /**
+     * Checks if first seconds of video are preloaded by this scheduler or video is fully cached.
+     *
+     * @param url an original url of video.
+     * @return {@code true} if video is preloaded.
+     */
+    public boolean isPreloaded(String url) {
+        synchronized (lock) {
+            if (preloadedUrls.contains(url)) {
+                return true;
+            }
+        }
+        return proxy.isCached(url);
+    }
+
+    void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            cancelAll();
+        }
+        preloadThreads.shutdownNow();
+    }
+
+    private void cancel(Task task) {
+        tasks.remove(task.url);
+        task.cancelled = true;
+        if (task.preloader != null) {
+            task.preloader.cancel();
+        }
+    }
+
+    private void schedule() {
+        while (!shutdown) {
+            Task next = findClosestQueuedTask();
+            if (next == null) {
+                return;
+            }
+            if (runningCount >= maxConcurrentPreloads) {
+                pauseFartherTask(next);
+                return;
+            }
+            start(next);
+        }
+    }
+
+    private void start(Task task) {
+        task.preloader = new Mp4Preloader(proxy, task.url, task.seconds);
+        try {
+            preloadThreads.execute(new PreloadRunnable(task));
+            runningCount++;
+        } catch (RejectedExecutionException e) {
+            tasks.remove(task.url);
+            task.preloader = null;
+        }
+    }
+
+    /**
+     * Stops the farthest running task if it is farther than passed one, stopped task is queued again when it is finished.
+     */
+    private void pauseFartherTask(Task closerTask) {
+        Task farthestTask = null;
+        for (Task task : tasks.values()) {
+            if (task.preloader != null && !task.paused && (farthestTask == null || isCloser(farthestTask, task))) {
+                farthestTask = task;
+            }
+        }
+        if (farthestTask != null && isCloser(closerTask, farthestTask)) {
+            Logger.debug("Pause preloading " + farthestTask.url + " for closer video " + closerTask.url);
+            farthestTask.paused = true;
+            farthestTask.preloader.cancel();
+        }
+    }
+
+    private Task findClosestQueuedTask() {
+        Task closestTask = null;
+        for (Task task : tasks.values()) {
+            if (task.preloader == null && (closestTask == null || isCloser(task, closestTask))) {
+                closestTask = task;
+            }
+        }
+        return closestTask;
+    }
+
+    private boolean isCloser(Task first, Task second) {
+        int firstDistance = Math.abs(first.position - currentPosition);
+        int secondDistance = Math.abs(second.position - currentPosition);
+        return firstDistance < secondDistance || firstDistance == secondDistance && first.order < second.order;
+    }
+
+    private void onFinished(Task task, boolean preloaded) {
+        synchronized (lock) {
+            runningCount--;
+            task.preloader = null;
+            // paused task stays in queue to be continued later, data preloaded before is already cached
+            boolean requeued = task.paused && !task.cancelled && !preloaded;
+            task.paused = false;
+            if (!requeued && tasks.get(task.url) == task) {
+                tasks.remove(task.url);
+            }
+            if (preloaded) {
+                preloadedUrls.add(task.url);
+            }
+            schedule();
+        }
+    }
+
+    private static final class Task {
+
+        private final String url;
+        private final int position;
+        private final int seconds;
+        private final long order;
+        private Mp4Preloader preloader;
+        private boolean paused;
+        private boolean cancelled;
+
+        Task(String url, int position, int seconds, long order) {
+            this.url = url;
+            this.position = position;
+            this.seconds = seconds;
+            this.order = order;
+        }
+    }
+
+    private final class PreloadRunnable implements Runnable {
+
+        private final Task task;
+
+        public PreloadRunnable(Task task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            boolean preloaded = false;
+            try {
+                preloaded = task.preloader.preload();
+            } finally {
+                onFinished(task, preloaded);
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.danikula.videocache;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.danikula.videocache.Preconditions.checkNotNull;
@@ -10,36 +12,81 @@ import static com.danikula.videocache.Preconditions.checkNotNull;
  * Can be used only for sources with persistent data (that doesn't change with time).
  * Method {@link #read(byte[], long, int)} will be blocked while fetching data from source.
  * Useful for streaming something with caching e.g. streaming video/audio etc.
+ * <p/>
+ * If cache is {@link SparseCache} then source is read from the first not cached byte of requested range,
+ * so seeking forward fills a hole in cache instead of waiting for whole data before requested offset.
+ * Sparse cache may also be filled by a few connections at the same time: source is split to chunks that are read
+ * concurrently, chunk the client is waiting for is read first.
+ * <p/>
+ * Source is read by threads of {@link SourceReaderExecutor} that may be shared by a few proxy caches.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
 class ProxyCache {
 
     private static final int MAX_READ_SOURCE_ATTEMPTS = 1;
+    private static final long SPARSE_READER_REACH = 512 * 1024;
+    private static final long MAX_WAIT_TIMEOUT = 1000;
 
     private final Source source;
     private final Cache cache;
-    private final Object wc = new Object();
+    private final SparseCache sparseCache;
+    private final CacheWaiters waiters = new CacheWaiters();
     private final Object stopLock = new Object();
     private final AtomicInteger readSourceErrorsCount;
-    private volatile Thread sourceReaderThread;
+    private final List<ChunkReaderRunnable> chunkReaders = new ArrayList<>();
+    private final SourceReaderExecutor readerExecutor;
+    private final int readConnections;
+    private final long readChunkSize;
+    private volatile SourceReaderRunnable sourceReader;
+    private volatile BandwidthLimiter preloadLimiter;
+    private volatile boolean preloading;
+    private volatile BandwidthGovernor bandwidthGovernor;
+    private volatile TrafficRecorder trafficRecorder;
     private volatile boolean stopped;
     private volatile int percentsAvailable = -1;
+    private volatile long knownSourceLength = -1;
+    private long priorityOffset;
 
     public ProxyCache(Source source, Cache cache) {
+        this(source, cache, new SourceReaderExecutor(1), 1, 0);
+    }
+
+    /**
+     * Creates proxy cache that reads source by a few connections.
+     *
+     * @param source          a source to read data from.
+     * @param cache           a cache to store data. Source is read by a few connections only if cache is {@link SparseCache}.
+     * @param readerExecutor  an executor to run source readers.
+     * @param readConnections max count of connections to read source concurrently.
+     * @param readChunkSize   size of chunk in bytes to be read by one connection.
+     */
+    public ProxyCache(Source source, Cache cache, SourceReaderExecutor readerExecutor, int readConnections, long readChunkSize) {
         this.source = checkNotNull(source);
         this.cache = checkNotNull(cache);
+        this.sparseCache = cache instanceof SparseCache ? (SparseCache) cache : null;
+        this.readerExecutor = checkNotNull(readerExecutor);
         this.readSourceErrorsCount = new AtomicInteger();
+        this.readConnections = readConnections;
+        this.readChunkSize = readChunkSize;
     }
 
     public int read(byte[] buffer, long offset, int length) throws ProxyCacheException {
         ProxyCacheUtils.assertBuffer(buffer, offset, length);
 
-        while (!cache.isCompleted() && cache.available() < (offset + length) && !stopped) {
-            readSourceAsync();
-            waitForSourceData();
+        long stallStart = 0;
+        while (!isCached(offset, length) && !stopped) {
+            stallStart = stallStart == 0 ? System.nanoTime() : stallStart;
+            readSourceAsync(offset);
+            waitForSourceData(offset, length);
             checkReadSourceErrorsCount();
         }
+        if (stallStart != 0) {
+            recordStall(System.nanoTime() - stallStart);
+        }
+        if (isBeyondSource(offset)) {
+            return -1;
+        }
         int read = cache.read(buffer, offset, length);
         if (cache.isCompleted() && percentsAvailable != 100) {
             percentsAvailable = 100;
@@ -48,6 +95,133 @@ class ProxyCache {
         return read;
     }
 
+    /**
+     * Non-blocking version of {@link #read(byte[], long, int)}: reads only data that is already cached.
+     * If data for passed offset is not cached yet then source reading is started and {@code 0} is returned,
+     * passed observer will be notified once when data at this offset is available.
+     *
+     * @return count of read bytes, {@code 0} if data is not available yet or {@code -1} if there is no more data.
+     */
+    public int tryRead(byte[] buffer, long offset, int length, SourceDataObserver observer) throws ProxyCacheException {
+        ProxyCacheUtils.assertBuffer(buffer, offset, length);
+        if (stopped) {
+            throw new ProxyCacheException("Error reading " + source + ": proxy cache is stopped");
+        }
+
+        if (!cache.isCompleted() && cachedLength(offset) == 0) {
+            if (isBeyondSource(offset)) {
+                return -1;
+            }
+            checkReadSourceErrorsCount();
+            readSourceAsync(offset);
+            CacheWaiters.Waiter waiter = waiters.register(offset + 1, observer);
+            if (!cache.isCompleted() && cachedLength(offset) == 0) {
+                return 0;
+            }
+            waiters.unregister(waiter); // data is written while registering
+        }
+        boolean completed = cache.isCompleted();
+        long cachedLength = cachedLength(offset);
+        int readLength = completed ? length : (int) Math.min(length, cachedLength);
+        int read = cache.read(buffer, offset, readLength);
+        if (cache.isCompleted() && percentsAvailable != 100) {
+            percentsAvailable = 100;
+            onCachePercentsAvailableChanged(100);
+        }
+        return read;
+    }
+
+    /**
+     * Returns count of bytes stored in cache contiguously starting from passed offset.
+     *
+     * @param offset an offset to check.
+     * @return count of cached bytes, {@code 0} if byte at passed offset is not cached.
+     * @throws ProxyCacheException if error occur while checking cache.
+     */
+    long cachedLength(long offset) throws ProxyCacheException {
+        return sparseCache != null ? sparseCache.cachedLength(offset) : Math.max(0, cache.available() - offset);
+    }
+
+    /**
+     * Marks source as read only for preloading, such source is read in background with rate limit of preloading.
+     *
+     * @param preloading     {@code true} if data is read only by preloading clients.
+     * @param preloadLimiter a limiter shared with other preloaded sources or {@code null} to preload at full speed.
+     */
+    void setPreloading(boolean preloading, BandwidthLimiter preloadLimiter) {
+        this.preloadLimiter = preloadLimiter;
+        this.preloading = preloading;
+    }
+
+    /**
+     * Sets governor to limit reading of this source while it is read in background.
+     *
+     * @param bandwidthGovernor a governor shared with other sources.
+     */
+    void setBandwidthGovernor(BandwidthGovernor bandwidthGovernor) {
+        this.bandwidthGovernor = bandwidthGovernor;
+    }
+
+    /**
+     * Sets recorder of traffic of this source.
+     *
+     * @param trafficRecorder a recorder of url shared with other proxy caches of the same url.
+     */
+    void setTrafficRecorder(TrafficRecorder trafficRecorder) {
+        this.trafficRecorder = trafficRecorder;
+    }
+
+    /**
+     * @return recorder of traffic of this source or {@code null} if traffic isn't recorded.
+     */
+    TrafficRecorder getTrafficRecorder() {
+        return trafficRecorder;
+    }
+
+    /**
+     * Records waiting of client for data being read from source.
+     *
+     * @param stallNanos a time of waiting in nanoseconds.
+     */
+    void recordStall(long stallNanos) {
+        TrafficRecorder recorder = trafficRecorder;
+        if (recorder != null) {
+            recorder.onStall(stallNanos);
+        }
+    }
+
+    public void removeSourceDataObserver(SourceDataObserver observer) {
+        waiters.unregister(observer);
+    }
+
+    private boolean isCached(long offset, int length) throws ProxyCacheException {
+        if (cache.isCompleted()) {
+            return true;
+        }
+        if (sparseCache == null) {
+            return cache.available() >= offset + length;
+        }
+        long end = waitEnd(offset, length);
+        return end <= offset || sparseCache.cachedLength(offset) >= end - offset;
+    }
+
+    private long waitEnd(long offset, int length) throws ProxyCacheException {
+        if (sparseCache == null) {
+            return offset + length;
+        }
+        // sparse cache may be never completed, so don't wait for bytes beyond source end
+        long sourceLength = source.length();
+        return sourceLength >= 0 ? Math.min(offset + length, sourceLength) : offset + length;
+    }
+
+    private boolean isBeyondSource(long offset) throws ProxyCacheException {
+        if (sparseCache == null || cache.isCompleted()) {
+            return false;
+        }
+        long sourceLength = source.length();
+        return sourceLength >= 0 && offset >= sourceLength;
+    }
+
     private void checkReadSourceErrorsCount() throws ProxyCacheException {
         int errorsCount = readSourceErrorsCount.get();
         if (errorsCount >= MAX_READ_SOURCE_ATTEMPTS) {
@@ -61,42 +235,207 @@ class ProxyCache {
             Logger.debug("Shutdown proxy for " + source);
             try {
                 stopped = true;
-                if (sourceReaderThread != null) {
-                    sourceReaderThread.interrupt();
+                if (sourceReader != null) {
+                    sourceReader.cancel();
                 }
+                cancelChunkReaders();
+                completeIfFullyCached();
                 cache.close();
+                waiters.signalAll();
             } catch (ProxyCacheException e) {
                 onError(e);
             }
         }
     }
 
-    private synchronized void readSourceAsync() throws ProxyCacheException {
-        boolean readingInProgress = sourceReaderThread != null && sourceReaderThread.getState() != Thread.State.TERMINATED;
-        if (!stopped && !cache.isCompleted() && !readingInProgress) {
-            sourceReaderThread = new Thread(new SourceReaderRunnable(), "Source reader for " + source);
-            sourceReaderThread.start();
+    private synchronized void readSourceAsync(long offset) throws ProxyCacheException {
+        boolean readingInProgress = sourceReader != null && !sourceReader.isDone();
+        completeIfFullyCached();
+        if (stopped || cache.isCompleted()) {
+            return;
+        }
+        long readOffset = sparseCache != null ? offset + sparseCache.cachedLength(offset) : cache.available();
+        if (isChunkedReading()) {
+            readChunksAsync(readOffset);
+            return;
+        }
+        if (readingInProgress) {
+            if (sparseCache == null || sourceReader.isReaching(readOffset)) {
+                return;
+            }
+            // user seeks: current reader is too far from requested data, read source from requested offset instead
+            Logger.debug("Restart source reading for " + source + " from " + readOffset);
+            sourceReader.cancelled = true;
+            sourceReader.cancel();
         }
+        sourceReader = new SourceReaderRunnable(newReaderSource(), readOffset);
+        readerExecutor.execute(sourceReader);
     }
 
-    private void waitForSourceData() throws ProxyCacheException {
-        synchronized (wc) {
-            try {
-                wc.wait(1000);
-            } catch (InterruptedException e) {
-                throw new ProxyCacheException("Waiting source data is interrupted!", e);
+    private boolean isChunkedReading() throws ProxyCacheException {
+        return sparseCache != null && readConnections > 1 && source.length() > 0;
+    }
+
+    private void readChunksAsync(long readOffset) throws ProxyCacheException {
+        priorityOffset = readOffset;
+        ChunkReaderRunnable priorityReader = findChunkReader(readOffset);
+        if (priorityReader == null && chunkReaders.size() >= readConnections) {
+            // all connections read data the client doesn't wait for, free one of them for requested data
+            ChunkReaderRunnable farthestReader = findFarthestChunkReader(readOffset);
+            Logger.debug("Abandon chunk [" + farthestReader.start + ", " + farthestReader.end + ") of " + source);
+            farthestReader.abandoned = true;
+        }
+        while (chunkReaders.size() < readConnections) {
+            ChunkReaderRunnable reader = new ChunkReaderRunnable();
+            if (!assignNextChunk(reader)) {
+                return;
             }
+            chunkReaders.add(reader);
+            readerExecutor.execute(reader);
         }
     }
 
-    private void notifyNewCacheDataAvailable(long cacheAvailable, long sourceAvailable) {
-        onCacheAvailable(cacheAvailable, sourceAvailable);
+    /**
+     * Assigns the first not cached and not being read chunk after offset client waits for
+     * (or the first one from the beginning) to passed reader.
+     *
+     * @return {@code true} if there is a chunk to be read.
+     */
+    private synchronized boolean assignNextChunk(ChunkReaderRunnable reader) throws ProxyCacheException {
+        reader.start = reader.end = -1;
+        long sourceLength = source.length();
+        long start = findChunkStart(priorityOffset, sourceLength);
+        start = start >= 0 ? start : findChunkStart(0, sourceLength);
+        if (start < 0) {
+            return false;
+        }
+        long end = Math.min(start + readChunkSize, sourceLength);
+        for (ChunkReaderRunnable chunkReader : chunkReaders) {
+            if (chunkReader.start > start) {
+                end = Math.min(end, chunkReader.start);
+            }
+        }
+        reader.abandoned = false;
+        reader.start = start;
+        reader.position = start;
+        reader.end = end;
+        return true;
+    }
+
+    private long findChunkStart(long offset, long sourceLength) throws ProxyCacheException {
+        while (offset < sourceLength) {
+            long cachedLength = sparseCache.cachedLength(offset);
+            ChunkReaderRunnable reader = findChunkReader(offset);
+            if (cachedLength > 0) {
+                offset += cachedLength;
+            } else if (reader != null) {
+                offset = reader.end;
+            } else {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private ChunkReaderRunnable findChunkReader(long offset) {
+        for (ChunkReaderRunnable reader : chunkReaders) {
+            if (!reader.abandoned && offset >= reader.start && offset < reader.end) {
+                return reader;
+            }
+        }
+        return null;
+    }
+
+    private ChunkReaderRunnable findFarthestChunkReader(long offset) {
+        ChunkReaderRunnable farthestReader = null;
+        long maxDistance = -1;
+        for (ChunkReaderRunnable reader : chunkReaders) {
+            // chunks before offset are the least useful
+            long distance = reader.position < offset ? Long.MAX_VALUE : reader.position - offset;
+            if (distance > maxDistance) {
+                maxDistance = distance;
+                farthestReader = reader;
+            }
+        }
+        return farthestReader;
+    }
+
+    private synchronized void cancelChunkReaders() {
+        // not started reader is removed from list while cancelling
+        for (ChunkReaderRunnable reader : new ArrayList<>(chunkReaders)) {
+            reader.cancel();
+        }
+    }
+
+    private synchronized void onChunkReaderFinished(ChunkReaderRunnable reader) {
+        chunkReaders.remove(reader);
+    }
+
+    /**
+     * Returns source to be used by new source reader.
+     * <p/>
+     * Reader over {@link SparseCache} may be restarted from another offset while previous one is still stopping,
+     * so subclasses using sparse cache should return independent source for every reader.
+     *
+     * @return source for reading data.
+     */
+    protected Source newReaderSource() {
+        return source;
+    }
 
-        synchronized (wc) {
-            wc.notifyAll();
+    /**
+     * Returns key of source to schedule its readers, see {@link BandwidthGovernor#isForeground(String)}.
+     *
+     * @return key of source.
+     */
+    protected String getSourceKey() {
+        return source.toString();
+    }
+
+    /**
+     * Opens source to read data to be cached.
+     * <p/>
+     * Subclasses may check that cached data belongs to the same version of source and clear cache otherwise,
+     * in this case source returns data from the beginning.
+     *
+     * @param source a source to be opened.
+     * @param offset an offset of data to be read.
+     * @param length a count of bytes to be read or negative value to read data until the end of source.
+     * @return an offset of data returned by source, {@code 0} if cache is cleared.
+     * @throws ProxyCacheException if error occur while opening source.
+     */
+    protected long openSource(Source source, long offset, long length) throws ProxyCacheException {
+        source.open(offset, length);
+        return offset;
+    }
+
+    private void waitForSourceData(long offset, int length) throws ProxyCacheException {
+        CacheWaiters.Waiter waiter = waiters.register(waitEnd(offset, length));
+        try {
+            // check again after registration: data may be written before, timeout is just a safety net
+            if (!isCached(offset, length) && !stopped) {
+                waiter.await(MAX_WAIT_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            throw new ProxyCacheException("Waiting source data is interrupted!", e);
+        } finally {
+            waiters.unregister(waiter);
         }
     }
 
+    /**
+     * Notifies about data written at {@code writeOffset} that is cached contiguously up to {@code cachedEnd}.
+     */
+    private void notifyNewCacheDataAvailable(long writeOffset, long cachedEnd, long cacheAvailable, long sourceAvailable) {
+        onCacheAvailable(cacheAvailable, sourceAvailable);
+        waiters.signal(writeOffset, cachedEnd);
+    }
+
+    private void notifySourceReadingFinished(long cacheAvailable, long sourceAvailable) {
+        onCacheAvailable(cacheAvailable, sourceAvailable);
+        waiters.signalAll();
+    }
+
     protected void onCacheAvailable(long cacheAvailable, long sourceLength) {
         boolean zeroLengthSource = sourceLength == 0;
         int percents = zeroLengthSource ? 100 : (int) ((float) cacheAvailable / sourceLength * 100);
@@ -111,33 +450,176 @@ class ProxyCache {
     protected void onCachePercentsAvailableChanged(int percentsAvailable) {
     }
 
-    private void readSource() {
+    private void readSource(SourceReaderRunnable reader) {
+        Source source = reader.source;
+        long sourceAvailable = -1;
+        long offset = reader.startOffset;
+        long startTime = System.nanoTime();
+        long readFromSource = 0;
+        try {
+            boolean reachedCachedData;
+            do {
+                reachedCachedData = false;
+                long openTime = System.nanoTime();
+                offset = openSource(source, offset, -1);
+                reader.position = offset;
+                sourceAvailable = source.length();
+                knownSourceLength = sourceAvailable;
+                byte[] buffer = new byte[ProxyCacheUtils.DEFAULT_BUFFER_SIZE];
+                int readBytes;
+                while ((readBytes = source.read(buffer)) != -1) {
+                    if (openTime != 0) {
+                        recordSourceFirstByte(System.nanoTime() - openTime);
+                        openTime = 0;
+                    }
+                    readFromSource += readBytes;
+                    synchronized (stopLock) {
+                        if (isStopped(reader)) {
+                            return;
+                        }
+                        if (sparseCache != null) {
+                            sparseCache.write(offset, buffer, readBytes);
+                        } else {
+                            cache.append(buffer, readBytes);
+                        }
+                    }
+                    long writeOffset = offset;
+                    offset += readBytes;
+                    reader.position = offset;
+                    long cachedAfter = sparseCache != null ? sparseCache.cachedLength(offset) : 0;
+                    long cacheAvailable = sparseCache != null ? cache.available() : offset;
+                    notifyNewCacheDataAvailable(writeOffset, offset + cachedAfter, cacheAvailable, sourceAvailable);
+                    throttle(readBytes);
+                    if (cachedAfter > 0) {
+                        // filled the hole up to data cached before, continue from the next hole
+                        offset += cachedAfter;
+                        reader.position = offset;
+                        reachedCachedData = true;
+                        closeSource(source);
+                        break;
+                    }
+                }
+            } while (reachedCachedData && (sourceAvailable < 0 || offset < sourceAvailable));
+            tryComplete(source);
+            if (sparseCache == null || cache.isCompleted()) {
+                onSourceRead();
+            }
+        } catch (Throwable e) {
+            if (!reader.cancelled) {
+                readSourceErrorsCount.incrementAndGet();
+            }
+            onError(e);
+        } finally {
+            closeSource(source);
+            recordSourceReading(readFromSource, System.nanoTime() - startTime);
+            notifySourceReadingFinished(sparseCache != null ? cachedAvailableSafely() : offset, sourceAvailable);
+        }
+    }
+
+    private void readChunks(ChunkReaderRunnable reader) {
+        Source source = newReaderSource();
+        byte[] buffer = new byte[ProxyCacheUtils.DEFAULT_BUFFER_SIZE];
         long sourceAvailable = -1;
-        long offset = 0;
+        long startTime = System.nanoTime();
+        long readFromSource = 0;
         try {
-            offset = cache.available();
-            source.open(offset);
-            sourceAvailable = source.length();
-            byte[] buffer = new byte[ProxyCacheUtils.DEFAULT_BUFFER_SIZE];
-            int readBytes;
-            while ((readBytes = source.read(buffer)) != -1) {
-                synchronized (stopLock) {
-                    if (isStopped()) {
-                        return;
+            do {
+                Logger.debug("Read chunk [" + reader.start + ", " + reader.end + ") of " + source);
+                long openTime = System.nanoTime();
+                if (openSource(source, reader.start, reader.end - reader.start) != reader.start) {
+                    // cache is cleared, source returns data from the beginning: assign chunk again
+                    closeSource(source);
+                    continue;
+                }
+                sourceAvailable = source.length();
+                knownSourceLength = sourceAvailable;
+                int readBytes;
+                while (reader.position < reader.end && (readBytes = source.read(buffer)) != -1) {
+                    if (openTime != 0) {
+                        recordSourceFirstByte(System.nanoTime() - openTime);
+                        openTime = 0;
+                    }
+                    readFromSource += readBytes;
+                    int length = (int) Math.min(readBytes, reader.end - reader.position);
+                    synchronized (stopLock) {
+                        if (isStopped()) {
+                            return;
+                        }
+                        if (reader.abandoned) {
+                            break;
+                        }
+                        sparseCache.write(reader.position, buffer, length);
                     }
-                    cache.append(buffer, readBytes);
+                    long writeOffset = reader.position;
+                    reader.position += length;
+                    long cachedEnd = reader.position + sparseCache.cachedLength(reader.position);
+                    notifyNewCacheDataAvailable(writeOffset, cachedEnd, cache.available(), sourceAvailable);
+                    throttle(length);
                 }
-                offset += readBytes;
-                notifyNewCacheDataAvailable(offset, sourceAvailable);
+                if (reader.position == reader.start && !reader.abandoned) {
+                    throw new ProxyCacheException("Source " + source + " returns no data for chunk [" + reader.start + ", " + reader.end + ")");
+                }
+                closeSource(source);
+                tryComplete(source);
+            } while (!isStopped() && assignNextChunk(reader));
+            if (cache.isCompleted()) {
+                onSourceRead();
             }
-            tryComplete();
-            onSourceRead();
         } catch (Throwable e) {
-            readSourceErrorsCount.incrementAndGet();
+            if (!isStopped()) {
+                readSourceErrorsCount.incrementAndGet();
+            }
             onError(e);
         } finally {
-            closeSource();
-            notifyNewCacheDataAvailable(offset, sourceAvailable);
+            onChunkReaderFinished(reader);
+            closeSource(source);
+            recordSourceReading(readFromSource, System.nanoTime() - startTime);
+            notifySourceReadingFinished(cachedAvailableSafely(), sourceAvailable);
+        }
+    }
+
+    /**
+     * Waits while rate of reading source exceeds limits of preloading and background reading.
+     * Interruption of waiting thread is kept to be checked by caller.
+     *
+     * @param readBytes a count of bytes read from source.
+     */
+    void throttle(int readBytes) {
+        boolean preloading = this.preloading;
+        BandwidthLimiter limiter = preloading ? preloadLimiter : null;
+        BandwidthGovernor governor = bandwidthGovernor;
+        try {
+            if (limiter != null) {
+                limiter.acquire(readBytes);
+            }
+            if (governor != null && (preloading || governor.isBackground(getSourceKey()))) {
+                governor.acquireBackground(readBytes);
+            }
+        } catch (InterruptedException e) {
+            // reader is cancelled, it is checked by isStopped()
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recordSourceFirstByte(long ttfbNanos) {
+        TrafficRecorder recorder = trafficRecorder;
+        if (recorder != null) {
+            recorder.onSourceFirstByte(ttfbNanos);
+        }
+    }
+
+    private void recordSourceReading(long readBytes, long durationNanos) {
+        TrafficRecorder recorder = trafficRecorder;
+        if (recorder != null && readBytes > 0) {
+            recorder.onSourceRead(readBytes, durationNanos);
+        }
+    }
+
+    private long cachedAvailableSafely() {
+        try {
+            return cache.available();
+        } catch (ProxyCacheException e) {
+            return 0;
         }
     }
 
@@ -147,19 +629,33 @@ class ProxyCache {
         onCachePercentsAvailableChanged(percentsAvailable);
     }
 
-    private void tryComplete() throws ProxyCacheException {
+    private void tryComplete(Source source) throws ProxyCacheException {
         synchronized (stopLock) {
-            if (!isStopped() && cache.available() == source.length()) {
+            if (!isStopped() && !cache.isCompleted() && cache.available() == source.length()) {
                 cache.complete();
+                waiters.signalAll();
             }
         }
     }
 
+    private void completeIfFullyCached() throws ProxyCacheException {
+        // reader may be stopped together with last client right after data is cached, don't leave such cache uncompleted
+        long sourceLength = knownSourceLength;
+        if (!cache.isCompleted() && sourceLength >= 0 && cache.available() == sourceLength) {
+            cache.complete();
+            waiters.signalAll();
+        }
+    }
+
     private boolean isStopped() {
         return Thread.currentThread().isInterrupted() || stopped;
     }
 
-    private void closeSource() {
+    private boolean isStopped(SourceReaderRunnable reader) {
+        return reader.cancelled || isStopped();
+    }
+
+    private void closeSource(Source source) {
         try {
             source.close();
         } catch (ProxyCacheException e) {
@@ -176,11 +672,64 @@ class ProxyCache {
         }
     }
 
-    private class SourceReaderRunnable implements Runnable {
+    /**
+     * Observer for non-blocking readers (see {@link #tryRead(byte[], long, int, SourceDataObserver)}) to be notified about new cached data.
+     * Called from source reader thread, so implementation should be fast and must not block.
+     */
+    interface SourceDataObserver {
+
+        void onSourceDataAvailable();
+    }
+
+    private class ChunkReaderRunnable extends SourceReaderExecutor.Task {
+
+        private volatile long start;
+        private volatile long end;
+        private volatile long position;
+        private volatile boolean abandoned;
+
+        ChunkReaderRunnable() {
+            super(getSourceKey(), false);
+        }
+
+        @Override
+        public void run() {
+            readChunks(this);
+        }
+
+        @Override
+        protected void onCancelled() {
+            onChunkReaderFinished(this);
+            waiters.signalAll();
+        }
+    }
+
+    private class SourceReaderRunnable extends SourceReaderExecutor.Task {
+
+        private final Source source;
+        private final long startOffset;
+        private volatile long position;
+        private volatile boolean cancelled;
+
+        SourceReaderRunnable(Source source, long startOffset) {
+            super(getSourceKey(), true);
+            this.source = source;
+            this.startOffset = startOffset;
+            this.position = startOffset;
+        }
+
+        boolean isReaching(long offset) {
+            return !cancelled && offset >= startOffset && offset <= position + SPARSE_READER_REACH;
+        }
 
         @Override
         public void run() {
-            readSource();
+            readSource(this);
+        }
+
+        @Override
+        protected void onCancelled() {
+            waiters.signalAll();
         }
     }
 }
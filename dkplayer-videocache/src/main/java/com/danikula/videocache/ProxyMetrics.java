@@ -0,0 +1,94 @@
+package com.danikula.videocache;
+
+import com.danikula.videocache.file.EvictionListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of {@link HttpProxyCacheServer}: traffic of all urls and of {@link #MAX_TRACKED_URLS} recently used urls,
+ * evictions of cached files.
+ * <p>
+ * Traffic of url is recorded by {@link TrafficRecorder} taken once for every {@link HttpProxyCache}.
+ * Traffic of url dropped from recently used ones is still counted in traffic of all urls.
+ */
+final class ProxyMetrics implements EvictionListener {
+
+    private static final int MAX_TRACKED_URLS = 64;
+
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+    private final TrafficRecorder total = new TrafficRecorder(null, null, listeners);
+    private final AtomicLong evictedFiles = new AtomicLong();
+    private final AtomicLong evictedBytes = new AtomicLong();
+    // recorders by cache keys, the most recently used last, guarded by itself
+    private final Map<String, TrafficRecorder> recorders = new LinkedHashMap<String, TrafficRecorder>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TrafficRecorder> eldest) {
+            return size() > MAX_TRACKED_URLS;
+        }
+    };
+
+    /**
+     * Returns recorder of traffic of url, recorder is shared by all urls with the same cache key.
+     *
+     * @param key a cache key of url.
+     * @param url an actual url of source.
+     * @return a recorder of url.
+     */
+    TrafficRecorder getRecorder(String key, String url) {
+        synchronized (recorders) {
+            TrafficRecorder recorder = recorders.get(key);
+            if (recorder == null) {
+                recorder = new TrafficRecorder(url, total, listeners);
+                recorders.put(key, recorder);
+            } else {
+                recorder.setUrl(url);
+            }
+            return recorder;
+        }
+    }
+
+    void registerListener(MetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    void unregisterListener(MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    MetricsSnapshot snapshot() {
+        List<TrafficMetrics> urls = new ArrayList<>();
+        synchronized (recorders) {
+            for (TrafficRecorder recorder : recorders.values()) {
+                urls.add(recorder.snapshot());
+            }
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), total.snapshot(), urls, evictedFiles.get(), evictedBytes.get());
+    }
+
+    /**
+     * @param key a cache key of url.
+     * @return traffic of url or {@code null} if url isn't used recently.
+     */
+    TrafficMetrics snapshot(String key) {
+        TrafficRecorder recorder;
+        synchronized (recorders) {
+            recorder = recorders.get(key);
+        }
+        return recorder != null ? recorder.snapshot() : null;
+    }
+
+    @Override
+    public void onEvicted(File file, long size) {
+        evictedFiles.incrementAndGet();
+        evictedBytes.addAndGet(size);
+        for (MetricsListener listener : listeners) {
+            listener.onCacheFileEvicted(file, size);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.danikula.videocache;
+
+/**
+ * Metrics of one served request, see {@link MetricsListener}.
+ */
+public final class RequestMetrics {
+
+    /**
+     * Url of requested source.
+     */
+    public final String url;
+    /**
+     * Count of sent bytes that were cached when request was received.
+     */
+    public final long bytesFromCache;
+    /**
+     * Count of sent bytes that were read from source while request was served, including data read bypassing cache.
+     */
+    public final long bytesFromSource;
+    /**
+     * Time of serving request in milliseconds.
+     */
+    public final long duration;
+
+    RequestMetrics(String url, long bytesFromCache, long bytesFromSource, long duration) {
+        this.url = url;
+        this.bytesFromCache = bytesFromCache;
+        this.bytesFromSource = bytesFromSource;
+        this.duration = duration;
+    }
+
+    /**
+     * @return {@code true} if request is served from cache only, without waiting for source.
+     */
+    public boolean isCacheHit() {
+        return bytesFromSource == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestMetrics{" +
+                "url='" + url + '\'' +
+                ", bytesFromCache=" + bytesFromCache +
+                ", bytesFromSource=" + bytesFromSource +
+                ", duration=" + duration +
+                '}';
+    }
+}
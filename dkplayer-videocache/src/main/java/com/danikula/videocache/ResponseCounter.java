@@ -0,0 +1,38 @@
+package com.danikula.videocache;
+
+/**
+ * Counts bytes of one response sent from cache and from source, see {@link TrafficRecorder#onRequestServed(long, long, long)}.
+ * Used by single thread serving request.
+ */
+final class ResponseCounter {
+
+    private final long startTime = System.nanoTime();
+    private long cachedEnd;
+    private long bytesFromCache;
+    private long bytesFromSource;
+
+    /**
+     * Starts counting of range to be sent. Bytes before passed offset are counted as sent from cache.
+     *
+     * @param cachedEnd an end (exclusive) of data cached contiguously from start of range when request was received.
+     */
+    void startRange(long cachedEnd) {
+        this.cachedEnd = cachedEnd;
+    }
+
+    /**
+     * Counts sent data.
+     *
+     * @param offset an offset of sent data.
+     * @param count  a count of sent bytes.
+     */
+    void onSent(long offset, long count) {
+        long fromCache = Math.max(0, Math.min(count, cachedEnd - offset));
+        bytesFromCache += fromCache;
+        bytesFromSource += count - fromCache;
+    }
+
+    void record(TrafficRecorder recorder) {
+        recorder.onRequestServed(bytesFromCache, bytesFromSource, System.nanoTime() - startTime);
+    }
+}
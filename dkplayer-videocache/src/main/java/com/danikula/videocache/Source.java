@@ -15,6 +15,19 @@ public interface Source {
      */
     void open(long offset) throws ProxyCacheException;
 
+    /**
+     * Opens source to read only a range of data. Source should be open before using {@link #read(byte[])}
+     * <p>
+     * By default source is opened until the end of data, so caller should stop reading after {@code length} bytes.
+     *
+     * @param offset offset in bytes for source.
+     * @param length count of bytes to be read or <b>negative value</b> to read data until the end of source.
+     * @throws ProxyCacheException if error occur while opening source.
+     */
+    default void open(long offset, long length) throws ProxyCacheException {
+        open(offset);
+    }
+
     /**
      * Returns length bytes or <b>negative value</b> if length is unknown.
      *
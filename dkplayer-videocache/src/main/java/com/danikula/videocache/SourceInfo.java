@@ -10,11 +10,30 @@ public class SourceInfo {
     public final String url;
     public final long length;
     public final String mime;
+    /**
+     * ETag of source or {@code null} if it is unknown.
+     */
+    public final String etag;
+    /**
+     * Last-Modified of source or {@code null} if it is unknown.
+     */
+    public final String lastModified;
+    /**
+     * Time in milliseconds when source was requested or revalidated for the last time, {@code 0} if it is unknown.
+     */
+    public final long validatedTime;
 
     public SourceInfo(String url, long length, String mime) {
+        this(url, length, mime, null, null, 0);
+    }
+
+    public SourceInfo(String url, long length, String mime, String etag, String lastModified, long validatedTime) {
         this.url = url;
         this.length = length;
         this.mime = mime;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.validatedTime = validatedTime;
     }
 
     @Override
@@ -23,6 +42,9 @@ public class SourceInfo {
                 "url='" + url + '\'' +
                 ", length=" + length +
                 ", mime='" + mime + '\'' +
+                ", etag='" + etag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
+                ", validatedTime=" + validatedTime +
                 '}';
     }
 }
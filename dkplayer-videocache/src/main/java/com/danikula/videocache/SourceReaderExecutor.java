@@ -0,0 +1,283 @@
+package com.danikula.videocache;
+
+import com.danikula.videocache.transport.RequestPriority;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Bounded pool of named threads shared by all {@link ProxyCache}s for reading sources.
+ * <p>
+ * Tasks are queued when all threads are busy. Task for priority url (video visible now or its HLS segment)
+ * is taken from queue first and may use one reserved thread, so it never waits for readers of other urls. Queued task is replaced by
+ * newer unique task for the same url. Idle threads are stopped after {@link #KEEP_ALIVE_TIME}.
+ */
+final class SourceReaderExecutor {
+
+    private static final long KEEP_ALIVE_TIME = 30 * 1000;
+
+    private final Object lock = new Object();
+    private final LinkedList<Task> queue = new LinkedList<>();
+    private final int maxThreads;
+    private final RequestPriority priority;
+    private int threadsCount;
+    private int idleThreadsCount;
+    private int runningTasksCount;
+    private long createdThreadsCount;
+    private int maxQueueDepth;
+    private boolean shutdown;
+
+    SourceReaderExecutor(int maxThreads) {
+        this(maxThreads, null);
+    }
+
+    /**
+     * @param maxThreads max count of threads reading not priority sources, one more thread is reserved for priority source.
+     * @param priority   a priority of tasks by their keys, {@code null} if all tasks are equal.
+     */
+    SourceReaderExecutor(int maxThreads, RequestPriority priority) {
+        Preconditions.checkArgument(maxThreads > 0, "Max threads count must be positive number!");
+        this.maxThreads = maxThreads;
+        this.priority = priority;
+    }
+
+    void execute(Task task) {
+        List<Task> cancelled = new ArrayList<>();
+        synchronized (lock) {
+            task.executor = this;
+            if (shutdown) {
+                task.done = true;
+                cancelled.add(task);
+            } else {
+                if (task.unique) {
+                    removeQueued(task.key, cancelled);
+                }
+                queue.add(task);
+                maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+                if (idleThreadsCount > 0) {
+                    lock.notifyAll();
+                } else if (threadsCount < maxThreads + 1) {
+                    startThread();
+                }
+            }
+        }
+        notifyCancelled(cancelled);
+    }
+
+    /**
+     * Wakes up idle threads to start queued tasks which have become priority ones, e.g. when other video is played.
+     */
+    void onPriorityChanged() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Cancels queued tasks and interrupts running ones. Tasks executed after shutdown are cancelled immediately.
+     */
+    void shutdown() {
+        List<Task> cancelled;
+        synchronized (lock) {
+            shutdown = true;
+            cancelled = new ArrayList<>(queue);
+            for (Task task : queue) {
+                task.done = true;
+            }
+            queue.clear();
+            lock.notifyAll();
+        }
+        notifyCancelled(cancelled);
+    }
+
+    long getCreatedThreadsCount() {
+        synchronized (lock) {
+            return createdThreadsCount;
+        }
+    }
+
+    int getQueueDepth() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    int getMaxQueueDepth() {
+        synchronized (lock) {
+            return maxQueueDepth;
+        }
+    }
+
+    int getRunningTasksCount() {
+        synchronized (lock) {
+            return runningTasksCount;
+        }
+    }
+
+    private void startThread() {
+        threadsCount++;
+        createdThreadsCount++;
+        Thread thread = new Thread(new WorkerRunnable(), "Source reader #" + createdThreadsCount);
+        thread.start();
+    }
+
+    private void removeQueued(String key, List<Task> cancelled) {
+        Iterator<Task> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Task queued = iterator.next();
+            if (queued.unique && queued.key.equals(key)) {
+                Logger.debug("Replace queued source reader for " + key);
+                iterator.remove();
+                queued.done = true;
+                cancelled.add(queued);
+            }
+        }
+    }
+
+    private void notifyCancelled(List<Task> cancelled) {
+        // callbacks are called without lock: task's owner may call executor holding its own lock
+        for (Task task : cancelled) {
+            task.onCancelled();
+        }
+    }
+
+    private Task takeTask() {
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + KEEP_ALIVE_TIME;
+            while (!shutdown) {
+                Task task = pollTask();
+                if (task != null) {
+                    runningTasksCount++;
+                    task.thread = Thread.currentThread();
+                    return task;
+                }
+                long timeout = deadline - System.currentTimeMillis();
+                if (timeout <= 0) {
+                    break;
+                }
+                idleThreadsCount++;
+                try {
+                    lock.wait(timeout);
+                } catch (InterruptedException e) {
+                    break;
+                } finally {
+                    idleThreadsCount--;
+                }
+            }
+            threadsCount--;
+            return null;
+        }
+    }
+
+    private Task pollTask() {
+        // the last thread is reserved for priority task
+        boolean freeThreadAvailable = runningTasksCount < maxThreads;
+        Task first = null;
+        for (Task task : queue) {
+            if (priority != null && priority.isPriority(task.key)) {
+                queue.remove(task);
+                return task;
+            }
+            first = first == null ? task : first;
+        }
+        if (first != null && freeThreadAvailable) {
+            queue.remove(first);
+            return first;
+        }
+        return null;
+    }
+
+    private void finishTask(Task task) {
+        synchronized (lock) {
+            runningTasksCount--;
+            task.thread = null;
+            task.done = true;
+            // interruption of finished task must not affect next one
+            Thread.interrupted();
+            if (!queue.isEmpty()) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Task to be executed by {@link SourceReaderExecutor}.
+     */
+    abstract static class Task implements Runnable {
+
+        private final String key;
+        private final boolean unique;
+        private volatile SourceReaderExecutor executor;
+        private Thread thread;
+        private boolean done;
+
+        /**
+         * @param key    a key of task, usually url of source.
+         * @param unique {@code true} if only one queued task with such key is allowed.
+         */
+        Task(String key, boolean unique) {
+            this.key = Preconditions.checkNotNull(key);
+            this.unique = unique;
+        }
+
+        /**
+         * Removes task from queue if it is not started yet or interrupts its thread otherwise.
+         */
+        final void cancel() {
+            SourceReaderExecutor executor = this.executor;
+            if (executor == null) {
+                return;
+            }
+            boolean removed;
+            synchronized (executor.lock) {
+                removed = executor.queue.remove(this);
+                if (removed) {
+                    done = true;
+                } else if (thread != null) {
+                    thread.interrupt();
+                }
+            }
+            if (removed) {
+                onCancelled();
+            }
+        }
+
+        /**
+         * Returns {@code true} if task is finished or cancelled before start.
+         */
+        final boolean isDone() {
+            SourceReaderExecutor executor = this.executor;
+            if (executor == null) {
+                return true;
+            }
+            synchronized (executor.lock) {
+                return done;
+            }
+        }
+
+        /**
+         * Called instead of {@link #run()} if task is cancelled before start.
+         */
+        protected void onCancelled() {
+        }
+    }
+
+    private final class WorkerRunnable implements Runnable {
+
+        @Override
+        public void run() {
+            Task task;
+            while ((task = takeTask()) != null) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    Logger.error("Error executing source reader for " + task.key);
+                } finally {
+                    finishTask(task);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.danikula.videocache;
+
+/**
+ * {@link Cache} that is able to store non-contiguous ranges of data.
+ * <p>
+ * Unlike {@link Cache#append(byte[], int)} data can be written at any offset, so reading source from seek position
+ * fills a hole in cache that can be reused by later reads. {@link #available()} returns length of contiguous data
+ * at the beginning of cache, cache is completed when there are no holes.
+ */
+public interface SparseCache extends Cache {
+
+    /**
+     * Returns count of bytes stored in cache contiguously starting from passed offset.
+     * Range {@code [offset, offset + length)} is present in cache if returned value is not less than {@code length}.
+     *
+     * @param offset an offset to check.
+     * @return count of cached bytes, {@code 0} if byte at passed offset is not cached.
+     * @throws ProxyCacheException if error occur while checking cache.
+     */
+    long cachedLength(long offset) throws ProxyCacheException;
+
+    void write(long offset, byte[] data, int length) throws ProxyCacheException;
+}
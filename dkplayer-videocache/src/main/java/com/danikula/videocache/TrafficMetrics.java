@@ -0,0 +1,115 @@
+package com.danikula.videocache;
+
+/**
+ * Snapshot of traffic of proxy for one url or for all urls, see {@link MetricsSnapshot}.
+ * <p>
+ * Request is counted when its response is finished or aborted by client. Requests without body (e.g. {@code HEAD})
+ * and playlists of HLS mode are not counted. Source reading is counted for caching by player's requests,
+ * preloading and prefetching, data read bypassing cache (see {@link RequestMetrics#bytesFromSource}) isn't counted.
+ */
+public final class TrafficMetrics {
+
+    /**
+     * Url of source or {@code null} if metrics are counted for all urls.
+     */
+    public final String url;
+    /**
+     * Count of served requests.
+     */
+    public final long requests;
+    /**
+     * Count of requests served from cache only, without waiting for source.
+     */
+    public final long cacheHits;
+    /**
+     * Count of bytes sent to clients that were cached when request was received.
+     */
+    public final long bytesServedFromCache;
+    /**
+     * Count of bytes sent to clients that were read from source while request was served.
+     */
+    public final long bytesServedFromSource;
+    /**
+     * Total time of serving requests in milliseconds, time of concurrent requests is summed.
+     */
+    public final long servingTime;
+    /**
+     * Count of bytes read from source to be cached.
+     */
+    public final long bytesReadFromSource;
+    /**
+     * Total time of reading source in milliseconds, time of concurrent readers is summed.
+     */
+    public final long sourceReadingTime;
+    /**
+     * Time from opening source to receiving its first byte (time to first byte), one value per opening of source.
+     */
+    public final Histogram sourceTtfb;
+    /**
+     * Time of waiting for source data by clients reading not cached data, one value per stall.
+     */
+    public final Histogram stalls;
+
+    TrafficMetrics(String url, long requests, long cacheHits, long bytesServedFromCache, long bytesServedFromSource, long servingTime,
+                   long bytesReadFromSource, long sourceReadingTime, Histogram sourceTtfb, Histogram stalls) {
+        this.url = url;
+        this.requests = requests;
+        this.cacheHits = cacheHits;
+        this.bytesServedFromCache = bytesServedFromCache;
+        this.bytesServedFromSource = bytesServedFromSource;
+        this.servingTime = servingTime;
+        this.bytesReadFromSource = bytesReadFromSource;
+        this.sourceReadingTime = sourceReadingTime;
+        this.sourceTtfb = sourceTtfb;
+        this.stalls = stalls;
+    }
+
+    /**
+     * @return part of requests served from cache only in range {@code [0, 1]}, {@code 0} if there were no requests.
+     */
+    public float getHitRatio() {
+        return requests > 0 ? (float) cacheHits / requests : 0;
+    }
+
+    /**
+     * @return part of sent bytes served from cache in range {@code [0, 1]}, {@code 0} if nothing is sent.
+     */
+    public float getByteHitRatio() {
+        long served = bytesServedFromCache + bytesServedFromSource;
+        return served > 0 ? (float) bytesServedFromCache / served : 0;
+    }
+
+    /**
+     * @return average rate of sending responses in bytes per second, {@code 0} if nothing is sent.
+     */
+    public long getServingThroughput() {
+        return rate(bytesServedFromCache + bytesServedFromSource, servingTime);
+    }
+
+    /**
+     * @return average rate of reading source in bytes per second, {@code 0} if nothing is read.
+     */
+    public long getSourceThroughput() {
+        return rate(bytesReadFromSource, sourceReadingTime);
+    }
+
+    private long rate(long bytes, long millis) {
+        return millis > 0 ? bytes * 1000 / millis : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficMetrics{" +
+                "url='" + url + '\'' +
+                ", requests=" + requests +
+                ", cacheHits=" + cacheHits +
+                ", bytesServedFromCache=" + bytesServedFromCache +
+                ", bytesServedFromSource=" + bytesServedFromSource +
+                ", servingThroughput=" + getServingThroughput() +
+                ", bytesReadFromSource=" + bytesReadFromSource +
+                ", sourceThroughput=" + getSourceThroughput() +
+                ", sourceTtfb=" + sourceTtfb +
+                ", stalls=" + stalls +
+                '}';
+    }
+}
@@ -0,0 +1,109 @@
+package com.danikula.videocache;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe recorder of traffic of one url, every value is recorded into recorder of all urls too.
+ * Values are recorded once per request, opening of source and stall, so recording is cheap enough to be always enabled.
+ */
+final class TrafficRecorder {
+
+    private final TrafficRecorder total;
+    private final List<MetricsListener> listeners;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong bytesServedFromCache = new AtomicLong();
+    private final AtomicLong bytesServedFromSource = new AtomicLong();
+    private final AtomicLong servingTime = new AtomicLong();
+    private final AtomicLong bytesReadFromSource = new AtomicLong();
+    private final AtomicLong sourceReadingTime = new AtomicLong();
+    private final HistogramRecorder sourceTtfb = new HistogramRecorder();
+    private final HistogramRecorder stalls = new HistogramRecorder();
+    private volatile String url;
+
+    /**
+     * @param url       an url of source or {@code null} for recorder of all urls.
+     * @param total     a recorder of all urls or {@code null} for recorder of all urls, that is only updated by url recorders.
+     * @param listeners listeners to be notified about served requests.
+     */
+    TrafficRecorder(String url, TrafficRecorder total, List<MetricsListener> listeners) {
+        this.url = url;
+        this.total = total;
+        this.listeners = listeners;
+    }
+
+    void setUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Records served request.
+     *
+     * @param bytesFromCache  a count of sent bytes that were cached when request was received.
+     * @param bytesFromSource a count of sent bytes read from source while request was served.
+     * @param durationNanos   a time of serving request in nanoseconds.
+     */
+    void onRequestServed(long bytesFromCache, long bytesFromSource, long durationNanos) {
+        long duration = durationNanos / 1000000;
+        addRequest(bytesFromCache, bytesFromSource, duration);
+        total.addRequest(bytesFromCache, bytesFromSource, duration);
+        if (!listeners.isEmpty()) {
+            RequestMetrics request = new RequestMetrics(url, bytesFromCache, bytesFromSource, duration);
+            for (MetricsListener listener : listeners) {
+                listener.onRequestServed(request);
+            }
+        }
+    }
+
+    /**
+     * Records the first byte received from opened source.
+     *
+     * @param ttfbNanos a time from opening source to receiving its first byte in nanoseconds.
+     */
+    void onSourceFirstByte(long ttfbNanos) {
+        sourceTtfb.record(ttfbNanos / 1000000);
+        total.sourceTtfb.record(ttfbNanos / 1000000);
+    }
+
+    /**
+     * Records finished reading of source.
+     *
+     * @param bytes         a count of bytes read from source.
+     * @param durationNanos a time of reading source in nanoseconds.
+     */
+    void onSourceRead(long bytes, long durationNanos) {
+        addSourceRead(bytes, durationNanos / 1000000);
+        total.addSourceRead(bytes, durationNanos / 1000000);
+    }
+
+    /**
+     * Records waiting of client for data being read from source.
+     *
+     * @param stallNanos a time of waiting in nanoseconds.
+     */
+    void onStall(long stallNanos) {
+        stalls.record(stallNanos / 1000000);
+        total.stalls.record(stallNanos / 1000000);
+    }
+
+    TrafficMetrics snapshot() {
+        return new TrafficMetrics(url, requests.get(), cacheHits.get(), bytesServedFromCache.get(), bytesServedFromSource.get(),
+                servingTime.get(), bytesReadFromSource.get(), sourceReadingTime.get(), sourceTtfb.snapshot(), stalls.snapshot());
+    }
+
+    private void addRequest(long bytesFromCache, long bytesFromSource, long duration) {
+        requests.incrementAndGet();
+        if (bytesFromSource == 0) {
+            cacheHits.incrementAndGet();
+        }
+        bytesServedFromCache.addAndGet(bytesFromCache);
+        bytesServedFromSource.addAndGet(bytesFromSource);
+        servingTime.addAndGet(duration);
+    }
+
+    private void addSourceRead(long bytes, long duration) {
+        bytesReadFromSource.addAndGet(bytes);
+        sourceReadingTime.addAndGet(duration);
+    }
+}
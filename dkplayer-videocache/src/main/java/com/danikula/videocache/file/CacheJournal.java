@@ -0,0 +1,180 @@
+package com.danikula.videocache.file;
+
+import com.danikula.videocache.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only journal of cache directory: recency, size and completion state of cached files.
+ * <p>
+ * Order of records is order of access, so journal replaces modification time of cached files and touching cache
+ * doesn't write to them. Record of file is appended on every touch, so journal is compacted (rewritten with
+ * one record per file) when it contains much more records than files. Journal is read once and rewritten
+ * when cache directory is opened, so broken tail of journal (e.g. after crash) is ignored and dropped.
+ */
+final class CacheJournal {
+
+    static final String FILE_NAME = "videocache.journal";
+    private static final String TEMP_POSTFIX = ".tmp";
+    private static final int MAGIC = 0x564a4e31;
+    private static final byte RECORD_TOUCH = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final int MIN_RECORDS_TO_COMPACT = 1000;
+
+    private final File file;
+    private DataOutputStream output;
+    private int recordsCount;
+
+    CacheJournal(File directory) {
+        this.file = new File(directory, FILE_NAME);
+    }
+
+    static boolean isJournalFile(File file) {
+        return file.getName().equals(FILE_NAME) || file.getName().equals(FILE_NAME + TEMP_POSTFIX);
+    }
+
+    /**
+     * Reads sizes of files from journal.
+     *
+     * @return sizes of files by their names, least recently used first, or {@code null} if there is no valid journal.
+     */
+    LinkedHashMap<String, Long> read() {
+        if (!file.exists()) {
+            return null;
+        }
+        LinkedHashMap<String, Long> sizes = new LinkedHashMap<>();
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC) {
+                Logger.warn("Invalid cache journal " + file + ", ignore it");
+                return null;
+            }
+            readRecords(input, sizes);
+            return sizes;
+        } catch (IOException e) {
+            Logger.error("Error reading cache journal " + file);
+            return null;
+        } finally {
+            close(input);
+        }
+    }
+
+    void writeTouch(String name, long size, boolean completed) {
+        try {
+            DataOutputStream output = openOutput();
+            output.writeByte(RECORD_TOUCH);
+            output.writeUTF(name);
+            output.writeLong(size);
+            output.writeBoolean(completed);
+            output.flush();
+            recordsCount++;
+        } catch (IOException e) {
+            Logger.error("Error writing cache journal " + file);
+        }
+    }
+
+    void writeRemove(String name) {
+        try {
+            DataOutputStream output = openOutput();
+            output.writeByte(RECORD_REMOVE);
+            output.writeUTF(name);
+            output.flush();
+            recordsCount++;
+        } catch (IOException e) {
+            Logger.error("Error writing cache journal " + file);
+        }
+    }
+
+    boolean isCompactionNeeded(int filesCount) {
+        return recordsCount >= MIN_RECORDS_TO_COMPACT && recordsCount > filesCount * 2;
+    }
+
+    /**
+     * Rewrites journal with one record per file.
+     *
+     * @param sizes sizes of files by their names, least recently used first.
+     */
+    void rewrite(Map<String, Long> sizes) {
+        close(output);
+        output = null;
+        File tempFile = new File(file.getParentFile(), FILE_NAME + TEMP_POSTFIX);
+        DataOutputStream tempOutput = null;
+        try {
+            tempOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            tempOutput.writeInt(MAGIC);
+            for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+                tempOutput.writeByte(RECORD_TOUCH);
+                tempOutput.writeUTF(entry.getKey());
+                tempOutput.writeLong(entry.getValue());
+                tempOutput.writeBoolean(!entry.getKey().endsWith(FileCache.TEMP_POSTFIX));
+            }
+            tempOutput.close();
+            tempOutput = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Error renaming " + tempFile + " to " + file);
+            }
+            recordsCount = sizes.size();
+        } catch (IOException e) {
+            Logger.error("Error compacting cache journal " + file);
+            close(tempOutput);
+        }
+    }
+
+    private DataOutputStream openOutput() throws IOException {
+        if (output == null) {
+            boolean exists = file.exists();
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            if (!exists) {
+                output.writeInt(MAGIC);
+                recordsCount = 0;
+            }
+        }
+        return output;
+    }
+
+    private void readRecords(DataInputStream input, Map<String, Long> sizes) throws IOException {
+        recordsCount = 0;
+        try {
+            while (true) {
+                byte type = input.readByte();
+                String name = input.readUTF();
+                if (type == RECORD_TOUCH) {
+                    long size = input.readLong();
+                    input.readBoolean();
+                    sizes.remove(name);
+                    sizes.put(name, size);
+                } else if (type == RECORD_REMOVE) {
+                    sizes.remove(name);
+                } else {
+                    Logger.warn("Unknown record " + type + " in cache journal " + file + ", ignore the rest of it");
+                    break;
+                }
+                recordsCount++;
+            }
+        } catch (EOFException e) {
+            // end of journal or torn last record
+        }
+    }
+
+    private void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Logger.error("Error closing cache journal " + file);
+            }
+        }
+    }
+}
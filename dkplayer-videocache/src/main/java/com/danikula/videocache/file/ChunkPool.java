@@ -0,0 +1,54 @@
+package com.danikula.videocache.file;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pool of equal byte arrays with hard limit of memory they take. Released chunks are reused instead of being
+ * allocated again, so filling memory tier doesn't produce garbage. Not thread safe, it is guarded by {@link MemoryCache}.
+ */
+final class ChunkPool {
+
+    private final int chunkSize;
+    private final int maxChunks;
+    private final ArrayDeque<byte[]> free = new ArrayDeque<>();
+    private int allocated;
+
+    ChunkPool(int chunkSize, int maxChunks) {
+        this.chunkSize = chunkSize;
+        this.maxChunks = maxChunks;
+    }
+
+    /**
+     * Returns free chunk, allocates new one only if there is no free chunk and limit is not reached.
+     *
+     * @return a chunk or {@code null} if all chunks allowed by limit are in use.
+     */
+    byte[] acquire() {
+        byte[] chunk = free.poll();
+        if (chunk == null && allocated < maxChunks) {
+            allocated++;
+            chunk = new byte[chunkSize];
+        }
+        return chunk;
+    }
+
+    void release(byte[] chunk) {
+        free.push(chunk);
+    }
+
+    /**
+     * Drops free chunks, so memory taken by them is returned to system.
+     */
+    void trim() {
+        allocated -= free.size();
+        free.clear();
+    }
+
+    long getMaxSize() {
+        return (long) maxChunks * chunkSize;
+    }
+
+    long getAllocatedSize() {
+        return (long) allocated * chunkSize;
+    }
+}
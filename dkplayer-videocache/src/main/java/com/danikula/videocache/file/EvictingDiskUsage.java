@@ -0,0 +1,14 @@
+package com.danikula.videocache.file;
+
+/**
+ * {@link DiskUsage} that deletes cached files to keep cache within its limits, e.g. {@link LruDiskUsage}.
+ */
+public interface EvictingDiskUsage extends DiskUsage {
+
+    /**
+     * Sets listener of deleted files.
+     *
+     * @param listener a listener or {@code null} to remove listener.
+     */
+    void setEvictionListener(EvictionListener listener);
+}
@@ -0,0 +1,17 @@
+package com.danikula.videocache.file;
+
+import java.io.File;
+
+/**
+ * Listener of files deleted by {@link EvictingDiskUsage} to keep cache within its limits.
+ */
+public interface EvictionListener {
+
+    /**
+     * Called by thread trimming cache after file is deleted.
+     *
+     * @param file a deleted file.
+     * @param size a size of deleted file in bytes.
+     */
+    void onEvicted(File file, long size);
+}
@@ -0,0 +1,50 @@
+package com.danikula.videocache.file;
+
+/**
+ * Strategy to choose cached files to be deleted when cache exceeds its max size.
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Deletes the least recently used files, see {@link TotalSizeLruDiskUsage}.
+     */
+    LRU,
+
+    /**
+     * Deletes files played once before files played repeatedly, see {@link SegmentedLruDiskUsage}.
+     */
+    SEGMENTED_LRU,
+
+    /**
+     * Keeps files by their recent popularity, see {@link TinyLfuDiskUsage}.
+     */
+    TINY_LFU;
+
+    /**
+     * Creates disk usage limiting total size of cache by this policy.
+     *
+     * @param maxSize max cache size in bytes.
+     * @return a new disk usage.
+     */
+    public DiskUsage newDiskUsage(long maxSize) {
+        switch (this) {
+            case SEGMENTED_LRU:
+                return new SegmentedLruDiskUsage(maxSize);
+            case TINY_LFU:
+                return new TinyLfuDiskUsage(maxSize);
+            default:
+                return new TotalSizeLruDiskUsage(maxSize);
+        }
+    }
+
+    Policy newPolicy(long maxSize) {
+        switch (this) {
+            case SEGMENTED_LRU:
+                return new SegmentedLruPolicy(maxSize);
+            case TINY_LFU:
+                return new TinyLfuPolicy(maxSize);
+            default:
+                return new LruPolicy(maxSize);
+        }
+    }
+}
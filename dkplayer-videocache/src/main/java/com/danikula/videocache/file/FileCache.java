@@ -1,40 +1,97 @@
 package com.danikula.videocache.file;
 
 import com.danikula.videocache.Cache;
+import com.danikula.videocache.Logger;
 import com.danikula.videocache.ProxyCacheException;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 /**
  * {@link Cache} that uses file for storing data.
+ * <p>
+ * Not completed cache is resumable: {@link ResumeRecord} next to temp file keeps version of source
+ * (see {@link #validate(String, long)}) and checksums of appended data blocks. When temp file is opened again,
+ * its blocks are verified and data after the last valid block (e.g. torn by crash) is dropped,
+ * data of not full last block is kept if it is recorded when cache is closed,
+ * temp file without record is considered empty. Blocks are verified once per process: temp file closed by this process
+ * is trusted when it is opened again unchanged, e.g. for the next request of player.
+ * <p>
+ * If {@link MemoryCache} is passed then head of file is also kept in memory, so start of recently used video
+ * is read without disk access.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
 public class FileCache implements Cache {
 
-    private static final String TEMP_POSTFIX = ".download";
+    static final String TEMP_POSTFIX = ".download";
+    private static final int MAX_VERIFIED_FILES = 256;
+    // length and modification time of temp files closed by this process by their paths, guarded by itself
+    private static final Map<String, long[]> VERIFIED_FILES = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > MAX_VERIFIED_FILES;
+        }
+    };
 
     private final DiskUsage diskUsage;
+    private final MemoryCache memoryCache;
+    private final String memoryKey;
+    private final CRC32 blockChecksum = new CRC32();
     public File file;
     private RandomAccessFile dataFile;
+    private ResumeRecord record;
+    private int blockLength;
+    private boolean completed; // kept in field to not check name of file on every read
 
     public FileCache(File file) throws ProxyCacheException {
         this(file, new UnlimitedDiskUsage());
     }
 
     public FileCache(File file, DiskUsage diskUsage) throws ProxyCacheException {
+        this(file, diskUsage, null);
+    }
+
+    /**
+     * @param memoryCache a memory tier to keep head of file in, {@code null} if data is read from file only.
+     */
+    public FileCache(File file, DiskUsage diskUsage, MemoryCache memoryCache) throws ProxyCacheException {
+        this(file, diskUsage, memoryCache, false);
+    }
+
+    /**
+     * @param sparse {@code true} if data is written at any offset, so it can't be verified by block checksums.
+     */
+    FileCache(File file, DiskUsage diskUsage, MemoryCache memoryCache, boolean sparse) throws ProxyCacheException {
         try {
             if (diskUsage == null) {
                 throw new NullPointerException();
             }
             this.diskUsage = diskUsage;
+            this.memoryCache = memoryCache;
+            this.memoryKey = file.getAbsolutePath(); // the same key for temp and completed file
             File directory = file.getParentFile();
             Files.makeDir(directory);
             boolean completed = file.exists();
+            this.completed = completed;
             this.file = completed ? file : new File(file.getParentFile(), file.getName() + TEMP_POSTFIX);
             this.dataFile = new RandomAccessFile(this.file, completed ? "r" : "rw");
+            if (!completed) {
+                this.record = new ResumeRecord(this.file);
+                boolean recorded = record.load();
+                if (!sparse) {
+                    restore(recorded);
+                }
+            }
+            if (!sparse || completed) {
+                // file may be changed or dropped while memory keeps its head
+                truncateMemory(dataFile.length());
+            }
         } catch (IOException e) {
             throw new ProxyCacheException("Error using file " + file + " as disc cache", e);
         }
@@ -50,24 +107,238 @@ public class FileCache implements Cache {
     }
 
     @Override
-    public synchronized int read(byte[] buffer, long offset, int length) throws ProxyCacheException {
+    public int read(byte[] buffer, long offset, int length) throws ProxyCacheException {
+        int read = memoryCache != null ? memoryCache.read(memoryKey, offset, buffer, length) : 0;
+        return read > 0 ? read : readFile(buffer, offset, length);
+    }
+
+    /**
+     * Returns count of bytes kept in memory contiguously starting from passed offset.
+     *
+     * @param offset an offset to check.
+     * @return count of bytes, {@code 0} if data at this offset is read from file.
+     */
+    public long memoryCachedLength(long offset) {
+        return memoryCache != null ? memoryCache.cachedLength(memoryKey, offset) : 0;
+    }
+
+    void truncateMemory(long length) {
+        if (memoryCache != null) {
+            memoryCache.truncate(memoryKey, length);
+        }
+    }
+
+    private synchronized int readFile(byte[] buffer, long offset, int length) throws ProxyCacheException {
         try {
             dataFile.seek(offset);
-            return dataFile.read(buffer, 0, length);
+            int read = dataFile.read(buffer, 0, length);
+            if (memoryCache != null && read > 0) {
+                memoryCache.write(memoryKey, offset, buffer, read);
+            }
+            return read;
         } catch (IOException e) {
             String format = "Error reading %d bytes with offset %d from file[%d bytes] to buffer[%d bytes]";
             throw new ProxyCacheException(String.format(format, length, offset, available(), buffer.length), e);
         }
     }
 
+    /**
+     * Opens new read-only channel for cached data.
+     * <p>
+     * Channel doesn't share state with this cache: reading from it doesn't block appending and it stays valid
+     * after cache completion. Caller is responsible for closing returned channel.
+     *
+     * @return channel to read cached data.
+     * @throws ProxyCacheException if error occur while opening file.
+     */
+    public synchronized FileChannel openReadChannel() throws ProxyCacheException {
+        try {
+            return new RandomAccessFile(file, "r").getChannel();
+        } catch (IOException e) {
+            throw new ProxyCacheException("Error opening channel for file " + file, e);
+        }
+    }
+
     @Override
     public synchronized void append(byte[] data, int length) throws ProxyCacheException {
+        writeAt(available(), data, length);
+        int offset = 0;
+        while (offset < length) {
+            int count = Math.min(length - offset, ResumeRecord.BLOCK_SIZE - blockLength);
+            blockChecksum.update(data, offset, count);
+            blockLength += count;
+            offset += count;
+            if (blockLength == ResumeRecord.BLOCK_SIZE) {
+                record.addChecksum((int) blockChecksum.getValue());
+                blockChecksum.reset();
+                blockLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Checks that cached data belongs to current version of source and remembers this version.
+     * Not completed cache of another version is cleared.
+     *
+     * @param validator    a validator of source version (ETag or Last-Modified), {@code null} if it is unknown.
+     * @param sourceLength a length of source, negative if it is unknown.
+     * @return {@code true} if cached data is kept, {@code false} if it is cleared.
+     * @throws ProxyCacheException if error occur while clearing cache.
+     */
+    public synchronized boolean validate(String validator, long sourceLength) throws ProxyCacheException {
+        if (isCompleted()) {
+            return true;
+        }
+        String cachedValidator = record.getValidator();
+        long cachedLength = record.getSourceLength();
+        boolean changed = cachedValidator != null && validator != null && !cachedValidator.equals(validator) ||
+                cachedLength >= 0 && sourceLength >= 0 && cachedLength != sourceLength;
+        if (changed) {
+            Logger.warn("Source of " + file + " is changed, cached data is dropped");
+            clear();
+        }
+        record.setSource(validator, sourceLength);
+        return !changed;
+    }
+
+    /**
+     * Returns validator of source version cached data belongs to.
+     *
+     * @return a validator or {@code null} if it is unknown or cache is completed.
+     */
+    public synchronized String getValidator() {
+        return isCompleted() ? null : record.getValidator();
+    }
+
+    /**
+     * Drops all cached data of not completed cache.
+     */
+    synchronized void clear() throws ProxyCacheException {
+        truncateMemory(0);
+        try {
+            dataFile.setLength(0);
+        } catch (IOException e) {
+            throw new ProxyCacheException("Error clearing cache file " + file, e);
+        }
+        record.truncate(0);
+        blockChecksum.reset();
+        blockLength = 0;
+        forgetVerified(file);
+    }
+
+    private void restore(boolean recorded) throws IOException {
+        long length = dataFile.length();
+        if (!recorded) {
+            if (length > 0) {
+                Logger.warn("Temp file " + file + " has no resume record, it is considered empty");
+                dataFile.setLength(0);
+            }
+            return;
+        }
+        if (isVerified(file, length) && resumeVerified(length)) {
+            return;
+        }
+        byte[] buffer = new byte[ResumeRecord.BLOCK_SIZE];
+        int blocks = (int) Math.min(record.getChecksumsCount(), length / ResumeRecord.BLOCK_SIZE);
+        int verifiedBlocks = 0;
+        dataFile.seek(0);
+        while (verifiedBlocks < blocks) {
+            dataFile.readFully(buffer);
+            blockChecksum.reset();
+            blockChecksum.update(buffer, 0, buffer.length);
+            if ((int) blockChecksum.getValue() != record.getChecksum(verifiedBlocks)) {
+                break;
+            }
+            verifiedBlocks++;
+        }
+        blockChecksum.reset();
+        long verifiedLength = (long) verifiedBlocks * ResumeRecord.BLOCK_SIZE;
+        int tailLength = record.getTailLength();
+        if (verifiedBlocks == record.getChecksumsCount() && tailLength > 0 && length >= verifiedLength + tailLength) {
+            dataFile.seek(verifiedLength);
+            dataFile.readFully(buffer, 0, tailLength);
+            blockChecksum.update(buffer, 0, tailLength);
+            if ((int) blockChecksum.getValue() == record.getTailChecksum()) {
+                // next appended data completes this block
+                blockLength = tailLength;
+                verifiedLength += tailLength;
+            } else {
+                blockChecksum.reset();
+            }
+        }
+        if (verifiedLength != length) {
+            Logger.info("Temp file " + file + " is resumed from " + verifiedLength + " of " + length + " bytes");
+            dataFile.setLength(verifiedLength);
+        }
+        record.truncate(verifiedBlocks);
+    }
+
+    /**
+     * Continues temp file verified by this process without reading its full blocks again.
+     *
+     * @return {@code false} if record doesn't match file, so file should be verified.
+     */
+    private boolean resumeVerified(long length) throws IOException {
+        long blocksLength = (long) record.getChecksumsCount() * ResumeRecord.BLOCK_SIZE;
+        int tailLength = (int) (length - blocksLength);
+        if (tailLength < 0 || tailLength >= ResumeRecord.BLOCK_SIZE || tailLength != record.getTailLength()) {
+            return false;
+        }
+        // checksum of not full last block is continued by next appended data
+        byte[] tail = new byte[tailLength];
+        dataFile.seek(blocksLength);
+        dataFile.readFully(tail);
+        blockChecksum.reset();
+        blockChecksum.update(tail, 0, tailLength);
+        blockLength = tailLength;
+        return true;
+    }
+
+    private static boolean isVerified(File file, long length) {
+        synchronized (VERIFIED_FILES) {
+            long[] verified = VERIFIED_FILES.get(file.getAbsolutePath());
+            return verified != null && verified[0] == length && verified[1] == file.lastModified();
+        }
+    }
+
+    private static void rememberVerified(File file) {
+        synchronized (VERIFIED_FILES) {
+            VERIFIED_FILES.put(file.getAbsolutePath(), new long[]{file.length(), file.lastModified()});
+        }
+    }
+
+    static void forgetVerified(File file) {
+        synchronized (VERIFIED_FILES) {
+            VERIFIED_FILES.remove(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Forgets all temp files verified by this process, so they are verified again as after restart.
+     */
+    static void forgetVerifiedFiles() {
+        synchronized (VERIFIED_FILES) {
+            VERIFIED_FILES.clear();
+        }
+    }
+
+    /**
+     * Flushes written data to storage device, so metadata describing it may be saved safely.
+     */
+    synchronized void syncData() throws IOException {
+        dataFile.getFD().sync();
+    }
+
+    synchronized void writeAt(long offset, byte[] data, int length) throws ProxyCacheException {
         try {
             if (isCompleted()) {
                 throw new ProxyCacheException("Error append cache: cache file " + file + " is completed!");
             }
-            dataFile.seek(available());
+            dataFile.seek(offset);
             dataFile.write(data, 0, length);
+            if (memoryCache != null) {
+                memoryCache.write(memoryKey, offset, data, length);
+            }
         } catch (IOException e) {
             String format = "Error writing %d bytes to %s from buffer with size %d";
             throw new ProxyCacheException(String.format(format, length, dataFile, data.length), e);
@@ -78,7 +349,16 @@ public class FileCache implements Cache {
     public synchronized void close() throws ProxyCacheException {
         try {
             dataFile.close();
+            if (record != null) {
+                if (blockLength > 0) {
+                    record.setTail(blockLength, (int) blockChecksum.getValue());
+                }
+                record.close();
+            }
             diskUsage.touch(file);
+            if (!completed) {
+                rememberVerified(file);
+            }
         } catch (IOException e) {
             throw new ProxyCacheException("Error closing file " + file, e);
         }
@@ -91,6 +371,7 @@ public class FileCache implements Cache {
         }
 
         close();
+        forgetVerified(file);
         String fileName = file.getName().substring(0, file.getName().length() - TEMP_POSTFIX.length());
         File completedFile = new File(file.getParentFile(), fileName);
         boolean renamed = file.renameTo(completedFile);
@@ -98,6 +379,9 @@ public class FileCache implements Cache {
             throw new ProxyCacheException("Error renaming file " + file + " to " + completedFile + " for completion!");
         }
         file = completedFile;
+        completed = true;
+        record.delete();
+        record = null;
         try {
             dataFile = new RandomAccessFile(file, "r");
             diskUsage.touch(file);
@@ -108,7 +392,7 @@ public class FileCache implements Cache {
 
     @Override
     public synchronized boolean isCompleted() {
-        return !isTempFile(file);
+        return completed;
     }
 
     /**
@@ -120,7 +404,7 @@ public class FileCache implements Cache {
         return file;
     }
 
-    private boolean isTempFile(File file) {
+    static boolean isTempFile(File file) {
         return file.getName().endsWith(TEMP_POSTFIX);
     }
 
@@ -1,14 +1,10 @@
 package com.danikula.videocache.file;
 
-import com.danikula.videocache.Logger;
-
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -42,41 +38,6 @@ class Files {
         return result;
     }
 
-    static void setLastModifiedNow(File file) throws IOException {
-        if (file.exists()) {
-            long now = System.currentTimeMillis();
-            boolean modified = file.setLastModified(now); // on some devices (e.g. Nexus 5) doesn't work
-            if (!modified) {
-                modify(file);
-                if (file.lastModified() < now) {
-                    // NOTE: apparently this is a known issue (see: http://stackoverflow.com/questions/6633748/file-lastmodified-is-never-what-was-set-with-file-setlastmodified)
-                    Logger.warn(String.format("Last modified date %s is not set for file %s", new Date(file.lastModified()), file.getAbsolutePath()));
-                }
-            }
-        }
-    }
-
-    static void modify(File file) throws IOException {
-        long size = file.length();
-        if (size == 0) {
-            recreateZeroSizeFile(file);
-            return;
-        }
-
-        RandomAccessFile accessFile = new RandomAccessFile(file, "rwd");
-        accessFile.seek(size - 1);
-        byte lastByte = accessFile.readByte();
-        accessFile.seek(size - 1);
-        accessFile.write(lastByte);
-        accessFile.close();
-    }
-
-    private static void recreateZeroSizeFile(File file) throws IOException {
-        if (!file.delete() || !file.createNewFile()) {
-            throw new IOException("Error recreate zero-size file " + file);
-        }
-    }
-
     private static final class LastModifiedComparator implements Comparator<File> {
 
         @Override
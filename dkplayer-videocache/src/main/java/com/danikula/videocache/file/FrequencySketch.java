@@ -0,0 +1,77 @@
+package com.danikula.videocache.file;
+
+/**
+ * Count-min sketch estimating how often keys are accessed, counters are 4-bit and take one byte per counter.
+ * <p>
+ * All counters are halved when count of increments reaches sample size, so sketch keeps recent popularity
+ * and forgets old one.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final int MAX_COUNT = 15;
+    private static final int MIN_WIDTH = 256;
+    private static final int MAX_WIDTH = 1 << 16;
+    private static final int SAMPLE_SIZE_FACTOR = 10;
+
+    private final byte[] table;
+    private final int width;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param expectedKeys an estimated count of keys tracked by sketch.
+     */
+    FrequencySketch(long expectedKeys) {
+        long width = MIN_WIDTH;
+        while (width < expectedKeys && width < MAX_WIDTH) {
+            width <<= 1;
+        }
+        this.width = (int) width;
+        this.table = new byte[this.width * SEEDS.length];
+        this.sampleSize = this.width * SAMPLE_SIZE_FACTOR;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean incremented = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            int index = indexOf(hash, row);
+            if (table[index] < MAX_COUNT) {
+                table[index]++;
+                incremented = true;
+            }
+        }
+        if (incremented && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            frequency = Math.min(frequency, table[indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private int indexOf(int hash, int row) {
+        long rowHash = (hash + SEEDS[row]) * SEEDS[row];
+        rowHash += rowHash >>> 32;
+        return row * width + ((int) rowHash & (width - 1));
+    }
+
+    private int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>= 1;
+        }
+        additions /= 2;
+    }
+}
@@ -0,0 +1,266 @@
+package com.danikula.videocache.file;
+
+import com.danikula.videocache.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Base {@link DiskUsage} that tracks cached files by in-memory index, subclasses choose files to be evicted.
+ * <p>
+ * Cache directory is opened once, when its file is touched for the first time: order of files is read from
+ * {@link CacheJournal} and files are listed to find ones missed by journal. After that files are tracked
+ * by in-memory index and journal updated on every touch, so touch neither lists whole directory nor writes to cached files.
+ * <p>
+ * Sidecar files of temp file (sparse index and resume record) are not indexed: they are small and written without touch,
+ * so temp file is one entry with its sidecars and they are deleted together. Sidecars of missing temp file are deleted
+ * when cache directory is opened. All methods of subclass are called by single worker thread.
+ */
+abstract class IndexedDiskUsage implements EvictingDiskUsage {
+
+    private final ExecutorService workerThread = Executors.newSingleThreadExecutor();
+    // index is used by worker thread only: files with their sizes, least recently used first
+    private final LinkedHashMap<File, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<File, CacheJournal> journals = new HashMap<>();
+    private long totalSize;
+    private volatile EvictionListener evictionListener;
+
+    @Override
+    public void touch(File file) throws IOException {
+        workerThread.submit(new TouchCallable(file));
+    }
+
+    @Override
+    public void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    private void touchInBackground(File file) throws IOException {
+        File directory = file.getParentFile();
+        CacheJournal journal = getJournal(directory);
+        boolean known = forget(file);
+        if (file.exists()) {
+            long size = file.length();
+            add(file, size);
+            journal.writeTouch(file.getName(), size, !FileCache.isTempFile(file));
+            onTouched(file, size);
+        } else if (known) {
+            journal.writeRemove(file.getName());
+            onForgotten(file);
+        }
+        if (!FileCache.isTempFile(file)) {
+            // cache is completed: temp file is renamed, its sparse index and resume record are deleted by cache
+            remove(new File(directory, file.getName() + FileCache.TEMP_POSTFIX), journal);
+        }
+        trim();
+        if (journal.isCompactionNeeded(index.size())) {
+            journal.rewrite(getSizes(directory));
+        }
+    }
+
+    /**
+     * Called for every file found when cache directory is opened, files are passed starting from least recently used one.
+     *
+     * @param file a cached file.
+     * @param size a size of file in bytes.
+     */
+    protected void onLoaded(File file, long size) {
+    }
+
+    /**
+     * Called when existing file is touched.
+     *
+     * @param file a touched file.
+     * @param size a current size of file in bytes.
+     */
+    protected void onTouched(File file, long size) {
+    }
+
+    /**
+     * Called when file is deleted not by this class or replaced by completed file.
+     *
+     * @param file a forgotten file.
+     */
+    protected void onForgotten(File file) {
+    }
+
+    /**
+     * Chooses files to be deleted to keep cache within its limits. Called after every touch.
+     *
+     * @return files to be deleted, may be empty.
+     */
+    protected abstract List<File> selectVictims();
+
+    /**
+     * @return indexed files with their sizes, least recently used first. Returned map must not be modified.
+     */
+    Map<File, Long> getIndex() {
+        return index;
+    }
+
+    long getTotalSize() {
+        return totalSize;
+    }
+
+    private CacheJournal getJournal(File directory) {
+        CacheJournal journal = journals.get(directory);
+        if (journal == null) {
+            journal = new CacheJournal(directory);
+            journals.put(directory, journal);
+            buildIndex(directory, journal);
+        }
+        return journal;
+    }
+
+    private void buildIndex(File directory, CacheJournal journal) {
+        LinkedHashMap<String, Long> journaledSizes = journal.read();
+        if (journaledSizes == null) {
+            // there is no journal yet, e.g. cache of previous version: files are ordered by modification time
+            for (File file : Files.getLruListFiles(directory)) {
+                if (isIndexed(file)) {
+                    load(file, file.length());
+                }
+            }
+        } else {
+            File[] files = directory.listFiles();
+            Set<String> names = new HashSet<>();
+            for (File file : files != null ? files : new File[0]) {
+                if (isIndexed(file)) {
+                    names.add(file.getName());
+                    if (!journaledSizes.containsKey(file.getName())) {
+                        // file is not journaled because of crash, consider it as least recently used one
+                        load(file, file.length());
+                    }
+                }
+            }
+            for (Map.Entry<String, Long> entry : journaledSizes.entrySet()) {
+                if (names.contains(entry.getKey())) {
+                    load(new File(directory, entry.getKey()), entry.getValue());
+                }
+            }
+        }
+        deleteOrphanedSidecars(directory);
+        journal.rewrite(getSizes(directory));
+        Logger.debug("Cache index is built: " + index.size() + " files, " + totalSize + " bytes");
+    }
+
+    private boolean isIndexed(File file) {
+        return !CacheJournal.isJournalFile(file) && !isSidecar(file);
+    }
+
+    private boolean isSidecar(File file) {
+        return file.getName().endsWith(SparseFileCache.INDEX_POSTFIX) || ResumeRecord.isRecordFile(file);
+    }
+
+    private File[] getSidecars(File tempFile) {
+        return new File[]{
+                new File(tempFile.getPath() + SparseFileCache.INDEX_POSTFIX),
+                new File(tempFile.getPath() + ResumeRecord.POSTFIX)
+        };
+    }
+
+    private void deleteOrphanedSidecars(File directory) {
+        File[] files = directory.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            if (isSidecar(file)) {
+                String name = file.getName();
+                int postfixStart = name.lastIndexOf(FileCache.TEMP_POSTFIX);
+                String tempName = postfixStart < 0 ? null : name.substring(0, postfixStart + FileCache.TEMP_POSTFIX.length());
+                if (tempName == null || !index.containsKey(new File(directory, tempName))) {
+                    deleteSidecar(file);
+                }
+            }
+        }
+    }
+
+    private void deleteSidecar(File file) {
+        if (file.exists() && !file.delete()) {
+            Logger.error("Error deleting sidecar file " + file);
+        }
+    }
+
+    private Map<String, Long> getSizes(File directory) {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (Map.Entry<File, Long> entry : index.entrySet()) {
+            if (directory.equals(entry.getKey().getParentFile())) {
+                sizes.put(entry.getKey().getName(), entry.getValue());
+            }
+        }
+        return sizes;
+    }
+
+    private void load(File file, long size) {
+        add(file, size);
+        onLoaded(file, size);
+    }
+
+    private void add(File file, long size) {
+        index.put(file, size);
+        totalSize += size;
+    }
+
+    private void remove(File file, CacheJournal journal) {
+        if (forget(file)) {
+            journal.writeRemove(file.getName());
+            onForgotten(file);
+        }
+    }
+
+    private boolean forget(File file) {
+        Long size = index.remove(file);
+        if (size != null) {
+            totalSize -= size;
+        }
+        return size != null;
+    }
+
+    private void trim() {
+        for (File file : selectVictims()) {
+            long size = file.length();
+            boolean deleted = file.delete();
+            if (deleted || !file.exists()) {
+                if (forget(file)) {
+                    journals.get(file.getParentFile()).writeRemove(file.getName());
+                }
+                if (FileCache.isTempFile(file)) {
+                    for (File sidecar : getSidecars(file)) {
+                        deleteSidecar(sidecar);
+                    }
+                }
+                if (deleted) {
+                    Logger.info("Cache file " + file + " is deleted because it exceeds cache limit");
+                    EvictionListener listener = evictionListener;
+                    if (listener != null) {
+                        listener.onEvicted(file, size);
+                    }
+                }
+            } else {
+                Logger.error("Error deleting file " + file + " for trimming cache");
+            }
+        }
+    }
+
+    private class TouchCallable implements Callable<Void> {
+
+        private final File file;
+
+        public TouchCallable(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            touchInBackground(file);
+            return null;
+        }
+    }
+}
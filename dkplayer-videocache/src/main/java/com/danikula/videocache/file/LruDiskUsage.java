@@ -1,75 +1,45 @@
 package com.danikula.videocache.file;
 
-import com.danikula.videocache.Logger;
-
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
 
 /**
  * {@link DiskUsage} that uses LRU (Least Recently Used) strategy to trim cache.
+ * <p>
+ * Files are tracked by in-memory index and {@link CacheJournal}, see {@link IndexedDiskUsage}.
+ * Files deleted not by this class are forgotten when trimming meets them.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
-public abstract class LruDiskUsage implements DiskUsage {
-
-    private final ExecutorService workerThread = Executors.newSingleThreadExecutor();
-
-    @Override
-    public void touch(File file) throws IOException {
-        workerThread.submit(new TouchCallable(file));
-    }
-
-    private void touchInBackground(File file) throws IOException {
-        Files.setLastModifiedNow(file);
-        List<File> files = Files.getLruListFiles(file.getParentFile());
-        trim(files);
-    }
-
+public abstract class LruDiskUsage extends IndexedDiskUsage {
+
+    /**
+     * Checks if file should be kept in cache. Files are checked starting from least recently used one
+     * until the first accepted file.
+     *
+     * @param file       a file to be checked.
+     * @param totalSize  a total size of cached files.
+     * @param totalCount a total count of cached files.
+     * @return {@code true} if file should be kept, {@code false} if it should be deleted.
+     */
     protected abstract boolean accept(File file, long totalSize, int totalCount);
 
-    private void trim(List<File> files) {
-        long totalSize = countTotalSize(files);
-        int totalCount = files.size();
-        for (File file : files) {
-            boolean accepted = accept(file, totalSize, totalCount);
-            if (!accepted) {
-                long fileSize = file.length();
-                boolean deleted = file.delete();
-                if (deleted) {
-                    totalCount--;
-                    totalSize -= fileSize;
-                    Logger.info("Cache file " + file + " is deleted because it exceeds cache limit");
-                } else {
-                    Logger.error("Error deleting file " + file + " for trimming cache");
-                }
+    @Override
+    protected List<File> selectVictims() {
+        List<File> victims = new ArrayList<>();
+        Map<File, Long> index = getIndex();
+        long totalSize = getTotalSize();
+        int totalCount = index.size();
+        for (Map.Entry<File, Long> entry : index.entrySet()) {
+            if (accept(entry.getKey(), totalSize, totalCount)) {
+                break;
             }
+            victims.add(entry.getKey());
+            totalSize -= entry.getValue();
+            totalCount--;
         }
-    }
-
-    private long countTotalSize(List<File> files) {
-        long totalSize = 0;
-        for (File file : files) {
-            totalSize += file.length();
-        }
-        return totalSize;
-    }
-
-    private class TouchCallable implements Callable<Void> {
-
-        private final File file;
-
-        public TouchCallable(File file) {
-            this.file = file;
-        }
-
-        @Override
-        public Void call() throws Exception {
-            touchInBackground(file);
-            return null;
-        }
+        return victims;
     }
 }
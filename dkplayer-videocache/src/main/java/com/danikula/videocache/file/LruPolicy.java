@@ -0,0 +1,52 @@
+package com.danikula.videocache.file;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Policy} that evicts the least recently used entries.
+ */
+final class LruPolicy extends Policy {
+
+    private final Segment entries = new Segment();
+
+    LruPolicy(long maxSize) {
+        super(maxSize);
+    }
+
+    @Override
+    void load(String key, long size) {
+        entries.put(key, size);
+    }
+
+    @Override
+    void access(String key, long size) {
+        entries.put(key, size);
+    }
+
+    @Override
+    void update(String key, long size) {
+        entries.update(key, size);
+    }
+
+    @Override
+    void remove(String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    boolean contains(String key) {
+        return entries.contains(key);
+    }
+
+    @Override
+    List<String> evict() {
+        List<String> victims = new ArrayList<>();
+        while (entries.size() > maxSize) {
+            String victim = entries.eldest();
+            entries.remove(victim);
+            victims.add(victim);
+        }
+        return victims;
+    }
+}
@@ -0,0 +1,232 @@
+package com.danikula.videocache.file;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory tier of {@link FileCache} keeping first bytes of recently used files, so start of video
+ * (e.g. when user flips between adjacent items of feed) is read without disk access.
+ * <p>
+ * Head of file is kept when it is written to file (by player or preloader) or read from file contiguously
+ * from the beginning, at most {@code headSize} bytes per file. Heads of all files are stored in chunks of shared pool,
+ * memory taken by chunks never exceeds {@code maxSize}: when pool is exhausted, head of least recently used file is dropped.
+ * Memory tier mirrors file, it never keeps data that is not stored in file.
+ */
+public final class MemoryCache {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ChunkPool pool;
+    private final long headSize;
+    // heads by keys of files, least recently used first
+    private final LinkedHashMap<String, Head> heads = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedSize;
+    private long hitsCount;
+    private long missesCount;
+
+    /**
+     * @param maxSize  max count of bytes taken by memory tier, must be at least 64 Kb.
+     * @param headSize max count of first bytes of file kept in memory, must be positive.
+     */
+    public MemoryCache(long maxSize, long headSize) {
+        if (maxSize < CHUNK_SIZE) {
+            throw new IllegalArgumentException("Max size must be at least " + CHUNK_SIZE + " bytes!");
+        }
+        if (headSize <= 0) {
+            throw new IllegalArgumentException("Head size must be positive number!");
+        }
+        this.pool = new ChunkPool(CHUNK_SIZE, (int) Math.min(Integer.MAX_VALUE, maxSize / CHUNK_SIZE));
+        this.headSize = headSize;
+    }
+
+    /**
+     * Copies data of file at passed offset from memory.
+     *
+     * @return count of copied bytes, {@code 0} if data at this offset is not kept in memory.
+     */
+    synchronized int read(String key, long offset, byte[] buffer, int length) {
+        Head head = heads.get(key);
+        if (head == null || offset >= head.length) {
+            if (offset < headSize) {
+                missesCount++;
+            }
+            return 0;
+        }
+        int count = (int) Math.min(length, head.length - offset);
+        int copied = 0;
+        while (copied < count) {
+            long position = offset + copied;
+            byte[] chunk = head.chunks.get((int) (position / CHUNK_SIZE));
+            int chunkOffset = (int) (position % CHUNK_SIZE);
+            int chunkCount = Math.min(count - copied, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(chunk, chunkOffset, buffer, copied, chunkCount);
+            copied += chunkCount;
+        }
+        hitsCount++;
+        return count;
+    }
+
+    /**
+     * Returns count of bytes kept in memory contiguously starting from passed offset.
+     *
+     * @return count of bytes, {@code 0} if data at this offset is not kept in memory.
+     */
+    synchronized long cachedLength(String key, long offset) {
+        Head head = heads.get(key);
+        return head != null ? Math.max(0, head.length - offset) : 0;
+    }
+
+    /**
+     * Keeps data written to file or read from it. Data is kept only if it continues head of file kept in memory.
+     */
+    synchronized void write(String key, long offset, byte[] data, int length) {
+        if (offset >= headSize) {
+            return;
+        }
+        Head head = heads.get(key);
+        if (head == null && offset == 0) {
+            head = new Head();
+            heads.put(key, head);
+        }
+        if (head == null || offset != head.length) {
+            return; // only contiguous data from the beginning of file is kept
+        }
+        int count = (int) Math.min(length, headSize - offset);
+        int written = 0;
+        while (written < count) {
+            int chunkOffset = (int) (head.length % CHUNK_SIZE);
+            if (chunkOffset == 0) {
+                byte[] chunk = acquireChunk(key);
+                if (chunk == null) {
+                    break; // whole pool is taken by this file
+                }
+                head.chunks.add(chunk);
+            }
+            byte[] chunk = head.chunks.get(head.chunks.size() - 1);
+            int chunkCount = Math.min(count - written, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(data, written, chunk, chunkOffset, chunkCount);
+            head.length += chunkCount;
+            usedSize += chunkCount;
+            written += chunkCount;
+        }
+        if (head.length == 0) {
+            heads.remove(key);
+        }
+    }
+
+    /**
+     * Drops data kept for file beyond passed length, e.g. when file is opened with less data than it had.
+     */
+    synchronized void truncate(String key, long length) {
+        Head head = heads.get(key);
+        if (head == null || head.length <= length) {
+            return;
+        }
+        if (length == 0) {
+            remove(key);
+            return;
+        }
+        int chunksCount = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        while (head.chunks.size() > chunksCount) {
+            pool.release(head.chunks.remove(head.chunks.size() - 1));
+        }
+        usedSize -= head.length - length;
+        head.length = length;
+    }
+
+    synchronized void remove(String key) {
+        Head head = heads.remove(key);
+        if (head != null) {
+            release(head);
+        }
+    }
+
+    /**
+     * Drops all data kept in memory and frees memory taken by it, e.g. when system is running low on memory.
+     */
+    public synchronized void clear() {
+        for (Head head : heads.values()) {
+            release(head);
+        }
+        heads.clear();
+        pool.trim();
+    }
+
+    public long getMaxSize() {
+        return pool.getMaxSize();
+    }
+
+    /**
+     * @return count of bytes of memory taken by memory tier, including free chunks kept for reuse.
+     */
+    public synchronized long getSize() {
+        return pool.getAllocatedSize();
+    }
+
+    /**
+     * @return count of bytes of files kept in memory.
+     */
+    public synchronized long getUsedSize() {
+        return usedSize;
+    }
+
+    public synchronized int getFilesCount() {
+        return heads.size();
+    }
+
+    /**
+     * @return count of reads served from memory.
+     */
+    public synchronized long getHitsCount() {
+        return hitsCount;
+    }
+
+    /**
+     * @return count of reads of file heads that were not found in memory.
+     */
+    public synchronized long getMissesCount() {
+        return missesCount;
+    }
+
+    private byte[] acquireChunk(String key) {
+        byte[] chunk = pool.acquire();
+        Iterator<Map.Entry<String, Head>> leastRecentlyUsed = heads.entrySet().iterator();
+        while (chunk == null && leastRecentlyUsed.hasNext()) {
+            Map.Entry<String, Head> entry = leastRecentlyUsed.next();
+            if (!entry.getKey().equals(key)) {
+                leastRecentlyUsed.remove();
+                release(entry.getValue());
+                chunk = pool.acquire();
+            }
+        }
+        return chunk;
+    }
+
+    private void release(Head head) {
+        for (byte[] chunk : head.chunks) {
+            pool.release(chunk);
+        }
+        usedSize -= head.length;
+        head.chunks.clear();
+        head.length = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryCache{" +
+                "size=" + getSize() +
+                ", usedSize=" + getUsedSize() +
+                ", maxSize=" + getMaxSize() +
+                ", files=" + getFilesCount() +
+                '}';
+    }
+
+    private static final class Head {
+
+        private final List<byte[]> chunks = new ArrayList<>();
+        private long length;
+    }
+}
@@ -0,0 +1,126 @@
+package com.danikula.videocache.file;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Eviction policy of cache entries limited by their total size.
+ * <p>
+ * Policy doesn't touch files, it only decides which entries should be kept by {@link DiskUsage},
+ * so it may be replayed against traces of requests without disk. Not thread safe.
+ */
+abstract class Policy {
+
+    protected final long maxSize;
+
+    Policy(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive number!");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Adds entry cached before policy is created. Entries are loaded starting from least recently used one.
+     *
+     * @param key  a key of entry.
+     * @param size a size of entry in bytes.
+     */
+    abstract void load(String key, long size);
+
+    /**
+     * Records access to entry, new entry is added.
+     *
+     * @param key  a key of entry.
+     * @param size a current size of entry in bytes.
+     */
+    abstract void access(String key, long size);
+
+    /**
+     * Updates size of known entry without recording access to it.
+     *
+     * @param key  a key of entry.
+     * @param size a current size of entry in bytes.
+     */
+    abstract void update(String key, long size);
+
+    abstract void remove(String key);
+
+    abstract boolean contains(String key);
+
+    /**
+     * Removes entries until total size of entries doesn't exceed max size.
+     *
+     * @return keys of removed entries, may be empty.
+     */
+    abstract List<String> evict();
+
+    /**
+     * Entries ordered by recency, least recently used first.
+     */
+    static final class Segment {
+
+        private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>();
+        private long size;
+
+        /**
+         * Puts entry as the most recently used one.
+         */
+        void put(String key, long entrySize) {
+            remove(key);
+            entries.put(key, entrySize);
+            size += entrySize;
+        }
+
+        /**
+         * Updates size of entry keeping its position.
+         *
+         * @return {@code true} if entry is found.
+         */
+        boolean update(String key, long entrySize) {
+            Long oldSize = entries.get(key);
+            if (oldSize == null) {
+                return false;
+            }
+            entries.put(key, entrySize);
+            size += entrySize - oldSize;
+            return true;
+        }
+
+        /**
+         * @return a size of removed entry or {@code -1} if there is no such entry.
+         */
+        long remove(String key) {
+            Long entrySize = entries.remove(key);
+            if (entrySize == null) {
+                return -1;
+            }
+            size -= entrySize;
+            return entrySize;
+        }
+
+        boolean contains(String key) {
+            return entries.containsKey(key);
+        }
+
+        /**
+         * @return a key of the least recently used entry or {@code null} if segment is empty.
+         */
+        String eldest() {
+            return entries.isEmpty() ? null : entries.keySet().iterator().next();
+        }
+
+        Iterable<Map.Entry<String, Long>> entries() {
+            return entries.entrySet();
+        }
+
+        boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        long size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.danikula.videocache.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link IndexedDiskUsage} that trims cache by {@link Policy}.
+ * <p>
+ * Temp and completed files of the same url are one entry of policy.
+ * Playback touches its file several times (on completion and on closing cache), so touches of entry within
+ * {@link #MIN_ACCESS_INTERVAL} after counted one only update its size.
+ */
+abstract class PolicyDiskUsage extends IndexedDiskUsage {
+
+    private static final long MIN_ACCESS_INTERVAL = 10 * 60 * 1000;
+
+    private final Policy policy;
+    private final Map<String, Long> accessTimes = new HashMap<>();
+
+    PolicyDiskUsage(Policy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    protected void onLoaded(File file, long size) {
+        policy.load(getKey(file), size);
+    }
+
+    @Override
+    protected void onTouched(File file, long size) {
+        String key = getKey(file);
+        long now = System.currentTimeMillis();
+        Long accessTime = accessTimes.get(key);
+        if (accessTime != null && now - accessTime < MIN_ACCESS_INTERVAL && policy.contains(key)) {
+            policy.update(key, size);
+        } else {
+            policy.access(key, size);
+            accessTimes.put(key, now);
+        }
+    }
+
+    @Override
+    protected void onForgotten(File file) {
+        String key = getKey(file);
+        File sibling = FileCache.isTempFile(file) ? new File(key) : new File(key + FileCache.TEMP_POSTFIX);
+        if (!getIndex().containsKey(sibling)) {
+            policy.remove(key);
+            accessTimes.remove(key);
+        }
+    }
+
+    @Override
+    protected List<File> selectVictims() {
+        List<File> victims = new ArrayList<>();
+        Map<File, Long> index = getIndex();
+        for (String key : policy.evict()) {
+            accessTimes.remove(key);
+            File completedFile = new File(key);
+            if (index.containsKey(completedFile)) {
+                victims.add(completedFile);
+            }
+            File tempFile = new File(key + FileCache.TEMP_POSTFIX);
+            if (index.containsKey(tempFile)) {
+                victims.add(tempFile);
+            }
+        }
+        return victims;
+    }
+
+    private String getKey(File file) {
+        String path = file.getPath();
+        return FileCache.isTempFile(file) ? path.substring(0, path.length() - FileCache.TEMP_POSTFIX.length()) : path;
+    }
+}
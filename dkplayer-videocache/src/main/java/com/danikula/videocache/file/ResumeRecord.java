@@ -0,0 +1,220 @@
+package com.danikula.videocache.file;
+
+import com.danikula.videocache.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sidecar record of temp cache file to resume caching after crash or restart.
+ * <p>
+ * Record keeps validator of source version (ETag or Last-Modified), expected source length and checksums
+ * of data blocks written contiguously from the beginning of temp file. Header is rewritten when source is changed,
+ * checksum of every next block is appended, so torn tail of record (e.g. after crash) loses only the last checksums.
+ * Checksum of not full last block is written to header when cache is closed, so small cached data (e.g. preloaded
+ * first seconds of video) is kept too. It is valid only until next full block is appended.
+ */
+final class ResumeRecord {
+
+    static final String POSTFIX = ".resume";
+    static final int BLOCK_SIZE = 256 * 1024;
+    private static final String TEMP_POSTFIX = ".tmp";
+    private static final int MAGIC = 0x52534d32;
+
+    private final File file;
+    private String validator = "";
+    private long sourceLength = -1;
+    private int[] checksums = new int[16];
+    private int checksumsCount;
+    private int tailBlock = -1;
+    private int tailLength;
+    private int tailChecksum;
+    private DataOutputStream output;
+
+    ResumeRecord(File dataFile) {
+        this.file = new File(dataFile.getPath() + POSTFIX);
+    }
+
+    static boolean isRecordFile(File file) {
+        return file.getName().endsWith(POSTFIX) || file.getName().endsWith(POSTFIX + TEMP_POSTFIX);
+    }
+
+    /**
+     * Reads record from file.
+     *
+     * @return {@code true} if record is read, {@code false} if there is no valid record.
+     */
+    boolean load() {
+        if (!file.exists()) {
+            return false;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != MAGIC || input.readInt() != BLOCK_SIZE) {
+                Logger.warn("Unknown format of resume record " + file + ", ignore it");
+                return false;
+            }
+            validator = input.readUTF();
+            sourceLength = input.readLong();
+            tailBlock = input.readInt();
+            tailLength = input.readInt();
+            tailChecksum = input.readInt();
+            checksumsCount = 0;
+            try {
+                while (true) {
+                    addToArray(input.readInt());
+                }
+            } catch (EOFException e) {
+                // end of record or torn last checksum
+            }
+            return true;
+        } catch (IOException e) {
+            Logger.warn("Resume record " + file + " is broken, ignore it");
+            return false;
+        } finally {
+            closeSafely(input);
+        }
+    }
+
+    /**
+     * @return validator of source version, {@code null} if it is unknown.
+     */
+    String getValidator() {
+        return validator.isEmpty() ? null : validator;
+    }
+
+    long getSourceLength() {
+        return sourceLength;
+    }
+
+    int getChecksumsCount() {
+        return checksumsCount;
+    }
+
+    int getChecksum(int block) {
+        return checksums[block];
+    }
+
+    /**
+     * @return length of data after the last full block, {@code 0} if it is unknown.
+     */
+    int getTailLength() {
+        return tailBlock == checksumsCount ? tailLength : 0;
+    }
+
+    int getTailChecksum() {
+        return tailChecksum;
+    }
+
+    /**
+     * Remembers not full block written after the last full one.
+     *
+     * @param length   a length of data after the last full block.
+     * @param checksum a checksum of this data.
+     */
+    void setTail(int length, int checksum) {
+        if (tailBlock != checksumsCount || length != tailLength || checksum != tailChecksum) {
+            this.tailBlock = checksumsCount;
+            this.tailLength = length;
+            this.tailChecksum = checksum;
+            rewrite();
+        }
+    }
+
+    void setSource(String validator, long sourceLength) {
+        String newValidator = validator != null ? validator : "";
+        if (!newValidator.equals(this.validator) || sourceLength != this.sourceLength) {
+            this.validator = newValidator;
+            this.sourceLength = sourceLength;
+            rewrite();
+        }
+    }
+
+    void truncate(int checksumsCount) {
+        if (checksumsCount < this.checksumsCount) {
+            this.checksumsCount = checksumsCount;
+            rewrite();
+        }
+    }
+
+    void addChecksum(int checksum) {
+        addToArray(checksum);
+        if (output == null) {
+            rewrite();
+            return;
+        }
+        try {
+            output.writeInt(checksum);
+            output.flush();
+        } catch (IOException e) {
+            Logger.error("Error writing resume record " + file);
+        }
+    }
+
+    void close() {
+        closeSafely(output);
+        output = null;
+    }
+
+    void delete() {
+        close();
+        if (file.exists() && !file.delete()) {
+            Logger.warn("Error deleting resume record " + file);
+        }
+    }
+
+    private void addToArray(int checksum) {
+        if (checksumsCount == checksums.length) {
+            checksums = Arrays.copyOf(checksums, checksums.length * 2);
+        }
+        checksums[checksumsCount++] = checksum;
+    }
+
+    private void rewrite() {
+        close();
+        File tempFile = new File(file.getPath() + TEMP_POSTFIX);
+        DataOutputStream tempOutput = null;
+        try {
+            tempOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            tempOutput.writeInt(MAGIC);
+            tempOutput.writeInt(BLOCK_SIZE);
+            tempOutput.writeUTF(validator);
+            tempOutput.writeLong(sourceLength);
+            tempOutput.writeInt(tailBlock);
+            tempOutput.writeInt(tailLength);
+            tempOutput.writeInt(tailChecksum);
+            for (int i = 0; i < checksumsCount; i++) {
+                tempOutput.writeInt(checksums[i]);
+            }
+            tempOutput.close();
+            tempOutput = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Error renaming " + tempFile + " to " + file);
+            }
+            output = new DataOutputStream(new FileOutputStream(file, true));
+        } catch (IOException e) {
+            Logger.error("Error writing resume record " + file);
+            closeSafely(tempOutput);
+        }
+    }
+
+    private void closeSafely(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Logger.warn("Error closing resume record " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.danikula.videocache.file;
+
+/**
+ * {@link DiskUsage} that uses segmented LRU strategy and trims cache size to max size if needed.
+ * <p>
+ * Video played again is protected from eviction by videos played once, so popular videos survive
+ * scrolling through long feed. See {@link SegmentedLruPolicy}.
+ */
+public class SegmentedLruDiskUsage extends PolicyDiskUsage {
+
+    public SegmentedLruDiskUsage(long maxSize) {
+        super(new SegmentedLruPolicy(maxSize));
+    }
+}
@@ -0,0 +1,79 @@
+package com.danikula.videocache.file;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Policy} that keeps entries in two LRU segments: probation and protected.
+ * <p>
+ * New entry is added to probation segment, entry accessed again is promoted to protected segment.
+ * Entries exceeding size of protected segment are demoted back to probation segment, and entries are evicted
+ * from probation segment first. So entries used once (e.g. videos scrolled through in feed) can't evict
+ * ones used repeatedly, as they do with LRU policy.
+ */
+final class SegmentedLruPolicy extends Policy {
+
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final long maxProtectedSize;
+    private final Segment probation = new Segment();
+    private final Segment protectedSegment = new Segment();
+
+    SegmentedLruPolicy(long maxSize) {
+        super(maxSize);
+        this.maxProtectedSize = maxSize / 100 * PROTECTED_PERCENT;
+    }
+
+    @Override
+    void load(String key, long size) {
+        if (!protectedSegment.update(key, size)) {
+            probation.put(key, size);
+        }
+    }
+
+    @Override
+    void access(String key, long size) {
+        if (protectedSegment.contains(key)) {
+            protectedSegment.put(key, size);
+        } else if (probation.remove(key) >= 0) {
+            protectedSegment.put(key, size);
+            while (protectedSegment.size() > maxProtectedSize) {
+                String demoted = protectedSegment.eldest();
+                probation.put(demoted, protectedSegment.remove(demoted));
+            }
+        } else {
+            probation.put(key, size);
+        }
+    }
+
+    @Override
+    void update(String key, long size) {
+        if (!protectedSegment.update(key, size)) {
+            probation.update(key, size);
+        }
+    }
+
+    @Override
+    void remove(String key) {
+        if (probation.remove(key) < 0) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    @Override
+    boolean contains(String key) {
+        return probation.contains(key) || protectedSegment.contains(key);
+    }
+
+    @Override
+    List<String> evict() {
+        List<String> victims = new ArrayList<>();
+        while (probation.size() + protectedSegment.size() > maxSize) {
+            Segment segment = probation.isEmpty() ? protectedSegment : probation;
+            String victim = segment.eldest();
+            segment.remove(victim);
+            victims.add(victim);
+        }
+        return victims;
+    }
+}
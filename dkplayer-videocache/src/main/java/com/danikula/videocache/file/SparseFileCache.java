@@ -0,0 +1,206 @@
+package com.danikula.videocache.file;
+
+import com.danikula.videocache.Logger;
+import com.danikula.videocache.ProxyCacheException;
+import com.danikula.videocache.SparseCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link FileCache} that stores non-contiguous ranges of data in one file.
+ * <p>
+ * Cached ranges are kept in index file next to temp cache file, so holes filled after seeking survive proxy restart.
+ * Index is replaced only after data is flushed to disk, so it never points to data lost by power failure.
+ * Index is deleted when cache is completed. Temp file without valid index is considered empty.
+ * Ranges are not verified by checksums, but they are dropped if source is changed (see {@link #validate(String, long)}).
+ */
+public class SparseFileCache extends FileCache implements SparseCache {
+
+    static final String INDEX_POSTFIX = ".ranges";
+    private static final int INDEX_MAGIC = 0x53504331;
+    private static final long INDEX_SAVE_INTERVAL = 1024 * 1024;
+
+    private final TreeMap<Long, Long> ranges = new TreeMap<>(); // start -> end (exclusive)
+    private long unsavedBytes;
+
+    public SparseFileCache(File file) throws ProxyCacheException {
+        this(file, new UnlimitedDiskUsage());
+    }
+
+    public SparseFileCache(File file, DiskUsage diskUsage) throws ProxyCacheException {
+        this(file, diskUsage, null);
+    }
+
+    public SparseFileCache(File file, DiskUsage diskUsage, MemoryCache memoryCache) throws ProxyCacheException {
+        super(file, diskUsage, memoryCache, true);
+        if (!isCompleted()) {
+            loadIndex();
+            truncateMemory(cachedLength(0));
+        }
+    }
+
+    @Override
+    public synchronized long available() throws ProxyCacheException {
+        return isCompleted() ? super.available() : cachedLength(0);
+    }
+
+    @Override
+    public synchronized long cachedLength(long offset) throws ProxyCacheException {
+        if (isCompleted()) {
+            return Math.max(0, super.available() - offset);
+        }
+        Map.Entry<Long, Long> range = ranges.floorEntry(offset);
+        return range != null && range.getValue() > offset ? range.getValue() - offset : 0;
+    }
+
+    @Override
+    public synchronized int read(byte[] buffer, long offset, int length) throws ProxyCacheException {
+        if (isCompleted()) {
+            return super.read(buffer, offset, length);
+        }
+        // never expose holes
+        int cachedLength = (int) Math.min(length, cachedLength(offset));
+        return cachedLength == 0 ? 0 : super.read(buffer, offset, cachedLength);
+    }
+
+    @Override
+    public synchronized void append(byte[] data, int length) throws ProxyCacheException {
+        write(available(), data, length);
+    }
+
+    @Override
+    public synchronized void write(long offset, byte[] data, int length) throws ProxyCacheException {
+        writeAt(offset, data, length);
+        addRange(offset, offset + length);
+        unsavedBytes += length;
+        if (unsavedBytes >= INDEX_SAVE_INTERVAL) {
+            saveIndex();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws ProxyCacheException {
+        if (!isCompleted()) {
+            saveIndex();
+        }
+        super.close();
+    }
+
+    @Override
+    public synchronized void complete() throws ProxyCacheException {
+        if (isCompleted()) {
+            return;
+        }
+        File indexFile = getIndexFile();
+        super.complete();
+        ranges.clear();
+        if (indexFile.exists() && !indexFile.delete()) {
+            Logger.warn("Error deleting ranges index " + indexFile);
+        }
+    }
+
+    @Override
+    synchronized void clear() throws ProxyCacheException {
+        super.clear();
+        ranges.clear();
+        saveIndex();
+    }
+
+    private void addRange(long start, long end) {
+        Map.Entry<Long, Long> previous = ranges.floorEntry(start);
+        if (previous != null && previous.getValue() >= start) {
+            start = previous.getKey();
+            end = Math.max(end, previous.getValue());
+        }
+        Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+            next = ranges.ceilingEntry(start);
+        }
+        ranges.put(start, end);
+    }
+
+    private File getIndexFile() {
+        return new File(getFile().getPath() + INDEX_POSTFIX);
+    }
+
+    private void loadIndex() {
+        File indexFile = getIndexFile();
+        if (!indexFile.exists()) {
+            return;
+        }
+        long dataLength = getFile().length();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException("Unknown format of ranges index");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long start = in.readLong();
+                long end = in.readLong();
+                if (start < 0 || start >= end || end > dataLength) {
+                    throw new IOException("Ranges index doesn't match data file");
+                }
+                addRange(start, end);
+            }
+        } catch (IOException e) {
+            Logger.warn("Ranges index " + indexFile + " is broken, cache is considered empty");
+            ranges.clear();
+        } finally {
+            closeSafely(in);
+        }
+    }
+
+    private void saveIndex() {
+        unsavedBytes = 0;
+        File indexFile = getIndexFile();
+        File tempIndexFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            // index replaced before data is on disk would point to lost data after power failure
+            syncData();
+            FileOutputStream fileOut = new FileOutputStream(tempIndexFile);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(ranges.size());
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                out.writeLong(range.getKey());
+                out.writeLong(range.getValue());
+            }
+            out.flush();
+            fileOut.getFD().sync();
+            out.close();
+            out = null;
+            if (!tempIndexFile.renameTo(indexFile)) {
+                throw new IOException("Error renaming " + tempIndexFile + " to " + indexFile);
+            }
+        } catch (IOException e) {
+            Logger.error("Error saving ranges index " + indexFile);
+        } finally {
+            closeSafely(out);
+        }
+    }
+
+    private void closeSafely(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Logger.warn("Error closing ranges index");
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.danikula.videocache.file;
+
+/**
+ * {@link DiskUsage} that uses W-TinyLFU strategy and trims cache size to max size if needed.
+ * <p>
+ * Video is kept in cache by its recent popularity: newly cached video is deleted instead of cached one
+ * if it is played less often. See {@link TinyLfuPolicy}.
+ */
+public class TinyLfuDiskUsage extends PolicyDiskUsage {
+
+    public TinyLfuDiskUsage(long maxSize) {
+        super(new TinyLfuPolicy(maxSize));
+    }
+}
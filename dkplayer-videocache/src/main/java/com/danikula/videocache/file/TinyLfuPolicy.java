@@ -0,0 +1,117 @@
+package com.danikula.videocache.file;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * W-TinyLFU {@link Policy}: small LRU window in front of main cache with segmented LRU,
+ * entries are admitted to main cache by their frequency estimated by {@link FrequencySketch}.
+ * <p>
+ * New entry is added to window. Entry pushed out of window becomes candidate for main cache: it is compared to
+ * the least recently used entry of probation segment and the one accessed less often is evicted. So burst of
+ * entries used once (e.g. videos scrolled through in feed) can't evict popular entries, and entry becoming
+ * popular is admitted though it is new. Frequency of every key is counted, even of evicted one.
+ */
+final class TinyLfuPolicy extends Policy {
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    private static final long ESTIMATED_ENTRY_SIZE = 256 * 1024;
+
+    private final long maxWindowSize;
+    private final long maxProtectedSize;
+    private final Segment window = new Segment();
+    private final Segment probation = new Segment();
+    private final Segment protectedSegment = new Segment();
+    private final FrequencySketch sketch;
+
+    TinyLfuPolicy(long maxSize) {
+        super(maxSize);
+        this.maxWindowSize = maxSize / 100 * WINDOW_PERCENT;
+        this.maxProtectedSize = (maxSize - maxWindowSize) / 100 * PROTECTED_PERCENT;
+        this.sketch = new FrequencySketch(maxSize / ESTIMATED_ENTRY_SIZE);
+    }
+
+    @Override
+    void load(String key, long size) {
+        if (!window.update(key, size) && !protectedSegment.update(key, size)) {
+            probation.put(key, size);
+        }
+    }
+
+    @Override
+    void access(String key, long size) {
+        sketch.increment(key);
+        if (window.contains(key)) {
+            window.put(key, size);
+        } else if (protectedSegment.contains(key)) {
+            protectedSegment.put(key, size);
+        } else if (probation.remove(key) >= 0) {
+            protectedSegment.put(key, size);
+            while (protectedSegment.size() > maxProtectedSize) {
+                String demoted = protectedSegment.eldest();
+                probation.put(demoted, protectedSegment.remove(demoted));
+            }
+        } else {
+            window.put(key, size);
+        }
+    }
+
+    @Override
+    void update(String key, long size) {
+        if (!window.update(key, size) && !protectedSegment.update(key, size)) {
+            probation.update(key, size);
+        }
+    }
+
+    @Override
+    void remove(String key) {
+        if (window.remove(key) < 0 && probation.remove(key) < 0) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    @Override
+    boolean contains(String key) {
+        return window.contains(key) || probation.contains(key) || protectedSegment.contains(key);
+    }
+
+    @Override
+    List<String> evict() {
+        Deque<String> candidates = new ArrayDeque<>();
+        while (window.size() > maxWindowSize) {
+            String candidate = window.eldest();
+            probation.put(candidate, window.remove(candidate));
+            candidates.add(candidate);
+        }
+        List<String> victims = new ArrayList<>();
+        while (window.size() + probation.size() + protectedSegment.size() > maxSize) {
+            String candidate = candidates.peekFirst();
+            String victim = findVictim(candidates);
+            String evicted;
+            if (candidate == null) {
+                evicted = victim != null ? victim : window.eldest();
+            } else if (victim == null || sketch.frequency(candidate) <= sketch.frequency(victim)) {
+                evicted = candidates.removeFirst();
+            } else {
+                evicted = victim;
+            }
+            remove(evicted);
+            victims.add(evicted);
+        }
+        return victims;
+    }
+
+    private String findVictim(Deque<String> candidates) {
+        // candidates are the most recently used entries of probation segment, so search is short
+        for (Map.Entry<String, Long> entry : probation.entries()) {
+            if (!candidates.contains(entry.getKey())) {
+                return entry.getKey();
+            }
+        }
+        return protectedSegment.eldest();
+    }
+}
@@ -0,0 +1,188 @@
+package com.danikula.videocache.hls;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HLS playlist (m3u8), master or media one.
+ * <p>
+ * Relative uris of playlist are resolved against its url while parsing, so playlist can be stored and
+ * read later without its url. Uris of segments, variant playlists, renditions, keys and initialization sections
+ * may be replaced by {@link #toText(UriMapper)}, e.g. by urls of proxy. Only http(s) uris are replaced.
+ */
+public final class HlsPlaylist {
+
+    private static final String HEADER = "#EXTM3U";
+    private static final String TAG_STREAM_INF = "#EXT-X-STREAM-INF";
+    private static final String TAG_END_LIST = "#EXT-X-ENDLIST";
+    private static final Pattern URI_ATTRIBUTE = Pattern.compile("URI=\"([^\"]*)\"");
+
+    private final List<Line> lines;
+    private final List<String> segmentUrls;
+    private final List<String> playlistUrls;
+    private final boolean master;
+    private final boolean ended;
+
+    private HlsPlaylist(List<Line> lines, List<String> segmentUrls, List<String> playlistUrls, boolean master, boolean ended) {
+        this.lines = lines;
+        this.segmentUrls = Collections.unmodifiableList(segmentUrls);
+        this.playlistUrls = Collections.unmodifiableList(playlistUrls);
+        this.master = master;
+        this.ended = ended;
+    }
+
+    /**
+     * Checks if url looks like url of playlist.
+     *
+     * @param url an url to be checked.
+     * @return {@code true} if path of url has {@code m3u8} or {@code m3u} extension.
+     */
+    public static boolean isPlaylistUrl(String url) {
+        int pathEnd = url.length();
+        int queryIndex = url.indexOf('?');
+        int fragmentIndex = url.indexOf('#');
+        if (queryIndex != -1) {
+            pathEnd = queryIndex;
+        }
+        if (fragmentIndex != -1 && fragmentIndex < pathEnd) {
+            pathEnd = fragmentIndex;
+        }
+        String path = url.substring(0, pathEnd).toLowerCase();
+        return path.endsWith(".m3u8") || path.endsWith(".m3u");
+    }
+
+    /**
+     * Parses playlist.
+     *
+     * @param text    a text of playlist.
+     * @param baseUrl an url relative uris of playlist are resolved against, usually url playlist is loaded from.
+     * @return parsed playlist.
+     * @throws IllegalArgumentException if text is not HLS playlist.
+     */
+    public static HlsPlaylist parse(String text, String baseUrl) {
+        // byte order mark would make header a line of uri
+        String[] rawLines = text.replace("\uFEFF", "").split("\n");
+        if (rawLines.length == 0 || !rawLines[0].trim().startsWith(HEADER)) {
+            throw new IllegalArgumentException("Text is not HLS playlist: it doesn't start with " + HEADER);
+        }
+        boolean master = text.contains(TAG_STREAM_INF);
+        boolean ended = false;
+        List<Line> lines = new ArrayList<>(rawLines.length);
+        List<String> segmentUrls = new ArrayList<>();
+        List<String> playlistUrls = new ArrayList<>();
+        for (String rawLine : rawLines) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("#")) {
+                ended |= line.equals(TAG_END_LIST);
+                Matcher matcher = URI_ATTRIBUTE.matcher(line);
+                if (matcher.find()) {
+                    String uri = resolve(baseUrl, matcher.group(1));
+                    lines.add(new Line(line.substring(0, matcher.start(1)), uri, line.substring(matcher.end(1))));
+                    // renditions and i-frame streams of master playlist are playlists too
+                    if (master && !line.startsWith("#EXT-X-SESSION")) {
+                        playlistUrls.add(uri);
+                    }
+                } else {
+                    lines.add(new Line(line, null, ""));
+                }
+            } else {
+                String uri = resolve(baseUrl, line);
+                lines.add(new Line("", uri, ""));
+                (master ? playlistUrls : segmentUrls).add(uri);
+            }
+        }
+        return new HlsPlaylist(lines, segmentUrls, playlistUrls, master, ended);
+    }
+
+    /**
+     * @return {@code true} if playlist is master one, it lists variant streams instead of segments.
+     */
+    public boolean isMaster() {
+        return master;
+    }
+
+    /**
+     * @return {@code true} if media playlist is complete (has {@code #EXT-X-ENDLIST}), so it will not be changed.
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * @return absolute urls of media segments in order of playback, empty for master playlist.
+     */
+    public List<String> getSegmentUrls() {
+        return segmentUrls;
+    }
+
+    /**
+     * @return absolute urls of variant streams, renditions and i-frame streams of master playlist, empty for media playlist.
+     */
+    public List<String> getPlaylistUrls() {
+        return playlistUrls;
+    }
+
+    /**
+     * @return text of playlist with absolute uris.
+     */
+    public String toText() {
+        return toText(null);
+    }
+
+    /**
+     * Builds text of playlist with replaced uris.
+     *
+     * @param mapper a mapper of absolute http(s) uris, {@code null} to keep them.
+     * @return text of playlist.
+     */
+    public String toText(UriMapper mapper) {
+        StringBuilder text = new StringBuilder();
+        for (Line line : lines) {
+            text.append(line.prefix);
+            if (line.uri != null) {
+                boolean mapped = mapper != null && (line.uri.startsWith("http://") || line.uri.startsWith("https://"));
+                text.append(mapped ? mapper.map(line.uri) : line.uri);
+            }
+            text.append(line.suffix).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String resolve(String baseUrl, String uri) {
+        try {
+            return new URL(new URL(baseUrl), uri).toString();
+        } catch (MalformedURLException e) {
+            return uri; // e.g. skd:// key uri, it is kept as is
+        }
+    }
+
+    /**
+     * Mapper of uris of playlist.
+     */
+    public interface UriMapper {
+
+        String map(String uri);
+
+    }
+
+    private static final class Line {
+
+        private final String prefix;
+        private final String uri;
+        private final String suffix;
+
+        Line(String prefix, String uri, String suffix) {
+            this.prefix = prefix;
+            this.uri = uri;
+            this.suffix = suffix;
+        }
+    }
+}
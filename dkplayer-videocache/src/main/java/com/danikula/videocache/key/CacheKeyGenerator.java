@@ -0,0 +1,19 @@
+package com.danikula.videocache.key;
+
+/**
+ * Generator of keys used to cache sources: urls with the same key share cached file.
+ * <p>
+ * Key allows to cache source once if its url changes, e.g. url signed by CDN with rotated token.
+ * Source is still requested by original url.
+ */
+public interface CacheKeyGenerator {
+
+    /**
+     * Generates key of source.
+     *
+     * @param url an original url of source.
+     * @return a key of source, {@code null} is not acceptable!
+     */
+    String generate(String url);
+
+}
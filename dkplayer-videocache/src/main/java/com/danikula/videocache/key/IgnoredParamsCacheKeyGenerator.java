@@ -0,0 +1,50 @@
+package com.danikula.videocache.key;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * {@link CacheKeyGenerator} that uses url without listed query parameters as key,
+ * e.g. {@code http://cdn.com/video.mp4?id=1} for {@code http://cdn.com/video.mp4?id=1&auth_key=abc&t=123}
+ * if {@code auth_key} and {@code t} are ignored.
+ */
+public class IgnoredParamsCacheKeyGenerator implements CacheKeyGenerator {
+
+    private final Set<String> ignoredParams;
+
+    /**
+     * @param ignoredParams names of query parameters to be dropped from key, cant be {@code null}.
+     */
+    public IgnoredParamsCacheKeyGenerator(String... ignoredParams) {
+        this.ignoredParams = new HashSet<>(Arrays.asList(checkNotNull(ignoredParams)));
+    }
+
+    @Override
+    public String generate(String url) {
+        int queryIndex = url.indexOf('?');
+        if (queryIndex == -1) {
+            return url;
+        }
+        int fragmentIndex = url.indexOf('#', queryIndex);
+        int queryEnd = fragmentIndex == -1 ? url.length() : fragmentIndex;
+        StringBuilder key = new StringBuilder(url.length()).append(url, 0, queryIndex);
+        char separator = '?';
+        int paramStart = queryIndex + 1;
+        while (paramStart < queryEnd) {
+            int paramEnd = url.indexOf('&', paramStart);
+            paramEnd = paramEnd == -1 || paramEnd > queryEnd ? queryEnd : paramEnd;
+            int nameEnd = url.indexOf('=', paramStart);
+            nameEnd = nameEnd == -1 || nameEnd > paramEnd ? paramEnd : nameEnd;
+            if (paramEnd > paramStart && !ignoredParams.contains(url.substring(paramStart, nameEnd))) {
+                key.append(separator).append(url, paramStart, paramEnd);
+                separator = '&';
+            }
+            paramStart = paramEnd + 1;
+        }
+        return key.append(url, queryEnd, url.length()).toString();
+    }
+
+}
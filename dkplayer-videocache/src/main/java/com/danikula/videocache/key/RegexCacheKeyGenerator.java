@@ -0,0 +1,30 @@
+package com.danikula.videocache.key;
+
+import java.util.regex.Pattern;
+
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * {@link CacheKeyGenerator} that rewrites url by regular expression to get key,
+ * e.g. {@code new RegexCacheKeyGenerator("/token=[^/]+", "")} drops token segment from path.
+ */
+public class RegexCacheKeyGenerator implements CacheKeyGenerator {
+
+    private final Pattern pattern;
+    private final String replacement;
+
+    /**
+     * @param regex       a regular expression to be matched in url, cant be {@code null}.
+     * @param replacement a replacement for every match, may refer captured groups as {@code $1}, cant be {@code null}.
+     */
+    public RegexCacheKeyGenerator(String regex, String replacement) {
+        this.pattern = Pattern.compile(checkNotNull(regex));
+        this.replacement = checkNotNull(replacement);
+    }
+
+    @Override
+    public String generate(String url) {
+        return pattern.matcher(url).replaceAll(replacement);
+    }
+
+}
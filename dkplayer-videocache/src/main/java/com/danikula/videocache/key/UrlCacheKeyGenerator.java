@@ -0,0 +1,13 @@
+package com.danikula.videocache.key;
+
+/**
+ * {@link CacheKeyGenerator} that uses whole url as key.
+ */
+public class UrlCacheKeyGenerator implements CacheKeyGenerator {
+
+    @Override
+    public String generate(String url) {
+        return url;
+    }
+
+}
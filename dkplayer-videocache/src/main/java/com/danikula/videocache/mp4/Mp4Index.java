@@ -0,0 +1,428 @@
+package com.danikula.videocache.mp4;
+
+import com.danikula.videocache.ByteRange;
+import com.danikula.videocache.Logger;
+import com.danikula.videocache.ProxyCacheException;
+import com.danikula.videocache.Source;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of samples of MP4 (ISO base media) file built from its {@code moov} box.
+ * <p>
+ * Knows where samples of every track are stored, so it can tell which bytes of file player needs
+ * to play first seconds of video. {@code moov} is found wherever it is stored: before or after media data.
+ */
+public final class Mp4Index {
+
+    private static final int HEAD_SIZE = 64 * 1024;
+    private static final int TAIL_READ_SIZE = 256 * 1024;
+    private static final int MAX_MOOV_SIZE = 32 * 1024 * 1024;
+    private static final int MAX_TOP_LEVEL_BOXES = 64;
+    private static final long MAX_RANGES_GAP = 32 * 1024;
+    private static final long MAX_KEY_FRAME_EXTENSION_MS = 1000;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final List<ByteRange> metadataRanges;
+    private final List<Track> tracks;
+    private final long length;
+    private final boolean moovAtEnd;
+
+    private Mp4Index(List<ByteRange> metadataRanges, List<Track> tracks, long length, boolean moovAtEnd) {
+        this.metadataRanges = metadataRanges;
+        this.tracks = tracks;
+        this.length = length;
+        this.moovAtEnd = moovAtEnd;
+    }
+
+    /**
+     * Reads index of mp4 file. Only top level boxes headers and {@code moov} box are read from source.
+     *
+     * @param source a source of mp4 file, it is opened and closed by this method for every read range.
+     * @return an index of file.
+     * @throws ProxyCacheException if error occur while reading source or source is not mp4 file with samples index in {@code moov}.
+     */
+    public static Mp4Index read(Source source) throws ProxyCacheException {
+        BoxReader reader = new BoxReader(source);
+        long length = reader.length();
+        List<ByteRange> metadataRanges = new ArrayList<>();
+        ByteBuffer moov = null;
+        boolean mediaDataFound = false;
+        long offset = 0;
+        for (int i = 0; moov == null && offset < length; i++) {
+            if (i == MAX_TOP_LEVEL_BOXES) {
+                throw new ProxyCacheException("Too many top level boxes, moov is not found");
+            }
+            ByteBuffer header = reader.read(offset, (int) Math.min(16, length - offset));
+            if (header.remaining() < 8) {
+                break; // trailing garbage
+            }
+            long size = header.getInt() & 0xffffffffL;
+            int type = header.getInt();
+            int headerSize = 8;
+            if (size == 1 && header.remaining() >= 8) {
+                size = header.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = length - offset; // box lasts up to the end of file
+            }
+            if (size < headerSize) {
+                throw new ProxyCacheException("Invalid size " + size + " of box " + typeToString(type) + " at " + offset);
+            }
+            if (i == 0 && type != type("ftyp")) {
+                throw new ProxyCacheException("Not an mp4 file: first box is " + typeToString(type));
+            }
+            if (type == type("moov")) {
+                if (size > MAX_MOOV_SIZE) {
+                    throw new ProxyCacheException("Too large moov: " + size);
+                }
+                moov = reader.read(offset + headerSize, (int) size - headerSize);
+            }
+            mediaDataFound |= type == type("mdat");
+            // everything except media data is needed for playback
+            long metadataEnd = type == type("mdat") ? offset + headerSize : offset + size;
+            metadataRanges.add(new ByteRange(offset, Math.min(metadataEnd, length)));
+            offset += size;
+        }
+        if (moov == null) {
+            throw new ProxyCacheException("No moov in mp4 file");
+        }
+        List<Track> tracks = new ArrayList<>();
+        try {
+            parseContainer(moov, null, tracks);
+        } catch (RuntimeException e) {
+            // fields of boxes are not checked one by one, malformed box is read out of its bounds
+            throw new ProxyCacheException("Malformed moov in mp4 file", e);
+        }
+        if (tracks.isEmpty()) {
+            throw new ProxyCacheException("No tracks with samples in mp4 file, fragmented mp4 is not supported");
+        }
+        return new Mp4Index(metadataRanges, tracks, length, mediaDataFound);
+    }
+
+    /**
+     * Returns sorted not overlapped ranges of file needed to play first seconds of video.
+     * <p>
+     * Playback time is extended up to the next key frame of video track if it is close, so preloaded part
+     * ends with complete group of pictures. Ranges include all metadata boxes (including {@code moov})
+     * and samples of all tracks played during this time.
+     *
+     * @param durationMs a duration of video to be played in milliseconds.
+     * @return ranges of file to be read.
+     * @throws ProxyCacheException if sample tables of {@code moov} are malformed.
+     */
+    public List<ByteRange> getRanges(long durationMs) throws ProxyCacheException {
+        try {
+            return findRanges(durationMs);
+        } catch (RuntimeException e) {
+            // sample tables are read on demand, e.g. chunk number in stsc may be out of stco
+            throw new ProxyCacheException("Malformed sample tables in mp4 file", e);
+        }
+    }
+
+    /**
+     * Returns {@code true} if {@code moov} is stored after media data, so player reads the end of file before playing.
+     *
+     * @return {@code true} if {@code moov} is at the end of file.
+     */
+    public boolean isMoovAtEnd() {
+        return moovAtEnd;
+    }
+
+    /**
+     * Returns max duration of tracks.
+     *
+     * @return a duration of video in milliseconds.
+     */
+    public long getDurationMs() {
+        long durationMs = 0;
+        for (Track track : tracks) {
+            durationMs = Math.max(durationMs, track.sampleTime(track.sampleCount) * 1000 / track.timescale);
+        }
+        return durationMs;
+    }
+
+    private List<ByteRange> findRanges(long durationMs) {
+        Track video = null;
+        for (Track track : tracks) {
+            if (track.handler == type("vide")) {
+                video = track;
+                break;
+            }
+        }
+        long endTimeMs = durationMs;
+        if (video != null) {
+            int syncSample = video.nextSyncSample(video.sampleAt(durationMs * video.timescale / 1000));
+            long syncTimeMs = video.sampleTime(syncSample) * 1000 / video.timescale;
+            endTimeMs = syncTimeMs - durationMs <= MAX_KEY_FRAME_EXTENSION_MS ? syncTimeMs : durationMs;
+        }
+        List<ByteRange> ranges = new ArrayList<>(metadataRanges);
+        for (Track track : tracks) {
+            track.addSampleRanges(track.sampleAt(endTimeMs * track.timescale / 1000), length, ranges);
+        }
+        return merge(ranges);
+    }
+
+    private static List<ByteRange> merge(List<ByteRange> ranges) {
+        Collections.sort(ranges, new Comparator<ByteRange>() {
+            @Override
+            public int compare(ByteRange first, ByteRange second) {
+                return first.start < second.start ? -1 : (first.start == second.start ? 0 : 1);
+            }
+        });
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange last = null;
+        for (ByteRange range : ranges) {
+            // small gaps are cheaper to read than to open new connection
+            if (last != null && range.start <= last.end + MAX_RANGES_GAP) {
+                last = new ByteRange(last.start, Math.max(last.end, range.end));
+                merged.set(merged.size() - 1, last);
+            } else {
+                last = range;
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    private static void parseContainer(ByteBuffer container, Track track, List<Track> tracks) throws ProxyCacheException {
+        while (container.remaining() >= 8) {
+            int start = container.position();
+            long size = container.getInt() & 0xffffffffL;
+            int type = container.getInt();
+            if (size == 1 && container.remaining() >= 8) {
+                size = container.getLong();
+            } else if (size == 0) {
+                size = container.limit() - start;
+            }
+            if (size < container.position() - start || size > container.limit() - start) {
+                throw new ProxyCacheException("Invalid size " + size + " of box " + typeToString(type));
+            }
+            ByteBuffer box = container.duplicate();
+            box.limit(start + (int) size);
+            container.position(start + (int) size);
+            if (type == type("trak")) {
+                Track newTrack = new Track();
+                parseContainer(box, newTrack, tracks);
+                if (newTrack.isValid()) {
+                    tracks.add(newTrack);
+                } else {
+                    Logger.debug("Skip mp4 track without samples index");
+                }
+            } else if (type == type("mdia") || type == type("minf") || type == type("stbl")) {
+                parseContainer(box, track, tracks);
+            } else if (track != null) {
+                track.parseBox(type, box.slice());
+            }
+        }
+    }
+
+    private static String typeToString(int type) {
+        return new String(new char[]{(char) (type >>> 24 & 0xff), (char) (type >>> 16 & 0xff), (char) (type >>> 8 & 0xff), (char) (type & 0xff)});
+    }
+
+    private static int type(String type) {
+        return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+    }
+
+    /**
+     * Reads boxes of file from source. First bytes of file are read once and kept, as well as last read range.
+     */
+    private static final class BoxReader {
+
+        private final Source source;
+        private ByteBuffer buffer;
+        private long bufferOffset;
+        private long length;
+
+        BoxReader(Source source) {
+            this.source = source;
+        }
+
+        long length() throws ProxyCacheException {
+            buffer = load(0, HEAD_SIZE, true);
+            bufferOffset = 0;
+            return length;
+        }
+
+        ByteBuffer read(long offset, int count) throws ProxyCacheException {
+            if (offset < bufferOffset || offset + count > bufferOffset + buffer.limit()) {
+                // there is usually nothing except moov after media data, so read the rest of file at once
+                int loadCount = (int) Math.max(count, Math.min(TAIL_READ_SIZE, length - offset));
+                buffer = load(offset, loadCount, false);
+                bufferOffset = offset;
+            }
+            ByteBuffer data = buffer.duplicate();
+            data.position((int) (offset - bufferOffset));
+            data.limit(data.position() + count);
+            return data.slice();
+        }
+
+        private ByteBuffer load(long offset, int count, boolean head) throws ProxyCacheException {
+            try {
+                source.open(offset, count);
+                if (head) {
+                    length = source.length();
+                    if (length <= 0) {
+                        throw new ProxyCacheException("Length of mp4 file is unknown");
+                    }
+                    count = (int) Math.min(count, length);
+                }
+                byte[] data = new byte[count];
+                byte[] buffer = new byte[Math.min(count, READ_BUFFER_SIZE)];
+                int read = 0;
+                while (read < count) {
+                    int readBytes = source.read(buffer);
+                    if (readBytes == -1) {
+                        throw new ProxyCacheException("Unexpected end of mp4 file at " + (offset + read));
+                    }
+                    readBytes = Math.min(readBytes, count - read);
+                    System.arraycopy(buffer, 0, data, read, readBytes);
+                    read += readBytes;
+                }
+                return ByteBuffer.wrap(data);
+            } finally {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Sample tables of track, tables are not copied but read from {@code moov} on demand.
+     */
+    private static final class Track {
+
+        private int handler;
+        private long timescale;
+        private int sampleCount;
+        private ByteBuffer timeToSample;    // stts
+        private ByteBuffer sampleToChunk;   // stsc
+        private ByteBuffer sampleSizes;     // stsz
+        private int constantSampleSize;
+        private ByteBuffer chunkOffsets;    // stco or co64
+        private boolean largeChunkOffsets;
+        private ByteBuffer syncSamples;     // stss, absent if every sample is key frame
+
+        void parseBox(int type, ByteBuffer box) {
+            if (type == type("mdhd")) {
+                int version = box.get(0);
+                timescale = box.getInt(version == 1 ? 20 : 12) & 0xffffffffL;
+            } else if (type == type("hdlr")) {
+                handler = box.getInt(8);
+            } else if (type == type("stts")) {
+                timeToSample = table(box, 8);
+            } else if (type == type("stsc")) {
+                sampleToChunk = table(box, 12);
+            } else if (type == type("stsz")) {
+                constantSampleSize = box.getInt(4);
+                sampleCount = box.getInt(8);
+                box.position(12);
+                sampleSizes = constantSampleSize == 0 ? box.slice() : null;
+            } else if (type == type("stco") || type == type("co64")) {
+                largeChunkOffsets = type == type("co64");
+                chunkOffsets = table(box, largeChunkOffsets ? 8 : 4);
+            } else if (type == type("stss")) {
+                syncSamples = table(box, 4);
+            }
+        }
+
+        boolean isValid() {
+            return timescale > 0 && sampleCount > 0 && timeToSample != null && sampleToChunk != null && chunkOffsets != null &&
+                    (sampleSizes == null || sampleSizes.remaining() >= sampleCount * 4L);
+        }
+
+        /**
+         * Returns index of the first sample decoded at or after passed time.
+         */
+        int sampleAt(long time) {
+            long sampleTime = 0;
+            int sample = 0;
+            for (int entry = 0; entry < entriesCount(timeToSample, 8); entry++) {
+                int count = timeToSample.getInt(entry * 8);
+                long delta = timeToSample.getInt(entry * 8 + 4) & 0xffffffffL;
+                if (delta > 0 && sampleTime + count * delta >= time) {
+                    return (int) Math.min(sampleCount, sample + (time - sampleTime + delta - 1) / delta);
+                }
+                sampleTime += count * delta;
+                sample += count;
+            }
+            return sampleCount;
+        }
+
+        /**
+         * Returns decoding time of sample in track's timescale units.
+         */
+        long sampleTime(int sampleIndex) {
+            long sampleTime = 0;
+            int sample = 0;
+            for (int entry = 0; entry < entriesCount(timeToSample, 8) && sample < sampleIndex; entry++) {
+                int count = Math.min(timeToSample.getInt(entry * 8), sampleIndex - sample);
+                sampleTime += count * (timeToSample.getInt(entry * 8 + 4) & 0xffffffffL);
+                sample += count;
+            }
+            return sampleTime;
+        }
+
+        /**
+         * Returns index of the first key frame at or after passed sample.
+         */
+        int nextSyncSample(int sampleIndex) {
+            if (syncSamples == null) {
+                return sampleIndex;
+            }
+            for (int entry = 0; entry < entriesCount(syncSamples, 4); entry++) {
+                int syncSample = syncSamples.getInt(entry * 4) - 1; // numbers of samples start from 1
+                if (syncSample >= sampleIndex) {
+                    return syncSample;
+                }
+            }
+            return sampleCount;
+        }
+
+        /**
+         * Adds ranges of file occupied by first samples, range per chunk.
+         */
+        void addSampleRanges(int samplesCount, long fileLength, List<ByteRange> ranges) {
+            int chunksCount = entriesCount(chunkOffsets, largeChunkOffsets ? 8 : 4);
+            int sample = 0;
+            int entriesCount = entriesCount(sampleToChunk, 12);
+            for (int entry = 0; entry < entriesCount && sample < samplesCount; entry++) {
+                int firstChunk = sampleToChunk.getInt(entry * 12) - 1;
+                int nextFirstChunk = entry + 1 < entriesCount ? sampleToChunk.getInt((entry + 1) * 12) - 1 : chunksCount;
+                int samplesPerChunk = sampleToChunk.getInt(entry * 12 + 4);
+                for (int chunk = firstChunk; chunk < Math.min(nextFirstChunk, chunksCount) && sample < samplesCount; chunk++) {
+                    long offset = largeChunkOffsets ? chunkOffsets.getLong(chunk * 8) : chunkOffsets.getInt(chunk * 4) & 0xffffffffL;
+                    long size = 0;
+                    int chunkSamplesCount = Math.min(samplesPerChunk, samplesCount - sample);
+                    for (int i = 0; i < chunkSamplesCount; i++) {
+                        size += sampleSize(sample + i);
+                    }
+                    if (offset < fileLength) {
+                        ranges.add(new ByteRange(offset, Math.min(offset + size, fileLength)));
+                    }
+                    sample += samplesPerChunk;
+                }
+            }
+        }
+
+        private long sampleSize(int sampleIndex) {
+            return sampleSizes == null ? constantSampleSize & 0xffffffffL : sampleSizes.getInt(sampleIndex * 4) & 0xffffffffL;
+        }
+
+        private static ByteBuffer table(ByteBuffer box, int entrySize) {
+            int entriesCount = box.getInt(4);
+            box.position(8);
+            ByteBuffer table = box.slice();
+            table.limit((int) Math.min(table.limit(), (long) entriesCount * entrySize));
+            return table;
+        }
+
+        private static int entriesCount(ByteBuffer table, int entrySize) {
+            return table.limit() / entrySize;
+        }
+    }
+}
@@ -6,13 +6,18 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.danikula.videocache.Logger;
 import com.danikula.videocache.SourceInfo;
 
+import java.util.Collection;
+
 import static com.danikula.videocache.Preconditions.checkAllNotNull;
 import static com.danikula.videocache.Preconditions.checkNotNull;
 
 /**
  * Database based {@link SourceInfoStorage}.
+ * <p>
+ * Urls are unique and indexed, so info is found without scanning table and is stored by one upsert.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
@@ -23,17 +28,37 @@ class DatabaseSourceInfoStorage extends SQLiteOpenHelper implements SourceInfoSt
     private static final String COLUMN_URL = "url";
     private static final String COLUMN_LENGTH = "length";
     private static final String COLUMN_MIME = "mime";
-    private static final String[] ALL_COLUMNS = new String[]{COLUMN_ID, COLUMN_URL, COLUMN_LENGTH, COLUMN_MIME};
+    private static final String COLUMN_ETAG = "etag";
+    private static final String COLUMN_LAST_MODIFIED = "lastModified";
+    private static final String COLUMN_VALIDATED = "validated";
+    private static final String[] ALL_COLUMNS = new String[]{COLUMN_ID, COLUMN_URL, COLUMN_LENGTH, COLUMN_MIME,
+            COLUMN_ETAG, COLUMN_LAST_MODIFIED, COLUMN_VALIDATED};
     private static final String CREATE_SQL =
             "CREATE TABLE " + TABLE + " (" +
                     COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL," +
                     COLUMN_URL + " TEXT NOT NULL," +
                     COLUMN_MIME + " TEXT," +
-                    COLUMN_LENGTH + " INTEGER" +
+                    COLUMN_LENGTH + " INTEGER," +
+                    COLUMN_ETAG + " TEXT," +
+                    COLUMN_LAST_MODIFIED + " TEXT," +
+                    COLUMN_VALIDATED + " INTEGER" +
                     ");";
+    private static final String CREATE_URL_INDEX_SQL =
+            "CREATE UNIQUE INDEX " + TABLE + "_" + COLUMN_URL + " ON " + TABLE + " (" + COLUMN_URL + ");";
+    // version 1 has no index on url and may contain duplicated urls, the last inserted info is actual one
+    private static final String DELETE_DUPLICATES_SQL =
+            "DELETE FROM " + TABLE + " WHERE " + COLUMN_ID + " NOT IN " +
+                    "(SELECT MAX(" + COLUMN_ID + ") FROM " + TABLE + " GROUP BY " + COLUMN_URL + ");";
+    private static final String[] ADD_VALIDATORS_SQL = new String[]{
+            "ALTER TABLE " + TABLE + " ADD COLUMN " + COLUMN_ETAG + " TEXT;",
+            "ALTER TABLE " + TABLE + " ADD COLUMN " + COLUMN_LAST_MODIFIED + " TEXT;",
+            "ALTER TABLE " + TABLE + " ADD COLUMN " + COLUMN_VALIDATED + " INTEGER;"
+    };
+    private static final int VERSION_UNIQUE_URL = 2;
+    private static final int VERSION_VALIDATORS = 3;
 
     DatabaseSourceInfoStorage(Context context) {
-        super(context, "AndroidVideoCache.db", null, 1);
+        super(context, "AndroidVideoCache.db", null, VERSION_VALIDATORS);
         checkNotNull(context);
     }
 
@@ -41,11 +66,22 @@ class DatabaseSourceInfoStorage extends SQLiteOpenHelper implements SourceInfoSt
     public void onCreate(SQLiteDatabase db) {
         checkNotNull(db);
         db.execSQL(CREATE_SQL);
+        db.execSQL(CREATE_URL_INDEX_SQL);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        throw new IllegalStateException("Should not be called. There is no any migration");
+        checkNotNull(db);
+        if (oldVersion < VERSION_UNIQUE_URL) {
+            db.execSQL(DELETE_DUPLICATES_SQL);
+            db.execSQL(CREATE_URL_INDEX_SQL);
+        }
+        if (oldVersion < VERSION_VALIDATORS) {
+            for (String sql : ADD_VALIDATORS_SQL) {
+                db.execSQL(sql);
+            }
+        }
+        Logger.info("Source info storage is migrated from version " + oldVersion + " to " + newVersion);
     }
 
     @Override
@@ -65,13 +101,25 @@ class DatabaseSourceInfoStorage extends SQLiteOpenHelper implements SourceInfoSt
     @Override
     public void put(String url, SourceInfo sourceInfo) {
         checkAllNotNull(url, sourceInfo);
-        SourceInfo sourceInfoFromDb = get(url);
-        boolean exist = sourceInfoFromDb != null;
-        ContentValues contentValues = convert(sourceInfo);
-        if (exist) {
-            getWritableDatabase().update(TABLE, contentValues, COLUMN_URL + "=?", new String[]{url});
-        } else {
-            getWritableDatabase().insert(TABLE, null, contentValues);
+        getWritableDatabase().insertWithOnConflict(TABLE, null, convert(sourceInfo), SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Stores all infos in one transaction.
+     *
+     * @param sourceInfos infos to be stored, cant be {@code null}.
+     */
+    void putAll(Collection<SourceInfo> sourceInfos) {
+        checkNotNull(sourceInfos);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (SourceInfo sourceInfo : sourceInfos) {
+                db.insertWithOnConflict(TABLE, null, convert(sourceInfo), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
     }
 
@@ -84,7 +132,10 @@ class DatabaseSourceInfoStorage extends SQLiteOpenHelper implements SourceInfoSt
         return new SourceInfo(
                 cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_URL)),
                 cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LENGTH)),
-                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MIME))
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MIME)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ETAG)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LAST_MODIFIED)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_VALIDATED))
         );
     }
 
@@ -93,6 +144,9 @@ class DatabaseSourceInfoStorage extends SQLiteOpenHelper implements SourceInfoSt
         values.put(COLUMN_URL, sourceInfo.url);
         values.put(COLUMN_LENGTH, sourceInfo.length);
         values.put(COLUMN_MIME, sourceInfo.mime);
+        values.put(COLUMN_ETAG, sourceInfo.etag);
+        values.put(COLUMN_LAST_MODIFIED, sourceInfo.lastModified);
+        values.put(COLUMN_VALIDATED, sourceInfo.validatedTime);
         return values;
     }
 }
@@ -0,0 +1,46 @@
+package com.danikula.videocache.sourcestorage;
+
+import com.danikula.videocache.SourceInfo;
+import com.danikula.videocache.key.CacheKeyGenerator;
+
+import static com.danikula.videocache.Preconditions.checkAllNotNull;
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * {@link SourceInfoStorage} that stores infos in wrapped storage by cache keys instead of urls,
+ * so info is shared by all urls of the same source. Got info refers url it is requested for.
+ */
+class KeyedSourceInfoStorage implements SourceInfoStorage {
+
+    private final SourceInfoStorage storage;
+    private final CacheKeyGenerator cacheKeyGenerator;
+
+    KeyedSourceInfoStorage(SourceInfoStorage storage, CacheKeyGenerator cacheKeyGenerator) {
+        this.storage = checkNotNull(storage);
+        this.cacheKeyGenerator = checkNotNull(cacheKeyGenerator);
+    }
+
+    @Override
+    public SourceInfo get(String url) {
+        checkNotNull(url);
+        SourceInfo sourceInfo = storage.get(cacheKeyGenerator.generate(url));
+        return sourceInfo == null ? null : withUrl(sourceInfo, url);
+    }
+
+    @Override
+    public void put(String url, SourceInfo sourceInfo) {
+        checkAllNotNull(url, sourceInfo);
+        String key = cacheKeyGenerator.generate(url);
+        storage.put(key, withUrl(sourceInfo, key));
+    }
+
+    @Override
+    public void release() {
+        storage.release();
+    }
+
+    private SourceInfo withUrl(SourceInfo sourceInfo, String url) {
+        return url.equals(sourceInfo.url) ? sourceInfo : new SourceInfo(url, sourceInfo.length, sourceInfo.mime,
+                sourceInfo.etag, sourceInfo.lastModified, sourceInfo.validatedTime);
+    }
+}
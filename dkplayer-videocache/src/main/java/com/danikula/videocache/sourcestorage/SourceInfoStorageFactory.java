@@ -2,6 +2,8 @@ package com.danikula.videocache.sourcestorage;
 
 import android.content.Context;
 
+import com.danikula.videocache.key.CacheKeyGenerator;
+
 /**
  * Simple factory for {@link SourceInfoStorage}.
  *
@@ -10,7 +12,18 @@ import android.content.Context;
 public class SourceInfoStorageFactory {
 
     public static SourceInfoStorage newSourceInfoStorage(Context context) {
-        return new DatabaseSourceInfoStorage(context);
+        return new WriteBehindSourceInfoStorage(new DatabaseSourceInfoStorage(context));
+    }
+
+    /**
+     * Wraps storage to store infos by cache keys, so all urls of the same source share info.
+     *
+     * @param storage           a storage to be wrapped, cant be {@code null}.
+     * @param cacheKeyGenerator a generator of cache keys, cant be {@code null}.
+     * @return a storage of infos by cache keys.
+     */
+    public static SourceInfoStorage newKeyedSourceInfoStorage(SourceInfoStorage storage, CacheKeyGenerator cacheKeyGenerator) {
+        return new KeyedSourceInfoStorage(storage, cacheKeyGenerator);
     }
 
     public static SourceInfoStorage newEmptySourceInfoStorage() {
@@ -0,0 +1,176 @@
+package com.danikula.videocache.sourcestorage;
+
+import com.danikula.videocache.Logger;
+import com.danikula.videocache.SourceInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.danikula.videocache.Preconditions.checkAllNotNull;
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * {@link SourceInfoStorage} that keeps recently used infos in memory and writes changed ones to wrapped storage
+ * in background.
+ * <p>
+ * Info is put on every opening of source, usually unchanged, so only changed infos are written. Changes made
+ * within {@link #FLUSH_DELAY} are coalesced and written as one batch (in one transaction for database storage).
+ * Batch failed to be written is kept and written again by next flush. Not written infos are written when storage is released.
+ */
+public class WriteBehindSourceInfoStorage implements SourceInfoStorage {
+
+    private static final int DEFAULT_MAX_CACHED_COUNT = 256;
+    private static final long FLUSH_DELAY = 1000;
+
+    private final SourceInfoStorage storage;
+    private final int maxCachedCount;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    private final Object lock = new Object();
+    private final Map<String, SourceInfo> cached;
+    private final Map<String, SourceInfo> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    public WriteBehindSourceInfoStorage(SourceInfoStorage storage) {
+        this(storage, DEFAULT_MAX_CACHED_COUNT);
+    }
+
+    /**
+     * @param storage        a storage to be wrapped, cant be {@code null}.
+     * @param maxCachedCount max count of infos kept in memory, must be positive.
+     */
+    public WriteBehindSourceInfoStorage(SourceInfoStorage storage, int maxCachedCount) {
+        if (maxCachedCount <= 0) {
+            throw new IllegalArgumentException("Max cached count must be positive number!");
+        }
+        this.storage = checkNotNull(storage);
+        this.maxCachedCount = maxCachedCount;
+        this.cached = new LinkedHashMap<String, SourceInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SourceInfo> eldest) {
+                return size() > maxCachedCount;
+            }
+        };
+    }
+
+    @Override
+    public SourceInfo get(String url) {
+        checkNotNull(url);
+        synchronized (lock) {
+            SourceInfo sourceInfo = pending.get(url);
+            if (sourceInfo == null) {
+                sourceInfo = cached.get(url);
+            }
+            if (sourceInfo != null) {
+                return sourceInfo;
+            }
+        }
+        SourceInfo sourceInfo = storage.get(url);
+        if (sourceInfo != null) {
+            synchronized (lock) {
+                if (!pending.containsKey(url) && !cached.containsKey(url)) {
+                    cached.put(url, sourceInfo);
+                }
+            }
+        }
+        return sourceInfo;
+    }
+
+    @Override
+    public void put(String url, SourceInfo sourceInfo) {
+        checkAllNotNull(url, sourceInfo);
+        synchronized (lock) {
+            SourceInfo known = pending.get(url);
+            if (known == null) {
+                known = cached.get(url);
+            }
+            if (known != null && isSame(known, sourceInfo)) {
+                return;
+            }
+            cached.put(url, sourceInfo);
+            pending.put(url, sourceInfo);
+            scheduleFlush();
+        }
+    }
+
+    @Override
+    public void release() {
+        writer.shutdownNow();
+        try {
+            // running flush should complete before wrapped storage is released
+            writer.awaitTermination(FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Logger.warn("Waiting for writing source infos is interrupted");
+        }
+        flush();
+        storage.release();
+    }
+
+    private void flush() {
+        Map<String, SourceInfo> batch;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new LinkedHashMap<>(pending);
+        }
+        try {
+            write(batch);
+        } catch (RuntimeException e) {
+            Logger.error("Error writing " + batch.size() + " source infos");
+            synchronized (lock) {
+                scheduleFlush();
+            }
+            return;
+        }
+        synchronized (lock) {
+            // info put while batch was written is kept to be written by next flush
+            for (Map.Entry<String, SourceInfo> entry : batch.entrySet()) {
+                if (pending.get(entry.getKey()) == entry.getValue()) {
+                    pending.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled && !writer.isShutdown()) {
+            flushScheduled = true;
+            writer.schedule(new FlushRunnable(), FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void write(Map<String, SourceInfo> batch) {
+        if (storage instanceof DatabaseSourceInfoStorage) {
+            List<SourceInfo> sourceInfos = new ArrayList<>(batch.values());
+            ((DatabaseSourceInfoStorage) storage).putAll(sourceInfos);
+        } else {
+            for (Map.Entry<String, SourceInfo> entry : batch.entrySet()) {
+                storage.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private boolean isSame(SourceInfo first, SourceInfo second) {
+        return first.length == second.length && first.validatedTime == second.validatedTime &&
+                first.url.equals(second.url) && isSame(first.mime, second.mime) &&
+                isSame(first.etag, second.etag) && isSame(first.lastModified, second.lastModified);
+    }
+
+    private boolean isSame(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private class FlushRunnable implements Runnable {
+
+        @Override
+        public void run() {
+            flush();
+        }
+    }
+}
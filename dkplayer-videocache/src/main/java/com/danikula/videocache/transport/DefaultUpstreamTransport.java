@@ -0,0 +1,151 @@
+package com.danikula.videocache.transport;
+
+import com.danikula.videocache.Logger;
+import com.danikula.videocache.ProxyCacheException;
+import com.danikula.videocache.headers.HeaderInjector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+import static java.net.HttpURLConnection.HTTP_MOVED_PERM;
+import static java.net.HttpURLConnection.HTTP_MOVED_TEMP;
+import static java.net.HttpURLConnection.HTTP_SEE_OTHER;
+
+/**
+ * {@link UpstreamTransport} that opens new {@link HttpURLConnection} for every request.
+ * <p>
+ * Connection that has response body read completely is closed instead of being disconnected,
+ * so {@link HttpURLConnection} may reuse its socket for next request to the same host.
+ */
+public class DefaultUpstreamTransport implements UpstreamTransport {
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int MAX_DRAINED_BODY_LENGTH = 8 * 1024;
+    private static final int HTTP_TEMPORARY_REDIRECT = 307;
+    private static final int HTTP_PERMANENT_REDIRECT = 308;
+
+    @Override
+    public HttpURLConnection execute(String url, String range, HeaderInjector headerInjector, int timeout) throws IOException, ProxyCacheException {
+        HttpURLConnection connection;
+        boolean redirected;
+        int redirectCount = 0;
+        String requestUrl = url;
+        do {
+            Logger.debug("Open connection " + (range != null ? " with range " + range : "") + " to " + requestUrl);
+            connection = openConnection(requestUrl);
+            // redirects are followed manually to follow ones changing protocol and to know final url
+            connection.setInstanceFollowRedirects(false);
+            injectCustomHeaders(connection, requestUrl, headerInjector);
+            if (range != null) {
+                connection.setRequestProperty("Range", range);
+            }
+            if (timeout > 0) {
+                connection.setConnectTimeout(timeout);
+                connection.setReadTimeout(timeout);
+            }
+            int code = connection.getResponseCode();
+            redirected = isRedirect(code);
+            if (redirected) {
+                String location = connection.getHeaderField("Location");
+                releaseRedirect(connection);
+                requestUrl = new URL(new URL(requestUrl), location).toString();
+                redirectCount++;
+            } else {
+                onResponse(url, requestUrl, code);
+            }
+            if (redirectCount > MAX_REDIRECTS) {
+                throw new ProxyCacheException("Too many redirects: " + redirectCount);
+            }
+        } while (redirected);
+        return connection;
+    }
+
+    @Override
+    public void release(HttpURLConnection connection, boolean reusable) {
+        if (reusable) {
+            try {
+                InputStream inputStream = connection.getInputStream();
+                inputStream.close();
+                return;
+            } catch (IOException e) {
+                Logger.warn("Error closing connection " + connection.getURL() + ", disconnect it");
+            }
+        }
+        try {
+            connection.disconnect();
+        } catch (NullPointerException | IllegalArgumentException e) {
+            String message = "Wait... but why? WTF!? " +
+                    "Really shouldn't happen any more after fixing https://github.com/danikula/AndroidVideoCache/issues/43. " +
+                    "If you read it on your device log, please, notify me danikula@gmail.com or create issue here " +
+                    "https://github.com/danikula/AndroidVideoCache/issues.";
+            throw new RuntimeException(message, e);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            Logger.error("Error closing connection correctly. Should happen only on Android L. " +
+                    "If anybody know how to fix it, please visit https://github.com/danikula/AndroidVideoCache/issues/88. " +
+                    "Until good solution is not know, just ignore this issue.");
+        }
+    }
+
+    /**
+     * Creates connection for url, request is not sent yet.
+     *
+     * @param url an url to connect to.
+     * @return a new connection.
+     * @throws IOException if error occur while creating connection.
+     */
+    protected HttpURLConnection openConnection(String url) throws IOException {
+        return (HttpURLConnection) new URL(url).openConnection();
+    }
+
+    /**
+     * Called when response that is not redirect is received.
+     *
+     * @param url      an url requested by client.
+     * @param finalUrl an url response is received from, differs from requested one if server redirects request.
+     * @param code     a response code.
+     */
+    protected void onResponse(String url, String finalUrl, int code) {
+    }
+
+    private void releaseRedirect(HttpURLConnection connection) {
+        // body of redirect is usually tiny, so it is cheaper to read it than to open new connection to the same host
+        boolean drained = false;
+        long length = getContentLength(connection);
+        if (length >= 0 && length <= MAX_DRAINED_BODY_LENGTH) {
+            try {
+                InputStream inputStream = connection.getInputStream();
+                while (inputStream.read() != -1) {
+                    // skip body up to end
+                }
+                drained = true;
+            } catch (IOException e) {
+                Logger.warn("Error reading body of redirect from " + connection.getURL());
+            }
+        }
+        release(connection, drained);
+    }
+
+    private long getContentLength(HttpURLConnection connection) {
+        String contentLengthValue = connection.getHeaderField("Content-Length");
+        try {
+            return contentLengthValue == null ? -1 : Long.parseLong(contentLengthValue.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean isRedirect(int code) {
+        return code == HTTP_MOVED_PERM || code == HTTP_MOVED_TEMP || code == HTTP_SEE_OTHER ||
+                code == HTTP_TEMPORARY_REDIRECT || code == HTTP_PERMANENT_REDIRECT;
+    }
+
+    private void injectCustomHeaders(HttpURLConnection connection, String url, HeaderInjector headerInjector) {
+        Map<String, String> extraHeaders = headerInjector.addHeaders(url);
+        for (Map.Entry<String, String> header : extraHeaders.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+    }
+}
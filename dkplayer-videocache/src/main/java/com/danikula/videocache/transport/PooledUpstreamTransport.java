@@ -0,0 +1,203 @@
+package com.danikula.videocache.transport;
+
+import com.danikula.videocache.Logger;
+import com.danikula.videocache.ProxyCacheException;
+import com.danikula.videocache.headers.HeaderInjector;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UpstreamTransport} for many short videos served by the same hosts (CDN).
+ * <ul>
+ * <li>Count of concurrent connections per host is bounded, so completely read connections are kept alive
+ * by {@link HttpURLConnection} and reused instead of opening new ones (with new TLS handshakes).
+ * Request of played video (see {@link #setRequestPriority(RequestPriority)}) never waits: one more connection per host
+ * is reserved for it and if this one is busy too, request is executed anyway. Other requests wait for free connection
+ * {@link #MAX_CONNECTION_WAIT_TIME} ms at most, then they are executed anyway to not stall readers.</li>
+ * <li>Final url of redirected request is cached per requested url, next requests skip redirect round-trips.
+ * Cached target is forgotten if request to it fails.</li>
+ * </ul>
+ * Requested url is never rewritten, host names are resolved (and cached) by system resolver.
+ */
+public class PooledUpstreamTransport extends DefaultUpstreamTransport {
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 6;
+    private static final long DEFAULT_REDIRECT_TTL = 5 * 60 * 1000;
+    private static final long MAX_CONNECTION_WAIT_TIME = 500;
+    private static final int MAX_CACHED_REDIRECTS = 256;
+
+    private final int maxConnectionsPerHost;
+    private final long redirectTtl;
+    private final Map<String, HostPermits> hostPermits = new HashMap<>();
+    private final Map<HttpURLConnection, Semaphore> leasedPermits = new IdentityHashMap<>();
+    private final Map<String, CachedValue<String>> redirects = new LinkedHashMap<String, CachedValue<String>>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedValue<String>> eldest) {
+            return size() > MAX_CACHED_REDIRECTS;
+        }
+    };
+    private volatile RequestPriority requestPriority;
+
+    public PooledUpstreamTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_REDIRECT_TTL);
+    }
+
+    /**
+     * @param maxConnectionsPerHost max count of connections to one host used at the same time, must be positive,
+     *                              one more connection is reserved for priority requests.
+     * @param redirectTtl           time in milliseconds to keep redirect target for url, {@code 0} disables caching.
+     */
+    public PooledUpstreamTransport(int maxConnectionsPerHost, long redirectTtl) {
+        if (maxConnectionsPerHost <= 0 || redirectTtl < 0) {
+            throw new IllegalArgumentException("Connections count must be positive and ttl must not be negative!");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.redirectTtl = redirectTtl;
+    }
+
+    /**
+     * Sets priority of requests: priority request may use connection reserved for it when all other connections to host are busy.
+     *
+     * @param requestPriority a priority of requests or {@code null} if all requests are equal.
+     */
+    public void setRequestPriority(RequestPriority requestPriority) {
+        this.requestPriority = requestPriority;
+    }
+
+    @Override
+    public HttpURLConnection execute(String url, String range, HeaderInjector headerInjector, int timeout) throws IOException, ProxyCacheException {
+        Semaphore permit;
+        try {
+            permit = acquirePermit(url);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Waiting for connection to " + url + " is interrupted");
+        }
+        if (permit == null) {
+            Logger.warn("All connections to host of " + url + " are busy, open one more");
+        }
+        boolean leased = false;
+        try {
+            HttpURLConnection connection = executeWithCachedRedirect(url, range, headerInjector, timeout);
+            if (permit != null) {
+                synchronized (leasedPermits) {
+                    leasedPermits.put(connection, permit);
+                }
+            }
+            leased = true;
+            return connection;
+        } finally {
+            if (!leased && permit != null) {
+                permit.release();
+            }
+        }
+    }
+
+    @Override
+    public void release(HttpURLConnection connection, boolean reusable) {
+        super.release(connection, reusable);
+        Semaphore permit;
+        synchronized (leasedPermits) {
+            permit = leasedPermits.remove(connection);
+        }
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    @Override
+    protected void onResponse(String url, String finalUrl, int code) {
+        if (redirectTtl > 0 && !url.equals(finalUrl) && code < HttpURLConnection.HTTP_BAD_REQUEST) {
+            synchronized (redirects) {
+                redirects.put(url, new CachedValue<>(finalUrl, System.currentTimeMillis() + redirectTtl));
+            }
+        }
+    }
+
+    private HttpURLConnection executeWithCachedRedirect(String url, String range, HeaderInjector headerInjector, int timeout) throws IOException, ProxyCacheException {
+        String target = getCachedRedirect(url);
+        if (target != null) {
+            try {
+                HttpURLConnection connection = super.execute(target, range, headerInjector, timeout);
+                if (connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST) {
+                    return connection;
+                }
+                super.release(connection, false);
+            } catch (IOException e) {
+                Logger.warn("Error requesting cached redirect target " + target + ", request " + url + " again");
+            }
+            synchronized (redirects) {
+                redirects.remove(url);
+            }
+        }
+        return super.execute(url, range, headerInjector, timeout);
+    }
+
+    private String getCachedRedirect(String url) {
+        synchronized (redirects) {
+            CachedValue<String> target = redirects.get(url);
+            if (target != null && target.isExpired()) {
+                redirects.remove(url);
+                return null;
+            }
+            return target != null ? target.value : null;
+        }
+    }
+
+    private Semaphore acquirePermit(String url) throws IOException, InterruptedException {
+        HostPermits permits = getHostPermits(url);
+        RequestPriority requestPriority = this.requestPriority;
+        if (requestPriority != null && requestPriority.isPriority(url)) {
+            if (permits.shared.tryAcquire()) {
+                return permits.shared;
+            }
+            return permits.reserved.tryAcquire() ? permits.reserved : null;
+        }
+        return permits.shared.tryAcquire(MAX_CONNECTION_WAIT_TIME, TimeUnit.MILLISECONDS) ? permits.shared : null;
+    }
+
+    private HostPermits getHostPermits(String url) throws IOException {
+        String host = new URL(url).getHost();
+        synchronized (hostPermits) {
+            HostPermits permits = hostPermits.get(host);
+            if (permits == null) {
+                permits = new HostPermits(maxConnectionsPerHost);
+                hostPermits.put(host, permits);
+            }
+            return permits;
+        }
+    }
+
+    private static final class HostPermits {
+
+        private final Semaphore shared;
+        private final Semaphore reserved = new Semaphore(1);
+
+        HostPermits(int maxConnections) {
+            this.shared = new Semaphore(maxConnections, true);
+        }
+    }
+
+    private static final class CachedValue<T> {
+
+        private final T value;
+        private final long expirationTime;
+
+        CachedValue(T value, long expirationTime) {
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expirationTime;
+        }
+    }
+}
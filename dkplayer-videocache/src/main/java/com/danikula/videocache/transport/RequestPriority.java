@@ -0,0 +1,15 @@
+package com.danikula.videocache.transport;
+
+/**
+ * Tells which requests to origin servers are made for played video, see {@link PooledUpstreamTransport#setRequestPriority(RequestPriority)}.
+ */
+public interface RequestPriority {
+
+    /**
+     * Called by thread executing request before it waits for free connection.
+     *
+     * @param url an url of request.
+     * @return {@code true} if request is made for video played now.
+     */
+    boolean isPriority(String url);
+}
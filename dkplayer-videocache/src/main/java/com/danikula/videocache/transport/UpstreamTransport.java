@@ -0,0 +1,34 @@
+package com.danikula.videocache.transport;
+
+import com.danikula.videocache.ProxyCacheException;
+import com.danikula.videocache.headers.HeaderInjector;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Transport used by {@link com.danikula.videocache.HttpUrlSource} to make requests to origin server.
+ */
+public interface UpstreamTransport {
+
+    /**
+     * Sends GET request and follows redirects.
+     *
+     * @param url            an url to request.
+     * @param range          a value of {@code Range} header or {@code null} to request whole content.
+     * @param headerInjector an injector of custom headers, it is called for every redirect hop.
+     * @param timeout        connect and read timeout in milliseconds, non-positive value means default one.
+     * @return a connection with received response headers, must be released by {@link #release(HttpURLConnection, boolean)}.
+     * @throws IOException         if error occur while connecting to server.
+     * @throws ProxyCacheException if too many redirects are made.
+     */
+    HttpURLConnection execute(String url, String range, HeaderInjector headerInjector, int timeout) throws IOException, ProxyCacheException;
+
+    /**
+     * Releases connection returned by {@link #execute(String, String, HeaderInjector, int)}.
+     *
+     * @param connection a connection to release.
+     * @param reusable   {@code true} if response body is read completely, so connection may be kept alive for next request.
+     */
+    void release(HttpURLConnection connection, boolean reusable);
+}
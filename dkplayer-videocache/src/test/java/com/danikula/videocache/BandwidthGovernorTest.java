@@ -0,0 +1,89 @@
+package com.danikula.videocache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BandwidthGovernorTest {
+
+    private static final String MASTER = "http://cdn.com/master.m3u8";
+    private static final String MEDIA = "http://cdn.com/720/index.m3u8";
+    private static final String SEGMENT = "http://cdn.com/720/seg0.ts";
+
+    private final BandwidthGovernor governor = new BandwidthGovernor(64 * 1024);
+
+    @Test
+    public void nothingIsBackgroundWithoutForeground() {
+        assertFalse(governor.isBackground("http://cdn.com/a.mp4"));
+        assertFalse(governor.isPriority("http://cdn.com/a.mp4"));
+    }
+
+    @Test
+    public void otherSourcesAreBackground() {
+        governor.setForegroundKey("http://cdn.com/a.mp4");
+
+        assertFalse(governor.isBackground("http://cdn.com/a.mp4"));
+        assertTrue(governor.isPriority("http://cdn.com/a.mp4"));
+        assertTrue(governor.isBackground("http://cdn.com/b.mp4"));
+        assertFalse(governor.isPriority("http://cdn.com/b.mp4"));
+    }
+
+    @Test
+    public void segmentsOfForegroundPlaylistAreForeground() {
+        governor.setParentKey(MEDIA, MASTER);
+        governor.setParentKey(SEGMENT, MEDIA);
+        governor.setParentKey("http://cdn.com/other/seg0.ts", "http://cdn.com/other/index.m3u8");
+
+        governor.setForegroundKey(MASTER);
+
+        assertFalse(governor.isBackground(MEDIA));
+        assertFalse(governor.isBackground(SEGMENT));
+        assertTrue(governor.isPriority(SEGMENT));
+        assertTrue(governor.isBackground("http://cdn.com/other/seg0.ts"));
+    }
+
+    @Test
+    public void segmentsOfMediaPlaylistPlayedDirectlyAreForeground() {
+        governor.setParentKey(MEDIA, MASTER);
+        governor.setParentKey(SEGMENT, MEDIA);
+
+        governor.setForegroundKey(MEDIA);
+
+        assertFalse(governor.isBackground(SEGMENT));
+        assertTrue(governor.isBackground(MASTER));
+    }
+
+    @Test
+    public void forgottenSegmentIsBackground() {
+        governor.setParentKey(SEGMENT, MEDIA);
+        governor.setForegroundKey(MEDIA);
+
+        governor.setParentKey(SEGMENT, null);
+
+        assertTrue(governor.isBackground(SEGMENT));
+    }
+
+    @Test
+    public void sourcesOfBufferingPlayersAreNotBackground() {
+        governor.setParentKey(SEGMENT, MEDIA);
+        governor.setForegroundKey("http://cdn.com/a.mp4");
+
+        governor.setBuffering("http://cdn.com/b.mp4", true);
+        governor.setBuffering(MEDIA, true);
+        governor.setBuffering("http://cdn.com/b.mp4", false);
+
+        assertTrue(governor.isBackground("http://cdn.com/b.mp4"));
+        assertFalse(governor.isBackground(MEDIA));
+        assertFalse(governor.isBackground(SEGMENT));
+    }
+
+    @Test
+    public void cyclicParentsAreTolerated() {
+        governor.setParentKey("a", "b");
+        governor.setParentKey("b", "a");
+        governor.setForegroundKey("c");
+
+        assertTrue(governor.isBackground("a"));
+    }
+}
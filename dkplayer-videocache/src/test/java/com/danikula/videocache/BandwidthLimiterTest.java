@@ -0,0 +1,95 @@
+package com.danikula.videocache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BandwidthLimiterTest {
+
+    private static final int RATE = 100 * 1024;
+    private static final int CHUNK = 8 * 1024;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rateMustBePositive() {
+        new BandwidthLimiter(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void changedRateMustBePositive() {
+        new BandwidthLimiter(RATE).setBytesPerSecond(-1);
+    }
+
+    @Test
+    public void fullBucketIsTakenWithoutWaiting() throws InterruptedException {
+        BandwidthLimiter limiter = new BandwidthLimiter(RATE);
+
+        long elapsed = measure(limiter, RATE);
+
+        assertTrue("elapsed " + elapsed, elapsed < 200);
+    }
+
+    @Test
+    public void averageRateIsLimited() throws InterruptedException {
+        BandwidthLimiter limiter = new BandwidthLimiter(RATE);
+
+        long elapsed = measure(limiter, 2 * RATE);
+
+        // first second of bytes is taken from full bucket, second one is paid off
+        assertTrue("elapsed " + elapsed, elapsed >= 900 && elapsed < 1500);
+    }
+
+    @Test
+    public void bucketIsNotOverfilledWhileIdle() throws InterruptedException {
+        BandwidthLimiter limiter = new BandwidthLimiter(RATE);
+        Thread.sleep(1200);
+
+        long elapsed = measure(limiter, 2 * RATE);
+
+        assertTrue("elapsed " + elapsed, elapsed >= 900 && elapsed < 1500);
+    }
+
+    @Test
+    public void loweredRateTrimsBucket() throws InterruptedException {
+        BandwidthLimiter limiter = new BandwidthLimiter(4 * RATE);
+
+        limiter.setBytesPerSecond(RATE);
+        long elapsed = measure(limiter, 2 * RATE);
+
+        assertEquals(RATE, limiter.getBytesPerSecond());
+        assertTrue("elapsed " + elapsed, elapsed >= 900 && elapsed < 1500);
+    }
+
+    @Test
+    public void debtIsSharedByReaders() throws InterruptedException {
+        final BandwidthLimiter limiter = new BandwidthLimiter(RATE);
+        Thread debtor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // takes full bucket and two seconds in advance
+                    limiter.acquire(3 * RATE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        debtor.start();
+        Thread.sleep(1200);
+
+        long start = System.currentTimeMillis();
+        limiter.acquire(1);
+        long elapsed = System.currentTimeMillis() - start;
+        debtor.join();
+
+        assertTrue("elapsed " + elapsed, elapsed >= 600);
+    }
+
+    private long measure(BandwidthLimiter limiter, int bytes) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        for (int taken = 0; taken < bytes; taken += CHUNK) {
+            limiter.acquire(Math.min(CHUNK, bytes - taken));
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
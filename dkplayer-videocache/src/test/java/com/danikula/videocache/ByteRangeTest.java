@@ -0,0 +1,116 @@
+package com.danikula.videocache;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests resolving of {@code Range} header to {@link ByteRange}s against content length.
+ */
+public class ByteRangeTest {
+
+    @Test
+    public void requestWithoutRangeIsWholeContent() {
+        assertNull(resolve(null, 1000));
+    }
+
+    @Test
+    public void openRange() {
+        assertRanges(resolve("bytes=100-", 1000), 100, 1000);
+    }
+
+    @Test
+    public void boundedRangeIsInclusive() {
+        assertRanges(resolve("bytes=0-499", 1000), 0, 500);
+    }
+
+    @Test
+    public void rangeBeyondContentIsTrimmed() {
+        assertRanges(resolve("bytes=900-5000", 1000), 900, 1000);
+    }
+
+    @Test
+    public void suffixRange() {
+        assertRanges(resolve("bytes=-300", 1000), 700, 1000);
+    }
+
+    @Test
+    public void suffixLongerThanContentIsWholeContent() {
+        assertRanges(resolve("bytes=-5000", 1000), 0, 1000);
+    }
+
+    @Test
+    public void multipleRangesKeepRequestedOrder() {
+        assertRanges(resolve("bytes=500-599, 0-99,-10", 1000), 500, 600, 0, 100, 990, 1000);
+    }
+
+    @Test
+    public void unsatisfiableRangesAreDropped() {
+        assertRanges(resolve("bytes=2000-,0-9", 1000), 0, 10);
+    }
+
+    @Test
+    public void notSatisfiableRangeIsEmptyList() {
+        List<ByteRange> ranges = resolve("bytes=1000-", 1000);
+
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    public void syntacticallyInvalidRangeIsIgnored() {
+        assertNull(resolve("bytes=500-100", 1000));
+        assertNull(resolve("bytes=abc-", 1000));
+        assertNull(resolve("bytes=-", 1000));
+        assertNull(resolve("bytes=100", 1000));
+        assertNull(resolve("bytes=99999999999999999999-", 1000));
+        assertNull(resolve("items=0-10", 1000));
+    }
+
+    @Test
+    public void tooManyRangesAreIgnored() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= 16; i++) {
+            header.append(',').append(i * 2).append('-').append(i * 2);
+        }
+
+        assertNull(resolve(header.toString(), 1000));
+    }
+
+    @Test
+    public void unknownLengthAllowsOnlySingleRangeWithStart() {
+        assertRanges(resolve("bytes=100-", -1), 100, -1);
+        assertRanges(resolve("bytes=100-199", -1), 100, 200);
+        assertNull(resolve("bytes=-100", -1));
+        assertNull(resolve("bytes=0-9,20-29", -1));
+    }
+
+    @Test
+    public void rangeLength() {
+        ByteRange bounded = new ByteRange(100, 200);
+        ByteRange open = new ByteRange(100, -1);
+
+        assertTrue(bounded.isBounded());
+        assertEquals(100, bounded.length());
+        assertFalse(open.isBounded());
+        assertEquals(-1, open.length());
+    }
+
+    private List<ByteRange> resolve(String range, long contentLength) {
+        String request = "GET /video HTTP/1.1\r\n" + (range != null ? "Range: " + range + "\r\n" : "") + "\r\n";
+        byte[] data = request.getBytes();
+        return new GetRequest(data, 0, data.length).resolveRanges(contentLength);
+    }
+
+    private void assertRanges(List<ByteRange> ranges, long... bounds) {
+        assertEquals(bounds.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertEquals("start of range " + i, bounds[i * 2], ranges.get(i).start);
+            assertEquals("end of range " + i, bounds[i * 2 + 1], ranges.get(i).end);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.danikula.videocache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class CacheProgressListenerTest {
+
+    private static final long INTERVAL = 1000;
+    private static final String URL = "http://127.0.0.1:1/video.mp4";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpProxyCacheServer proxy;
+    private HttpProxyCacheServerClients clients;
+    private HttpProxyCache proxyCache;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        proxy = new HttpProxyCacheServer.Builder(RuntimeEnvironment.application)
+                .cacheDirectory(temporaryFolder.newFolder())
+                .cacheProgressInterval(INTERVAL)
+                .build();
+        listener = new RecordingListener();
+        proxy.registerCacheListener(listener, URL);
+        clients = proxy.getClients(URL);
+        // source isn't read, progress is reported by test as if it was reported by source reader
+        proxyCache = clients.acquireProxyCache();
+        ShadowLooper.idleMainLooper(INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        clients.releaseProxyCache();
+        proxy.shutdown();
+    }
+
+    @Test
+    public void progressIsCoalescedWithinInterval() {
+        proxyCache.onCacheAvailable(100, 1000);
+        ShadowLooper.idleMainLooper();
+        proxyCache.onCacheAvailable(200, 1000);
+        proxyCache.onCacheAvailable(300, 1000);
+
+        ShadowLooper.idleMainLooper(INTERVAL / 2, TimeUnit.MILLISECONDS);
+        List<Long> beforeInterval = new ArrayList<>(listener.bytes);
+        ShadowLooper.idleMainLooper(INTERVAL / 2, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, beforeInterval.size());
+        assertEquals(100, (long) beforeInterval.get(0));
+        // intermediate progress is skipped, latest one is delivered when interval is passed
+        assertEquals(2, listener.bytes.size());
+        assertEquals(300, (long) listener.bytes.get(1));
+        assertEquals(2, listener.percents.size());
+        assertEquals(10, (int) listener.percents.get(0));
+        assertEquals(30, (int) listener.percents.get(1));
+    }
+
+    @Test
+    public void completionIsDeliveredAtOnce() {
+        proxyCache.onCacheAvailable(100, 1000);
+        ShadowLooper.idleMainLooper();
+        proxyCache.onCacheAvailable(500, 1000);
+
+        proxyCache.onCacheAvailable(1000, 1000);
+        ShadowLooper.idleMainLooper();
+
+        // pending progress is replaced by completion without waiting for interval
+        assertEquals(2, listener.bytes.size());
+        assertEquals(1000, (long) listener.bytes.get(1));
+        assertEquals(1000, listener.totalBytes);
+        assertEquals(100, (int) listener.percents.get(listener.percents.size() - 1));
+        assertEquals(URL, listener.url);
+    }
+
+    @Test
+    public void unregisteredListenerIsNotNotified() {
+        proxy.unregisterCacheListener(listener, URL);
+
+        proxyCache.onCacheAvailable(1000, 1000);
+        ShadowLooper.idleMainLooper(INTERVAL, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, listener.bytes.size());
+    }
+
+    private static final class RecordingListener implements CacheProgressListener {
+
+        private final List<Long> bytes = new ArrayList<>();
+        private final List<Integer> percents = new ArrayList<>();
+        private long totalBytes;
+        private String url;
+
+        @Override
+        public void onCacheAvailable(File cacheFile, String url, int percentsAvailable) {
+            percents.add(percentsAvailable);
+        }
+
+        @Override
+        public void onCacheProgress(File cacheFile, String url, long bytesAvailable, long totalBytes) {
+            this.bytes.add(bytesAvailable);
+            this.totalBytes = totalBytes;
+            this.url = url;
+        }
+    }
+}
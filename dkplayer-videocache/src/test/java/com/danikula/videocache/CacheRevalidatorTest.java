@@ -0,0 +1,194 @@
+package com.danikula.videocache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class CacheRevalidatorTest {
+
+    private static final int CONTENT_LENGTH = 300 * 1024;
+    private static final long MAX_AGE = 300;
+    private static final String PATH = "video.mp4";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private TestOrigin origin;
+    private HttpProxyCacheServer proxy;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        origin = new TestOrigin(CONTENT_LENGTH);
+        url = origin.url(PATH);
+    }
+
+    @After
+    public void tearDown() {
+        if (proxy != null) {
+            proxy.shutdown();
+        }
+        origin.stop();
+    }
+
+    @Test
+    public void staleFileIsServedByProxy() throws Exception {
+        origin.sendValidators(true, false);
+        proxy = newProxy();
+        cache(origin.getContent());
+
+        boolean freshServedByFile = isServedByFile();
+        Thread.sleep(MAX_AGE + 100);
+
+        assertTrue(freshServedByFile);
+        assertFalse(isServedByFile());
+    }
+
+    @Test
+    public void notModifiedFileIsKeptByETag() throws Exception {
+        origin.sendValidators(true, false);
+        proxy = newProxy();
+        cache(origin.getContent());
+        int requestsCount = origin.getRequestsCount(PATH);
+        Thread.sleep(MAX_AGE + 100);
+
+        assertFalse(isServedByFile());
+        waitForRevalidation(requestsCount);
+
+        assertTrue(waitUntilServedByFile());
+        assertTrue(proxy.isCached(url));
+        assertArrayEquals(origin.getContent(), read());
+    }
+
+    @Test
+    public void notModifiedFileIsKeptByLastModified() throws Exception {
+        origin.sendValidators(false, true);
+        proxy = newProxy();
+        cache(origin.getContent());
+        int requestsCount = origin.getRequestsCount(PATH);
+        Thread.sleep(MAX_AGE + 100);
+
+        assertFalse(isServedByFile());
+        waitForRevalidation(requestsCount);
+
+        assertTrue(waitUntilServedByFile());
+        assertTrue(proxy.isCached(url));
+    }
+
+    @Test
+    public void changedFileIsDeleted() throws Exception {
+        origin.sendValidators(true, true);
+        proxy = newProxy();
+        cache(origin.getContent());
+        byte[] newContent = newContent(CONTENT_LENGTH);
+        origin.serve(PATH, newContent);
+        Thread.sleep(MAX_AGE + 100);
+
+        assertFalse(isServedByFile());
+
+        assertTrue(waitUntilDeleted());
+        assertArrayEquals(newContent, read());
+    }
+
+    @Test
+    public void changedFileIsKeptWhileItIsRead() throws Exception {
+        // content larger than socket buffers: response is not written while client doesn't read it
+        byte[] content = newContent(32 * 1024 * 1024);
+        origin.serve(PATH, content);
+        origin.sendValidators(true, false);
+        proxy = newProxy();
+        cache(content);
+        origin.serve(PATH, newContent(CONTENT_LENGTH));
+        Thread.sleep(MAX_AGE + 100);
+
+        String proxyUrl = proxy.getProxyUrl(url, false);
+        try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+            int requestsCount = origin.getRequestsCount(PATH);
+            client.send(TestHttpClient.request("GET", TestHttpClient.path(proxyUrl)));
+            waitForRevalidation(requestsCount);
+            Thread.sleep(200);
+
+            assertTrue(proxy.isCached(url));
+        }
+
+        assertTrue(waitUntilDeleted());
+    }
+
+    private HttpProxyCacheServer newProxy() throws IOException {
+        return new HttpProxyCacheServer.Builder(RuntimeEnvironment.application)
+                .cacheDirectory(temporaryFolder.newFolder())
+                .revalidateAfter(MAX_AGE)
+                .build();
+    }
+
+    private void cache(byte[] content) throws Exception {
+        assertArrayEquals(content, read());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!proxy.isCached(url) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(proxy.isCached(url));
+    }
+
+    private byte[] read() throws IOException {
+        String proxyUrl = proxy.getProxyUrl(url, false);
+        try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+            client.send(TestHttpClient.request("GET", TestHttpClient.path(proxyUrl), "Connection: close"));
+            TestHttpClient.Response response = client.read();
+            assertEquals(200, response.status);
+            return response.body;
+        }
+    }
+
+    private boolean isServedByFile() {
+        return proxy.getProxyUrl(url, true).startsWith("file://");
+    }
+
+    private void waitForRevalidation(int requestsCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (origin.getRequestsCount(PATH) == requestsCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(origin.getRequestsCount(PATH) > requestsCount);
+    }
+
+    private boolean waitUntilServedByFile() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!isServedByFile() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        return isServedByFile();
+    }
+
+    private boolean waitUntilDeleted() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (proxy.isCached(url) && System.currentTimeMillis() < deadline) {
+            // every request of stale file starts revalidation if it isn't running
+            isServedByFile();
+            Thread.sleep(50);
+        }
+        return !proxy.isCached(url);
+    }
+
+    private byte[] newContent(int length) {
+        byte[] content = new byte[length];
+        new Random(length + 1).nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,147 @@
+package com.danikula.videocache;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CacheWaitersTest {
+
+    private final CacheWaiters waiters = new CacheWaiters();
+
+    @Test
+    public void signalsOnlyWaitersSatisfiedByWrittenRange() {
+        CountingObserver before = register(100);
+        CountingObserver inside = register(200);
+        CountingObserver edge = register(300);
+        CountingObserver after = register(301);
+
+        waiters.signal(100, 300);
+
+        assertEquals(0, before.count.get());
+        assertEquals(1, inside.count.get());
+        assertEquals(1, edge.count.get());
+        assertEquals(0, after.count.get());
+    }
+
+    @Test
+    public void signalledWaiterIsRemoved() {
+        CountingObserver observer = register(10);
+
+        waiters.signal(0, 10);
+        waiters.signal(0, 20);
+        waiters.signalAll();
+
+        assertEquals(1, observer.count.get());
+    }
+
+    @Test
+    public void emptyRangeSignalsNobody() {
+        CountingObserver observer = register(10);
+
+        waiters.signal(10, 10);
+
+        assertEquals(0, observer.count.get());
+    }
+
+    @Test
+    public void signalAllWakesEveryWaiter() {
+        CountingObserver first = register(10);
+        CountingObserver second = register(Long.MAX_VALUE);
+
+        waiters.signalAll();
+
+        assertEquals(1, first.count.get());
+        assertEquals(1, second.count.get());
+    }
+
+    @Test
+    public void unregisteredObserverIsNotNotified() {
+        CountingObserver observer = register(10);
+        register(10, observer);
+        CountingObserver other = register(10);
+
+        waiters.unregister(observer);
+        waiters.signalAll();
+
+        assertEquals(0, observer.count.get());
+        assertEquals(1, other.count.get());
+    }
+
+    @Test
+    public void unregisteredWaiterIsNotNotified() {
+        CountingObserver observer = new CountingObserver();
+        CacheWaiters.Waiter waiter = waiters.register(10, observer);
+
+        waiters.unregister(waiter);
+        waiters.signalAll();
+
+        assertEquals(0, observer.count.get());
+    }
+
+    @Test
+    public void awaitReturnsWhenSignalled() throws Exception {
+        final CacheWaiters.Waiter waiter = waiters.register(10);
+        final CountDownLatch awaited = new CountDownLatch(1);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    waiter.await(10_000);
+                    awaited.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        reader.start();
+
+        waiters.signal(0, 10);
+
+        assertTrue(awaited.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitReturnsAfterTimeout() throws Exception {
+        CacheWaiters.Waiter waiter = waiters.register(10);
+
+        long start = System.nanoTime();
+        waiter.await(50);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+    }
+
+    @Test
+    public void awaitDoesNotBlockIfSignalledBefore() throws Exception {
+        CacheWaiters.Waiter waiter = waiters.register(10);
+        waiters.signalAll();
+
+        long start = System.nanoTime();
+        waiter.await(10_000);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000);
+    }
+
+    private CountingObserver register(long end) {
+        return register(end, new CountingObserver());
+    }
+
+    private CountingObserver register(long end, CountingObserver observer) {
+        waiters.register(end, observer);
+        return observer;
+    }
+
+    private static final class CountingObserver implements ProxyCache.SourceDataObserver {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void onSourceDataAvailable() {
+            count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.danikula.videocache;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GetRequestReaderTest {
+
+    @Test
+    public void readsRequestLineAndHeaders() throws IOException {
+        GetRequestReader reader = reader("GET /http%3A%2F%2Fcdn.com%2Fvideo.mp4 HTTP/1.1\r\nHost: 127.0.0.1\r\nRange: bytes=100-\r\n\r\n");
+
+        GetRequest request = reader.read();
+
+        assertEquals("http%3A%2F%2Fcdn.com%2Fvideo.mp4", request.uri);
+        assertTrue(request.partial);
+        assertFalse(request.head);
+        assertTrue(request.keepAlive);
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void readsHeadRequestWithBareNewLines() throws IOException {
+        GetRequest request = reader("HEAD /video HTTP/1.1\nConnection: close\n\n").read();
+
+        assertEquals("video", request.uri);
+        assertTrue(request.head);
+        assertFalse(request.keepAlive);
+    }
+
+    @Test
+    public void http10ConnectionIsPersistentOnlyIfClientAsks() throws IOException {
+        GetRequestReader reader = reader("GET /a HTTP/1.0\r\n\r\nGET /b HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n");
+
+        assertFalse(reader.read().keepAlive);
+        assertTrue(reader.read().keepAlive);
+    }
+
+    @Test
+    public void pipelinedRequestsAreReadOneByOne() throws IOException {
+        GetRequestReader reader = reader("GET /first HTTP/1.1\r\n\r\nGET /second HTTP/1.1\r\nRange: bytes=0-9\r\n\r\n");
+
+        GetRequest first = reader.read();
+        GetRequest second = reader.read();
+
+        assertEquals("first", first.uri);
+        assertFalse(first.partial);
+        assertEquals("second", second.uri);
+        assertTrue(second.partial);
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void emptyLinesBetweenRequestsAreSkipped() throws IOException {
+        GetRequestReader reader = reader("\r\n\r\nGET /first HTTP/1.1\r\n\r\n\r\n\nGET /second HTTP/1.1\r\n\r\n\r\n");
+
+        assertEquals("first", reader.read().uri);
+        assertEquals("second", reader.read().uri);
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void streamIsReadUpToHeadersEnd() throws IOException {
+        ByteArrayInputStream input = stream("GET /video HTTP/1.1\r\n\r\nbody");
+
+        new GetRequestReader(input).read();
+
+        assertEquals(4, input.available());
+    }
+
+    @Test
+    public void closedStreamIsNoRequest() throws IOException {
+        assertNull(reader("").read());
+    }
+
+    @Test
+    public void truncatedRequestIsError() throws IOException {
+        assertReadFails(reader("GET /video HTTP/1.1\r\nHost: 127.0.0.1\r\n"));
+    }
+
+    @Test
+    public void invalidRequestIsError() throws IOException {
+        assertReadFails(reader("POST /video HTTP/1.1\r\n\r\n"));
+        assertReadFails(reader("GET /video\r\n\r\n"));
+    }
+
+    @Test
+    public void largeRequestIsRead() throws IOException {
+        String request = request(64 * 1024);
+
+        assertEquals("video", reader(request).read().uri);
+    }
+
+    @Test
+    public void tooLargeRequestIsError() throws IOException {
+        assertReadFails(reader(request(64 * 1024 + 1)));
+    }
+
+    private String request(int size) {
+        String requestLine = "GET /video HTTP/1.1\r\nX-Padding: ";
+        char[] padding = new char[size - requestLine.length() - "\r\n\r\n".length()];
+        Arrays.fill(padding, 'a');
+        return requestLine + new String(padding) + "\r\n\r\n";
+    }
+
+    private GetRequestReader reader(String data) throws IOException {
+        return new GetRequestReader(stream(data));
+    }
+
+    private ByteArrayInputStream stream(String data) throws IOException {
+        return new ByteArrayInputStream(data.getBytes("US-ASCII"));
+    }
+
+    private void assertReadFails(GetRequestReader reader) {
+        try {
+            reader.read();
+            fail("Request should not be read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.danikula.videocache;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class HeadersWriterTest {
+
+    private final HeadersWriter writer = new HeadersWriter();
+
+    @Test
+    public void writesTextCharsAndNumbers() throws IOException {
+        writer.append("Content-Length: ").append(300 * 1024L).append('\n')
+                .append("Content-Range: bytes ").append(0L).append('-').append(9L).append('/').append(-1L).append('\n');
+
+        assertEquals("Content-Length: 307200\nContent-Range: bytes 0-9/-1\n", written());
+    }
+
+    @Test
+    public void writesExtremeNumbers() throws IOException {
+        writer.append(Long.MAX_VALUE).append(' ').append(Long.MIN_VALUE).append(' ').append(10L);
+
+        assertEquals(Long.MAX_VALUE + " " + Long.MIN_VALUE + " 10", written());
+    }
+
+    @Test
+    public void nonAsciiCharsAreReplaced() throws IOException {
+        writer.append("видео.mp4").append('é');
+
+        assertEquals("?????.mp4?", written());
+    }
+
+    @Test
+    public void resetClearsWrittenHeaders() throws IOException {
+        writer.append("HTTP/1.1 200 OK\n");
+
+        writer.reset().append("HTTP/1.1 206 Partial Content\n");
+
+        assertEquals("HTTP/1.1 206 Partial Content\n", written());
+    }
+
+    @Test
+    public void bufferGrowsForLargeHeaders() throws IOException {
+        char[] value = new char[1000];
+        Arrays.fill(value, 'a');
+        String header = "X-Long: " + new String(value) + "\n";
+
+        writer.append("HTTP/1.1 200 OK\n").append(header).append(Long.MAX_VALUE);
+
+        assertEquals("HTTP/1.1 200 OK\n" + header + Long.MAX_VALUE, written());
+    }
+
+    @Test
+    public void byteBufferWrapsWrittenHeaders() throws IOException {
+        writer.append("HTTP/1.1 200 OK\n");
+        writer.reset().append("Status: ").append(416L).append('\n');
+
+        ByteBuffer buffer = writer.toByteBuffer();
+
+        assertEquals(0, buffer.position());
+        assertEquals(writer.size(), buffer.remaining());
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertEquals("Status: 416\n", new String(bytes, "US-ASCII"));
+    }
+
+    private String written() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        assertEquals(writer.size(), out.size());
+        return out.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,130 @@
+package com.danikula.videocache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HistogramTest {
+
+    @Test
+    public void durationsAreCountedByPowersOfTwo() {
+        assertEquals(0, Histogram.bucketOf(0));
+        assertEquals(1, Histogram.bucketOf(1));
+        assertEquals(2, Histogram.bucketOf(2));
+        assertEquals(2, Histogram.bucketOf(3));
+        assertEquals(3, Histogram.bucketOf(4));
+        assertEquals(10, Histogram.bucketOf(1023));
+        assertEquals(11, Histogram.bucketOf(1024));
+        assertEquals(Histogram.BUCKETS_COUNT - 1, Histogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void bucketUpperBoundIsExclusive() {
+        Histogram histogram = new HistogramRecorder().snapshot();
+
+        assertEquals(1, histogram.getBucketUpperBound(0));
+        assertEquals(1024, histogram.getBucketUpperBound(10));
+        assertEquals(Long.MAX_VALUE, histogram.getBucketUpperBound(Histogram.BUCKETS_COUNT - 1));
+        for (int bucket = 1; bucket < Histogram.BUCKETS_COUNT - 1; bucket++) {
+            assertEquals(bucket, Histogram.bucketOf(histogram.getBucketUpperBound(bucket) - 1));
+        }
+    }
+
+    @Test
+    public void snapshotCountsRecordedDurations() {
+        HistogramRecorder recorder = new HistogramRecorder();
+
+        recorder.record(0);
+        recorder.record(1);
+        recorder.record(3);
+        recorder.record(5);
+        recorder.record(100);
+        recorder.record(-10);
+        Histogram histogram = recorder.snapshot();
+
+        assertEquals(6, histogram.count);
+        assertEquals(109, histogram.sum);
+        assertEquals(100, histogram.max);
+        assertEquals(18, histogram.getMean());
+        // negative duration is counted as zero
+        assertEquals(2, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(1, histogram.getBucketCount(2));
+        assertEquals(1, histogram.getBucketCount(3));
+        assertEquals(1, histogram.getBucketCount(7));
+        assertEquals(Histogram.BUCKETS_COUNT, histogram.getBucketsCount());
+    }
+
+    @Test
+    public void snapshotIsNotChangedByLaterRecords() {
+        HistogramRecorder recorder = new HistogramRecorder();
+        recorder.record(10);
+        Histogram histogram = recorder.snapshot();
+
+        recorder.record(20);
+
+        assertEquals(1, histogram.count);
+        assertEquals(10, histogram.max);
+        assertEquals(1, histogram.getBucketCount(Histogram.bucketOf(10)));
+        assertEquals(0, histogram.getBucketCount(Histogram.bucketOf(20)));
+    }
+
+    @Test
+    public void percentileIsUpperBoundOfBucket() {
+        HistogramRecorder recorder = new HistogramRecorder();
+        recorder.record(0);
+        recorder.record(1);
+        recorder.record(3);
+        recorder.record(5);
+        recorder.record(100);
+
+        Histogram histogram = recorder.snapshot();
+
+        assertEquals(1, histogram.getPercentile(20));
+        assertEquals(4, histogram.getPercentile(50));
+        assertEquals(8, histogram.getPercentile(80));
+        // upper bound of the last bucket is limited by max
+        assertEquals(100, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void emptyHistogramHasZeroValues() {
+        Histogram histogram = new HistogramRecorder().snapshot();
+
+        assertEquals(0, histogram.count);
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentileMustBePositive() {
+        new HistogramRecorder().snapshot().getPercentile(0);
+    }
+
+    @Test
+    public void concurrentRecordsAreCounted() throws Exception {
+        final HistogramRecorder recorder = new HistogramRecorder();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int threadIndex = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        recorder.record(threadIndex * 10000 + j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Histogram histogram = recorder.snapshot();
+
+        assertEquals(40000, histogram.count);
+        assertEquals(39999, histogram.max);
+        assertEquals(39999L * 40000 / 2, histogram.sum);
+    }
+}
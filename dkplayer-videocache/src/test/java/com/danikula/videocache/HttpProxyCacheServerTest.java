@@ -0,0 +1,310 @@
+package com.danikula.videocache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trip tests of proxy over raw connection, every test is run by blocking and non-blocking engine.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HttpProxyCacheServerTest {
+
+    private static final int CONTENT_LENGTH = 300 * 1024;
+    private static final int[] ENGINES = {0, 1}; // io threads count, 0 for blocking engine
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private TestOrigin origin;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        origin = new TestOrigin(CONTENT_LENGTH);
+        content = origin.getContent();
+    }
+
+    @After
+    public void tearDown() {
+        origin.stop();
+    }
+
+    @Test
+    public void persistentConnectionServesSequentialRequests() throws Exception {
+        for (int engine : ENGINES) {
+            HttpProxyCacheServer proxy = newProxy(engine);
+            String proxyUrl = proxy.getProxyUrl(origin.url("video.mp4"), false);
+            String path = TestHttpClient.path(proxyUrl);
+            try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+                client.send(TestHttpClient.request("GET", path));
+                TestHttpClient.Response first = client.read();
+                client.send(TestHttpClient.request("GET", path));
+                TestHttpClient.Response second = client.read();
+
+                assertEquals(200, first.status);
+                assertEquals("keep-alive", first.header("Connection"));
+                assertArrayEquals(content, first.body);
+                assertEquals(200, second.status);
+                assertArrayEquals(content, second.body);
+            } finally {
+                proxy.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void pipelinedRequestsAreAnsweredInOrder() throws Exception {
+        for (int engine : ENGINES) {
+            HttpProxyCacheServer proxy = newProxy(engine);
+            String proxyUrl = proxy.getProxyUrl(origin.url("video.mp4"), false);
+            String path = TestHttpClient.path(proxyUrl);
+            try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+                client.send(TestHttpClient.request("GET", path, "Range: bytes=0-99"),
+                        TestHttpClient.request("GET", path, "Range: bytes=100-199"),
+                        TestHttpClient.request("GET", path, "Range: bytes=200-"));
+                TestHttpClient.Response first = client.read();
+                TestHttpClient.Response second = client.read();
+                TestHttpClient.Response third = client.read();
+
+                assertEquals(206, first.status);
+                assertArrayEquals(Arrays.copyOfRange(content, 0, 100), first.body);
+                assertEquals(206, second.status);
+                assertArrayEquals(Arrays.copyOfRange(content, 100, 200), second.body);
+                assertEquals(206, third.status);
+                assertEquals("bytes 200-" + (CONTENT_LENGTH - 1) + "/" + CONTENT_LENGTH, third.header("Content-Range"));
+                assertArrayEquals(Arrays.copyOfRange(content, 200, CONTENT_LENGTH), third.body);
+            } finally {
+                proxy.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void headResponseHasNoBody() throws Exception {
+        for (int engine : ENGINES) {
+            HttpProxyCacheServer proxy = newProxy(engine);
+            String proxyUrl = proxy.getProxyUrl(origin.url("video.mp4"), false);
+            String path = TestHttpClient.path(proxyUrl);
+            try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+                client.send(TestHttpClient.request("HEAD", path));
+                TestHttpClient.Response head = client.readHead();
+                // next response is read right after headers, so any body sent for HEAD would break it
+                client.send(TestHttpClient.request("GET", path, "Range: bytes=10-19"));
+                TestHttpClient.Response get = client.read();
+
+                assertEquals(200, head.status);
+                assertEquals(String.valueOf(CONTENT_LENGTH), head.header("Content-Length"));
+                assertEquals("bytes", head.header("Accept-Ranges"));
+                assertEquals(206, get.status);
+                assertArrayEquals(Arrays.copyOfRange(content, 10, 20), get.body);
+            } finally {
+                proxy.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void connectionIsClosedIfClientAsks() throws Exception {
+        for (int engine : ENGINES) {
+            HttpProxyCacheServer proxy = newProxy(engine);
+            String proxyUrl = proxy.getProxyUrl(origin.url("video.mp4"), false);
+            String path = TestHttpClient.path(proxyUrl);
+            try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+                client.send(TestHttpClient.request("GET", path, "Range: bytes=0-9", "Connection: close"));
+                TestHttpClient.Response response = client.read();
+
+                assertEquals("close", response.header("Connection"));
+                assertArrayEquals(Arrays.copyOfRange(content, 0, 10), response.body);
+                assertTrue(client.isClosedByServer());
+            } finally {
+                proxy.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void notSatisfiableRangeIsRejected() throws Exception {
+        for (int engine : ENGINES) {
+            HttpProxyCacheServer proxy = newProxy(engine);
+            String proxyUrl = proxy.getProxyUrl(origin.url("video.mp4"), false);
+            String path = TestHttpClient.path(proxyUrl);
+            try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+                client.send(TestHttpClient.request("GET", path, "Range: bytes=" + CONTENT_LENGTH + "-"));
+                TestHttpClient.Response rejected = client.read();
+                client.send(TestHttpClient.request("GET", path, "Range: bytes=0-9"));
+                TestHttpClient.Response next = client.read();
+
+                assertEquals(416, rejected.status);
+                assertEquals("bytes */" + CONTENT_LENGTH, rejected.header("Content-Range"));
+                assertEquals(0, rejected.body.length);
+                assertArrayEquals(Arrays.copyOfRange(content, 0, 10), next.body);
+            } finally {
+                proxy.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void multipleRangesAreSentAsMultipart() throws Exception {
+        for (int engine : ENGINES) {
+            HttpProxyCacheServer proxy = newProxy(engine);
+            String proxyUrl = proxy.getProxyUrl(origin.url("video.mp4"), false);
+            String path = TestHttpClient.path(proxyUrl);
+            try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+                client.send(TestHttpClient.request("GET", path, "Range: bytes=100-199,-50"));
+                TestHttpClient.Response response = client.read();
+
+                assertEquals(206, response.status);
+                String contentType = response.header("Content-Type");
+                assertTrue(contentType, contentType.startsWith("multipart/byteranges; boundary="));
+                String boundary = contentType.substring(contentType.indexOf('=') + 1);
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                writePart(expected, boundary, 100, 200);
+                writePart(expected, boundary, CONTENT_LENGTH - 50, CONTENT_LENGTH);
+                expected.write(("\r\n--" + boundary + "--\r\n").getBytes("US-ASCII"));
+                assertArrayEquals(expected.toByteArray(), response.body);
+                assertFalse(client.isClosedByServer());
+            } finally {
+                proxy.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void cachedContentIsServedWithoutSource() throws Exception {
+        for (int engine : ENGINES) {
+            HttpProxyCacheServer proxy = newProxy(engine);
+            String url = origin.url("cached" + engine + ".mp4");
+            String proxyUrl = proxy.getProxyUrl(url, false);
+            String path = TestHttpClient.path(proxyUrl);
+            try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+                client.send(TestHttpClient.request("GET", path));
+                assertArrayEquals(content, client.read().body);
+                waitForCompletion(proxy, url);
+                int requestsCount = origin.getRequestsCount();
+
+                client.send(TestHttpClient.request("GET", path, "Range: bytes=1000-"));
+                TestHttpClient.Response response = client.read();
+
+                assertArrayEquals(Arrays.copyOfRange(content, 1000, CONTENT_LENGTH), response.body);
+                assertEquals(requestsCount, origin.getRequestsCount());
+                assertFalse(client.isClosedByServer());
+            } finally {
+                proxy.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void idlePersistentConnectionsDontStallNewOne() throws Exception {
+        for (int engine : ENGINES) {
+            HttpProxyCacheServer proxy = newProxy(engine);
+            String proxyUrl = proxy.getProxyUrl(origin.url("video.mp4"), false);
+            String path = TestHttpClient.path(proxyUrl);
+            List<TestHttpClient> idleClients = new ArrayList<>();
+            try {
+                // blocking engine has 8 threads, every idle persistent connection takes one
+                for (int i = 0; i < 8; i++) {
+                    TestHttpClient client = new TestHttpClient(proxyUrl);
+                    idleClients.add(client);
+                    client.send(TestHttpClient.request("GET", path, "Range: bytes=0-9"));
+                    assertArrayEquals(Arrays.copyOfRange(content, 0, 10), client.read().body);
+                }
+                try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+                    long start = System.currentTimeMillis();
+                    client.send(TestHttpClient.request("GET", path, "Range: bytes=10-19"));
+                    TestHttpClient.Response response = client.read();
+
+                    assertArrayEquals(Arrays.copyOfRange(content, 10, 20), response.body);
+                    // connection waiting for idle ones to time out would be served in 5 seconds
+                    assertTrue(System.currentTimeMillis() - start < 2000);
+                }
+            } finally {
+                for (TestHttpClient client : idleClients) {
+                    client.close();
+                }
+                proxy.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void segmentOfPriorityPlaylistIsNotThrottledWhileBuffering() throws Exception {
+        for (int engine : ENGINES) {
+            String playlistPath = "hls" + engine + "/index.m3u8";
+            origin.serve(playlistPath, "#EXTM3U\n#EXT-X-TARGETDURATION:10\n#EXTINF:10.0,\nseg0.ts\n#EXT-X-ENDLIST\n".getBytes("UTF-8"));
+            String playlistUrl = origin.url(playlistPath);
+            HttpProxyCacheServer proxy = newProxyBuilder(engine)
+                    .hlsMode(0)
+                    .throttleBackgroundWhileBuffering(16 * 1024)
+                    .build();
+            proxy.setPriorityUrl(playlistUrl);
+            proxy.setPlaybackBuffering(playlistUrl, true);
+            String proxyUrl = proxy.getProxyUrl(playlistUrl, false);
+            try (TestHttpClient client = new TestHttpClient(proxyUrl)) {
+                client.send(TestHttpClient.request("GET", TestHttpClient.path(proxyUrl)));
+                String playlist = new String(client.read().body, "UTF-8");
+                String segmentUrl = playlist.split("\n")[3];
+                assertTrue(segmentUrl, segmentUrl.endsWith("seg0.ts"));
+
+                long start = System.currentTimeMillis();
+                client.send(TestHttpClient.request("GET", TestHttpClient.path(segmentUrl)));
+                TestHttpClient.Response segment = client.read();
+
+                assertArrayEquals(content, segment.body);
+                // throttled segment would be read for 18 seconds
+                assertTrue(System.currentTimeMillis() - start < 5000);
+            } finally {
+                proxy.shutdown();
+            }
+        }
+    }
+
+    private HttpProxyCacheServer newProxy(int ioThreadsCount) throws IOException {
+        return newProxyBuilder(ioThreadsCount).build();
+    }
+
+    private HttpProxyCacheServer.Builder newProxyBuilder(int ioThreadsCount) throws IOException {
+        HttpProxyCacheServer.Builder builder = new HttpProxyCacheServer.Builder(RuntimeEnvironment.application)
+                .cacheDirectory(temporaryFolder.newFolder());
+        if (ioThreadsCount > 0) {
+            builder.nioEngine(ioThreadsCount);
+        }
+        return builder;
+    }
+
+    private void writePart(ByteArrayOutputStream out, String boundary, int start, int end) throws IOException {
+        String headers = "\r\n--" + boundary + "\r\n" +
+                "Content-Type: video/mp4\r\n" +
+                "Content-Range: bytes " + start + "-" + (end - 1) + "/" + CONTENT_LENGTH + "\r\n\r\n";
+        out.write(headers.getBytes("US-ASCII"));
+        out.write(content, start, end - start);
+    }
+
+    private void waitForCompletion(HttpProxyCacheServer proxy, String url) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!proxy.isCached(url) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(proxy.isCached(url));
+    }
+}
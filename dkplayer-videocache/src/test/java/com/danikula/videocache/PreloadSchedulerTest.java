@@ -0,0 +1,108 @@
+package com.danikula.videocache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PreloadSchedulerTest {
+
+    // content isn't mp4, so first FALLBACK_PRELOAD_SIZE bytes of every video are preloaded
+    private static final int CONTENT_LENGTH = 2 * 1024 * 1024;
+    private static final long SLOW_RESPONSE_DELAY = 300;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private TestOrigin origin;
+    private HttpProxyCacheServer proxy;
+    private PreloadScheduler scheduler;
+
+    @Before
+    public void setUp() throws IOException {
+        origin = new TestOrigin(CONTENT_LENGTH);
+        proxy = new HttpProxyCacheServer.Builder(RuntimeEnvironment.application)
+                .cacheDirectory(temporaryFolder.newFolder())
+                .preloading(1, 0)
+                .build();
+        scheduler = proxy.getPreloadScheduler();
+    }
+
+    @After
+    public void tearDown() {
+        proxy.shutdown();
+        origin.stop();
+    }
+
+    @Test
+    public void closerVideoIsPreloadedFirst() throws Exception {
+        origin.delay("first.mp4", SLOW_RESPONSE_DELAY);
+        origin.delay("third.mp4", SLOW_RESPONSE_DELAY);
+
+        scheduler.preload(origin.url("first.mp4"), 1, 1);
+        scheduler.preload(origin.url("third.mp4"), 3, 1);
+        scheduler.preload(origin.url("second.mp4"), 2, 1);
+
+        assertTrue(waitUntilPreloaded("second.mp4"));
+        assertFalse(scheduler.isPreloaded(origin.url("third.mp4")));
+        assertTrue(waitUntilPreloaded("third.mp4"));
+        assertTrue(scheduler.isPreloaded(origin.url("first.mp4")));
+    }
+
+    @Test
+    public void farthestPreloadIsPausedForCloserVideo() throws Exception {
+        origin.delay("far.mp4", SLOW_RESPONSE_DELAY);
+        scheduler.preload(origin.url("far.mp4"), 5, 1);
+        waitForRequest("far.mp4");
+
+        scheduler.preload(origin.url("close.mp4"), 1, 1);
+
+        assertTrue(waitUntilPreloaded("close.mp4"));
+        assertFalse(scheduler.isPreloaded(origin.url("far.mp4")));
+        // paused preloading is continued when slot is free
+        assertTrue(waitUntilPreloaded("far.mp4"));
+    }
+
+    @Test
+    public void videoAtCurrentPositionIsNotPreloaded() throws Exception {
+        origin.delay("current.mp4", SLOW_RESPONSE_DELAY);
+        scheduler.preload(origin.url("current.mp4"), 2, 1);
+        waitForRequest("current.mp4");
+
+        scheduler.setCurrentPosition(2);
+        scheduler.preload(origin.url("next.mp4"), 3, 1);
+
+        assertTrue(waitUntilPreloaded("next.mp4"));
+        Thread.sleep(2 * SLOW_RESPONSE_DELAY);
+        assertFalse(scheduler.isPreloaded(origin.url("current.mp4")));
+    }
+
+    private void waitForRequest(String path) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (origin.getRequestsCount(path) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(origin.getRequestsCount(path) > 0);
+    }
+
+    private boolean waitUntilPreloaded(String path) throws InterruptedException {
+        String url = origin.url(path);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!scheduler.isPreloaded(url) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return scheduler.isPreloaded(url);
+    }
+}
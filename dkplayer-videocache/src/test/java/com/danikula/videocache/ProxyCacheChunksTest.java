@@ -0,0 +1,166 @@
+package com.danikula.videocache;
+
+import com.danikula.videocache.file.SparseFileCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProxyCacheChunksTest {
+
+    private static final int CHUNK = 256 * 1024;
+    private static final int CONNECTIONS = 2;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final byte[] data = new byte[8 * CHUNK];
+    private final List<Long> openedOffsets = new ArrayList<>();
+    private final AtomicInteger openedSources = new AtomicInteger();
+    private final AtomicInteger maxOpenedSources = new AtomicInteger();
+    private SourceReaderExecutor executor;
+    private ProxyCache proxyCache;
+
+    @Before
+    public void setUp() {
+        new Random(1).nextBytes(data);
+        executor = new SourceReaderExecutor(CONNECTIONS);
+    }
+
+    @After
+    public void tearDown() {
+        if (proxyCache != null) {
+            proxyCache.shutdown();
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void chunksAreReadConcurrentlyByBoundedRanges() throws Exception {
+        proxyCache = newProxyCache(5);
+
+        byte[] read = new byte[data.length];
+        for (int offset = 0; offset < data.length; ) {
+            offset += proxyCache.read(read, offset, data.length - offset);
+        }
+
+        assertArrayEquals(data, read);
+        assertEquals(CONNECTIONS, maxOpenedSources.get());
+        synchronized (openedOffsets) {
+            assertEquals(data.length / CHUNK, openedOffsets.size());
+            for (long offset : openedOffsets) {
+                assertEquals(0, offset % CHUNK);
+            }
+        }
+    }
+
+    @Test
+    public void blockedRangeIsReadFirst() throws Exception {
+        proxyCache = newProxyCache(5);
+
+        byte[] read = new byte[100];
+        proxyCache.read(read, 5 * CHUNK, read.length);
+
+        assertArrayEquals(Arrays.copyOfRange(data, 5 * CHUNK, 5 * CHUNK + read.length), read);
+        synchronized (openedOffsets) {
+            assertTrue(openedOffsets.contains(5L * CHUNK));
+            for (long offset : openedOffsets) {
+                assertTrue("opened at " + offset, offset >= 5 * CHUNK);
+            }
+        }
+    }
+
+    @Test
+    public void farthestChunkIsAbandonedForBlockedRange() throws Exception {
+        // every chunk is read for more than half a second
+        proxyCache = newProxyCache(20);
+        byte[] read = new byte[100];
+        proxyCache.read(read, 0, read.length);
+
+        long start = System.currentTimeMillis();
+        proxyCache.read(read, 6 * CHUNK, read.length);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertArrayEquals(Arrays.copyOfRange(data, 6 * CHUNK, 6 * CHUNK + read.length), read);
+        assertTrue("elapsed " + elapsed, elapsed < 300);
+        synchronized (openedOffsets) {
+            // chunks 0 and 1 are opened concurrently, then the first one is abandoned
+            assertEquals(CHUNK, openedOffsets.get(0) + openedOffsets.get(1));
+            assertEquals(6L * CHUNK, (long) openedOffsets.get(2));
+        }
+    }
+
+    private ProxyCache newProxyCache(final long readDelay) throws ProxyCacheException {
+        File file = new File(temporaryFolder.getRoot(), "video.mp4");
+        final Source source = new SlowSource(0);
+        return new ProxyCache(source, new SparseFileCache(file), executor, CONNECTIONS, CHUNK) {
+
+            @Override
+            protected Source newReaderSource() {
+                return new SlowSource(readDelay);
+            }
+
+            @Override
+            protected String getSourceKey() {
+                return "video.mp4";
+            }
+        };
+    }
+
+    private final class SlowSource extends ByteArraySource {
+
+        private final long readDelay;
+        private boolean opened;
+
+        SlowSource(long readDelay) {
+            super(data);
+            this.readDelay = readDelay;
+        }
+
+        @Override
+        public void open(long offset, long length) throws ProxyCacheException {
+            synchronized (openedOffsets) {
+                openedOffsets.add(offset);
+            }
+            int openedCount = openedSources.incrementAndGet();
+            while (maxOpenedSources.get() < openedCount) {
+                maxOpenedSources.compareAndSet(maxOpenedSources.get(), openedCount);
+            }
+            opened = true;
+            super.open(offset, length);
+        }
+
+        @Override
+        public int read(byte[] buffer) throws ProxyCacheException {
+            try {
+                Thread.sleep(readDelay);
+            } catch (InterruptedException e) {
+                throw new ProxyCacheException("Reading is interrupted", e);
+            }
+            return super.read(buffer);
+        }
+
+        @Override
+        public void close() throws ProxyCacheException {
+            // reader may close source twice
+            if (opened) {
+                opened = false;
+                openedSources.decrementAndGet();
+            }
+            super.close();
+        }
+    }
+}
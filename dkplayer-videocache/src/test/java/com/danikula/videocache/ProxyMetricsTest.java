@@ -0,0 +1,135 @@
+package com.danikula.videocache;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ProxyMetricsTest {
+
+    private static final long MS = 1000000;
+
+    @Test
+    public void trafficOfUrlsIsSummedInTotal() {
+        ProxyMetrics metrics = new ProxyMetrics();
+        TrafficRecorder first = metrics.getRecorder("first", "http://example.com/first.mp4");
+        TrafficRecorder second = metrics.getRecorder("second", "http://example.com/second.mp4");
+
+        first.onRequestServed(100, 0, 10 * MS);
+        first.onRequestServed(50, 200, 30 * MS);
+        second.onRequestServed(0, 400, 60 * MS);
+        first.onSourceRead(200, 20 * MS);
+        second.onSourceRead(400, 40 * MS);
+        first.onSourceFirstByte(5 * MS);
+        second.onSourceFirstByte(70 * MS);
+        second.onStall(300 * MS);
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        TrafficMetrics total = snapshot.total;
+        assertNull(total.url);
+        assertEquals(3, total.requests);
+        assertEquals(1, total.cacheHits);
+        assertEquals(150, total.bytesServedFromCache);
+        assertEquals(600, total.bytesServedFromSource);
+        assertEquals(100, total.servingTime);
+        assertEquals(600, total.bytesReadFromSource);
+        assertEquals(60, total.sourceReadingTime);
+        assertEquals(2, total.sourceTtfb.count);
+        assertEquals(70, total.sourceTtfb.max);
+        assertEquals(1, total.stalls.count);
+        assertEquals(300, total.stalls.sum);
+        TrafficMetrics firstMetrics = snapshot.urls.get(0);
+        assertEquals("http://example.com/first.mp4", firstMetrics.url);
+        assertEquals(2, firstMetrics.requests);
+        assertEquals(0.5f, firstMetrics.getHitRatio(), 0.001f);
+        assertEquals(150f / 350, firstMetrics.getByteHitRatio(), 0.001f);
+        assertEquals(1, firstMetrics.sourceTtfb.count);
+        assertEquals(0, firstMetrics.stalls.count);
+        assertEquals(1, snapshot.urls.get(1).requests);
+    }
+
+    @Test
+    public void urlsWithTheSameKeyAreCountedTogether() {
+        ProxyMetrics metrics = new ProxyMetrics();
+
+        metrics.getRecorder("key", "http://example.com/video.mp4?token=1").onRequestServed(100, 0, MS);
+        TrafficRecorder recorder = metrics.getRecorder("key", "http://example.com/video.mp4?token=2");
+        recorder.onRequestServed(100, 0, MS);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.urls.size());
+        assertEquals(2, snapshot.urls.get(0).requests);
+        assertEquals("http://example.com/video.mp4?token=2", snapshot.urls.get(0).url);
+        assertEquals(2, metrics.snapshot("key").requests);
+    }
+
+    @Test
+    public void droppedUrlIsCountedInTotal() {
+        ProxyMetrics metrics = new ProxyMetrics();
+
+        for (int i = 0; i < 100; i++) {
+            metrics.getRecorder("key" + i, "http://example.com/" + i).onRequestServed(10, 0, MS);
+        }
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(100, snapshot.total.requests);
+        assertEquals(1000, snapshot.total.bytesServedFromCache);
+        assertEquals(64, snapshot.urls.size());
+        assertEquals("http://example.com/99", snapshot.urls.get(63).url);
+        assertNull(metrics.snapshot("key0"));
+    }
+
+    @Test
+    public void evictionsAreCounted() {
+        ProxyMetrics metrics = new ProxyMetrics();
+        RecordingListener listener = new RecordingListener();
+        metrics.registerListener(listener);
+        File file = new File("video.mp4");
+
+        metrics.onEvicted(file, 100);
+        metrics.onEvicted(new File("other.mp4"), 200);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2, snapshot.evictedFiles);
+        assertEquals(300, snapshot.evictedBytes);
+        assertEquals(2, listener.evictedFiles);
+    }
+
+    @Test
+    public void listenerIsNotifiedAboutServedRequest() {
+        ProxyMetrics metrics = new ProxyMetrics();
+        RecordingListener listener = new RecordingListener();
+        metrics.registerListener(listener);
+
+        metrics.getRecorder("key", "http://example.com/video.mp4").onRequestServed(100, 200, 30 * MS);
+        metrics.unregisterListener(listener);
+        metrics.getRecorder("key", "http://example.com/video.mp4").onRequestServed(100, 200, 30 * MS);
+
+        RequestMetrics request = listener.lastRequest;
+        assertEquals(1, listener.requests);
+        assertEquals("http://example.com/video.mp4", request.url);
+        assertEquals(100, request.bytesFromCache);
+        assertEquals(200, request.bytesFromSource);
+        assertEquals(30, request.duration);
+    }
+
+    private static final class RecordingListener implements MetricsListener {
+
+        private int requests;
+        private int evictedFiles;
+        private RequestMetrics lastRequest;
+
+        @Override
+        public void onRequestServed(RequestMetrics request) {
+            requests++;
+            lastRequest = request;
+        }
+
+        @Override
+        public void onCacheFileEvicted(File file, long size) {
+            evictedFiles++;
+        }
+    }
+}
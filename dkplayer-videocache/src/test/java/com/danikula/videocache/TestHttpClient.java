@@ -0,0 +1,146 @@
+package com.danikula.videocache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Raw HTTP client for tests checking how proxy uses connection: it sends requests as they are
+ * and reads responses one by one from the same socket, body is delimited by {@code Content-Length}.
+ */
+final class TestHttpClient implements Closeable {
+
+    private static final int READ_TIMEOUT = 10_000;
+    private static final int CLOSE_TIMEOUT = 1000;
+
+    private final Socket socket;
+    private final InputStream in;
+
+    /**
+     * @param proxyUrl any url of proxy to connect to.
+     */
+    TestHttpClient(String proxyUrl) throws IOException {
+        URL url = new URL(proxyUrl);
+        this.socket = new Socket(url.getHost(), url.getPort());
+        this.socket.setSoTimeout(READ_TIMEOUT);
+        this.in = new BufferedInputStream(socket.getInputStream());
+    }
+
+    static String request(String method, String path, String... headers) {
+        StringBuilder request = new StringBuilder(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        request.append("Host: 127.0.0.1\r\n");
+        for (String header : headers) {
+            request.append(header).append("\r\n");
+        }
+        return request.append("\r\n").toString();
+    }
+
+    /**
+     * Returns path of proxy url to be used in request line.
+     */
+    static String path(String proxyUrl) {
+        return proxyUrl.substring(proxyUrl.indexOf('/', "http://".length()));
+    }
+
+    void send(String... requests) throws IOException {
+        StringBuilder data = new StringBuilder();
+        for (String request : requests) {
+            data.append(request);
+        }
+        socket.getOutputStream().write(data.toString().getBytes("US-ASCII"));
+        socket.getOutputStream().flush();
+    }
+
+    Response read() throws IOException {
+        return read(false);
+    }
+
+    Response readHead() throws IOException {
+        return read(true);
+    }
+
+    /**
+     * Checks whether server closed connection after last response. Waits less than proxy keeps idle connection.
+     */
+    boolean isClosedByServer() throws IOException {
+        socket.setSoTimeout(CLOSE_TIMEOUT);
+        try {
+            return in.read() == -1;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } finally {
+            socket.setSoTimeout(READ_TIMEOUT);
+        }
+    }
+
+    private Response read(boolean head) throws IOException {
+        String statusLine = readLine();
+        if (statusLine == null) {
+            throw new IOException("Connection is closed by server");
+        }
+        int status = Integer.parseInt(statusLine.split(" ")[1]);
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+        }
+        byte[] body = new byte[0];
+        String contentLength = headers.get("content-length");
+        if (!head && contentLength != null) {
+            body = new byte[Integer.parseInt(contentLength)];
+            int offset = 0;
+            while (offset < body.length) {
+                int read = in.read(body, offset, body.length - offset);
+                if (read == -1) {
+                    throw new IOException("Connection is closed in the middle of body");
+                }
+                offset += read;
+            }
+        }
+        return new Response(status, headers, body);
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int read;
+        while ((read = in.read()) != -1 && read != '\n') {
+            line.write(read);
+        }
+        if (read == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = line.toString("US-ASCII");
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    static final class Response {
+
+        final int status;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        Response(int status, Map<String, String> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+}
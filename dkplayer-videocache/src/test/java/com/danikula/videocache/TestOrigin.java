@@ -0,0 +1,213 @@
+package com.danikula.videocache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP server standing in for origin of videos in tests.
+ * <p>
+ * Every path is served with the same random content unless other content is set for it by {@link #serve(String, byte[])}.
+ * Server supports {@code HEAD} requests and single range requests ({@code bytes=from-} and {@code bytes=from-to}).
+ * Path may be redirected to other one, be missing or be answered with delay.
+ * <p>
+ * If validators are enabled by {@link #sendValidators(boolean, boolean)}, server sends ETag and Last-Modified
+ * of content, answers {@code 304} to matching {@code If-None-Match} or {@code If-Modified-Since} and sends whole content
+ * if {@code If-Range} doesn't match. Content set by {@link #serve(String, byte[])} is a new version with new validators.
+ */
+public final class TestOrigin {
+
+    private static final long FIRST_MODIFIED_TIME = 1600000000000L;
+
+    private final byte[] content;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger requestsCount = new AtomicInteger();
+    private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+    private final Map<String, String> redirects = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> missingPaths = new ConcurrentHashMap<>();
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> pathRequestsCounts = new ConcurrentHashMap<>();
+    private final Map<String, Long> modifiedTimes = new ConcurrentHashMap<>();
+    private final AtomicLong lastModifiedTime = new AtomicLong(FIRST_MODIFIED_TIME);
+    private volatile boolean etagSent;
+    private volatile boolean lastModifiedSent;
+
+    public TestOrigin(int contentLength) throws IOException {
+        this.content = new byte[contentLength];
+        new Random(contentLength).nextBytes(content);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", new ContentHandler());
+        server.start();
+    }
+
+    public String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + path;
+    }
+
+    public void serve(String path, byte[] content) {
+        modifiedTimes.put("/" + path, lastModifiedTime.addAndGet(1000));
+        contents.put("/" + path, content);
+    }
+
+    public void sendValidators(boolean etag, boolean lastModified) {
+        this.etagSent = etag;
+        this.lastModifiedSent = lastModified;
+    }
+
+    /**
+     * Answers requests of path by {@code 302} redirect to other path.
+     */
+    public void redirect(String path, String targetPath) {
+        redirects.put("/" + path, targetPath);
+    }
+
+    /**
+     * Answers requests of path by {@code 404} or serves it again.
+     */
+    public void setMissing(String path, boolean missing) {
+        if (missing) {
+            missingPaths.put("/" + path, true);
+        } else {
+            missingPaths.remove("/" + path);
+        }
+    }
+
+    /**
+     * Answers every request of path after delay.
+     */
+    public void delay(String path, long delayMs) {
+        delays.put("/" + path, delayMs);
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public int getRequestsCount() {
+        return requestsCount.get();
+    }
+
+    public int getRequestsCount(String path) {
+        AtomicInteger count = pathRequestsCounts.get("/" + path);
+        return count != null ? count.get() : 0;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private final class ContentHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requestsCount.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            AtomicInteger pathRequestsCount = pathRequestsCounts.get(path);
+            if (pathRequestsCount == null) {
+                pathRequestsCounts.putIfAbsent(path, new AtomicInteger());
+                pathRequestsCount = pathRequestsCounts.get(path);
+            }
+            pathRequestsCount.incrementAndGet();
+            byte[] content = contents.get(path);
+            content = content != null ? content : TestOrigin.this.content;
+            Long modifiedTime = modifiedTimes.get(path);
+            String etag = etagSent ? "\"" + Integer.toHexString(Arrays.hashCode(content)) + "\"" : null;
+            String lastModified = lastModifiedSent ? formatDate(modifiedTime != null ? modifiedTime : FIRST_MODIFIED_TIME) : null;
+            try {
+                Long delay = delays.get(path);
+                if (delay != null) {
+                    Thread.sleep(delay);
+                }
+                String redirect = redirects.get(path);
+                if (redirect != null || missingPaths.containsKey(path)) {
+                    if (redirect != null) {
+                        exchange.getResponseHeaders().add("Location", url(redirect));
+                    }
+                    exchange.sendResponseHeaders(redirect != null ? 302 : 404, -1);
+                    return;
+                }
+                if (etag != null) {
+                    exchange.getResponseHeaders().add("ETag", etag);
+                }
+                if (lastModified != null) {
+                    exchange.getResponseHeaders().add("Last-Modified", lastModified);
+                }
+                if (isNotModified(exchange, etag, lastModified)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+                long start = 0;
+                long end = content.length - 1;
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                if (ifRange != null && !ifRange.equals(etag != null ? etag : lastModified)) {
+                    range = null; // content is changed, send new version from the beginning
+                }
+                if (range != null && range.startsWith("bytes=")) {
+                    String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                    start = Long.parseLong(bounds[0]);
+                    if (bounds.length > 1 && !bounds[1].isEmpty()) {
+                        end = Math.min(end, Long.parseLong(bounds[1]));
+                    }
+                }
+                long length = end - start + 1;
+                exchange.getResponseHeaders().add("Content-Type", "video/mp4");
+                exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+                boolean head = "HEAD".equals(exchange.getRequestMethod());
+                if (range != null) {
+                    exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+                }
+                if (head) {
+                    exchange.getResponseHeaders().add("Content-Length", String.valueOf(length));
+                }
+                exchange.sendResponseHeaders(range != null ? 206 : 200, head ? -1 : length);
+                if (!head) {
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(content, (int) start, (int) length);
+                    out.close();
+                }
+            } catch (IOException e) {
+                // client may close connection before whole content is sent
+            } catch (InterruptedException e) {
+                // server is stopped
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private boolean isNotModified(HttpExchange exchange, String etag, String lastModified) {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null) {
+                return ifNoneMatch.equals(etag);
+            }
+            String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            return ifModifiedSince != null && ifModifiedSince.equals(lastModified);
+        }
+
+        private String formatDate(long time) {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format.format(new Date(time));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.danikula.videocache.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder();
+    }
+
+    @Test
+    public void missingJournalIsNotRead() {
+        assertNull(new CacheJournal(directory).read());
+    }
+
+    @Test
+    public void touchesAreReadInAccessOrder() {
+        CacheJournal journal = new CacheJournal(directory);
+        journal.writeTouch("a", 100, true);
+        journal.writeTouch("b", 200, false);
+        journal.writeTouch("c", 300, true);
+        journal.writeTouch("a", 150, true);
+
+        LinkedHashMap<String, Long> sizes = new CacheJournal(directory).read();
+
+        assertEquals(Arrays.asList("b", "c", "a"), new ArrayList<>(sizes.keySet()));
+        assertEquals(150, (long) sizes.get("a"));
+        assertEquals(200, (long) sizes.get("b"));
+    }
+
+    @Test
+    public void removedFileIsNotRead() {
+        CacheJournal journal = new CacheJournal(directory);
+        journal.writeTouch("a", 100, true);
+        journal.writeTouch("b", 200, true);
+        journal.writeRemove("a");
+
+        LinkedHashMap<String, Long> sizes = new CacheJournal(directory).read();
+
+        assertEquals(Arrays.asList("b"), new ArrayList<>(sizes.keySet()));
+    }
+
+    @Test
+    public void tornLastRecordIsIgnored() throws IOException {
+        CacheJournal journal = new CacheJournal(directory);
+        journal.writeTouch("a", 100, true);
+        journal.writeTouch("b", 200, true);
+        truncate(new File(directory, CacheJournal.FILE_NAME), 3);
+
+        LinkedHashMap<String, Long> sizes = new CacheJournal(directory).read();
+
+        assertEquals(Arrays.asList("a"), new ArrayList<>(sizes.keySet()));
+    }
+
+    @Test
+    public void recordsAfterUnknownOneAreIgnored() throws IOException {
+        CacheJournal journal = new CacheJournal(directory);
+        journal.writeTouch("a", 100, true);
+        append(new File(directory, CacheJournal.FILE_NAME), new byte[]{42, 0, 1, 'b'});
+
+        LinkedHashMap<String, Long> sizes = new CacheJournal(directory).read();
+
+        assertEquals(Arrays.asList("a"), new ArrayList<>(sizes.keySet()));
+    }
+
+    @Test
+    public void fileOfOtherFormatIsNotRead() throws IOException {
+        append(new File(directory, CacheJournal.FILE_NAME), "not a journal".getBytes("US-ASCII"));
+
+        assertNull(new CacheJournal(directory).read());
+    }
+
+    @Test
+    public void rewriteKeepsOneRecordPerFile() {
+        CacheJournal journal = new CacheJournal(directory);
+        for (int i = 0; i < 10; i++) {
+            journal.writeTouch("a", i, true);
+        }
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        sizes.put("b", 20L);
+        sizes.put("a", 10L);
+
+        journal.rewrite(sizes);
+        journal.writeTouch("c", 30, false);
+
+        LinkedHashMap<String, Long> read = new CacheJournal(directory).read();
+        assertEquals(Arrays.asList("b", "a", "c"), new ArrayList<>(read.keySet()));
+        assertEquals(10, (long) read.get("a"));
+        assertFalse(new File(directory, CacheJournal.FILE_NAME + ".tmp").exists());
+    }
+
+    @Test
+    public void compactionIsNeededWhenRecordsOutnumberFiles() {
+        CacheJournal journal = new CacheJournal(directory);
+        for (int i = 0; i < 1000; i++) {
+            journal.writeTouch("a", i, true);
+        }
+
+        assertTrue(journal.isCompactionNeeded(1));
+        assertFalse(journal.isCompactionNeeded(500));
+
+        journal.rewrite(new CacheJournal(directory).read());
+
+        assertFalse(journal.isCompactionNeeded(1));
+    }
+
+    @Test
+    public void journalFilesAreRecognized() {
+        assertTrue(CacheJournal.isJournalFile(new File(directory, CacheJournal.FILE_NAME)));
+        assertTrue(CacheJournal.isJournalFile(new File(directory, CacheJournal.FILE_NAME + ".tmp")));
+        assertFalse(CacheJournal.isJournalFile(new File(directory, "video.mp4")));
+    }
+
+    private void truncate(File file, int bytes) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(randomAccessFile.length() - bytes);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private void append(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
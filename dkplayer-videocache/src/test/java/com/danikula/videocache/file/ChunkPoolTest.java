@@ -0,0 +1,47 @@
+package com.danikula.videocache.file;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ChunkPoolTest {
+
+    private final ChunkPool pool = new ChunkPool(1024, 2);
+
+    @Test
+    public void chunksAreAllocatedUpToLimit() {
+        assertEquals(1024, pool.acquire().length);
+        assertNotNull(pool.acquire());
+
+        assertNull(pool.acquire());
+        assertEquals(2048, pool.getAllocatedSize());
+        assertEquals(2048, pool.getMaxSize());
+    }
+
+    @Test
+    public void releasedChunkIsReused() {
+        byte[] chunk = pool.acquire();
+        pool.acquire();
+
+        pool.release(chunk);
+
+        assertSame(chunk, pool.acquire());
+        assertEquals(2048, pool.getAllocatedSize());
+    }
+
+    @Test
+    public void trimDropsOnlyFreeChunks() {
+        byte[] first = pool.acquire();
+        pool.acquire();
+        pool.release(first);
+
+        pool.trim();
+
+        assertEquals(1024, pool.getAllocatedSize());
+        assertNotNull(pool.acquire());
+        assertNull(pool.acquire());
+    }
+}
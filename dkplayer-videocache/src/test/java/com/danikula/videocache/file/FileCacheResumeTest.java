@@ -0,0 +1,127 @@
+package com.danikula.videocache.file;
+
+import com.danikula.videocache.ProxyCacheException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FileCacheResumeTest {
+
+    private static final int BLOCK = ResumeRecord.BLOCK_SIZE;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final byte[] data = new byte[3 * BLOCK];
+    private File file;
+    private File tempFile;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(1).nextBytes(data);
+        file = new File(temporaryFolder.newFolder(), "video.mp4");
+        tempFile = new File(file.getPath() + FileCache.TEMP_POSTFIX);
+        FileCache.forgetVerifiedFiles();
+    }
+
+    @After
+    public void tearDown() {
+        FileCache.forgetVerifiedFiles();
+    }
+
+    @Test
+    public void fileClosedByThisProcessIsNotVerifiedAgain() throws Exception {
+        write(2 * BLOCK + 1000);
+        long lastModified = tempFile.lastModified();
+        // broken block is not noticed if blocks are not read again
+        corrupt(BLOCK + 5);
+        tempFile.setLastModified(lastModified);
+
+        FileCache cache = new FileCache(file);
+
+        assertEquals(2 * BLOCK + 1000, cache.available());
+        cache.close();
+    }
+
+    @Test
+    public void fileIsVerifiedAfterRestart() throws Exception {
+        write(2 * BLOCK + 1000);
+        corrupt(BLOCK + 5);
+
+        FileCache.forgetVerifiedFiles();
+        FileCache cache = new FileCache(file);
+
+        assertEquals(BLOCK, cache.available());
+        cache.close();
+    }
+
+    @Test
+    public void changedFileIsVerifiedAgain() throws Exception {
+        write(2 * BLOCK + 1000);
+        corrupt(BLOCK + 5);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw")) {
+            randomAccessFile.setLength(2 * BLOCK + 500);
+        }
+
+        FileCache cache = new FileCache(file);
+
+        assertEquals(BLOCK, cache.available());
+        cache.close();
+    }
+
+    @Test
+    public void trustedFileContinuesChecksumOfLastBlock() throws Exception {
+        write(BLOCK + 1000);
+        FileCache cache = new FileCache(file);
+        cache.append(Arrays.copyOfRange(data, BLOCK + 1000, 3 * BLOCK), 2 * BLOCK - 1000);
+        cache.close();
+
+        FileCache.forgetVerifiedFiles();
+        cache = new FileCache(file);
+
+        assertEquals(3 * BLOCK, cache.available());
+        byte[] buffer = new byte[3 * BLOCK];
+        cache.read(buffer, 0, buffer.length);
+        assertArrayEquals(data, buffer);
+        cache.close();
+    }
+
+    @Test
+    public void clearedFileIsEmptyWhenOpenedAgain() throws Exception {
+        write(2 * BLOCK);
+        FileCache cache = new FileCache(file);
+        cache.clear();
+        cache.close();
+
+        cache = new FileCache(file);
+
+        assertEquals(0, cache.available());
+        cache.close();
+    }
+
+    private void write(int length) throws ProxyCacheException {
+        FileCache cache = new FileCache(file);
+        cache.validate("\"v1\"", data.length);
+        cache.append(data, length);
+        cache.close();
+    }
+
+    private void corrupt(long offset) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw")) {
+            randomAccessFile.seek(offset);
+            randomAccessFile.write(~data[(int) offset]);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.danikula.videocache.file;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+    private final FrequencySketch sketch = new FrequencySketch(256);
+
+    @Test
+    public void countsIncrements() {
+        sketch.increment("a");
+        sketch.increment("a");
+        sketch.increment("a");
+        sketch.increment("b");
+
+        assertEquals(3, sketch.frequency("a"));
+        assertEquals(1, sketch.frequency("b"));
+        assertEquals(0, sketch.frequency("c"));
+    }
+
+    @Test
+    public void frequencyIsLimited() {
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("a");
+        }
+
+        assertEquals(15, sketch.frequency("a"));
+    }
+
+    @Test
+    public void oldPopularityIsForgotten() {
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("a");
+        }
+
+        // sample size is ten times width of sketch
+        for (int i = 0; i < 10 * 256; i++) {
+            sketch.increment("key" + i);
+        }
+
+        assertTrue(sketch.frequency("a") < 10);
+    }
+}
@@ -0,0 +1,120 @@
+package com.danikula.videocache.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests order of files in index built by {@link IndexedDiskUsage} when cache directory is opened.
+ */
+public class IndexRebuildTest {
+
+    private static final int FILE_SIZE = 100;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder();
+    }
+
+    @Test
+    public void journalOrderIsUsedInsteadOfModificationTime() throws Exception {
+        File a = newFile("a", 3);
+        File b = newFile("b", 2);
+        File c = newFile("c", 1);
+        CacheJournal journal = new CacheJournal(directory);
+        journal.writeTouch("a", FILE_SIZE, true);
+        journal.writeTouch("b", FILE_SIZE, true);
+        journal.writeTouch("c", FILE_SIZE, true);
+
+        touchNewFile(new TotalSizeLruDiskUsage(3 * FILE_SIZE), "d");
+
+        waitUntilDeleted(a);
+        assertTrue(b.exists());
+        assertTrue(c.exists());
+    }
+
+    @Test
+    public void filesMissedByJournalAreLeastRecentlyUsed() throws Exception {
+        File a = newFile("a", 3);
+        File b = newFile("b", 2);
+        File c = newFile("c", 1);
+        CacheJournal journal = new CacheJournal(directory);
+        journal.writeTouch("b", FILE_SIZE, true);
+        journal.writeTouch("c", FILE_SIZE, true);
+
+        touchNewFile(new TotalSizeLruDiskUsage(3 * FILE_SIZE), "d");
+
+        waitUntilDeleted(a);
+        assertTrue(b.exists());
+        assertTrue(c.exists());
+    }
+
+    @Test
+    public void modificationTimeIsUsedWithoutJournal() throws Exception {
+        File a = newFile("a", 1);
+        File b = newFile("b", 3);
+        File c = newFile("c", 2);
+
+        touchNewFile(new TotalSizeLruDiskUsage(3 * FILE_SIZE), "d");
+
+        waitUntilDeleted(b);
+        assertTrue(a.exists());
+        assertTrue(c.exists());
+    }
+
+    @Test
+    public void journaledFilesDeletedBeforeAreNotCounted() throws Exception {
+        File a = newFile("a", 3);
+        File b = newFile("b", 2);
+        CacheJournal journal = new CacheJournal(directory);
+        journal.writeTouch("deleted", 10 * FILE_SIZE, true);
+        journal.writeTouch("a", FILE_SIZE, true);
+        journal.writeTouch("b", FILE_SIZE, true);
+
+        File d = touchNewFile(new TotalSizeLruDiskUsage(2 * FILE_SIZE), "d");
+
+        waitUntilDeleted(a);
+        assertTrue(b.exists());
+        assertTrue(d.exists());
+        assertFalse(new CacheJournal(directory).read().containsKey("deleted"));
+    }
+
+    private File touchNewFile(DiskUsage diskUsage, String name) throws IOException {
+        File file = newFile(name, 0);
+        diskUsage.touch(file);
+        return file;
+    }
+
+    private File newFile(String name, int ageInSeconds) throws IOException {
+        File file = new File(directory, name);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(FILE_SIZE);
+        } finally {
+            randomAccessFile.close();
+        }
+        assertTrue(file.setLastModified(System.currentTimeMillis() - ageInSeconds * 10_000L));
+        return file;
+    }
+
+    private void waitUntilDeleted(File file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (file.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(file + " is not deleted", file.exists());
+    }
+}
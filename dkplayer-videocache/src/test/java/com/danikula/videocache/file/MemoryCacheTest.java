@@ -0,0 +1,144 @@
+package com.danikula.videocache.file;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MemoryCacheTest {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final MemoryCache cache = new MemoryCache(4 * CHUNK_SIZE, 2 * CHUNK_SIZE);
+    private final byte[] data = generate(3 * CHUNK_SIZE);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxSizeMustFitChunk() {
+        new MemoryCache(CHUNK_SIZE - 1, 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void headSizeMustBePositive() {
+        new MemoryCache(CHUNK_SIZE, 0);
+    }
+
+    @Test
+    public void headWrittenInPartsIsReadAcrossChunks() {
+        write("a", 0, 1000);
+        write("a", 1000, CHUNK_SIZE + 1000);
+
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int read = cache.read("a", 500, buffer, buffer.length);
+
+        assertEquals(CHUNK_SIZE, read);
+        assertArrayEquals(Arrays.copyOfRange(data, 500, 500 + CHUNK_SIZE), buffer);
+        assertEquals(CHUNK_SIZE + 2000, cache.cachedLength("a", 0));
+        assertEquals(1000, cache.cachedLength("a", CHUNK_SIZE + 1000));
+        assertEquals(1, cache.getHitsCount());
+    }
+
+    @Test
+    public void onlyHeadOfFileIsKept() {
+        write("a", 0, 3 * CHUNK_SIZE);
+
+        assertEquals(2 * CHUNK_SIZE, cache.cachedLength("a", 0));
+        assertEquals(2 * CHUNK_SIZE, cache.getUsedSize());
+        assertEquals(0, cache.read("a", 2 * CHUNK_SIZE, new byte[10], 10));
+    }
+
+    @Test
+    public void dataNotContinuingHeadIsIgnored() {
+        write("a", 100, 1000);
+        write("b", 0, 1000);
+        write("b", 2000, 1000);
+
+        assertEquals(1, cache.getFilesCount());
+        assertEquals(0, cache.cachedLength("a", 0));
+        assertEquals(1000, cache.cachedLength("b", 0));
+    }
+
+    @Test
+    public void missesAreCountedOnlyWithinHead() {
+        cache.read("a", 0, new byte[10], 10);
+        cache.read("a", 3 * CHUNK_SIZE, new byte[10], 10);
+
+        assertEquals(1, cache.getMissesCount());
+        assertEquals(0, cache.getHitsCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedHeadIsDroppedWhenPoolIsExhausted() {
+        write("a", 0, 2 * CHUNK_SIZE);
+        write("b", 0, 2 * CHUNK_SIZE);
+        cache.read("a", 0, new byte[10], 10);
+
+        write("c", 0, 1000);
+
+        assertEquals(2 * CHUNK_SIZE, cache.cachedLength("a", 0));
+        assertEquals(0, cache.cachedLength("b", 0));
+        assertEquals(1000, cache.cachedLength("c", 0));
+        assertEquals(4 * CHUNK_SIZE, cache.getSize());
+        assertEquals(2 * CHUNK_SIZE + 1000, cache.getUsedSize());
+    }
+
+    @Test
+    public void fileDoesNotEvictItself() {
+        MemoryCache cache = new MemoryCache(CHUNK_SIZE, 2 * CHUNK_SIZE);
+
+        cache.write("a", 0, data, 2 * CHUNK_SIZE);
+
+        assertEquals(CHUNK_SIZE, cache.cachedLength("a", 0));
+        assertEquals(CHUNK_SIZE, cache.getUsedSize());
+    }
+
+    @Test
+    public void truncateDropsTailAndKeepsHeadContinuable() {
+        write("a", 0, CHUNK_SIZE + 1000);
+
+        cache.truncate("a", 500);
+        write("a", 500, 1000);
+
+        byte[] buffer = new byte[1500];
+        assertEquals(1500, cache.read("a", 0, buffer, buffer.length));
+        assertArrayEquals(Arrays.copyOf(data, 1500), buffer);
+        assertEquals(1500, cache.getUsedSize());
+        assertEquals(1500, cache.cachedLength("a", 0));
+    }
+
+    @Test
+    public void truncateToZeroRemovesFile() {
+        write("a", 0, 1000);
+
+        cache.truncate("a", 0);
+
+        assertEquals(0, cache.getFilesCount());
+        assertEquals(0, cache.getUsedSize());
+    }
+
+    @Test
+    public void clearReturnsMemory() {
+        write("a", 0, 2 * CHUNK_SIZE);
+        write("b", 0, 1000);
+
+        cache.clear();
+
+        assertEquals(0, cache.getFilesCount());
+        assertEquals(0, cache.getUsedSize());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.read("a", 0, new byte[10], 10));
+    }
+
+    private void write(String key, int offset, int length) {
+        cache.write(key, offset, Arrays.copyOfRange(data, offset, offset + length), length);
+    }
+
+    private static byte[] generate(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + i / 251);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,178 @@
+package com.danikula.videocache.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResumeRecordTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File dataFile;
+    private File recordFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dataFile = new File(temporaryFolder.newFolder(), "video.mp4.download");
+        recordFile = new File(dataFile.getPath() + ResumeRecord.POSTFIX);
+    }
+
+    @Test
+    public void missingRecordIsNotLoaded() {
+        assertFalse(new ResumeRecord(dataFile).load());
+    }
+
+    @Test
+    public void writtenRecordIsLoaded() {
+        ResumeRecord record = new ResumeRecord(dataFile);
+        record.setSource("\"v1\"", 1000_000);
+        record.addChecksum(11);
+        record.addChecksum(22);
+        record.addChecksum(33);
+        record.close();
+
+        ResumeRecord loaded = new ResumeRecord(dataFile);
+
+        assertTrue(loaded.load());
+        assertEquals("\"v1\"", loaded.getValidator());
+        assertEquals(1000_000, loaded.getSourceLength());
+        assertEquals(3, loaded.getChecksumsCount());
+        assertEquals(11, loaded.getChecksum(0));
+        assertEquals(33, loaded.getChecksum(2));
+    }
+
+    @Test
+    public void tornLastChecksumIsDropped() throws IOException {
+        ResumeRecord record = new ResumeRecord(dataFile);
+        record.setSource(null, -1);
+        for (int i = 0; i < 20; i++) {
+            record.addChecksum(i);
+        }
+        record.close();
+        truncate(recordFile, 3);
+
+        ResumeRecord loaded = new ResumeRecord(dataFile);
+
+        assertTrue(loaded.load());
+        assertNull(loaded.getValidator());
+        assertEquals(19, loaded.getChecksumsCount());
+        assertEquals(18, loaded.getChecksum(18));
+    }
+
+    @Test
+    public void tornHeaderIsNotLoaded() throws IOException {
+        ResumeRecord record = new ResumeRecord(dataFile);
+        record.setSource("\"v1\"", 1000);
+        record.close();
+        truncate(recordFile, 5);
+
+        assertFalse(new ResumeRecord(dataFile).load());
+    }
+
+    @Test
+    public void recordOfOtherFormatIsNotLoaded() throws IOException {
+        FileOutputStream out = new FileOutputStream(recordFile);
+        try {
+            out.write("not a resume record".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+
+        assertFalse(new ResumeRecord(dataFile).load());
+    }
+
+    @Test
+    public void tailIsValidUntilNextBlock() {
+        ResumeRecord record = new ResumeRecord(dataFile);
+        record.setSource("\"v1\"", 1000_000);
+        record.addChecksum(11);
+        record.setTail(100, 42);
+        record.close();
+
+        ResumeRecord loaded = new ResumeRecord(dataFile);
+        assertTrue(loaded.load());
+        assertEquals(100, loaded.getTailLength());
+        assertEquals(42, loaded.getTailChecksum());
+
+        loaded.addChecksum(22);
+        loaded.close();
+
+        ResumeRecord reloaded = new ResumeRecord(dataFile);
+        assertTrue(reloaded.load());
+        assertEquals(2, reloaded.getChecksumsCount());
+        assertEquals(0, reloaded.getTailLength());
+    }
+
+    @Test
+    public void truncatedRecordKeepsFirstChecksums() {
+        ResumeRecord record = new ResumeRecord(dataFile);
+        record.setSource("\"v1\"", 1000_000);
+        for (int i = 0; i < 5; i++) {
+            record.addChecksum(i);
+        }
+        record.truncate(2);
+        record.addChecksum(7);
+        record.close();
+
+        ResumeRecord loaded = new ResumeRecord(dataFile);
+
+        assertTrue(loaded.load());
+        assertEquals(3, loaded.getChecksumsCount());
+        assertEquals(1, loaded.getChecksum(1));
+        assertEquals(7, loaded.getChecksum(2));
+    }
+
+    @Test
+    public void changedSourceIsRewritten() {
+        ResumeRecord record = new ResumeRecord(dataFile);
+        record.setSource("\"v1\"", 1000);
+        record.setSource("\"v2\"", 2000);
+        record.close();
+
+        ResumeRecord loaded = new ResumeRecord(dataFile);
+
+        assertTrue(loaded.load());
+        assertEquals("\"v2\"", loaded.getValidator());
+        assertEquals(2000, loaded.getSourceLength());
+    }
+
+    @Test
+    public void deletedRecordIsNotLoaded() {
+        ResumeRecord record = new ResumeRecord(dataFile);
+        record.setSource("\"v1\"", 1000);
+        record.addChecksum(1);
+
+        record.delete();
+
+        assertFalse(recordFile.exists());
+        assertFalse(new ResumeRecord(dataFile).load());
+    }
+
+    @Test
+    public void recordFilesAreRecognized() {
+        assertTrue(ResumeRecord.isRecordFile(recordFile));
+        assertTrue(ResumeRecord.isRecordFile(new File(recordFile.getPath() + ".tmp")));
+        assertFalse(ResumeRecord.isRecordFile(dataFile));
+    }
+
+    private void truncate(File file, int bytes) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(randomAccessFile.length() - bytes);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
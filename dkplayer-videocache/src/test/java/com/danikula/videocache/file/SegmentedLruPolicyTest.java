@@ -0,0 +1,115 @@
+package com.danikula.videocache.file;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedLruPolicyTest {
+
+    private static final long ENTRY_SIZE = 100;
+
+    private final SegmentedLruPolicy policy = new SegmentedLruPolicy(10 * ENTRY_SIZE);
+
+    @Test
+    public void entriesUsedOnceAreEvictedInLruOrder() {
+        for (int i = 0; i < 12; i++) {
+            policy.access("e" + i, ENTRY_SIZE);
+        }
+
+        assertEquals(Arrays.asList("e0", "e1"), policy.evict());
+        assertFalse(policy.contains("e1"));
+        assertTrue(policy.contains("e2"));
+    }
+
+    @Test
+    public void entriesUsedOnceDontEvictReusedOnes() {
+        accessTwice("a");
+        accessTwice("b");
+
+        for (int i = 0; i < 30; i++) {
+            policy.access("scan" + i, ENTRY_SIZE);
+            policy.evict();
+        }
+
+        assertTrue(policy.contains("a"));
+        assertTrue(policy.contains("b"));
+        assertFalse(policy.contains("scan0"));
+    }
+
+    @Test
+    public void protectedOverflowIsDemotedAndEvictedFirst() {
+        for (int i = 0; i < 9; i++) {
+            policy.access("e" + i, ENTRY_SIZE);
+        }
+        for (int i = 0; i < 9; i++) {
+            policy.access("e" + i, ENTRY_SIZE);
+        }
+        // protected segment holds 80% of cache, so the first promoted entry is demoted
+        policy.access("new1", ENTRY_SIZE);
+        assertEquals(Collections.<String>emptyList(), policy.evict());
+
+        policy.access("new2", ENTRY_SIZE);
+
+        assertEquals(Collections.singletonList("e0"), policy.evict());
+    }
+
+    @Test
+    public void protectedEntriesAreEvictedWhenProbationIsEmpty() {
+        accessTwice("a");
+        accessTwice("b");
+
+        policy.update("b", 20 * ENTRY_SIZE);
+
+        List<String> victims = policy.evict();
+        assertEquals(Arrays.asList("a", "b"), victims);
+    }
+
+    @Test
+    public void updateChangesSizeWithoutAccess() {
+        for (int i = 0; i < 10; i++) {
+            policy.access("e" + i, ENTRY_SIZE);
+        }
+
+        policy.update("e0", 2 * ENTRY_SIZE);
+
+        assertEquals(Collections.singletonList("e0"), policy.evict());
+    }
+
+    @Test
+    public void loadedEntriesAreOnProbation() {
+        policy.load("old", ENTRY_SIZE);
+        accessTwice("a");
+        for (int i = 0; i < 9; i++) {
+            policy.access("e" + i, ENTRY_SIZE);
+        }
+
+        assertEquals(Collections.singletonList("old"), policy.evict());
+    }
+
+    @Test
+    public void removedEntryIsForgotten() {
+        policy.access("a", ENTRY_SIZE);
+        accessTwice("b");
+
+        policy.remove("a");
+        policy.remove("b");
+
+        assertFalse(policy.contains("a"));
+        assertFalse(policy.contains("b"));
+        for (int i = 0; i < 10; i++) {
+            policy.access("e" + i, ENTRY_SIZE);
+        }
+        assertEquals(Collections.<String>emptyList(), policy.evict());
+    }
+
+    private void accessTwice(String key) {
+        policy.access(key, ENTRY_SIZE);
+        policy.access(key, ENTRY_SIZE);
+    }
+}
@@ -0,0 +1,120 @@
+package com.danikula.videocache.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that temp file and its sidecar files (sparse index and resume record) are one entry of {@link IndexedDiskUsage}.
+ */
+public class SidecarFilesTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder();
+    }
+
+    @Test
+    public void sidecarsAreNotCountedAsFiles() throws Exception {
+        File temp = newFile("a.mp4.download", 4);
+        File b = newFile("b.mp4", 3);
+        // sidecars are written while temp file is downloaded
+        File ranges = newFile("a.mp4.download.ranges", 2);
+        File resume = newFile("a.mp4.download.resume", 2);
+        File c = newFile("c.mp4", 1);
+        DiskUsage diskUsage = new TotalCountLruDiskUsage(3);
+
+        diskUsage.touch(c);
+        File d = newFile("d.mp4", 0);
+        diskUsage.touch(d);
+
+        waitUntilDeleted(temp);
+        waitUntilDeleted(ranges);
+        waitUntilDeleted(resume);
+        assertTrue(b.exists());
+        assertTrue(c.exists());
+        assertTrue(d.exists());
+    }
+
+    @Test
+    public void sidecarsAreDeletedWithTempFile() throws Exception {
+        File b = newFile("b.mp4", 2);
+        DiskUsage diskUsage = new TotalSizeLruDiskUsage(200);
+        diskUsage.touch(b);
+        File temp = newFile("a.mp4.download", 1);
+        diskUsage.touch(temp);
+        // sidecars are written after temp file is touched
+        File ranges = newFile("a.mp4.download.ranges", 0);
+        File resume = newFile("a.mp4.download.resume", 0);
+
+        diskUsage.touch(b);
+        diskUsage.touch(newFile("c.mp4", 0));
+
+        waitUntilDeleted(temp);
+        waitUntilDeleted(ranges);
+        waitUntilDeleted(resume);
+        assertTrue(b.exists());
+    }
+
+    @Test
+    public void sidecarsAreDeletedWithTempFileByPolicy() throws Exception {
+        File temp = newFile("a.mp4.download", 3);
+        File resume = newFile("a.mp4.download.resume", 3);
+        File b = newFile("b.mp4", 2);
+        DiskUsage diskUsage = new SegmentedLruDiskUsage(200);
+
+        diskUsage.touch(b);
+        diskUsage.touch(newFile("c.mp4", 0));
+
+        waitUntilDeleted(temp);
+        waitUntilDeleted(resume);
+        assertTrue(b.exists());
+    }
+
+    @Test
+    public void sidecarsOfMissingTempFileAreDeleted() throws Exception {
+        File orphan = newFile("a.mp4.download.resume", 2);
+        File ranges = newFile("b.mp4.download.ranges", 2);
+        File temp = newFile("b.mp4.download", 2);
+        DiskUsage diskUsage = new TotalCountLruDiskUsage(10);
+
+        diskUsage.touch(newFile("c.mp4", 0));
+
+        waitUntilDeleted(orphan);
+        assertTrue(temp.exists());
+        assertTrue(ranges.exists());
+    }
+
+    private File newFile(String name, int ageInSeconds) throws IOException {
+        File file = new File(directory, name);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(100);
+        } finally {
+            randomAccessFile.close();
+        }
+        assertTrue(file.setLastModified(System.currentTimeMillis() - ageInSeconds * 10_000L));
+        return file;
+    }
+
+    private void waitUntilDeleted(File file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (file.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(file + " is not deleted", file.exists());
+    }
+}
@@ -0,0 +1,157 @@
+package com.danikula.videocache.file;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SparseFileCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final byte[] data = new byte[2 * 1024 * 1024];
+    private File file;
+    private File tempFile;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(1).nextBytes(data);
+        file = new File(temporaryFolder.newFolder(), "video.mp4");
+        tempFile = new File(file.getPath() + FileCache.TEMP_POSTFIX);
+        indexFile = new File(tempFile.getPath() + SparseFileCache.INDEX_POSTFIX);
+    }
+
+    @Test
+    public void adjacentAndOverlappedRangesAreMerged() throws Exception {
+        SparseFileCache cache = new SparseFileCache(file);
+
+        write(cache, 0, 100);
+        write(cache, 200, 300);
+        write(cache, 100, 200);
+        write(cache, 500, 600);
+        write(cache, 550, 700);
+
+        assertEquals(300, cache.cachedLength(0));
+        assertEquals(150, cache.cachedLength(150));
+        assertEquals(0, cache.cachedLength(400));
+        assertEquals(200, cache.cachedLength(500));
+        assertEquals(300, cache.available());
+        cache.close();
+    }
+
+    @Test
+    public void readStopsAtHole() throws Exception {
+        SparseFileCache cache = new SparseFileCache(file);
+        write(cache, 0, 100);
+        write(cache, 200, 300);
+        byte[] buffer = new byte[200];
+
+        int beforeHole = cache.read(buffer, 50, buffer.length);
+        int inHole = cache.read(buffer, 150, buffer.length);
+        int afterHole = cache.read(buffer, 250, buffer.length);
+
+        assertEquals(50, beforeHole);
+        assertEquals(0, inHole);
+        assertEquals(50, afterHole);
+        assertArrayEquals(Arrays.copyOfRange(data, 250, 300), Arrays.copyOf(buffer, 50));
+        cache.close();
+    }
+
+    @Test
+    public void rangesAreReloaded() throws Exception {
+        SparseFileCache cache = new SparseFileCache(file);
+        write(cache, 0, 100);
+        write(cache, 1000, 3000);
+        cache.close();
+
+        cache = new SparseFileCache(file);
+
+        assertTrue(indexFile.exists());
+        assertEquals(100, cache.cachedLength(0));
+        assertEquals(0, cache.cachedLength(100));
+        assertEquals(2000, cache.cachedLength(1000));
+        byte[] buffer = new byte[2000];
+        assertEquals(2000, cache.read(buffer, 1000, buffer.length));
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 3000), buffer);
+        cache.close();
+    }
+
+    @Test
+    public void indexIsSavedWhileWriting() throws Exception {
+        SparseFileCache cache = new SparseFileCache(file);
+
+        write(cache, 0, 1024 * 1024);
+        write(cache, 1024 * 1024 + 100, 1024 * 1024 + 200);
+
+        // cache is not closed, index is saved after every written megabyte
+        SparseFileCache reopened = new SparseFileCache(file);
+        assertEquals(1024 * 1024, reopened.cachedLength(0));
+        reopened.close();
+        cache.close();
+    }
+
+    @Test
+    public void brokenIndexMakesCacheEmpty() throws Exception {
+        SparseFileCache cache = new SparseFileCache(file);
+        write(cache, 0, 1000);
+        cache.close();
+        try (FileOutputStream out = new FileOutputStream(indexFile)) {
+            out.write(new byte[]{1, 2, 3, 4, 5});
+        }
+
+        cache = new SparseFileCache(file);
+
+        assertEquals(0, cache.cachedLength(0));
+        cache.close();
+    }
+
+    @Test
+    public void indexBeyondDataIsIgnored() throws Exception {
+        SparseFileCache cache = new SparseFileCache(file);
+        write(cache, 0, 1000);
+        cache.close();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw")) {
+            randomAccessFile.setLength(500);
+        }
+
+        cache = new SparseFileCache(file);
+
+        assertEquals(0, cache.cachedLength(0));
+        cache.close();
+    }
+
+    @Test
+    public void indexIsDeletedWhenCacheIsCompleted() throws Exception {
+        SparseFileCache cache = new SparseFileCache(file);
+        write(cache, 1000, data.length);
+        write(cache, 0, 1000);
+
+        cache.complete();
+
+        assertFalse(indexFile.exists());
+        assertTrue(cache.isCompleted());
+        assertEquals(data.length, cache.cachedLength(0));
+        byte[] buffer = new byte[data.length];
+        assertEquals(data.length, cache.read(buffer, 0, buffer.length));
+        assertArrayEquals(data, buffer);
+        cache.close();
+    }
+
+    private void write(SparseFileCache cache, int start, int end) throws Exception {
+        cache.write(start, Arrays.copyOfRange(data, start, end), end - start);
+    }
+}
@@ -0,0 +1,98 @@
+package com.danikula.videocache.file;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TinyLfuPolicyTest {
+
+    private static final long ENTRY_SIZE = 10 * 1024 * 1024;
+    private static final int ENTRIES_COUNT = 100; // window of 1% holds one entry, sketch is sized for cache of 1 Gb
+
+    private final TinyLfuPolicy policy = new TinyLfuPolicy(ENTRIES_COUNT * ENTRY_SIZE);
+
+    @Test
+    public void entriesUsedOnceDontEvictReusedOnes() {
+        for (int i = 0; i < ENTRIES_COUNT - 1; i++) {
+            accessAndEvict("e" + i);
+            accessAndEvict("e" + i);
+        }
+
+        for (int i = 0; i < 3 * ENTRIES_COUNT; i++) {
+            accessAndEvict("scan" + i);
+        }
+
+        for (int i = 0; i < ENTRIES_COUNT - 1; i++) {
+            assertTrue("e" + i, policy.contains("e" + i));
+        }
+        assertFalse(policy.contains("scan0"));
+    }
+
+    @Test
+    public void newPopularEntryIsAdmitted() {
+        for (int i = 0; i < ENTRIES_COUNT; i++) {
+            accessAndEvict("e" + i);
+        }
+        accessAndEvict("popular");
+        accessAndEvict("popular");
+        accessAndEvict("popular");
+
+        policy.access("next", ENTRY_SIZE);
+
+        assertEquals(Collections.singletonList("e0"), policy.evict());
+        assertTrue(policy.contains("popular"));
+    }
+
+    @Test
+    public void newEntryUsedOnceIsRejected() {
+        for (int i = 0; i < ENTRIES_COUNT; i++) {
+            accessAndEvict("e" + i);
+        }
+        accessAndEvict("once");
+
+        policy.access("next", ENTRY_SIZE);
+
+        assertEquals(Collections.singletonList("once"), policy.evict());
+        assertTrue(policy.contains("e0"));
+    }
+
+    @Test
+    public void entryLargerThanCacheIsEvicted() {
+        policy.access("huge", 2 * ENTRIES_COUNT * ENTRY_SIZE);
+
+        assertEquals(Collections.singletonList("huge"), policy.evict());
+        assertFalse(policy.contains("huge"));
+    }
+
+    @Test
+    public void removedEntryIsForgotten() {
+        accessAndEvict("a");
+        accessAndEvict("a");
+        accessAndEvict("b");
+
+        policy.remove("a");
+        policy.remove("b");
+
+        assertFalse(policy.contains("a"));
+        assertFalse(policy.contains("b"));
+    }
+
+    @Test
+    public void updateKeepsEntryInItsSegment() {
+        policy.load("loaded", ENTRY_SIZE);
+
+        policy.update("loaded", ENTRIES_COUNT * ENTRY_SIZE + 1);
+
+        assertTrue(policy.contains("loaded"));
+        assertEquals(Collections.singletonList("loaded"), policy.evict());
+    }
+
+    private void accessAndEvict(String key) {
+        policy.access(key, ENTRY_SIZE);
+        policy.evict();
+    }
+}
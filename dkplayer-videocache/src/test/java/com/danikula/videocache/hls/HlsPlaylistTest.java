@@ -0,0 +1,120 @@
+package com.danikula.videocache.hls;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HlsPlaylistTest {
+
+    private static final String BASE_URL = "http://cdn.com/hls/video/index.m3u8?token=1";
+    private static final HlsPlaylist.UriMapper PROXY_MAPPER = new HlsPlaylist.UriMapper() {
+        @Override
+        public String map(String uri) {
+            return "http://127.0.0.1:8080/" + uri;
+        }
+    };
+
+    @Test
+    public void mediaPlaylistIsParsed() {
+        HlsPlaylist playlist = HlsPlaylist.parse("#EXTM3U\n" +
+                "#EXT-X-TARGETDURATION:10\n" +
+                "#EXTINF:10.0,\n" +
+                "seg0.ts\n" +
+                "#EXTINF:10.0,\n" +
+                "/other/seg1.ts\n" +
+                "#EXTINF:5.0,\n" +
+                "https://edge.cdn.com/seg2.ts\n" +
+                "#EXT-X-ENDLIST\n", BASE_URL);
+
+        assertFalse(playlist.isMaster());
+        assertTrue(playlist.isEnded());
+        assertEquals(Arrays.asList("http://cdn.com/hls/video/seg0.ts", "http://cdn.com/other/seg1.ts",
+                "https://edge.cdn.com/seg2.ts"), playlist.getSegmentUrls());
+        assertEquals(Collections.<String>emptyList(), playlist.getPlaylistUrls());
+    }
+
+    @Test
+    public void livePlaylistIsNotEnded() {
+        HlsPlaylist playlist = HlsPlaylist.parse("#EXTM3U\n#EXTINF:10.0,\nseg0.ts\n", BASE_URL);
+
+        assertFalse(playlist.isEnded());
+    }
+
+    @Test
+    public void masterPlaylistListsVariantsAndRenditions() {
+        HlsPlaylist playlist = HlsPlaylist.parse("#EXTM3U\n" +
+                "#EXT-X-SESSION-KEY:METHOD=AES-128,URI=\"key.bin\"\n" +
+                "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",NAME=\"en\",URI=\"audio/en.m3u8\"\n" +
+                "#EXT-X-STREAM-INF:BANDWIDTH=800000,AUDIO=\"aac\"\n" +
+                "low/index.m3u8\n" +
+                "#EXT-X-STREAM-INF:BANDWIDTH=2000000,AUDIO=\"aac\"\n" +
+                "high/index.m3u8\n", BASE_URL);
+
+        assertTrue(playlist.isMaster());
+        assertEquals(Arrays.asList("http://cdn.com/hls/video/audio/en.m3u8", "http://cdn.com/hls/video/low/index.m3u8",
+                "http://cdn.com/hls/video/high/index.m3u8"), playlist.getPlaylistUrls());
+        assertEquals(Collections.<String>emptyList(), playlist.getSegmentUrls());
+    }
+
+    @Test
+    public void urisAreMappedInLinesAndAttributes() {
+        HlsPlaylist playlist = HlsPlaylist.parse("#EXTM3U\r\n" +
+                "#EXT-X-KEY:METHOD=AES-128,URI=\"key.bin\",IV=0x1\r\n" +
+                "#EXT-X-MAP:URI=\"init.mp4\"\r\n" +
+                "\r\n" +
+                "#EXTINF:10.0,\r\n" +
+                "seg0.m4s\r\n", BASE_URL);
+
+        String text = playlist.toText(PROXY_MAPPER);
+
+        assertEquals("#EXTM3U\n" +
+                "#EXT-X-KEY:METHOD=AES-128,URI=\"http://127.0.0.1:8080/http://cdn.com/hls/video/key.bin\",IV=0x1\n" +
+                "#EXT-X-MAP:URI=\"http://127.0.0.1:8080/http://cdn.com/hls/video/init.mp4\"\n" +
+                "#EXTINF:10.0,\n" +
+                "http://127.0.0.1:8080/http://cdn.com/hls/video/seg0.m4s\n", text);
+    }
+
+    @Test
+    public void notHttpUrisAreKept() {
+        HlsPlaylist playlist = HlsPlaylist.parse("#EXTM3U\n" +
+                "#EXT-X-KEY:METHOD=SAMPLE-AES,URI=\"skd://key-id\"\n" +
+                "#EXTINF:10.0,\n" +
+                "seg0.ts\n", BASE_URL);
+
+        String text = playlist.toText(PROXY_MAPPER);
+
+        assertTrue(text, text.contains("URI=\"skd://key-id\""));
+        assertTrue(text, text.contains("http://127.0.0.1:8080/http://cdn.com/hls/video/seg0.ts"));
+    }
+
+    @Test
+    public void textWithoutMapperHasAbsoluteUrisAndNoByteOrderMark() {
+        HlsPlaylist playlist = HlsPlaylist.parse("\uFEFF#EXTM3U\n#EXTINF:10.0,\nseg0.ts\n#EXT-X-ENDLIST", BASE_URL);
+
+        String text = playlist.toText();
+        HlsPlaylist reparsed = HlsPlaylist.parse(text, "http://other.com/");
+
+        assertEquals("#EXTM3U\n#EXTINF:10.0,\nhttp://cdn.com/hls/video/seg0.ts\n#EXT-X-ENDLIST\n", text);
+        assertEquals(playlist.getSegmentUrls(), reparsed.getSegmentUrls());
+        assertTrue(reparsed.isEnded());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void textWithoutHeaderIsRejected() {
+        HlsPlaylist.parse("<html>not found</html>", BASE_URL);
+    }
+
+    @Test
+    public void playlistUrlsAreRecognized() {
+        assertTrue(HlsPlaylist.isPlaylistUrl("http://cdn.com/index.m3u8"));
+        assertTrue(HlsPlaylist.isPlaylistUrl("http://cdn.com/INDEX.M3U8?token=1"));
+        assertTrue(HlsPlaylist.isPlaylistUrl("http://cdn.com/list.m3u#live"));
+        assertFalse(HlsPlaylist.isPlaylistUrl("http://cdn.com/video.mp4?list=a.m3u8"));
+        assertFalse(HlsPlaylist.isPlaylistUrl("http://cdn.com/seg0.ts"));
+    }
+}
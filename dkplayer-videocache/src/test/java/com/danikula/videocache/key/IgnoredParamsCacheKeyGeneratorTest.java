@@ -0,0 +1,53 @@
+package com.danikula.videocache.key;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class IgnoredParamsCacheKeyGeneratorTest {
+
+    private final CacheKeyGenerator generator = new IgnoredParamsCacheKeyGenerator("auth_key", "t");
+
+    @Test
+    public void ignoredParamsAreDropped() {
+        assertEquals("http://cdn.com/video.mp4?id=1", generator.generate("http://cdn.com/video.mp4?id=1&auth_key=abc&t=123"));
+        assertEquals("http://cdn.com/video.mp4?id=1", generator.generate("http://cdn.com/video.mp4?auth_key=abc&id=1"));
+        assertEquals("http://cdn.com/video.mp4?id=1&q=2", generator.generate("http://cdn.com/video.mp4?id=1&t=5&q=2"));
+    }
+
+    @Test
+    public void urlsDifferingInIgnoredParamsHaveSameKey() {
+        assertEquals(generator.generate("http://cdn.com/video.mp4?auth_key=abc&t=1"),
+                generator.generate("http://cdn.com/video.mp4?auth_key=def&t=2"));
+    }
+
+    @Test
+    public void queryOfIgnoredParamsOnlyIsDropped() {
+        assertEquals("http://cdn.com/video.mp4", generator.generate("http://cdn.com/video.mp4?auth_key=abc&t=123"));
+    }
+
+    @Test
+    public void urlWithoutQueryIsKey() {
+        assertEquals("http://cdn.com/video.mp4", generator.generate("http://cdn.com/video.mp4"));
+    }
+
+    @Test
+    public void paramsWithoutValueAreSupported() {
+        assertEquals("http://cdn.com/video.mp4?hd", generator.generate("http://cdn.com/video.mp4?t&hd"));
+    }
+
+    @Test
+    public void emptyParamsAreDropped() {
+        assertEquals("http://cdn.com/video.mp4?id=1", generator.generate("http://cdn.com/video.mp4?&id=1&&t=2&"));
+    }
+
+    @Test
+    public void paramIsMatchedByWholeName() {
+        assertEquals("http://cdn.com/video.mp4?tt=1&auth=2", generator.generate("http://cdn.com/video.mp4?tt=1&auth=2"));
+    }
+
+    @Test
+    public void fragmentIsKept() {
+        assertEquals("http://cdn.com/video.mp4?id=1#t=10", generator.generate("http://cdn.com/video.mp4?id=1&t=123#t=10"));
+    }
+}
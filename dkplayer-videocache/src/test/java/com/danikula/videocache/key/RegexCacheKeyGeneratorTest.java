@@ -0,0 +1,37 @@
+package com.danikula.videocache.key;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RegexCacheKeyGeneratorTest {
+
+    @Test
+    public void matchIsReplaced() {
+        CacheKeyGenerator generator = new RegexCacheKeyGenerator("/token=[^/]+", "");
+
+        assertEquals("http://cdn.com/videos/1.mp4", generator.generate("http://cdn.com/token=abc123/videos/1.mp4"));
+    }
+
+    @Test
+    public void everyMatchIsReplaced() {
+        CacheKeyGenerator generator = new RegexCacheKeyGenerator("[?&]sig=[^&]*", "");
+
+        assertEquals("http://cdn.com/a.mp4", generator.generate("http://cdn.com/a.mp4?sig=1&sig=2"));
+    }
+
+    @Test
+    public void capturedGroupsAreReferenced() {
+        CacheKeyGenerator generator = new RegexCacheKeyGenerator("^https?://[^/]+/(.*)$", "cdn/$1");
+
+        assertEquals("cdn/videos/1.mp4", generator.generate("https://edge7.cdn.com/videos/1.mp4"));
+        assertEquals("cdn/videos/1.mp4", generator.generate("http://edge3.cdn.com/videos/1.mp4"));
+    }
+
+    @Test
+    public void urlIsKeyIfNothingMatches() {
+        CacheKeyGenerator generator = new RegexCacheKeyGenerator("/token=[^/]+", "");
+
+        assertEquals("http://cdn.com/videos/1.mp4", generator.generate("http://cdn.com/videos/1.mp4"));
+    }
+}
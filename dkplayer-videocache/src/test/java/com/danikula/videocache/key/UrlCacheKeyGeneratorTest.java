@@ -0,0 +1,15 @@
+package com.danikula.videocache.key;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class UrlCacheKeyGeneratorTest {
+
+    @Test
+    public void wholeUrlIsKey() {
+        String url = "http://cdn.com/video.mp4?auth_key=abc#t=10";
+
+        assertEquals(url, new UrlCacheKeyGenerator().generate(url));
+    }
+}
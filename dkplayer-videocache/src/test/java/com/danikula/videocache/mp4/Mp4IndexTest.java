@@ -0,0 +1,213 @@
+package com.danikula.videocache.mp4;
+
+import com.danikula.videocache.ByteArraySource;
+import com.danikula.videocache.ByteRange;
+import com.danikula.videocache.ProxyCacheException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Mp4IndexTest {
+
+    private static final int SAMPLES_COUNT = 10;
+    private static final int SAMPLE_SIZE = 10 * 1024;
+    private static final int SAMPLE_DURATION = 1000; // ms, timescale is 1000
+    private static final int FTYP_SIZE = 16;
+    private static final int MDAT_HEADER_SIZE = 8;
+    private static final int MDAT_SIZE = MDAT_HEADER_SIZE + SAMPLES_COUNT * SAMPLE_SIZE;
+    private static final int[] KEY_FRAMES = {1, 4, 8}; // numbers of samples start from 1
+
+    @Test
+    public void moovAtStartIsRead() throws Exception {
+        byte[] moov = moov(stco(FTYP_SIZE + moovSize() + MDAT_HEADER_SIZE), KEY_FRAMES, mdhd());
+        byte[] file = concat(ftyp(), moov, mdat());
+
+        Mp4Index index = Mp4Index.read(new ByteArraySource(file));
+
+        assertFalse(index.isMoovAtEnd());
+        assertEquals(SAMPLES_COUNT * SAMPLE_DURATION, index.getDurationMs());
+        // the third sample is a key frame close to requested time, so preload is extended up to it
+        int mediaStart = FTYP_SIZE + moov.length + MDAT_HEADER_SIZE;
+        assertRanges(Arrays.asList(new ByteRange(0, mediaStart + 3 * SAMPLE_SIZE)), index.getRanges(2000));
+    }
+
+    @Test
+    public void moovAtEndIsRead() throws Exception {
+        int mediaStart = FTYP_SIZE + MDAT_HEADER_SIZE;
+        byte[] moov = moov(stco(mediaStart), KEY_FRAMES, mdhd());
+        byte[] file = concat(ftyp(), mdat(), moov);
+
+        Mp4Index index = Mp4Index.read(new ByteArraySource(file));
+
+        assertTrue(index.isMoovAtEnd());
+        int moovStart = FTYP_SIZE + MDAT_SIZE;
+        List<ByteRange> expected = Arrays.asList(new ByteRange(0, mediaStart + 3 * SAMPLE_SIZE), new ByteRange(moovStart, file.length));
+        assertRanges(expected, index.getRanges(2000));
+    }
+
+    @Test
+    public void largeChunkOffsetsAreRead() throws Exception {
+        int moovSize = moov(co64(0), KEY_FRAMES, mdhd()).length;
+        byte[] moov = moov(co64(FTYP_SIZE + moovSize + MDAT_HEADER_SIZE), KEY_FRAMES, mdhd());
+        byte[] file = concat(ftyp(), moov, mdat());
+
+        Mp4Index index = Mp4Index.read(new ByteArraySource(file));
+
+        int mediaStart = FTYP_SIZE + moov.length + MDAT_HEADER_SIZE;
+        assertRanges(Arrays.asList(new ByteRange(0, mediaStart + 3 * SAMPLE_SIZE)), index.getRanges(2000));
+    }
+
+    @Test
+    public void everySampleIsKeyFrameWithoutSyncSamplesTable() throws Exception {
+        byte[] moov = moov(stco(FTYP_SIZE + moovSize(null) + MDAT_HEADER_SIZE), null, mdhd());
+        byte[] file = concat(ftyp(), moov, mdat());
+
+        Mp4Index index = Mp4Index.read(new ByteArraySource(file));
+
+        int mediaStart = FTYP_SIZE + moov.length + MDAT_HEADER_SIZE;
+        assertRanges(Arrays.asList(new ByteRange(0, mediaStart + 2 * SAMPLE_SIZE)), index.getRanges(2000));
+    }
+
+    @Test(expected = ProxyCacheException.class)
+    public void truncatedMoovIsRejected() throws Exception {
+        byte[] moov = moov(stco(FTYP_SIZE + MDAT_HEADER_SIZE), KEY_FRAMES, mdhd());
+        byte[] file = concat(ftyp(), mdat(), moov);
+
+        Mp4Index.read(new ByteArraySource(Arrays.copyOf(file, file.length - 100)));
+    }
+
+    @Test(expected = ProxyCacheException.class)
+    public void truncatedBoxIsRejected() throws Exception {
+        byte[] shortMdhd = box("mdhd", new byte[4]);
+        byte[] file = concat(ftyp(), moov(stco(0), KEY_FRAMES, shortMdhd), mdat());
+
+        Mp4Index.read(new ByteArraySource(file));
+    }
+
+    @Test(expected = ProxyCacheException.class)
+    public void negativeEntriesCountIsRejected() throws Exception {
+        byte[] stco = fullBox("stco", new int[]{-1, 0});
+        byte[] file = concat(ftyp(), moov(stco, KEY_FRAMES, mdhd()), mdat());
+
+        Mp4Index.read(new ByteArraySource(file));
+    }
+
+    @Test(expected = ProxyCacheException.class)
+    public void chunkOutOfOffsetsTableIsRejected() throws Exception {
+        byte[] stsc = fullBox("stsc", new int[]{1, 0, 1, 1}); // chunk numbers start from 1
+        byte[] trak = box("trak", box("mdia", mdhd(), hdlr(), box("minf", box("stbl", stts(), stsc, stsz(), stco(0)))));
+        byte[] file = concat(ftyp(), box("moov", trak), mdat());
+        Mp4Index index = Mp4Index.read(new ByteArraySource(file));
+
+        index.getRanges(2000);
+    }
+
+    private static void assertRanges(List<ByteRange> expected, List<ByteRange> actual) {
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    private static int moovSize() throws IOException {
+        return moovSize(KEY_FRAMES);
+    }
+
+    private static int moovSize(int[] keyFrames) throws IOException {
+        return moov(stco(0), keyFrames, mdhd()).length;
+    }
+
+    private static byte[] moov(byte[] chunkOffsets, int[] keyFrames, byte[] mdhd) throws IOException {
+        byte[] stbl = keyFrames != null ?
+                box("stbl", stts(), stsc(), stsz(), chunkOffsets, stss(keyFrames)) :
+                box("stbl", stts(), stsc(), stsz(), chunkOffsets);
+        return box("moov", box("trak", box("mdia", mdhd, hdlr(), box("minf", stbl))));
+    }
+
+    private static byte[] ftyp() throws IOException {
+        return box("ftyp", "isom".getBytes("US-ASCII"), new byte[4]);
+    }
+
+    private static byte[] mdat() throws IOException {
+        return box("mdat", new byte[SAMPLES_COUNT * SAMPLE_SIZE]);
+    }
+
+    private static byte[] mdhd() throws IOException {
+        return fullBox("mdhd", new int[]{0, 0, 1000, SAMPLES_COUNT * SAMPLE_DURATION, 0});
+    }
+
+    private static byte[] hdlr() throws IOException {
+        return box("hdlr", new byte[8], "vide".getBytes("US-ASCII"), new byte[13]);
+    }
+
+    private static byte[] stts() throws IOException {
+        return fullBox("stts", new int[]{1, SAMPLES_COUNT, SAMPLE_DURATION});
+    }
+
+    private static byte[] stsc() throws IOException {
+        return fullBox("stsc", new int[]{1, 1, 1, 1}); // sample per chunk
+    }
+
+    private static byte[] stsz() throws IOException {
+        return fullBox("stsz", new int[]{SAMPLE_SIZE, SAMPLES_COUNT});
+    }
+
+    private static byte[] stss(int[] keyFrames) throws IOException {
+        int[] fields = new int[keyFrames.length + 1];
+        fields[0] = keyFrames.length;
+        System.arraycopy(keyFrames, 0, fields, 1, keyFrames.length);
+        return fullBox("stss", fields);
+    }
+
+    private static byte[] stco(int mediaStart) throws IOException {
+        int[] fields = new int[SAMPLES_COUNT + 1];
+        fields[0] = SAMPLES_COUNT;
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            fields[i + 1] = mediaStart + i * SAMPLE_SIZE;
+        }
+        return fullBox("stco", fields);
+    }
+
+    private static byte[] co64(int mediaStart) throws IOException {
+        int[] fields = new int[2 * SAMPLES_COUNT + 1];
+        fields[0] = SAMPLES_COUNT;
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            fields[2 * i + 2] = mediaStart + i * SAMPLE_SIZE; // high 32 bits are zero
+        }
+        return fullBox("co64", fields);
+    }
+
+    private static byte[] fullBox(String type, int[] fields) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeInt(0); // version and flags
+        for (int field : fields) {
+            out.writeInt(field);
+        }
+        return box(type, payload.toByteArray());
+    }
+
+    private static byte[] box(String type, byte[]... children) throws IOException {
+        byte[] payload = concat(children);
+        ByteArrayOutputStream box = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(box);
+        out.writeInt(8 + payload.length);
+        out.write(type.getBytes("US-ASCII"));
+        out.write(payload);
+        return box.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,134 @@
+package com.danikula.videocache.sourcestorage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.danikula.videocache.SourceInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DatabaseSourceInfoStorageTest {
+
+    private static final String URL = "http://example.com/video.mp4";
+
+    private DatabaseSourceInfoStorage storage;
+
+    @Before
+    public void setUp() {
+        storage = new DatabaseSourceInfoStorage(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        storage.release();
+    }
+
+    @Test
+    public void infoOfTheSameUrlIsReplaced() {
+        storage.put(URL, new SourceInfo(URL, 100, "video/mp4"));
+
+        storage.put(URL, new SourceInfo(URL, 200, "video/mp4", "\"v2\"", "Wed, 21 Oct 2015 07:28:00 GMT", 5));
+
+        SourceInfo sourceInfo = storage.get(URL);
+        assertEquals(200, sourceInfo.length);
+        assertEquals("\"v2\"", sourceInfo.etag);
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", sourceInfo.lastModified);
+        assertEquals(5, sourceInfo.validatedTime);
+        assertEquals(1, countRows(storage));
+    }
+
+    @Test
+    public void batchIsStored() {
+        SourceInfo first = new SourceInfo(URL + 1, 100, "video/mp4");
+        SourceInfo second = new SourceInfo(URL + 2, 200, "video/mp4");
+
+        storage.putAll(Arrays.asList(first, second, new SourceInfo(URL + 1, 300, "video/mp4")));
+
+        assertEquals(300, storage.get(URL + 1).length);
+        assertEquals(200, storage.get(URL + 2).length);
+        assertEquals(2, countRows(storage));
+    }
+
+    @Test
+    public void databaseOfTheFirstVersionIsMigrated() {
+        storage.release();
+        Context context = RuntimeEnvironment.application;
+        context.deleteDatabase(FirstVersionHelper.NAME);
+        FirstVersionHelper firstVersion = new FirstVersionHelper(context);
+        firstVersion.insert(URL, 100);
+        firstVersion.insert(URL + 1, 200);
+        firstVersion.insert(URL, 300);
+        firstVersion.close();
+
+        storage = new DatabaseSourceInfoStorage(context);
+
+        // the last inserted duplicate is actual info
+        SourceInfo sourceInfo = storage.get(URL);
+        assertEquals(300, sourceInfo.length);
+        assertNull(sourceInfo.etag);
+        assertEquals(2, countRows(storage));
+        storage.put(URL, new SourceInfo(URL, 400, "video/mp4", "\"v1\"", null, 5));
+        assertEquals("\"v1\"", storage.get(URL).etag);
+        assertEquals(2, countRows(storage));
+    }
+
+    private long countRows(DatabaseSourceInfoStorage storage) {
+        Cursor cursor = storage.getReadableDatabase().rawQuery("SELECT COUNT(*) FROM SourceInfo", null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates database of the first version: urls are not unique and there are no columns of validators.
+     */
+    private static final class FirstVersionHelper extends SQLiteOpenHelper {
+
+        private static final String NAME = "AndroidVideoCache.db";
+
+        FirstVersionHelper(Context context) {
+            super(context, NAME, null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE SourceInfo (" +
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL," +
+                    "url TEXT NOT NULL," +
+                    "mime TEXT," +
+                    "length INTEGER" +
+                    ");");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        }
+
+        void insert(String url, long length) {
+            ContentValues values = new ContentValues();
+            values.put("url", url);
+            values.put("mime", "video/mp4");
+            values.put("length", length);
+            getWritableDatabase().insert("SourceInfo", null, values);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.danikula.videocache.sourcestorage;
+
+import com.danikula.videocache.SourceInfo;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindSourceInfoStorageTest {
+
+    private static final String URL = "http://example.com/video.mp4";
+
+    @Test
+    public void changesAreCoalesced() throws Exception {
+        MemoryStorage memoryStorage = new MemoryStorage();
+        WriteBehindSourceInfoStorage storage = new WriteBehindSourceInfoStorage(memoryStorage);
+
+        storage.put(URL, new SourceInfo(URL, 100, "video/mp4"));
+        storage.put(URL, new SourceInfo(URL, 200, "video/mp4"));
+        SourceInfo last = new SourceInfo(URL, 300, "video/mp4");
+        storage.put(URL, last);
+        Thread.sleep(1500);
+
+        assertEquals(1, memoryStorage.writtenCount);
+        assertSame(last, memoryStorage.infos.get(URL));
+        storage.release();
+    }
+
+    @Test
+    public void unchangedInfoIsNotWritten() {
+        MemoryStorage memoryStorage = new MemoryStorage();
+        memoryStorage.infos.put(URL, new SourceInfo(URL, 100, "video/mp4", "\"v1\"", null, 5));
+        WriteBehindSourceInfoStorage storage = new WriteBehindSourceInfoStorage(memoryStorage);
+
+        storage.get(URL);
+        storage.put(URL, new SourceInfo(URL, 100, "video/mp4", "\"v1\"", null, 5));
+        storage.release();
+
+        assertEquals(0, memoryStorage.writtenCount);
+    }
+
+    @Test
+    public void leastRecentlyUsedInfoIsEvicted() {
+        MemoryStorage memoryStorage = new MemoryStorage();
+        for (int i = 0; i < 3; i++) {
+            memoryStorage.infos.put(URL + i, new SourceInfo(URL + i, i, "video/mp4"));
+        }
+        WriteBehindSourceInfoStorage storage = new WriteBehindSourceInfoStorage(memoryStorage, 2);
+
+        storage.get(URL + 0);
+        storage.get(URL + 1);
+        storage.get(URL + 0);
+        storage.get(URL + 2);
+        storage.get(URL + 0);
+        storage.get(URL + 1);
+
+        // the second info is evicted by the third one, the first one is used recently
+        assertEquals(4, memoryStorage.readCount);
+        storage.release();
+    }
+
+    @Test
+    public void pendingInfosAreWrittenOnRelease() {
+        MemoryStorage memoryStorage = new MemoryStorage();
+        WriteBehindSourceInfoStorage storage = new WriteBehindSourceInfoStorage(memoryStorage);
+        SourceInfo sourceInfo = new SourceInfo(URL, 100, "video/mp4");
+
+        storage.put(URL, sourceInfo);
+        storage.release();
+
+        assertSame(sourceInfo, memoryStorage.infos.get(URL));
+        assertTrue(memoryStorage.released);
+    }
+
+    @Test
+    public void failedBatchIsWrittenAgain() throws Exception {
+        MemoryStorage memoryStorage = new MemoryStorage();
+        memoryStorage.failing = true;
+        WriteBehindSourceInfoStorage storage = new WriteBehindSourceInfoStorage(memoryStorage);
+        SourceInfo sourceInfo = new SourceInfo(URL, 100, "video/mp4");
+
+        storage.put(URL, sourceInfo);
+        Thread.sleep(1500);
+        memoryStorage.failing = false;
+        Thread.sleep(1500);
+
+        assertTrue(memoryStorage.failedCount > 0);
+        assertSame(sourceInfo, memoryStorage.infos.get(URL));
+        storage.release();
+    }
+
+    @Test
+    public void failedBatchIsWrittenOnRelease() throws Exception {
+        MemoryStorage memoryStorage = new MemoryStorage();
+        memoryStorage.failing = true;
+        WriteBehindSourceInfoStorage storage = new WriteBehindSourceInfoStorage(memoryStorage);
+        SourceInfo sourceInfo = new SourceInfo(URL, 100, "video/mp4");
+
+        storage.put(URL, sourceInfo);
+        Thread.sleep(1500);
+        memoryStorage.failing = false;
+        storage.release();
+
+        assertSame(sourceInfo, memoryStorage.infos.get(URL));
+    }
+
+    private static final class MemoryStorage implements SourceInfoStorage {
+
+        private final Map<String, SourceInfo> infos = new HashMap<>();
+        private volatile boolean failing;
+        private volatile int readCount;
+        private volatile int writtenCount;
+        private volatile int failedCount;
+        private volatile boolean released;
+
+        @Override
+        public synchronized SourceInfo get(String url) {
+            readCount++;
+            return infos.get(url);
+        }
+
+        @Override
+        public synchronized void put(String url, SourceInfo sourceInfo) {
+            if (failing) {
+                failedCount++;
+                throw new IllegalStateException("Database is locked");
+            }
+            writtenCount++;
+            infos.put(url, sourceInfo);
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.danikula.videocache.transport;
+
+import com.danikula.videocache.TestOrigin;
+import com.danikula.videocache.headers.EmptyHeadersInjector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PooledUpstreamTransportTest {
+
+    private static final int TIMEOUT = 5000;
+    private static final long REDIRECT_TTL = 60 * 1000;
+
+    private TestOrigin origin;
+
+    @Before
+    public void setUp() throws Exception {
+        origin = new TestOrigin(1024);
+    }
+
+    @After
+    public void tearDown() {
+        origin.stop();
+    }
+
+    @Test
+    public void requestWaitsForFreeConnectionForAWhile() throws Exception {
+        PooledUpstreamTransport transport = new PooledUpstreamTransport(2, 0);
+        HttpURLConnection first = execute(transport, "a.mp4");
+        execute(transport, "b.mp4");
+
+        long waited = measure(transport, "c.mp4");
+        transport.release(first, false);
+        long notWaited = measure(transport, "d.mp4");
+
+        assertTrue("waited " + waited, waited >= 400 && waited < 2000);
+        assertTrue("waited " + notWaited, notWaited < 300);
+    }
+
+    @Test
+    public void priorityRequestDoesNotWait() throws Exception {
+        PooledUpstreamTransport transport = new PooledUpstreamTransport(1, 0);
+        transport.setRequestPriority(new RequestPriority() {
+            @Override
+            public boolean isPriority(String url) {
+                return url.endsWith("played.mp4");
+            }
+        });
+        execute(transport, "other.mp4");
+
+        // the first one takes reserved connection, the next one is executed anyway
+        long reserved = measure(transport, "played.mp4");
+        long exceeding = measure(transport, "played.mp4");
+
+        assertTrue("waited " + reserved, reserved < 300);
+        assertTrue("waited " + exceeding, exceeding < 300);
+    }
+
+    @Test
+    public void reservedConnectionIsNotUsedByOtherRequests() throws Exception {
+        PooledUpstreamTransport transport = new PooledUpstreamTransport(1, 0);
+        transport.setRequestPriority(new RequestPriority() {
+            @Override
+            public boolean isPriority(String url) {
+                return false;
+            }
+        });
+        execute(transport, "a.mp4");
+
+        long waited = measure(transport, "b.mp4");
+
+        assertTrue("waited " + waited, waited >= 400);
+    }
+
+    @Test
+    public void redirectTargetIsCached() throws Exception {
+        origin.redirect("short.mp4", "long.mp4");
+        PooledUpstreamTransport transport = new PooledUpstreamTransport(2, REDIRECT_TTL);
+
+        HttpURLConnection first = execute(transport, "short.mp4");
+        HttpURLConnection second = execute(transport, "short.mp4");
+
+        assertEquals(origin.url("long.mp4"), first.getURL().toString());
+        assertEquals(origin.url("long.mp4"), second.getURL().toString());
+        assertEquals(1, origin.getRequestsCount("short.mp4"));
+        assertEquals(2, origin.getRequestsCount("long.mp4"));
+    }
+
+    @Test
+    public void expiredRedirectIsFollowedAgain() throws Exception {
+        origin.redirect("short.mp4", "long.mp4");
+        PooledUpstreamTransport transport = new PooledUpstreamTransport(2, 100);
+
+        release(transport, execute(transport, "short.mp4"));
+        Thread.sleep(200);
+        release(transport, execute(transport, "short.mp4"));
+
+        assertEquals(2, origin.getRequestsCount("short.mp4"));
+    }
+
+    @Test
+    public void redirectCacheIsBounded() throws Exception {
+        PooledUpstreamTransport transport = new PooledUpstreamTransport(2, REDIRECT_TTL);
+        for (int i = 0; i <= 256; i++) {
+            origin.redirect("short" + i + ".mp4", "long.mp4");
+            release(transport, execute(transport, "short" + i + ".mp4"));
+        }
+
+        release(transport, execute(transport, "short256.mp4"));
+        release(transport, execute(transport, "short0.mp4"));
+
+        assertEquals(1, origin.getRequestsCount("short256.mp4"));
+        assertEquals(2, origin.getRequestsCount("short0.mp4"));
+    }
+
+    @Test
+    public void failedRedirectTargetIsForgotten() throws Exception {
+        origin.redirect("short.mp4", "old.mp4");
+        PooledUpstreamTransport transport = new PooledUpstreamTransport(2, REDIRECT_TTL);
+        release(transport, execute(transport, "short.mp4"));
+        origin.setMissing("old.mp4", true);
+        origin.redirect("short.mp4", "new.mp4");
+
+        HttpURLConnection connection = execute(transport, "short.mp4");
+
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(origin.url("new.mp4"), connection.getURL().toString());
+        assertEquals(2, origin.getRequestsCount("short.mp4"));
+    }
+
+    private HttpURLConnection execute(PooledUpstreamTransport transport, String path) throws Exception {
+        return transport.execute(origin.url(path), null, new EmptyHeadersInjector(), TIMEOUT);
+    }
+
+    private long measure(PooledUpstreamTransport transport, String path) throws Exception {
+        long start = System.currentTimeMillis();
+        execute(transport, path);
+        return System.currentTimeMillis() - start;
+    }
+
+    private void release(PooledUpstreamTransport transport, HttpURLConnection connection) throws Exception {
+        InputStream input = connection.getInputStream();
+        while (input.read() != -1) {
+            // body is read up to end, so connection is reusable
+        }
+        transport.release(connection, true);
+    }
+}